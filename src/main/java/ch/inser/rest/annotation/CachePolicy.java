@@ -0,0 +1,45 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+
+package ch.inser.rest.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Entête Cache-Control des réponses GET d'une méthode ou d'une classe de resource, écrit par le
+ * {@link ch.inser.rest.provider.NoCacheFilter}. Sans annotation, les réponses GET ont "no-cache".
+ *
+ * @author INSER SA *
+ */
+@Target({ ElementType.METHOD, ElementType.TYPE })
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface CachePolicy {
+
+    /**
+     * Politique des enregistrements validés par ETag: gardés par le client seulement, revalidés à chaque consultation
+     */
+    String PRIVATE_REVALIDATE = "private, no-cache";
+
+    /**
+     *
+     * @return la valeur de l'entête Cache-Control
+     */
+    String value();
+}
@@ -0,0 +1,68 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+
+package ch.inser.rest.auth;
+
+/**
+ * Bus sharing the session revocations between the nodes of the application.
+ *
+ * The {@link SessionRegistry} publishes a revocation when a user logs out and applies the revocations received from the other
+ * nodes. An implementation for a cluster relays the messages through a shared channel, for example a message queue or a database
+ * notification.
+ *
+ * @author INSER SA *
+ */
+public interface ISessionBus {
+
+    /**
+     * Listener of the revocations published on the bus
+     */
+    @FunctionalInterface
+    public interface Listener {
+
+        /**
+         *
+         * @param aUsername
+         *            user name
+         * @param aRevokedAt
+         *            time of the revocation in milliseconds: the tokens issued before are no longer valid
+         */
+        public void revoked(String aUsername, long aRevokedAt);
+    }
+
+    /**
+     * Publishes a revocation to all the listeners, including the ones of this node.
+     *
+     * @param aUsername
+     *            user name
+     * @param aRevokedAt
+     *            time of the revocation in milliseconds
+     */
+    public void publish(String aUsername, long aRevokedAt);
+
+    /**
+     *
+     * @param aListener
+     *            listener of the revocations
+     */
+    public void subscribe(Listener aListener);
+
+    /**
+     *
+     * @param aListener
+     *            listener to remove
+     */
+    public void unsubscribe(Listener aListener);
+}
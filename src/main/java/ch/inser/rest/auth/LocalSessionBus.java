@@ -0,0 +1,49 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+
+package ch.inser.rest.auth;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * In-process session bus: the revocations are delivered synchronously to the listeners of the same JVM.
+ *
+ * It is the default bus, suitable for a single node, and lets tests simulate several nodes sharing one bus.
+ *
+ * @author INSER SA *
+ */
+public class LocalSessionBus implements ISessionBus {
+
+    /** Listeners */
+    private final List<Listener> iListeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void publish(String aUsername, long aRevokedAt) {
+        for (Listener listener : iListeners) {
+            listener.revoked(aUsername, aRevokedAt);
+        }
+    }
+
+    @Override
+    public void subscribe(Listener aListener) {
+        iListeners.add(aListener);
+    }
+
+    @Override
+    public void unsubscribe(Listener aListener) {
+        iListeners.remove(aListener);
+    }
+}
@@ -0,0 +1,488 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+
+package ch.inser.rest.auth;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.cache.Cache;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import ch.inser.dynamic.common.IContextManager;
+import ch.inser.dynamic.common.ILoggedUser;
+import ch.inser.jsl.exceptions.ISException;
+
+/**
+ * Loading of the logged users through a JCache, for example the "userCache".
+ * <p>
+ * A user missing in the cache is loaded only once, however many requests ask for it concurrently: the other requests wait for
+ * the same load instead of initializing the user again (single-flight). When a refresh delay is given, a user found in the
+ * cache and loaded for longer than the delay is reloaded in the background while the cached one is still returned
+ * (refresh-ahead). A reloaded user keeps the login state of the cached one (status, permissions), and a failed reload is
+ * retried after the same delay. The hits, misses, loads and load time are counted for each cache. The authorizations of the
+ * loaded users are compiled in a {@link PermissionMatrix}.
+ *
+ * @author INSER SA *
+ */
+public class LoggedUserCache {
+
+    /** Définition de catégorie de logging */
+    private static final Log logger = LogFactory.getLog(LoggedUserCache.class);
+
+    /** Name of the cache of the logged users */
+    public static final String USER_CACHE = "userCache";
+
+    /**
+     * The property key name for the delay in milliseconds after which a cached user is reloaded in the background, not set for
+     * never
+     */
+    public static final String SECURITY_USER_CACHE_REFRESH = "security.user.cache.refresh";
+
+    /** Instances by cache name */
+    private static final Map<String, LoggedUserCache> cInstances = new ConcurrentHashMap<>();
+
+    /** Minimum number of load times kept before the ones of the users no longer in the cache are removed */
+    private static final int PURGE_THRESHOLD = 1000;
+
+    /** Background reloads, at most 2 at a time */
+    private static final Executor cExecutor = createExecutor();
+
+    /**
+     * Loading of a logged user
+     */
+    @FunctionalInterface
+    public interface Loader {
+
+        /**
+         *
+         * @return the logged user
+         * @throws ISException
+         *             error initializing the user
+         */
+        ILoggedUser load() throws ISException;
+    }
+
+    /** Cache name */
+    private final String iName;
+
+    /** Loads in progress by key */
+    private final Map<String, CompletableFuture<ILoggedUser>> iLoading = new ConcurrentHashMap<>();
+
+    /** Time of the last load by key, in milliseconds */
+    private final Map<String, Long> iLoadedAt = new ConcurrentHashMap<>();
+
+    /** Number of load times beyond which the ones of the users evicted from the cache are removed */
+    private volatile int iPurgeAt = PURGE_THRESHOLD;
+
+    /** Users found in the cache */
+    private final LongAdder iHits = new LongAdder();
+
+    /** Users missing in the cache */
+    private final LongAdder iMisses = new LongAdder();
+
+    /** Loads, including the background reloads */
+    private final LongAdder iLoads = new LongAdder();
+
+    /** Failed loads */
+    private final LongAdder iLoadFailures = new LongAdder();
+
+    /** Background reloads */
+    private final LongAdder iRefreshes = new LongAdder();
+
+    /** Cumulated load time in nanoseconds */
+    private final LongAdder iLoadTime = new LongAdder();
+
+    /**
+     *
+     * @param aName
+     *            cache name
+     */
+    private LoggedUserCache(String aName) {
+        iName = aName;
+    }
+
+    /**
+     *
+     * @param aName
+     *            cache name
+     * @return the instance for the cache
+     */
+    public static LoggedUserCache getInstance(String aName) {
+        return cInstances.computeIfAbsent(aName, LoggedUserCache::new);
+    }
+
+    /**
+     *
+     * @param aContextManager
+     *            context manager
+     * @return delay in milliseconds after which a cached user is reloaded in the background, 0 for never
+     */
+    public static long getRefreshAfter(IContextManager aContextManager) {
+        String value = aContextManager.getProperty(SECURITY_USER_CACHE_REFRESH);
+        return value != null ? Long.parseLong(value) : 0;
+    }
+
+    /**
+     *
+     * @return the instances by cache name
+     */
+    public static Map<String, LoggedUserCache> getInstances() {
+        return Collections.unmodifiableMap(cInstances);
+    }
+
+    /**
+     * Returns the user of the cache, loads it if missing.
+     *
+     * @param aCache
+     *            the cache
+     * @param aKey
+     *            the key, the username
+     * @param aRefreshAfter
+     *            delay in milliseconds after which a cached user is reloaded in the background, 0 for never
+     * @param aLoader
+     *            loading of the user
+     * @return the user
+     * @throws ISException
+     *             error loading the user
+     */
+    public ILoggedUser get(Cache<String, ILoggedUser> aCache, String aKey, long aRefreshAfter, Loader aLoader) throws ISException {
+        ILoggedUser user = aCache.get(aKey);
+        if (user != null) {
+            iHits.increment();
+            if (aRefreshAfter > 0 && isStale(aKey, aRefreshAfter)) {
+                refresh(aCache, aKey, aLoader, user);
+            }
+            return user;
+        }
+        iMisses.increment();
+        return load(aCache, aKey, aLoader, null);
+    }
+
+    /**
+     * Loads the user and replaces it in the cache, keeping the login status of the cached user. If the user is already being
+     * loaded, waits for that load.
+     *
+     * @param aCache
+     *            the cache
+     * @param aKey
+     *            the key, the username
+     * @param aLoader
+     *            loading of the user
+     * @return the user
+     * @throws ISException
+     *             error loading the user
+     */
+    public ILoggedUser load(Cache<String, ILoggedUser> aCache, String aKey, Loader aLoader) throws ISException {
+        return load(aCache, aKey, aLoader, aCache.get(aKey));
+    }
+
+    /**
+     * Loads the user and replaces it in the cache. If the user is already being loaded, waits for that load.
+     *
+     * @param aCache
+     *            the cache
+     * @param aKey
+     *            the key, the username
+     * @param aLoader
+     *            loading of the user
+     * @param aPrevious
+     *            the cached user whose login status is kept, <code>null</code> if none
+     * @return the user
+     * @throws ISException
+     *             error loading the user
+     */
+    private ILoggedUser load(Cache<String, ILoggedUser> aCache, String aKey, Loader aLoader, ILoggedUser aPrevious)
+            throws ISException {
+        CompletableFuture<ILoggedUser> future = new CompletableFuture<>();
+        CompletableFuture<ILoggedUser> running = iLoading.putIfAbsent(aKey, future);
+        if (running != null) {
+            return await(running);
+        }
+        try {
+            ILoggedUser user = doLoad(aCache, aKey, aLoader, aPrevious);
+            future.complete(user);
+            return user;
+        } catch (ISException | RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            iLoading.remove(aKey, future);
+        }
+    }
+
+    /**
+     * Puts a user loaded by the caller in the cache.
+     *
+     * @param aCache
+     *            the cache
+     * @param aKey
+     *            the key, the username
+     * @param aUser
+     *            the user
+     */
+    public void put(Cache<String, ILoggedUser> aCache, String aKey, ILoggedUser aUser) {
+        PermissionMatrix.register(aUser);
+        aCache.put(aKey, aUser);
+        iLoadedAt.put(aKey, System.currentTimeMillis());
+        if (iLoadedAt.size() > iPurgeAt) {
+            purge(aCache);
+        }
+    }
+
+    /**
+     * Removes the load times of the users no longer in the cache (evicted or expired).
+     *
+     * @param aCache
+     *            the cache
+     */
+    synchronized void purge(Cache<String, ILoggedUser> aCache) {
+        if (iLoadedAt.size() <= iPurgeAt) {
+            // Purged meanwhile
+            return;
+        }
+        iLoadedAt.keySet().removeIf(key -> !iLoading.containsKey(key) && !aCache.containsKey(key));
+        // Purged again when the number of users has doubled
+        iPurgeAt = Math.max(PURGE_THRESHOLD, iLoadedAt.size() * 2);
+    }
+
+    /**
+     *
+     * @return number of users whose load time is kept
+     */
+    int getLoadTimes() {
+        return iLoadedAt.size();
+    }
+
+    /**
+     *
+     * @return the cache name
+     */
+    public String getName() {
+        return iName;
+    }
+
+    /**
+     *
+     * @return number of users found in the cache
+     */
+    public long getHits() {
+        return iHits.sum();
+    }
+
+    /**
+     *
+     * @return number of users missing in the cache
+     */
+    public long getMisses() {
+        return iMisses.sum();
+    }
+
+    /**
+     *
+     * @return number of loads, including the background reloads
+     */
+    public long getLoads() {
+        return iLoads.sum();
+    }
+
+    /**
+     *
+     * @return number of failed loads
+     */
+    public long getLoadFailures() {
+        return iLoadFailures.sum();
+    }
+
+    /**
+     *
+     * @return number of background reloads
+     */
+    public long getRefreshes() {
+        return iRefreshes.sum();
+    }
+
+    /**
+     *
+     * @return average load time in milliseconds
+     */
+    public double getAverageLoadTime() {
+        long loads = iLoads.sum();
+        return loads == 0 ? 0 : iLoadTime.sum() / 1000000.0 / loads;
+    }
+
+    @Override
+    public String toString() {
+        return iName + " [hits=" + getHits() + ", misses=" + getMisses() + ", loads=" + getLoads() + ", failures=" + getLoadFailures()
+                + ", refreshes=" + getRefreshes() + ", averageLoadTime=" + getAverageLoadTime() + "ms]";
+    }
+
+    /**
+     *
+     * @param aKey
+     *            the key
+     * @param aRefreshAfter
+     *            delay in milliseconds after which a cached user is reloaded
+     * @return true if the user has been loaded for longer than the delay, or by an unknown caller
+     */
+    private boolean isStale(String aKey, long aRefreshAfter) {
+        Long loadedAt = iLoadedAt.get(aKey);
+        if (loadedAt == null) {
+            // Put in the cache by an unknown caller, reloaded the next time only
+            iLoadedAt.put(aKey, System.currentTimeMillis());
+            return false;
+        }
+        return System.currentTimeMillis() - loadedAt >= aRefreshAfter;
+    }
+
+    /**
+     * Reloads the user in the background, unless it is already being loaded.
+     *
+     * @param aCache
+     *            the cache
+     * @param aKey
+     *            the key
+     * @param aLoader
+     *            loading of the user
+     * @param aPrevious
+     *            the cached user
+     */
+    private void refresh(Cache<String, ILoggedUser> aCache, String aKey, Loader aLoader, ILoggedUser aPrevious) {
+        CompletableFuture<ILoggedUser> future = new CompletableFuture<>();
+        if (iLoading.putIfAbsent(aKey, future) != null) {
+            return;
+        }
+        iRefreshes.increment();
+        try {
+            cExecutor.execute(() -> {
+                try {
+                    future.complete(doLoad(aCache, aKey, aLoader, aPrevious));
+                } catch (ISException | RuntimeException e) {
+                    logger.warn("Error reloading the user " + aKey + " in the cache " + iName, e);
+                    // The cached user is kept and reloaded again after the delay
+                    iLoadedAt.put(aKey, System.currentTimeMillis());
+                    future.completeExceptionally(e);
+                } finally {
+                    iLoading.remove(aKey, future);
+                }
+            });
+        } catch (RuntimeException e) {
+            // Rejected, the user will be reloaded by a next request
+            iLoading.remove(aKey, future);
+            future.complete(aCache.get(aKey));
+        }
+    }
+
+    /**
+     * Loads the user and puts it in the cache.
+     *
+     * @param aCache
+     *            the cache
+     * @param aKey
+     *            the key
+     * @param aLoader
+     *            loading of the user
+     * @param aPrevious
+     *            the cached user whose login status is kept, <code>null</code> if none
+     * @return the user
+     * @throws ISException
+     *             error loading the user
+     */
+    private ILoggedUser doLoad(Cache<String, ILoggedUser> aCache, String aKey, Loader aLoader, ILoggedUser aPrevious)
+            throws ISException {
+        long start = System.nanoTime();
+        try {
+            ILoggedUser user = aLoader.load();
+            if (user != null) {
+                if (aPrevious != null && aPrevious != user) {
+                    copyStatus(aPrevious, user);
+                }
+                put(aCache, aKey, user);
+            }
+            return user;
+        } catch (ISException | RuntimeException e) {
+            iLoadFailures.increment();
+            throw e;
+        } finally {
+            iLoads.increment();
+            iLoadTime.add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Copies the status set at the login, which the loader does not initialize, to the reloaded user. The permissions document is
+     * not copied: it is computed from the rights of the reloaded user.
+     *
+     * @param aPrevious
+     *            the cached user
+     * @param aUser
+     *            the reloaded user
+     */
+    private static void copyStatus(ILoggedUser aPrevious, ILoggedUser aUser) {
+        if (aUser.getStatus() == null) {
+            aUser.setStatus(aPrevious.getStatus());
+        }
+    }
+
+    /**
+     * Waits for a load started by another request.
+     *
+     * @param aFuture
+     *            the load
+     * @return the user
+     * @throws ISException
+     *             error loading the user
+     */
+    private static ILoggedUser await(CompletableFuture<ILoggedUser> aFuture) throws ISException {
+        try {
+            return aFuture.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ISException("Interrupted waiting for the user", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ISException) {
+                throw (ISException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new ISException(e.getCause());
+        }
+    }
+
+    /**
+     *
+     * @return executor of the background reloads, with daemon threads
+     */
+    private static Executor createExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(2, 2, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(1000), r -> {
+            Thread thread = new Thread(r, "is-rest-user-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
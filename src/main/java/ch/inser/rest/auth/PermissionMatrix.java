@@ -0,0 +1,486 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+
+package ch.inser.rest.auth;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import ch.inser.dynamic.common.ILoggedUser;
+import ch.inser.rest.util.Constants.Verb;
+
+import jakarta.json.JsonObject;
+
+/**
+ * Compiled authorizations of the actions on the business objects.
+ * <p>
+ * The object names are mapped to dense indexes shared by the whole process and, for each object, the authorized verbs are kept
+ * as a bitmask over {@link Verb}: an authorization check is an array lookup instead of the string building and map lookups of
+ * {@link ILoggedUser#isAuthAction(String, String)}. A matrix is shared by the users having the same rights (the same user
+ * group), identified by a signature of their class and their maps of authorizations computed once when the user is
+ * materialized ({@link #register(ILoggedUser)}). A user without maps of authorizations, for example the super user, gets a matrix
+ * of its own. Each authorization is asked once to the first user of the matrix, then read from the matrix. The users not
+ * materialized, for example without user cache, are asked directly. The permissions document of the group (resource
+ * /permissions) is kept with the matrix, so that it is built once for all the users of the group.
+ * <p>
+ * The {@link ILoggedUser} implementations must therefore answer {@link ILoggedUser#isAuthAction(String, String)} from their maps
+ * of authorizations only. A class whose answer also depends on other state of the user (e.g. the current organisation or the
+ * time) is excluded with {@link #exclude(Class)}: its users get a matrix of their own, without signature, which asks them each
+ * authorization.
+ *
+ * @author INSER SA *
+ */
+public class PermissionMatrix {
+
+    /** Bit of the verbs whose authorization is known, shifted after the bits of the authorized verbs */
+    private static final int KNOWN_SHIFT = 16;
+
+    /** Dense indexes of the object names */
+    private static final Map<String, Integer> cObjectIndexes = new ConcurrentHashMap<>();
+
+    /** Matrices by signature of the rights */
+    private static final Map<String, PermissionMatrix> cMatrices = new ConcurrentHashMap<>();
+
+    /** Matrices by user instance, removed when the user is garbage collected */
+    private static final Map<UserKey, PermissionMatrix> cUsers = new ConcurrentHashMap<>();
+
+    /** Users garbage collected */
+    private static final ReferenceQueue<ILoggedUser> cCollected = new ReferenceQueue<>();
+
+    /** Classes of users asked each authorization */
+    private static final Set<Class<?>> cExcluded = ConcurrentHashMap.newKeySet();
+
+    /** Permissions documents built for a group, also those of the forgotten matrices */
+    private static final Set<JsonObject> cDocuments = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+    /** Signature of the rights */
+    private final String iSignature;
+
+    /** The authorizations are compiled, <code>false</code> for the users asked each authorization */
+    private final boolean iCompiled;
+
+    /** Authorized and known verbs by object index */
+    private volatile AtomicIntegerArray iMasks;
+
+    /** Permissions document of the group, built on demand */
+    private volatile Permissions iPermissions;
+
+    /**
+     * Permissions document with its entity tag
+     */
+    public static final class Permissions {
+
+        /** The document */
+        private final JsonObject iJson;
+
+        /** The serialized document */
+        private final String iString;
+
+        /** Entity tag of the document */
+        private final String iTag;
+
+        /**
+         *
+         * @param aJson
+         *            the document
+         * @param aTag
+         *            entity tag of the document
+         */
+        public Permissions(JsonObject aJson, String aTag) {
+            iJson = aJson;
+            iString = aJson.toString();
+            iTag = aTag;
+        }
+
+        /**
+         *
+         * @return the document
+         */
+        public JsonObject getJson() {
+            return iJson;
+        }
+
+        /**
+         *
+         * @return the serialized document
+         */
+        @Override
+        public String toString() {
+            return iString;
+        }
+
+        /**
+         *
+         * @return entity tag of the document
+         */
+        public String getTag() {
+            return iTag;
+        }
+    }
+
+    /**
+     *
+     * @param aSignature
+     *            signature of the rights
+     * @param aCompiled
+     *            the authorizations are compiled
+     */
+    private PermissionMatrix(String aSignature, boolean aCompiled) {
+        iSignature = aSignature;
+        iCompiled = aCompiled;
+        iMasks = new AtomicIntegerArray(Math.max(16, cObjectIndexes.size()));
+    }
+
+    /**
+     * Checks if the user has the authority to perform the action on the object.
+     *
+     * @param aUser
+     *            the user
+     * @param aObjectName
+     *            object name
+     * @param aVerb
+     *            action
+     * @return <code>true</code> if the user has the authority to perform the action
+     */
+    public static boolean isAuthAction(ILoggedUser aUser, String aObjectName, Verb aVerb) {
+        PermissionMatrix matrix = aObjectName != null ? cUsers.get(new UserKey(aUser, null)) : null;
+        if (matrix == null) {
+            // Not materialized, compiling its authorizations would cost more than asking them
+            return aUser.isAuthAction(aObjectName, aVerb.toString());
+        }
+        return matrix.isAuthAction(aUser, getObjectIndex(aObjectName), aObjectName, aVerb);
+    }
+
+    /**
+     * Compiles the authorizations of the user, called when the user is materialized. The matrix of the users having the same
+     * rights is reused, a new matrix is filled with the authorizations of the objects already known.
+     *
+     * @param aUser
+     *            the user
+     * @return the matrix of the user
+     */
+    public static PermissionMatrix register(ILoggedUser aUser) {
+        expungeCollected();
+        if (isExcluded(aUser)) {
+            PermissionMatrix matrix = new PermissionMatrix(null, false);
+            cUsers.put(new UserKey(aUser, cCollected), matrix);
+            return matrix;
+        }
+        String signature = getSignature(aUser);
+        PermissionMatrix matrix = signature != null ? cMatrices.get(signature) : null;
+        if (matrix == null) {
+            PermissionMatrix created = new PermissionMatrix(signature, true);
+            for (Map.Entry<String, Integer> object : cObjectIndexes.entrySet()) {
+                for (Verb verb : Verb.values()) {
+                    created.isAuthAction(aUser, object.getValue(), object.getKey(), verb);
+                }
+            }
+            matrix = signature != null ? cMatrices.putIfAbsent(signature, created) : null;
+            if (matrix == null) {
+                matrix = created;
+            }
+        }
+        cUsers.put(new UserKey(aUser, cCollected), matrix);
+        return matrix;
+    }
+
+    /**
+     *
+     * @param aUser
+     *            the user
+     * @return the matrix of the user, compiled the first time
+     */
+    public static PermissionMatrix get(ILoggedUser aUser) {
+        PermissionMatrix matrix = cUsers.get(new UserKey(aUser, null));
+        return matrix != null ? matrix : register(aUser);
+    }
+
+    /**
+     * Forgets the compiled authorizations, for example after a change of the rights of the user groups. The users still
+     * materialized are compiled again from their current rights.
+     */
+    public static void clear() {
+        List<ILoggedUser> users = new ArrayList<>();
+        for (UserKey key : cUsers.keySet()) {
+            ILoggedUser user = key.get();
+            if (user != null) {
+                users.add(user);
+            }
+        }
+        cMatrices.clear();
+        cUsers.clear();
+        for (ILoggedUser user : users) {
+            register(user);
+        }
+    }
+
+    /**
+     * Excludes a class of users and its sub classes from the compilation of the authorizations, for a class whose
+     * {@link ILoggedUser#isAuthAction(String, String)} does not depend only on its maps of authorizations. The users already
+     * materialized are registered again.
+     *
+     * @param aClass
+     *            class of users asked each authorization
+     */
+    public static void exclude(Class<? extends ILoggedUser> aClass) {
+        if (cExcluded.add(aClass)) {
+            clear();
+        }
+    }
+
+    /**
+     *
+     * @param aUser
+     *            the user
+     * @return <code>true</code> if the class of the user or one of its super classes is excluded
+     */
+    private static boolean isExcluded(ILoggedUser aUser) {
+        for (Class<?> excluded : cExcluded) {
+            if (excluded.isInstance(aUser)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     *
+     * @return number of distinct matrices, one by set of rights
+     */
+    public static int getMatrixCount() {
+        return cMatrices.size();
+    }
+
+    /**
+     *
+     * @return signature of the rights, <code>null</code> for the matrix of a single user
+     */
+    public String getSignature() {
+        return iSignature;
+    }
+
+    /**
+     *
+     * @return the permissions document of the group, <code>null</code> if not built yet
+     */
+    public Permissions getPermissions() {
+        return iPermissions;
+    }
+
+    /**
+     *
+     * @param aPermissions
+     *            the permissions document of the group
+     */
+    public void setPermissions(Permissions aPermissions) {
+        cDocuments.add(aPermissions.getJson());
+        iPermissions = aPermissions;
+    }
+
+    /**
+     *
+     * @param aJson
+     *            permissions document of a user
+     * @return <code>true</code> if the document was built for a group, possibly before a change of the rights, <code>false</code>
+     *         if it was set by the application
+     */
+    public static boolean isGroupDocument(JsonObject aJson) {
+        return cDocuments.contains(aJson);
+    }
+
+    /**
+     *
+     * @param aUser
+     *            a user with the rights of the matrix
+     * @param aIndex
+     *            object index
+     * @param aObjectName
+     *            object name
+     * @param aVerb
+     *            action
+     * @return <code>true</code> if the action is authorized
+     */
+    private boolean isAuthAction(ILoggedUser aUser, int aIndex, String aObjectName, Verb aVerb) {
+        if (!iCompiled) {
+            return aUser.isAuthAction(aObjectName, aVerb.toString());
+        }
+        int bit = 1 << aVerb.ordinal();
+        AtomicIntegerArray masks = iMasks;
+        if (aIndex < masks.length()) {
+            int mask = masks.get(aIndex);
+            if ((mask & bit << KNOWN_SHIFT) != 0) {
+                return (mask & bit) != 0;
+            }
+        }
+        // First check of the action, the result is the same for all the users of the matrix
+        boolean authorized = aUser.isAuthAction(aObjectName, aVerb.toString());
+        int update = bit << KNOWN_SHIFT | (authorized ? bit : 0);
+        getMasks(aIndex).getAndUpdate(aIndex, mask -> mask | update);
+        return authorized;
+    }
+
+    /**
+     *
+     * @param aIndex
+     *            object index
+     * @return the masks, enlarged to contain the index
+     */
+    private AtomicIntegerArray getMasks(int aIndex) {
+        AtomicIntegerArray masks = iMasks;
+        if (aIndex < masks.length()) {
+            return masks;
+        }
+        synchronized (this) {
+            masks = iMasks;
+            if (aIndex >= masks.length()) {
+                AtomicIntegerArray enlarged = new AtomicIntegerArray(Math.max(aIndex + 1, masks.length() * 2));
+                for (int i = 0; i < masks.length(); i++) {
+                    enlarged.set(i, masks.get(i));
+                }
+                iMasks = enlarged;
+                masks = enlarged;
+            }
+            return masks;
+        }
+    }
+
+    /**
+     *
+     * @param aObjectName
+     *            object name
+     * @return the dense index of the object
+     */
+    private static int getObjectIndex(String aObjectName) {
+        Integer index = cObjectIndexes.get(aObjectName);
+        if (index != null) {
+            return index;
+        }
+        synchronized (cObjectIndexes) {
+            return cObjectIndexes.computeIfAbsent(aObjectName, name -> cObjectIndexes.size());
+        }
+    }
+
+    /**
+     *
+     * @param aUser
+     *            the user
+     * @return signature of the class and the maps of authorizations of the user, <code>null</code> if the user has no maps
+     */
+    private static String getSignature(ILoggedUser aUser) {
+        if (aUser.getMapAuthAction() == null && aUser.getMapAuthMenu() == null && aUser.getMapAuthFields() == null) {
+            return null;
+        }
+        StringBuilder rights = new StringBuilder(aUser.getClass().getName()).append('|');
+        appendSorted(rights, aUser.getMapAuthAction());
+        rights.append('|');
+        appendSorted(rights, aUser.getMapAuthMenu());
+        rights.append('|');
+        appendSorted(rights, aUser.getMapAuthFields());
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return Base64.getEncoder().encodeToString(digest.digest(rights.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Appends a map sorted by key, the nested maps are sorted too.
+     *
+     * @param aBuilder
+     *            the signature
+     * @param aMap
+     *            the map
+     */
+    private static void appendSorted(StringBuilder aBuilder, Map<String, ?> aMap) {
+        if (aMap == null) {
+            aBuilder.append("null");
+            return;
+        }
+        aBuilder.append('{');
+        for (Map.Entry<String, ?> entry : new TreeMap<>(aMap).entrySet()) {
+            aBuilder.append(entry.getKey()).append('=');
+            if (entry.getValue() instanceof Map) {
+                @SuppressWarnings("unchecked")
+                Map<String, ?> nested = (Map<String, ?>) entry.getValue();
+                appendSorted(aBuilder, nested);
+            } else {
+                aBuilder.append(entry.getValue());
+            }
+            aBuilder.append(';');
+        }
+        aBuilder.append('}');
+    }
+
+    /**
+     * Removes the users garbage collected.
+     */
+    private static void expungeCollected() {
+        for (Object ref = cCollected.poll(); ref != null; ref = cCollected.poll()) {
+            cUsers.remove(ref);
+        }
+    }
+
+    /**
+     * Weak key comparing the user instances
+     */
+    private static final class UserKey extends WeakReference<ILoggedUser> {
+
+        /** Identity hash code of the user */
+        private final int iHash;
+
+        /**
+         *
+         * @param aUser
+         *            the user
+         * @param aQueue
+         *            queue of the collected users, <code>null</code> for a lookup key
+         */
+        UserKey(ILoggedUser aUser, ReferenceQueue<ILoggedUser> aQueue) {
+            super(aUser, aQueue);
+            iHash = System.identityHashCode(aUser);
+        }
+
+        @Override
+        public int hashCode() {
+            return iHash;
+        }
+
+        @Override
+        public boolean equals(Object aObj) {
+            if (this == aObj) {
+                return true;
+            }
+            if (!(aObj instanceof UserKey)) {
+                return false;
+            }
+            ILoggedUser user = get();
+            return user != null && user == ((UserKey) aObj).get();
+        }
+    }
+}
@@ -15,31 +15,90 @@
 
 package ch.inser.rest.auth;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
+import ch.inser.dynamic.common.IContextManager;
 import ch.inser.dynamic.common.ILoggedUser;
 
 /**
  * Utilisateurs authentifiés en cache
  *
+ * Le registre est thread safe, la lecture d'un utilisateur ne prend aucun verrou. Un utilisateur qui n'a pas été lu depuis le délai
+ * d'inactivité (security.active.users.idle, aucun par défaut) est retiré, et lorsque le nombre d'utilisateurs dépasse la taille
+ * maximale (security.active.users.size, 10000 par défaut) les utilisateurs inactifs depuis le plus longtemps sont retirés.
+ *
  * @author INSER SA *
  */
 public class RESTActiveUsers {
 
+    /** The property key name for the idle time in milliseconds after which a user is removed */
+    public static final String SECURITY_ACTIVE_USERS_IDLE = "security.active.users.idle";
+
+    /** The property key name for the maximum number of active users */
+    public static final String SECURITY_ACTIVE_USERS_SIZE = "security.active.users.size";
+
+    /** Délai d'inactivité par défaut, aucun: les utilisateurs ne sont retirés que par la taille maximale */
+    private static final long DEFAULT_MAX_IDLE = 0;
+
+    /** Nombre maximal d'utilisateurs par défaut */
+    private static final int DEFAULT_MAX_SIZE = 10000;
+
     /**
      * L'instance des utilisateurs actifs
      */
     private static final RESTActiveUsers cInstance = new RESTActiveUsers();
 
     /** Map des utilisateurs actifs */
-    private Map<String, ILoggedUser> iUsers;
+    private final Map<String, ActiveUser> iUsers = new ConcurrentHashMap<>();
+
+    /** Délai d'inactivité en millisecondes, 0 pour aucun */
+    private volatile long iMaxIdle = DEFAULT_MAX_IDLE;
+
+    /** Nombre maximal d'utilisateurs */
+    private volatile int iMaxSize = DEFAULT_MAX_SIZE;
+
+    /** Nombre d'utilisateurs retirés */
+    private final LongAdder iEvictions = new LongAdder();
+
+    /** Utilisateurs trouvés */
+    private final LongAdder iHits = new LongAdder();
+
+    /** Utilisateurs non trouvés ou expirés */
+    private final LongAdder iMisses = new LongAdder();
+
+    /**
+     * Utilisateur actif avec l'heure de son dernier accès
+     */
+    private static final class ActiveUser {
+
+        /** L'utilisateur */
+        private final ILoggedUser iUser;
+
+        /** Heure du dernier accès en millisecondes */
+        private volatile long iLastAccess;
+
+        /**
+         *
+         * @param aUser
+         *            l'utilisateur
+         * @param aNow
+         *            heure de l'ajout
+         */
+        ActiveUser(ILoggedUser aUser, long aNow) {
+            iUser = aUser;
+            iLastAccess = aNow;
+        }
+    }
 
     /**
      * Constructeur
      */
-    private RESTActiveUsers() {
-        iUsers = new HashMap<>();
+    RESTActiveUsers() {
+        // Registre vide
     }
 
     /**
@@ -50,6 +109,31 @@ public class RESTActiveUsers {
         return cInstance;
     }
 
+    /**
+     * Lit le délai d'inactivité et la taille maximale dans les propriétés.
+     *
+     * @param aContextManager
+     *            context manager
+     */
+    public void configure(IContextManager aContextManager) {
+        String idle = aContextManager.getProperty(SECURITY_ACTIVE_USERS_IDLE);
+        String size = aContextManager.getProperty(SECURITY_ACTIVE_USERS_SIZE);
+        configure(idle != null ? Long.parseLong(idle) : DEFAULT_MAX_IDLE, size != null ? Integer.parseInt(size) : DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     *
+     * @param aMaxIdle
+     *            délai d'inactivité en millisecondes après lequel un utilisateur est retiré, 0 pour aucun
+     * @param aMaxSize
+     *            nombre maximal d'utilisateurs
+     */
+    public void configure(long aMaxIdle, int aMaxSize) {
+        iMaxIdle = aMaxIdle;
+        iMaxSize = aMaxSize;
+        evict(System.currentTimeMillis());
+    }
+
     /**
      * Retourne l'utilisateur WS, null s'il n'est pas trouvable
      *
@@ -58,7 +142,22 @@ public class RESTActiveUsers {
      * @return L'objet LoggedUser avec les droits
      */
     public ILoggedUser getUser(String username) {
-        return iUsers.get(username);
+        ActiveUser active = iUsers.get(username);
+        if (active == null) {
+            iMisses.increment();
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        if (isIdle(active, now)) {
+            if (iUsers.remove(username, active)) {
+                iEvictions.increment();
+            }
+            iMisses.increment();
+            return null;
+        }
+        active.iLastAccess = now;
+        iHits.increment();
+        return active.iUser;
     }
 
     /**
@@ -66,7 +165,112 @@ public class RESTActiveUsers {
      *            Objet LoggedUser authentifié
      */
     public void addUser(ILoggedUser aUser) {
-        iUsers.put(aUser.getUsername(), aUser);
+        long now = System.currentTimeMillis();
+        iUsers.put(aUser.getUsername(), new ActiveUser(aUser, now));
+        if (iUsers.size() > iMaxSize) {
+            evict(now);
+        }
+    }
+
+    /**
+     * Retire un utilisateur, par exemple au logout
+     *
+     * @param aUsername
+     *            nom d'utilisateur
+     * @return l'utilisateur retiré, null s'il n'était pas actif
+     */
+    public ILoggedUser removeUser(String aUsername) {
+        ActiveUser active = iUsers.remove(aUsername);
+        return active != null ? active.iUser : null;
+    }
+
+    /**
+     * Retire les utilisateurs inactifs.
+     */
+    public void evictIdle() {
+        evict(System.currentTimeMillis());
+    }
+
+    /**
+     *
+     * @return nombre d'utilisateurs actifs, y compris ceux inactifs pas encore retirés
+     */
+    public int getActiveUsers() {
+        return iUsers.size();
+    }
+
+    /**
+     *
+     * @return nombre d'utilisateurs retirés pour inactivité ou dépassement de la taille maximale
+     */
+    public long getEvictions() {
+        return iEvictions.sum();
+    }
+
+    /**
+     *
+     * @return nombre d'utilisateurs trouvés
+     */
+    public long getHits() {
+        return iHits.sum();
+    }
+
+    /**
+     *
+     * @return nombre d'utilisateurs non trouvés ou expirés
+     */
+    public long getMisses() {
+        return iMisses.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "RESTActiveUsers [activeUsers=" + getActiveUsers() + ", evictions=" + getEvictions() + ", hits=" + getHits() + ", misses="
+                + getMisses() + "]";
+    }
+
+    /**
+     * Retire les utilisateurs inactifs puis, si la taille maximale est encore dépassée, ceux inactifs depuis le plus longtemps.
+     *
+     * @param aNow
+     *            heure courante
+     */
+    private synchronized void evict(long aNow) {
+        for (Map.Entry<String, ActiveUser> entry : iUsers.entrySet()) {
+            if (isIdle(entry.getValue(), aNow) && iUsers.remove(entry.getKey(), entry.getValue())) {
+                iEvictions.increment();
+            }
+        }
+        int excess = iUsers.size() - iMaxSize;
+        if (excess <= 0) {
+            return;
+        }
+        // Les heures d'accès sont copiées, elles peuvent changer pendant le tri
+        List<Object[]> entries = new ArrayList<>(iUsers.size());
+        for (Map.Entry<String, ActiveUser> entry : iUsers.entrySet()) {
+            entries.add(new Object[] { entry.getKey(), entry.getValue(), entry.getValue().iLastAccess });
+        }
+        entries.sort((e1, e2) -> Long.compare((Long) e1[2], (Long) e2[2]));
+        // Retire un dixième en plus pour ne pas trier à chaque ajout
+        int count = Math.min(entries.size(), excess + iMaxSize / 10);
+        for (int i = 0; i < count; i++) {
+            if (iUsers.remove(entries.get(i)[0], entries.get(i)[1])) {
+                iEvictions.increment();
+            }
+        }
+    }
+
+    /**
+     *
+     * @param aActive
+     *            utilisateur actif
+     * @param aNow
+     *            heure courante
+     * @return true si l'utilisateur n'a pas été lu depuis le délai d'inactivité
+     */
+    private boolean isIdle(ActiveUser aActive, long aNow) {
+        long maxIdle = iMaxIdle;
+        return maxIdle > 0 && aNow - aActive.iLastAccess > maxIdle;
     }
 
 }
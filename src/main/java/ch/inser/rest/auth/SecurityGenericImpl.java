@@ -18,6 +18,9 @@ package ch.inser.rest.auth;
 import java.util.Base64;
 import java.util.Date;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.cache.Cache;
 import javax.crypto.SecretKey;
@@ -49,7 +52,6 @@ import io.jsonwebtoken.security.Keys;
 public class SecurityGenericImpl implements ISecurityImpl {
 
     /** Définition de catégorie de logging */
-    @SuppressWarnings("unused")
     private static final Log logger = LogFactory.getLog(SecurityGenericImpl.class);
 
     /**
@@ -62,6 +64,42 @@ public class SecurityGenericImpl implements ISecurityImpl {
      */
     private static final String SECURITY_TOKEN_KEY = "security.token.key";
 
+    /**
+     * The property key name for the maximum number of verified tokens kept in memory, 0 to disable the cache
+     */
+    private static final String SECURITY_TOKEN_CACHE_SIZE = "security.token.cache.size";
+
+    /**
+     * The property key name for the maximum time in milliseconds a verified token is kept in memory
+     */
+    private static final String SECURITY_TOKEN_CACHE_TTL = "security.token.cache.ttl";
+
+    /**
+     * The property key name for the fraction of the token lifetime below which a new token is issued. A token with a longer
+     * remaining lifetime is returned unchanged. Not set to always issue a new token.
+     */
+    private static final String SECURITY_TOKEN_RENEW_THRESHOLD = "security.token.renew.threshold";
+
+    /** Default maximum number of verified tokens kept in memory */
+    private static final int DEFAULT_TOKEN_CACHE_SIZE = 10000;
+
+    /** Default maximum time in milliseconds a verified token is kept in memory */
+    private static final long DEFAULT_TOKEN_CACHE_TTL = 300000;
+
+    /** Maximum number of signing keys kept, e.g. the current and the previous key during a rotation */
+    private static final int MAX_SIGNING_KEYS = 4;
+
+    /**
+     * Signing keys with their parser and verified tokens, by key and configuration of the verified tokens cache. Built the first
+     * time a key or a configuration is used.
+     */
+    private final Map<String, SigningKey> iSigningKeys = new ConcurrentHashMap<>();
+
+    /**
+     * Renewal threshold parsed from the current value of its property. Parsed again when the property changes.
+     */
+    private volatile RenewThreshold iRenewThreshold;
+
     @Override
     public String getToken(ILoggedUser aUser, IContextManager aContextManger) {
         ClaimsBuilder claimsBuilder = Jwts.claims();
@@ -85,8 +123,12 @@ public class SecurityGenericImpl implements ISecurityImpl {
             return null;
         }
 
-        String securityTokenKey = aContextManager.getProperty(SECURITY_TOKEN_KEY);
-        SecretKey secretKey = Keys.hmacShaKeyFor(Base64.getDecoder().decode(securityTokenKey));
+        String token = getReusableToken(aClaims, aContextManager);
+        if (token != null) {
+            return token;
+        }
+
+        SecretKey secretKey = getSigningKey(aContextManager.getProperty(SECURITY_TOKEN_KEY), aContextManager).iSecretKey;
 
         Date now = new Date();
         JwtBuilder jwt = Jwts.builder().claims(aClaims).issuedAt(now).id((String) aClaims.get("userId"))
@@ -102,12 +144,64 @@ public class SecurityGenericImpl implements ISecurityImpl {
         return jwt.compact();
     }
 
+    /**
+     * Returns the token of the claims if its remaining lifetime is above the renewal threshold. The token is the one of the
+     * request validated by the {@link ch.inser.rest.provider.AuthenticationFilter}, or the one kept with the claims by the cache of
+     * the verified tokens when the claims have been validated by another entry point.
+     *
+     * @param aClaims
+     *            the claims to put in the token
+     * @param aContextManager
+     *            the context manager
+     * @return the token of the claims, <code>null</code> if a new token must be issued
+     */
+    private String getReusableToken(Claims aClaims, IContextManager aContextManager) {
+        double threshold = getRenewThreshold(aContextManager);
+        if (threshold < 0) {
+            return null;
+        }
+        TokenSecurityContext security = TokenSecurityContext.current();
+        String token;
+        if (security != null && security.getValidatedClaims() == aClaims) {
+            token = security.getToken();
+        } else {
+            token = getSigningKey(aContextManager.getProperty(SECURITY_TOKEN_KEY), aContextManager).iVerifiedTokens.getToken(aClaims);
+        }
+        if (token == null) {
+            return null;
+        }
+        Date issuedAt = aClaims.getIssuedAt();
+        Date expiration = aClaims.getExpiration();
+        if (issuedAt == null || expiration == null) {
+            return null;
+        }
+        long lifetime = expiration.getTime() - issuedAt.getTime();
+        long remaining = expiration.getTime() - System.currentTimeMillis();
+        return remaining > 0 && remaining >= lifetime * threshold ? token : null;
+    }
+
+    /**
+     *
+     * @param aContextManager
+     *            the context manager
+     * @return the fraction of the token lifetime below which a new token is issued, -1 to always issue a new token
+     */
+    private double getRenewThreshold(IContextManager aContextManager) {
+        String property = aContextManager.getProperty(SECURITY_TOKEN_RENEW_THRESHOLD);
+        RenewThreshold threshold = iRenewThreshold;
+        if (threshold == null || !Objects.equals(threshold.iProperty, property)) {
+            threshold = new RenewThreshold(property);
+            iRenewThreshold = threshold;
+        }
+        return threshold.iFraction;
+    }
+
     @Override
     public Claims validateToken(String token, IContextManager aContextManager) throws ISSecurityException {
         if ("false".equals(aContextManager.getProperty(SECURITY_TOKEN))) {
             return null;
         }
-        return validateToken(token, aContextManager.getProperty(SECURITY_TOKEN_KEY));
+        return validateToken(token, getVerifyingKey(aContextManager.getProperty(SECURITY_TOKEN_KEY), aContextManager));
     }
 
     @Override
@@ -116,27 +210,29 @@ public class SecurityGenericImpl implements ISecurityImpl {
         // -- Get the user name
         String username = aClaims != null ? (String) aClaims.get("userName") : null;
         if (username != null && "true".equals(aServiceLocator.getContextManager().getProperty(SECURITY_SESSION_CONTROL))) {
-            validateUserSession(username, aServiceLocator);
+            validateUserSession(username, aClaims.getIssuedAt(), aServiceLocator);
         }
         return getLoggedUser(username, aClaims, aServiceLocator);
     }
 
     /**
-     * Vérifie que l'utilisateur a une session en cours dans la base de données: le timestamp logout est null
+     * Vérifie que l'utilisateur a une session en cours dans la base de données: le timestamp logout est null. Une session valide
+     * est gardée en mémoire pendant <code>security.session.cache.ttl</code> millisecondes, une session révoquée par le logout est
+     * refusée sans consulter la base de données.
      *
      * @param aUsername
      *            nom d'utilisateur
+     * @param aIssuedAt
+     *            date d'émission du token, <code>null</code> si inconnue
      * @param aServiceLocator
      *            servicelocator avec accès à BP
      * @throws ISException
      *             erreur de consultation de table user
      */
-    private void validateUserSession(String aUsername, ServiceLocator aServiceLocator) throws ISException {
-        IDAOResult result = (IDAOResult) ((IBPDelegate) aServiceLocator.getLocator("bp").getService("LoggedUser"))
-                .executeMethode("validateSession", aUsername, new SuperUser());
-        if (!result.isStatusOK()) {
-            throw new ISSecurityException("User is not logged in: " + aUsername, null);
-        }
+    private void validateUserSession(String aUsername, Date aIssuedAt, ServiceLocator aServiceLocator) throws ISException {
+        SessionRegistry.getInstance().validate(aUsername, aIssuedAt, SessionRegistry.getTtl(aServiceLocator.getContextManager()),
+                () -> ((IDAOResult) ((IBPDelegate) aServiceLocator.getLocator("bp").getService("LoggedUser"))
+                        .executeMethode("validateSession", aUsername, new SuperUser())).isStatusOK());
     }
 
     @Override
@@ -170,15 +266,13 @@ public class SecurityGenericImpl implements ISecurityImpl {
             initData = aClaims;
         }
         if ("true".equals(contextManager.getProperty(SECURITY_USER_CACHE))) {
-            Cache<String, ILoggedUser> cache = contextManager.getCacheManager().getCache("userCache", String.class, ILoggedUser.class);
-
-            if (!cache.containsKey(aUsername)) {
-
-                ILoggedUser user = (ILoggedUser) ((IBPDelegate) aServiceLocator.getLocator("bp").getService("LoggedUser"))
-                        .executeMethode("initLoggedUser", initData, new SuperUser());
-                cache.put(aUsername, user);
-            }
-            return cache.get(aUsername);
+            Cache<String, ILoggedUser> cache = contextManager.getCacheManager().getCache(LoggedUserCache.USER_CACHE, String.class,
+                    ILoggedUser.class);
+            Object data = initData;
+            return LoggedUserCache.getInstance(LoggedUserCache.USER_CACHE).get(cache, aUsername,
+                    LoggedUserCache.getRefreshAfter(contextManager),
+                    () -> (ILoggedUser) ((IBPDelegate) aServiceLocator.getLocator("bp").getService("LoggedUser"))
+                            .executeMethode("initLoggedUser", data, new SuperUser()));
         }
 
         // -- Retour de l'utilisateur si configuration sans cache
@@ -188,10 +282,46 @@ public class SecurityGenericImpl implements ISecurityImpl {
 
     @Override
     public Claims validateToken(String token, String aKey) throws ISSecurityException {
+        return validateToken(token, getVerifyingKey(aKey, null));
+    }
+
+    /**
+     *
+     * @param aKey
+     *            BASE64-encoded signing key
+     * @param aContextManager
+     *            context manager for the configuration of the verified tokens cache, <code>null</code> for the default values
+     * @return the signing key to verify the tokens
+     * @throws ISSecurityException
+     *             if the key cannot be decoded
+     */
+    private SigningKey getVerifyingKey(String aKey, IContextManager aContextManager) throws ISSecurityException {
+        try {
+            return getSigningKey(aKey, aContextManager);
+        } catch (IllegalArgumentException e) {
+            throw new ISSecurityException("The token is null or empty", e);
+        }
+    }
+
+    /**
+     * Verifies the token with the parser of the signing key. The claims of a token already verified are returned from the cache
+     * of the key.
+     *
+     * @param token
+     *            the token
+     * @param aSigningKey
+     *            the signing key
+     * @return the verified claims
+     * @throws ISSecurityException
+     *             if the token is not valid
+     */
+    private static Claims validateToken(String token, SigningKey aSigningKey) throws ISSecurityException {
+        Claims claims = aSigningKey.iVerifiedTokens.get(token);
+        if (claims != null) {
+            return claims;
+        }
         try {
-            SecretKey secretKey = Keys.hmacShaKeyFor(Base64.getDecoder().decode(aKey));
-            JwtParser parser = Jwts.parser().verifyWith(secretKey).build();
-            return parser.parseSignedClaims(token).getPayload();
+            claims = aSigningKey.iParser.parseSignedClaims(token).getPayload();
         } catch (UnsupportedJwtException e) {
             throw new ISSecurityException("The token is not a valid JWS", e);
         } catch (MalformedJwtException e) {
@@ -201,6 +331,119 @@ public class SecurityGenericImpl implements ISecurityImpl {
         } catch (IllegalArgumentException e) {
             throw new ISSecurityException("The token is null or empty", e);
         }
+        return aSigningKey.iVerifiedTokens.put(token, claims);
+    }
+
+    /**
+     * Returns the signing key built for the given key and configuration of the verified tokens cache. A new one is built for a
+     * new key or a new configuration, the keys used alternately keep their parser and verified tokens.
+     *
+     * @param aKey
+     *            BASE64-encoded signing key
+     * @param aContextManager
+     *            context manager for the configuration of the verified tokens cache, <code>null</code> for the default values
+     * @return the signing key
+     */
+    private SigningKey getSigningKey(String aKey, IContextManager aContextManager) {
+        String size = aContextManager != null ? aContextManager.getProperty(SECURITY_TOKEN_CACHE_SIZE) : null;
+        String ttl = aContextManager != null ? aContextManager.getProperty(SECURITY_TOKEN_CACHE_TTL) : null;
+        String id = aKey + '|' + size + '|' + ttl;
+        SigningKey signingKey = iSigningKeys.get(id);
+        if (signingKey != null) {
+            return signingKey;
+        }
+        int cacheSize = (int) Math.min(Integer.MAX_VALUE, getLong(SECURITY_TOKEN_CACHE_SIZE, size, DEFAULT_TOKEN_CACHE_SIZE));
+        long cacheTtl = getLong(SECURITY_TOKEN_CACHE_TTL, ttl, DEFAULT_TOKEN_CACHE_TTL);
+        signingKey = new SigningKey(aKey, new VerifiedTokenCache(cacheSize, cacheTtl));
+        if (iSigningKeys.size() >= MAX_SIGNING_KEYS) {
+            iSigningKeys.clear();
+        }
+        SigningKey previous = iSigningKeys.putIfAbsent(id, signingKey);
+        if (previous != null) {
+            return previous;
+        }
+        logger.debug("Signing key initialized, verified tokens cache size: " + cacheSize);
+        return signingKey;
+    }
+
+    /**
+     *
+     * @param aName
+     *            name of the property
+     * @param aValue
+     *            value of the property, <code>null</code> if not set
+     * @param aDefault
+     *            default value
+     * @return the value of the property, the default value if it is not set or not a number
+     */
+    private static long getLong(String aName, String aValue, long aDefault) {
+        if (aValue == null) {
+            return aDefault;
+        }
+        try {
+            return Long.parseLong(aValue.trim());
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid " + aName + ": " + aValue, e);
+            return aDefault;
+        }
+    }
+
+    /**
+     * The renewal threshold parsed from its property
+     */
+    private static final class RenewThreshold {
+
+        /** Value of the property */
+        private final String iProperty;
+
+        /** Fraction of the token lifetime, -1 if not set or invalid */
+        private final double iFraction;
+
+        /**
+         *
+         * @param aProperty
+         *            value of the property, <code>null</code> if not set
+         */
+        RenewThreshold(String aProperty) {
+            iProperty = aProperty;
+            double fraction = -1;
+            if (aProperty != null) {
+                try {
+                    fraction = Double.parseDouble(aProperty);
+                } catch (NumberFormatException e) {
+                    logger.warn("Invalid " + SECURITY_TOKEN_RENEW_THRESHOLD + ": " + aProperty + ", a new token is always issued", e);
+                }
+            }
+            iFraction = fraction;
+        }
+    }
+
+    /**
+     * The decoded signing key with its parser and the tokens verified with it
+     */
+    private static final class SigningKey {
+
+        /** Decoded key */
+        private final SecretKey iSecretKey;
+
+        /** Parser verifying with the key, thread safe */
+        private final JwtParser iParser;
+
+        /** Tokens verified with the key */
+        private final VerifiedTokenCache iVerifiedTokens;
+
+        /**
+         *
+         * @param aKey
+         *            BASE64-encoded key
+         * @param aVerifiedTokens
+         *            cache for the tokens verified with the key
+         */
+        SigningKey(String aKey, VerifiedTokenCache aVerifiedTokens) {
+            iSecretKey = Keys.hmacShaKeyFor(Base64.getDecoder().decode(aKey));
+            iParser = Jwts.parser().verifyWith(iSecretKey).build();
+            iVerifiedTokens = aVerifiedTokens;
+        }
     }
 
 }
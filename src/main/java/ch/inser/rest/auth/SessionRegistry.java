@@ -0,0 +1,223 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+
+package ch.inser.rest.auth;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import ch.inser.dynamic.common.IContextManager;
+import ch.inser.jsl.exceptions.ISException;
+
+/**
+ * Registry of the user sessions, used with <code>security.session.control=true</code>.
+ * <p>
+ * A session found valid in the database is trusted for a short time (<code>security.session.cache.ttl</code>, 30 seconds by
+ * default) instead of querying the database at each request. A logout revokes the session immediately: the tokens issued before
+ * the logout are rejected without querying the database, and the revocation is published on the {@link ISessionBus} for the other
+ * nodes. A node not reached by the bus still sees the logout in the database once its cached validity has expired. A revocation is
+ * kept for the lifetime of the tokens (<code>security.timeout</code>), after which the tokens issued before it have expired.
+ *
+ * @author INSER SA *
+ */
+public class SessionRegistry implements ISessionBus.Listener {
+
+    /** Définition de catégorie de logging */
+    private static final Log logger = LogFactory.getLog(SessionRegistry.class);
+
+    /**
+     * The property key name for the time in milliseconds a valid session is trusted without querying the database, 0 to always
+     * query it
+     */
+    public static final String SECURITY_SESSION_CACHE_TTL = "security.session.cache.ttl";
+
+    /** Default time in milliseconds a valid session is trusted */
+    private static final long DEFAULT_SESSION_CACHE_TTL = 30000;
+
+    /** Registry of the application */
+    private static SessionRegistry cInstance = new SessionRegistry(new LocalSessionBus());
+
+    /**
+     * Check of the session in the database
+     */
+    @FunctionalInterface
+    public interface SessionCheck {
+
+        /**
+         *
+         * @return true if the user has a session in the database
+         * @throws ISException
+         *             error querying the database
+         */
+        public boolean isValid() throws ISException;
+    }
+
+    /** Bus of the revocations */
+    private final ISessionBus iBus;
+
+    /** End of the trusted validity of the sessions by user name, in milliseconds */
+    private final Map<String, Long> iValidUntil = new ConcurrentHashMap<>();
+
+    /** Last revocation by user name, in milliseconds */
+    private final Map<String, Long> iRevokedAt = new ConcurrentHashMap<>();
+
+    /** Lifetime of the tokens in milliseconds, negative if the tokens do not expire */
+    private volatile long iTokenLifetime = -1;
+
+    /**
+     *
+     * @param aBus
+     *            bus of the revocations
+     */
+    public SessionRegistry(ISessionBus aBus) {
+        iBus = aBus;
+        iBus.subscribe(this);
+    }
+
+    /**
+     *
+     * @return the registry of the application
+     */
+    public static SessionRegistry getInstance() {
+        return cInstance;
+    }
+
+    /**
+     * Replaces the registry of the application by one using the given bus, for example a bus shared by the nodes of a cluster.
+     *
+     * @param aBus
+     *            bus of the revocations
+     */
+    public static synchronized void setSessionBus(ISessionBus aBus) {
+        SessionRegistry previous = cInstance;
+        cInstance = new SessionRegistry(aBus);
+        cInstance.iTokenLifetime = previous.iTokenLifetime;
+        previous.iBus.unsubscribe(previous);
+    }
+
+    /**
+     * Reads the lifetime of the tokens (<code>security.timeout</code>), the time a revocation is kept.
+     *
+     * @param aContextManager
+     *            context manager
+     */
+    public void configure(IContextManager aContextManager) {
+        String timeout = aContextManager.getProperty("security.timeout");
+        setTokenLifetime(timeout != null ? Long.parseLong(timeout) : -1);
+    }
+
+    /**
+     *
+     * @param aTokenLifetime
+     *            lifetime of the tokens in milliseconds, negative if the tokens do not expire and the revocations are kept
+     */
+    public void setTokenLifetime(long aTokenLifetime) {
+        iTokenLifetime = aTokenLifetime;
+    }
+
+    /**
+     *
+     * @return number of revocations kept
+     */
+    public int getRevocations() {
+        return iRevokedAt.size();
+    }
+
+    /**
+     *
+     * @param aContextManager
+     *            context manager
+     * @return time in milliseconds a valid session is trusted without querying the database
+     */
+    public static long getTtl(IContextManager aContextManager) {
+        String value = aContextManager.getProperty(SECURITY_SESSION_CACHE_TTL);
+        return value != null ? Long.parseLong(value) : DEFAULT_SESSION_CACHE_TTL;
+    }
+
+    /**
+     * Validates the session of a user: rejected if revoked after the token was issued, accepted if recently found valid, otherwise
+     * checked in the database.
+     *
+     * @param aUsername
+     *            user name
+     * @param aIssuedAt
+     *            issue time of the token, <code>null</code> if unknown
+     * @param aTtl
+     *            time in milliseconds a valid session is trusted without querying the database
+     * @param aCheck
+     *            check of the session in the database
+     * @throws ISException
+     *             the user has no session or error querying the database
+     */
+    public void validate(String aUsername, Date aIssuedAt, long aTtl, SessionCheck aCheck) throws ISException {
+        Long revokedAt = iRevokedAt.get(aUsername);
+        if (revokedAt != null && aIssuedAt != null && aIssuedAt.getTime() < revokedAt / 1000 * 1000) {
+            // The issue time of a token has a precision of a second, a token of the same second is checked in the database
+            throw new ISSecurityException("User is not logged in: " + aUsername, null);
+        }
+        long now = System.currentTimeMillis();
+        Long validUntil = iValidUntil.get(aUsername);
+        if (validUntil != null && validUntil > now && (revokedAt == null || aIssuedAt != null && aIssuedAt.getTime() > revokedAt)) {
+            return;
+        }
+        if (!aCheck.isValid()) {
+            iValidUntil.remove(aUsername);
+            throw new ISSecurityException("User is not logged in: " + aUsername, null);
+        }
+        if (aTtl > 0) {
+            iValidUntil.put(aUsername, now + aTtl);
+        }
+    }
+
+    /**
+     * Revokes the session of a user at logout, on this node and on the other nodes through the bus.
+     *
+     * @param aUsername
+     *            user name
+     */
+    public void revoke(String aUsername) {
+        long now = System.currentTimeMillis();
+        revoked(aUsername, now);
+        iBus.publish(aUsername, now);
+    }
+
+    @Override
+    public void revoked(String aUsername, long aRevokedAt) {
+        if (aUsername == null) {
+            return;
+        }
+        purge(System.currentTimeMillis());
+        iRevokedAt.merge(aUsername, aRevokedAt, Math::max);
+        iValidUntil.remove(aUsername);
+        logger.debug("Session revoked: " + aUsername);
+    }
+
+    /**
+     * Removes the revocations older than the lifetime of the tokens: the tokens issued before them have expired.
+     *
+     * @param aNow
+     *            current time in milliseconds
+     */
+    private void purge(long aNow) {
+        long lifetime = iTokenLifetime;
+        if (lifetime >= 0) {
+            iRevokedAt.values().removeIf(revokedAt -> revokedAt + lifetime < aNow);
+        }
+    }
+}
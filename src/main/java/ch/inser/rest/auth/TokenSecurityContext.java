@@ -0,0 +1,274 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+
+package ch.inser.rest.auth;
+
+import java.security.Principal;
+
+import org.jose4j.jwt.JwtClaims;
+import org.jose4j.jwt.MalformedClaimException;
+
+import ch.inser.dynamic.common.IContextManager;
+import ch.inser.dynamic.common.ILoggedUser;
+import ch.inser.rest.oidc.auth.SecurityUtilOIDC;
+
+import io.jsonwebtoken.Claims;
+import jakarta.ws.rs.core.SecurityContext;
+
+/**
+ * Security context of a REST request, created by the {@link ch.inser.rest.provider.AuthenticationFilter}.
+ * <p>
+ * It holds the tokens received with the request and memoizes the result of their validation and the logged user resolved from
+ * the claims, so that the filters and the resource of the request share a single validation. The context of the request
+ * being processed is bound to the current thread and available with {@link #current()}.
+ *
+ * @author INSER SA *
+ */
+public class TokenSecurityContext implements SecurityContext {
+
+    /** Authentication scheme of the legacy token */
+    public static final String TOKEN_AUTH = "TOKEN";
+
+    /** Authentication scheme of the OIDC token */
+    public static final String BEARER_AUTH = "Bearer";
+
+    /** Context of the request processed by the current thread */
+    private static final ThreadLocal<TokenSecurityContext> cCurrent = new ThreadLocal<>();
+
+    /** Legacy token, header "token" */
+    private final String iToken;
+
+    /** OIDC token, header "Authorization: Bearer" */
+    private final String iBearerToken;
+
+    /** Whether the request was made using a secure channel */
+    private final boolean iSecure;
+
+    /** The legacy token has been validated */
+    private boolean iValidated;
+
+    /** Claims of the legacy token */
+    private Claims iClaims;
+
+    /** Validation error of the legacy token */
+    private ISSecurityException iError;
+
+    /** The OIDC token has been validated */
+    private boolean iValidatedOIDC;
+
+    /** Claims of the OIDC token */
+    private JwtClaims iClaimsOIDC;
+
+    /** Validation error of the OIDC token */
+    private ISSecurityException iErrorOIDC;
+
+    /** Claims from which the user has been resolved */
+    private Object iUserClaims;
+
+    /** Logged user resolved from the claims */
+    private ILoggedUser iUser;
+
+    /**
+     *
+     * @param aToken
+     *            legacy token, <code>null</code> if absent
+     * @param aBearerToken
+     *            OIDC token, <code>null</code> if absent
+     * @param aSecure
+     *            whether the request was made using a secure channel
+     */
+    public TokenSecurityContext(String aToken, String aBearerToken, boolean aSecure) {
+        iToken = aToken;
+        iBearerToken = aBearerToken;
+        iSecure = aSecure;
+    }
+
+    /**
+     *
+     * @return the security context of the request processed by the current thread, <code>null</code> if none
+     */
+    public static TokenSecurityContext current() {
+        return cCurrent.get();
+    }
+
+    /**
+     * Binds the context to the current thread.
+     *
+     * @param aContext
+     *            the security context of the request
+     */
+    public static void bind(TokenSecurityContext aContext) {
+        cCurrent.set(aContext);
+    }
+
+    /**
+     * Unbinds the context of the current thread.
+     */
+    public static void unbind() {
+        cCurrent.remove();
+    }
+
+    /**
+     *
+     * @param aToken
+     *            a legacy token
+     * @return <code>true</code> if it is the legacy token of the request
+     */
+    public boolean isToken(String aToken) {
+        return aToken != null && aToken.equals(iToken);
+    }
+
+    /**
+     *
+     * @param aToken
+     *            an OIDC token
+     * @return <code>true</code> if it is the OIDC token of the request
+     */
+    public boolean isBearerToken(String aToken) {
+        return aToken != null && aToken.equals(iBearerToken);
+    }
+
+    /**
+     *
+     * @return the legacy token of the request
+     */
+    public String getToken() {
+        return iToken;
+    }
+
+    /**
+     *
+     * @return the OIDC token of the request
+     */
+    public String getBearerToken() {
+        return iBearerToken;
+    }
+
+    /**
+     * Validates the legacy token the first time, the following calls return the same result.
+     *
+     * @param aContextManager
+     *            context manager
+     * @return the claims of the legacy token
+     * @throws ISSecurityException
+     *             the token is invalid
+     */
+    public Claims getClaims(IContextManager aContextManager) throws ISSecurityException {
+        if (!iValidated) {
+            try {
+                iClaims = SecurityUtil.validateToken(iToken, aContextManager);
+            } catch (ISSecurityException e) {
+                iError = e;
+            }
+            iValidated = true;
+        }
+        if (iError != null) {
+            throw iError;
+        }
+        return iClaims;
+    }
+
+    /**
+     *
+     * @return the claims of the legacy token if it has already been validated successfully, <code>null</code> otherwise
+     */
+    public Claims getValidatedClaims() {
+        return iValidated ? iClaims : null;
+    }
+
+    /**
+     * Validates the OIDC token the first time, the following calls return the same result.
+     *
+     * @param aContextManager
+     *            context manager
+     * @return the claims of the OIDC token
+     * @throws ISSecurityException
+     *             the token is invalid
+     */
+    public JwtClaims getClaimsOIDC(IContextManager aContextManager) throws ISSecurityException {
+        if (!iValidatedOIDC) {
+            try {
+                iClaimsOIDC = SecurityUtilOIDC.validateOIDCToken(iBearerToken, aContextManager);
+            } catch (ISSecurityException e) {
+                iErrorOIDC = e;
+            }
+            iValidatedOIDC = true;
+        }
+        if (iErrorOIDC != null) {
+            throw iErrorOIDC;
+        }
+        return iClaimsOIDC;
+    }
+
+    /**
+     *
+     * @param aClaims
+     *            claims of the request, legacy or OIDC
+     * @return the logged user already resolved from these claims, <code>null</code> if not resolved yet
+     */
+    public ILoggedUser getUser(Object aClaims) {
+        return aClaims != null && aClaims == iUserClaims ? iUser : null;
+    }
+
+    /**
+     * Memoizes the logged user resolved from the claims of the request.
+     *
+     * @param aClaims
+     *            claims of the request, legacy or OIDC
+     * @param aUser
+     *            logged user
+     */
+    public void setUser(Object aClaims, ILoggedUser aUser) {
+        iUserClaims = aClaims;
+        iUser = aUser;
+    }
+
+    @Override
+    public Principal getUserPrincipal() {
+        String name = null;
+        if (iValidated && iClaims != null) {
+            name = (String) iClaims.get("userName");
+        } else if (iValidatedOIDC && iClaimsOIDC != null) {
+            try {
+                name = iClaimsOIDC.getStringClaimValue("preferred_username");
+            } catch (MalformedClaimException e) {
+                name = null;
+            }
+        }
+        if (name == null) {
+            return null;
+        }
+        String username = name;
+        return () -> username;
+    }
+
+    @Override
+    public boolean isUserInRole(String aRole) {
+        return false;
+    }
+
+    @Override
+    public boolean isSecure() {
+        return iSecure;
+    }
+
+    @Override
+    public String getAuthenticationScheme() {
+        if (iToken != null) {
+            return TOKEN_AUTH;
+        }
+        return iBearerToken != null ? BEARER_AUTH : null;
+    }
+}
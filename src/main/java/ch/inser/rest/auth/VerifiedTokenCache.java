@@ -0,0 +1,224 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+
+package ch.inser.rest.auth;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.jsonwebtoken.Claims;
+
+/**
+ * Bounded cache of the claims of tokens whose signature has already been verified.
+ * <p>
+ * The entries are keyed by a SHA-256 digest of the compact token. An entry never
+ * outlives the expiration of its token: once the token is expired the entry is dropped and the token goes through the full
+ * verification again, which reports the expiration. The claims are shared by the requests of the same token, the claims parsed
+ * by jjwt are immutable. The cache knows the token of the claims it keeps ({@link #getToken(Claims)}), so that it can be
+ * returned unchanged while it is far from its expiration.
+ *
+ * @author INSER SA *
+ */
+public class VerifiedTokenCache {
+
+    /**
+     * Digest per thread, MessageDigest is not thread safe
+     */
+    private static final ThreadLocal<MessageDigest> cDigest = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    });
+
+    /**
+     * Maximum number of entries, 0 to disable the cache
+     */
+    private final int iMaxSize;
+
+    /**
+     * Maximum time in milliseconds an entry is kept, regardless of the token expiration
+     */
+    private final long iMaxAge;
+
+    /**
+     * Verified claims by token digest
+     */
+    private final Map<String, Entry> iEntries = new ConcurrentHashMap<>();
+
+    /**
+     * Tokens by verified claims, forgotten with the claims once their entry is removed and the requests are done
+     */
+    private final Map<Claims, String> iTokens = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     *
+     * @param aMaxSize
+     *            maximum number of entries, 0 to disable the cache
+     * @param aMaxAge
+     *            maximum time in milliseconds an entry is kept
+     */
+    public VerifiedTokenCache(int aMaxSize, long aMaxAge) {
+        iMaxSize = aMaxSize;
+        iMaxAge = aMaxAge;
+    }
+
+    /**
+     *
+     * @param aToken
+     *            compact token
+     * @return the verified claims of the token, <code>null</code> if the token is not in the cache or has expired
+     */
+    public Claims get(String aToken) {
+        if (iMaxSize <= 0 || aToken == null) {
+            return null;
+        }
+        String key = digest(aToken);
+        Entry entry = iEntries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.iExpiresAt <= System.currentTimeMillis()) {
+            iEntries.remove(key, entry);
+            return null;
+        }
+        return entry.iClaims;
+    }
+
+    /**
+     * Stores the claims of a token which has just been verified.
+     *
+     * @param aToken
+     *            compact token
+     * @param aClaims
+     *            verified claims
+     * @return the claims kept, to be shared by the request with the following ones, or the given claims if they are not kept
+     */
+    public Claims put(String aToken, Claims aClaims) {
+        if (iMaxSize <= 0 || aToken == null || aClaims == null) {
+            return aClaims;
+        }
+        long now = System.currentTimeMillis();
+        long expiresAt = now + iMaxAge;
+        Date expiration = aClaims.getExpiration();
+        if (expiration != null) {
+            expiresAt = Math.min(expiresAt, expiration.getTime());
+        }
+        if (expiresAt <= now) {
+            return aClaims;
+        }
+        if (iEntries.size() >= iMaxSize) {
+            evict(now);
+        }
+        iEntries.put(digest(aToken), new Entry(aClaims, expiresAt));
+        iTokens.put(aClaims, aToken);
+        return aClaims;
+    }
+
+    /**
+     *
+     * @param aClaims
+     *            claims
+     * @return the compact token of claims kept by the cache, <code>null</code> for other claims or once the entry is removed
+     */
+    public String getToken(Claims aClaims) {
+        if (iMaxSize <= 0 || aClaims == null) {
+            return null;
+        }
+        String token = iTokens.get(aClaims);
+        return token != null && get(token) == aClaims ? token : null;
+    }
+
+    /**
+     * Removes all the entries.
+     */
+    public void clear() {
+        iEntries.clear();
+        iTokens.clear();
+    }
+
+    /**
+     *
+     * @return number of entries
+     */
+    public int size() {
+        return iEntries.size();
+    }
+
+    /**
+     * Frees room for a new entry: the expired entries are removed first, then arbitrary entries until the cache is below its
+     * bound.
+     *
+     * @param aNow
+     *            current time in milliseconds
+     */
+    private void evict(long aNow) {
+        iEntries.values().removeIf(entry -> entry.iExpiresAt <= aNow);
+        Iterator<String> it = iEntries.keySet().iterator();
+        while (iEntries.size() >= iMaxSize && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    /**
+     *
+     * @param aToken
+     *            compact token
+     * @return base64 SHA-256 digest of the token
+     */
+    private static String digest(String aToken) {
+        MessageDigest digest = cDigest.get();
+        digest.reset();
+        return Base64.getEncoder().encodeToString(digest.digest(aToken.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    /**
+     * Verified claims with the end of their validity in the cache
+     */
+    private static final class Entry {
+
+        /**
+         * Verified claims
+         */
+        private final Claims iClaims;
+
+        /**
+         * End of validity in milliseconds
+         */
+        private final long iExpiresAt;
+
+        /**
+         *
+         * @param aClaims
+         *            verified claims
+         * @param aExpiresAt
+         *            end of validity in milliseconds
+         */
+        Entry(Claims aClaims, long aExpiresAt) {
+            iClaims = aClaims;
+            iExpiresAt = aExpiresAt;
+        }
+    }
+}
@@ -0,0 +1,456 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+
+package ch.inser.rest.code;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import ch.inser.dynamic.common.IContextManager;
+import ch.inser.jsl.exceptions.ISException;
+import ch.inser.rest.util.EntityVersions;
+import ch.inser.rest.util.JsonFactory;
+import ch.inser.rest.util.JsonUtil;
+
+import jakarta.json.JsonObjectBuilder;
+
+/**
+ * Catalogue versionné des codes valides, gardé en mémoire.
+ *
+ * Les codes sont relus lorsque l'objet métier code a été modifié ({@link EntityVersions}) ou au plus tard après
+ * codes.catalog.refresh millisecondes (5 minutes par défaut), pour les modifications faites sans passer par les services. Chaque
+ * relecture qui change les codes donne une nouvelle version du catalogue et les codes ajoutés et retirés sont gardés pour les
+ * codes.history.size dernières versions (100 par défaut). Un client qui connaît une de ces versions reçoit uniquement les
+ * différences, sinon tout le catalogue.
+ *
+ * Les versions sont de la forme &lt;époque&gt;.&lt;numéro&gt;, les numéros étant uniques pour tous les catalogues: une version
+ * d'un autre catalogue, d'une autre instance ou d'avant le redémarrage donne tout le catalogue.
+ *
+ * Un catalogue est gardé par objet métier code et par visibilité (p.ex. par droits des utilisateurs), les codes étant lus avec
+ * les droits de l'appelant. Au plus codes.catalog.size catalogues sont gardés (1000 par défaut), le moins récemment utilisé
+ * est oublié au-delà.
+ *
+ * @author INSER SA *
+ */
+public final class CodeCatalog {
+
+    /** The property key name for the number of catalog versions whose changes are kept */
+    public static final String CODES_HISTORY_SIZE = "codes.history.size";
+
+    /** The property key name for the maximum time in milliseconds between two readings of the codes */
+    public static final String CODES_CATALOG_REFRESH = "codes.catalog.refresh";
+
+    /** The property key name for the maximum number of catalogs kept */
+    public static final String CODES_CATALOG_SIZE = "codes.catalog.size";
+
+    /** Nombre de versions gardées par défaut */
+    public static final int DEFAULT_HISTORY_SIZE = 100;
+
+    /** Délai de relecture par défaut, 5 minutes */
+    public static final long DEFAULT_REFRESH = 300000;
+
+    /** Nombre de catalogues gardés par défaut */
+    public static final int DEFAULT_MAX_CATALOGS = 1000;
+
+    /** Définition de catégorie de logging */
+    private static final Log logger = LogFactory.getLog(CodeCatalog.class);
+
+    /** Catalogues par nom d'objet métier code et visibilité */
+    private static final Map<String, CodeCatalog> cInstances = new ConcurrentHashMap<>();
+
+    /** Dernier numéro de version donné, commun à tous les catalogues */
+    private static final AtomicLong cSequence = new AtomicLong();
+
+    /** Nombre de versions gardées par les nouveaux catalogues */
+    private static volatile int cMaxHistory = DEFAULT_HISTORY_SIZE;
+
+    /** Délai maximal entre deux lectures des nouveaux catalogues */
+    private static volatile long cRefresh = DEFAULT_REFRESH;
+
+    /** Nombre de catalogues gardés */
+    private static volatile int cMaxCatalogs = DEFAULT_MAX_CATALOGS;
+
+    /**
+     * Lecture des codes valides
+     */
+    @FunctionalInterface
+    public interface Loader {
+
+        /**
+         *
+         * @return les codes par nom de champ
+         * @throws ISException
+         *             erreur de lecture des codes
+         */
+        Map<String, List<String>> load() throws ISException;
+    }
+
+    /**
+     * Codes ajoutés et retirés par une version
+     */
+    private static final class Change {
+
+        /** Version du catalogue */
+        private final long iVersion;
+
+        /** Version précédente du catalogue */
+        private final long iPrevious;
+
+        /** Codes ajoutés par nom de champ */
+        private final Map<String, Set<String>> iAdded;
+
+        /** Codes retirés par nom de champ */
+        private final Map<String, Set<String>> iRemoved;
+
+        /**
+         *
+         * @param aVersion
+         *            version du catalogue
+         * @param aPrevious
+         *            version précédente du catalogue
+         * @param aAdded
+         *            codes ajoutés
+         * @param aRemoved
+         *            codes retirés
+         */
+        private Change(long aVersion, long aPrevious, Map<String, Set<String>> aAdded, Map<String, Set<String>> aRemoved) {
+            iVersion = aVersion;
+            iPrevious = aPrevious;
+            iAdded = aAdded;
+            iRemoved = aRemoved;
+        }
+    }
+
+    /** Nom de l'objet métier code */
+    private final String iEntity;
+
+    /** Codes valides par nom de champ, <code>null</code> avant la première lecture */
+    private Map<String, Set<String>> iCodes;
+
+    /** Numéro de la version courante */
+    private long iVersion;
+
+    /** Version de l'objet métier code à la dernière lecture */
+    private long iEntityVersion;
+
+    /** Heure de la dernière lecture */
+    private long iLoadedAt;
+
+    /** Changements des dernières versions, du plus ancien au plus récent */
+    private final Deque<Change> iHistory = new ArrayDeque<>();
+
+    /** Nombre de versions gardées */
+    private int iMaxHistory = cMaxHistory;
+
+    /** Délai maximal entre deux lectures */
+    private long iRefresh = cRefresh;
+
+    /** Heure de la dernière utilisation */
+    private volatile long iUsedAt;
+
+    /**
+     *
+     * @param aEntity
+     *            nom de l'objet métier code
+     */
+    CodeCatalog(String aEntity) {
+        iEntity = aEntity;
+    }
+
+    /**
+     *
+     * @param aEntity
+     *            nom de l'objet métier code
+     * @param aScope
+     *            visibilité des codes, p.ex. la signature des droits: les appelants de même visibilité partagent le catalogue
+     * @return le catalogue des codes de l'objet métier pour la visibilité
+     */
+    public static CodeCatalog getInstance(String aEntity, String aScope) {
+        CodeCatalog catalog = cInstances.computeIfAbsent(aEntity + '\u0000' + aScope, k -> new CodeCatalog(aEntity));
+        catalog.iUsedAt = System.currentTimeMillis();
+        if (cInstances.size() > cMaxCatalogs) {
+            evict(catalog);
+        }
+        return catalog;
+    }
+
+    /**
+     * Oublie le catalogue le moins récemment utilisé.
+     *
+     * @param aUsed
+     *            catalogue utilisé, gardé
+     */
+    private static void evict(CodeCatalog aUsed) {
+        Map.Entry<String, CodeCatalog> oldest = null;
+        for (Map.Entry<String, CodeCatalog> entry : cInstances.entrySet()) {
+            if (entry.getValue() != aUsed && (oldest == null || entry.getValue().iUsedAt < oldest.getValue().iUsedAt)) {
+                oldest = entry;
+            }
+        }
+        if (oldest != null) {
+            cInstances.remove(oldest.getKey(), oldest.getValue());
+        }
+    }
+
+    /**
+     * Lit les propriétés codes.history.size, codes.catalog.refresh et codes.catalog.size et oublie les catalogues, qui sont
+     * recréés avec la nouvelle configuration.
+     *
+     * @param aContextManager
+     *            context manager
+     */
+    public static void configure(IContextManager aContextManager) {
+        cMaxHistory = (int) Math.min(Integer.MAX_VALUE, getLong(aContextManager, CODES_HISTORY_SIZE, DEFAULT_HISTORY_SIZE));
+        cRefresh = getLong(aContextManager, CODES_CATALOG_REFRESH, DEFAULT_REFRESH);
+        cMaxCatalogs = (int) Math.min(Integer.MAX_VALUE, getLong(aContextManager, CODES_CATALOG_SIZE, DEFAULT_MAX_CATALOGS));
+        cInstances.clear();
+    }
+
+    /**
+     *
+     * @param aContextManager
+     *            context manager
+     * @param aName
+     *            nom de la propriété
+     * @param aDefault
+     *            valeur par défaut
+     * @return la valeur de la propriété, la valeur par défaut si elle est absente ou n'est pas un nombre
+     */
+    private static long getLong(IContextManager aContextManager, String aName, long aDefault) {
+        String value = aContextManager.getProperty(aName);
+        if (value == null) {
+            return aDefault;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid " + aName + ": " + value, e);
+            return aDefault;
+        }
+    }
+
+    /**
+     *
+     * @return nombre de catalogues gardés
+     */
+    static int getSize() {
+        return cInstances.size();
+    }
+
+    /**
+     *
+     * @param aMaxHistory
+     *            nombre de versions dont les changements sont gardés
+     * @param aRefresh
+     *            délai maximal en millisecondes entre deux lectures des codes
+     */
+    public synchronized void configure(int aMaxHistory, long aRefresh) {
+        iMaxHistory = aMaxHistory;
+        iRefresh = aRefresh;
+        while (iHistory.size() > iMaxHistory) {
+            iHistory.removeFirst();
+        }
+    }
+
+    /**
+     * Relit les codes si l'objet métier code a été modifié ou si le délai de relecture est passé.
+     *
+     * @param aLoader
+     *            lecture des codes valides
+     * @throws ISException
+     *             erreur de lecture des codes
+     */
+    public synchronized void refresh(Loader aLoader) throws ISException {
+        long entityVersion = EntityVersions.get(iEntity);
+        long now = System.currentTimeMillis();
+        if (iCodes != null && entityVersion == iEntityVersion && now - iLoadedAt < iRefresh) {
+            return;
+        }
+        Map<String, Set<String>> codes = new HashMap<>();
+        for (Map.Entry<String, List<String>> entry : aLoader.load().entrySet()) {
+            codes.put(entry.getKey(), new LinkedHashSet<>(entry.getValue()));
+        }
+        iEntityVersion = entityVersion;
+        iLoadedAt = now;
+        if (iCodes == null) {
+            iCodes = codes;
+            iVersion = cSequence.incrementAndGet();
+            return;
+        }
+        Map<String, Set<String>> added = diff(codes, iCodes);
+        Map<String, Set<String>> removed = diff(iCodes, codes);
+        iCodes = codes;
+        if (added.isEmpty() && removed.isEmpty()) {
+            return;
+        }
+        long previous = iVersion;
+        iVersion = cSequence.incrementAndGet();
+        iHistory.addLast(new Change(iVersion, previous, added, removed));
+        while (iHistory.size() > iMaxHistory) {
+            iHistory.removeFirst();
+        }
+        logger.debug("Codes " + iEntity + " version " + getVersion() + ": " + added.size() + " fields with added codes, "
+                + removed.size() + " fields with removed codes");
+    }
+
+    /**
+     *
+     * @return la version courante du catalogue
+     */
+    public synchronized String getVersion() {
+        return EntityVersions.getEpoch() + "." + iVersion;
+    }
+
+    /**
+     * Les codes depuis une version connue du client:
+     * <ul>
+     * <li>{"version": ..., "full": false, "added": {champ: [codes]}, "removed": {champ: [codes]}} si la version est encore dans
+     * l'historique</li>
+     * <li>{"version": ..., "full": true, "codes": {champ: [codes]}} sinon</li>
+     * </ul>
+     *
+     * @param aSince
+     *            version connue du client
+     * @return le json des codes
+     */
+    public synchronized JsonObjectBuilder toJson(String aSince) {
+        JsonObjectBuilder json = JsonFactory.createObjectBuilder().add("version", getVersion());
+        long since = parseVersion(aSince);
+        if (!isKnown(since)) {
+            // Version inconnue ou plus dans l'historique
+            return json.add("full", true).add("codes", JsonUtil.mapToJsonObject(toLists(iCodes)));
+        }
+        Map<String, Set<String>> added = new HashMap<>();
+        Map<String, Set<String>> removed = new HashMap<>();
+        for (Change change : iHistory) {
+            if (change.iVersion > since) {
+                merge(change.iRemoved, removed, added);
+                merge(change.iAdded, added, removed);
+            }
+        }
+        return json.add("full", false).add("added", JsonUtil.mapToJsonObject(toLists(added))).add("removed",
+                JsonUtil.mapToJsonObject(toLists(removed)));
+    }
+
+    /**
+     *
+     * @param aSince
+     *            numéro de la version du client
+     * @return true si la version est la version courante ou si ses changements sont dans l'historique
+     */
+    private boolean isKnown(long aSince) {
+        if (aSince == iVersion) {
+            return true;
+        }
+        for (Change change : iHistory) {
+            if (change.iPrevious == aSince) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     *
+     * @param aVersion
+     *            version du client
+     * @return le numéro de la version, -1 si elle n'est pas de cette instance
+     */
+    private static long parseVersion(String aVersion) {
+        String prefix = EntityVersions.getEpoch() + ".";
+        if (aVersion == null || !aVersion.startsWith(prefix)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(aVersion.substring(prefix.length()));
+        } catch (NumberFormatException e) {
+            logger.debug("Invalid codes version " + aVersion, e);
+            return -1;
+        }
+    }
+
+    /**
+     *
+     * @param aCodes
+     *            codes par nom de champ
+     * @param aOther
+     *            autres codes par nom de champ
+     * @return les codes absents des autres codes, par nom de champ
+     */
+    private static Map<String, Set<String>> diff(Map<String, Set<String>> aCodes, Map<String, Set<String>> aOther) {
+        Map<String, Set<String>> diff = new HashMap<>();
+        for (Map.Entry<String, Set<String>> entry : aCodes.entrySet()) {
+            Set<String> other = aOther.getOrDefault(entry.getKey(), Collections.emptySet());
+            for (String code : entry.getValue()) {
+                if (!other.contains(code)) {
+                    diff.computeIfAbsent(entry.getKey(), k -> new LinkedHashSet<>()).add(code);
+                }
+            }
+        }
+        return diff;
+    }
+
+    /**
+     * Ajoute les codes d'un changement aux différences, un code ajouté puis retiré (ou l'inverse) s'annule.
+     *
+     * @param aCodes
+     *            codes du changement
+     * @param aTarget
+     *            différences du même sens
+     * @param aOpposite
+     *            différences du sens contraire
+     */
+    private static void merge(Map<String, Set<String>> aCodes, Map<String, Set<String>> aTarget, Map<String, Set<String>> aOpposite) {
+        for (Map.Entry<String, Set<String>> entry : aCodes.entrySet()) {
+            for (String code : entry.getValue()) {
+                Set<String> opposite = aOpposite.get(entry.getKey());
+                if (opposite != null && opposite.remove(code)) {
+                    if (opposite.isEmpty()) {
+                        aOpposite.remove(entry.getKey());
+                    }
+                } else {
+                    aTarget.computeIfAbsent(entry.getKey(), k -> new LinkedHashSet<>()).add(code);
+                }
+            }
+        }
+    }
+
+    /**
+     *
+     * @param aCodes
+     *            codes par nom de champ
+     * @return les codes en listes, pour la conversion en json
+     */
+    private static Map<String, List<String>> toLists(Map<String, ? extends Collection<String>> aCodes) {
+        Map<String, List<String>> lists = new HashMap<>();
+        for (Map.Entry<String, ? extends Collection<String>> entry : aCodes.entrySet()) {
+            lists.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+        }
+        return lists;
+    }
+}
@@ -16,6 +16,7 @@
 package ch.inser.rest.core;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -26,8 +27,11 @@ import ch.inser.dynamic.common.IValueObject;
 import ch.inser.dynaplus.util.Constants.Entity;
 import ch.inser.dynaplus.vo.VOFactory;
 import ch.inser.jsl.exceptions.ISException;
+import ch.inser.rest.auth.PermissionMatrix;
+import ch.inser.rest.code.CodeCatalog;
 import ch.inser.rest.util.ServiceLocator;
 
+import jakarta.json.JsonObjectBuilder;
 import jakarta.servlet.ServletContext;
 import jakarta.ws.rs.core.Context;
 
@@ -64,6 +68,42 @@ public abstract class AbstractCodeResource {
         }
     }
 
+    /**
+     * Get the codes added and removed since a version of the catalog, or all the codes if the version is unknown. The catalog is
+     * kept per visibility ({@link #getCatalogScope(ILoggedUser)}) and the codes are read with {@link #addCodes(Map, ILoggedUser)}
+     * and the user when the catalog is out of date, as without version.
+     *
+     * @param aSince
+     *            version of the catalog known by the client
+     * @param aUser
+     *            the user
+     * @return the json of the codes and the new version
+     * @throws ISException
+     *             error reading the codes
+     */
+    protected JsonObjectBuilder getCodesSince(String aSince, ILoggedUser aUser) throws ISException {
+        CodeCatalog catalog = CodeCatalog.getInstance(getEntity(), getCatalogScope(aUser));
+        catalog.refresh(() -> {
+            Map<String, List<String>> codes = new HashMap<>();
+            addCodes(codes, aUser);
+            return codes;
+        });
+        return catalog.toJson(aSince);
+    }
+
+    /**
+     * The users of a same scope see the same codes and share a catalog. To override when the visibility of the codes depends on
+     * more than the rights of the user, e.g. on its organisation.
+     *
+     * @param aUser
+     *            the user
+     * @return the scope of the catalog of the user, by default the signature of its rights or the username if it has none
+     */
+    protected String getCatalogScope(ILoggedUser aUser) {
+        String signature = PermissionMatrix.get(aUser).getSignature();
+        return signature != null ? signature : aUser.getUsername();
+    }
+
     /**
      * Add a code value to a codelist
      *
@@ -19,10 +19,10 @@ import java.util.Set;
 
 import ch.inser.dynamic.util.AttributeInfo;
 import ch.inser.dynamic.util.VOInfo;
+import ch.inser.rest.util.JsonFactory;
 import ch.inser.rest.util.RESTLocator;
 import ch.inser.rest.util.ServiceLocator;
 
-import jakarta.json.Json;
 import jakarta.json.JsonObjectBuilder;
 import jakarta.servlet.ServletContext;
 import jakarta.ws.rs.core.Context;
@@ -54,7 +54,7 @@ public abstract class AbstractFieldsInfoResource {
         VOInfo voInfo = getVOInfo(aObjectName);
         Set<String> fields = voInfo.getAttributes().keySet();
         for (String field : fields) {
-            JsonObjectBuilder fieldJson = Json.createObjectBuilder();
+            JsonObjectBuilder fieldJson = JsonFactory.createObjectBuilder();
             AttributeInfo info = voInfo.getAttribute(field);
             fieldJson.add(AttributeInfo.LENGTH, info.getLength());
             fieldJson.add(AttributeInfo.REQUIRED, (Boolean) info.getInfo(AttributeInfo.REQUIRED));
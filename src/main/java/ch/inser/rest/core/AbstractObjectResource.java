@@ -15,6 +15,12 @@
 
 package ch.inser.rest.core;
 
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
 import ch.inser.dynamic.common.DAOParameter;
 import ch.inser.dynamic.common.DAOParameter.Name;
 import ch.inser.dynamic.common.IDAOResult;
@@ -23,15 +29,30 @@ import ch.inser.dynamic.common.IValueObject;
 import ch.inser.dynamic.util.VOInfo;
 import ch.inser.dynaplus.format.IFormatEngine.Format;
 import ch.inser.jsl.exceptions.ISException;
+import ch.inser.rest.util.Constants;
+import ch.inser.rest.util.EntityTags;
+import ch.inser.rest.util.FieldProjection;
+import ch.inser.rest.util.JsonFactory;
+import ch.inser.rest.util.RecordTree;
+import ch.inser.rest.util.RestUtil;
 
+import jakarta.json.JsonObject;
+import jakarta.json.JsonObjectBuilder;
 import jakarta.servlet.ServletContext;
 import jakarta.ws.rs.NotSupportedException;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.Response.ResponseBuilder;
+import jakarta.ws.rs.core.Response.Status;
 
 /**
  * Abstraction of ObjectResource. Implemented according to token type: "Inser token" or OIDC
  */
 public abstract class AbstractObjectResource extends AbstractResource {
 
+    /** true si l'ETag des enregistrements est calculé depuis les timestamps, par classe de resource */
+    private static final Map<Class<?>, Boolean> cRecordTags = new ConcurrentHashMap<>();
+
     /** Id de l'objet métier */
     protected String iId;
 
@@ -142,4 +163,164 @@ public abstract class AbstractObjectResource extends AbstractResource {
         return getBPDelegate().delete(convertId(aVo.getVOInfo()), aVo.getTimestamp(), aLoggedUser);
     }
 
+    /**
+     *
+     * @param aIncludeChildren
+     *            flag pour inclure les enfants, par défaut true
+     * @param aProjection
+     *            attributs à écrire, <code>null</code> pour tous
+     * @return true si les enfants sont lus et écrits avec l'enregistrement
+     */
+    protected boolean isIncludeChildren(String aIncludeChildren, FieldProjection aProjection) {
+        return (aIncludeChildren == null || Boolean.TRUE.toString().equals(aIncludeChildren))
+                && (aProjection == null || aProjection.includes(FieldProjection.CHILDREN));
+    }
+
+    /**
+     * Lit le timestamp de l'enregistrement sans le charger, pour comparer l'ETag du client avant la sérialisation.
+     *
+     * @param aLoggedUser
+     *            the logged user
+     * @return le timestamp, <code>null</code> si l'enregistrement n'en a pas
+     * @throws ISException
+     *             for any exception
+     */
+    protected Object getTimestamp(ILoggedUser aLoggedUser) throws ISException {
+        IDAOResult result = getBPDelegate().getTimestamp(convertId(RestUtil.getVOInfo(iObjectName)), aLoggedUser);
+        return result != null ? result.getValue() : null;
+    }
+
+    /**
+     * Réponse json de l'enregistrement avec un ETag faible calculé depuis son timestamp et, avec les enfants, depuis les timestamps
+     * des enfants et sous-enfants chargés avant l'écriture. 304 si le client a déjà cette version: sans enfants le timestamp est
+     * comparé avant de lire l'enregistrement, avec enfants avant d'écrire la réponse.
+     *
+     * @param aLoggedUser
+     *            the logged user
+     * @param aIncludeChildren
+     *            flag pour inclure les enfants, par défaut true
+     * @param aFields
+     *            attributs à écrire, par défaut tous
+     * @param aExclude
+     *            attributs à ne pas écrire
+     * @param aIfNoneMatch
+     *            entête If-None-Match de la requête
+     * @param aConditional
+     *            false si la réponse change à chaque appel, p.ex. avec le token renouvelé dans le corps
+     * @param aCompletion
+     *            ajout au corps de la réponse après l'enregistrement, <code>null</code> si aucun
+     * @return la réponse, 404 si l'enregistrement n'existe pas
+     * @throws ISException
+     *             for any exception
+     */
+    protected Response getRecordResponse(ILoggedUser aLoggedUser, String aIncludeChildren, String aFields, String aExclude,
+            String aIfNoneMatch, boolean aConditional, Consumer<JsonObjectBuilder> aCompletion) throws ISException {
+        FieldProjection projection = FieldProjection.of(aFields, aExclude);
+        boolean children = isIncludeChildren(aIncludeChildren, projection);
+        boolean tagged = aConditional && isRecordTag();
+        if (tagged && !children && aIfNoneMatch != null) {
+            String tag = getRecordTag(getTimestampVersions(getTimestamp(aLoggedUser)), aLoggedUser, aFields, aExclude);
+            if (EntityTags.matches(aIfNoneMatch, tag)) {
+                return EntityTags.notModified(tag);
+            }
+        }
+
+        IValueObject rec = getRecord(iId, aLoggedUser).getValueObject();
+        if (rec == null) {
+            return Response.status(Status.NOT_FOUND).build();
+        }
+        String tag = null;
+        JsonObject record;
+        if (tagged && children) {
+            RecordTree tree = RecordTree.load(rec, aLoggedUser);
+            tag = getRecordTag(tree.getVersions(), aLoggedUser, aFields, aExclude);
+            if (EntityTags.matches(aIfNoneMatch, tag)) {
+                return EntityTags.notModified(tag);
+            }
+            record = tree.toJson(projection);
+        } else {
+            if (tagged) {
+                tag = getRecordTag(getTimestampVersions(rec.getTimestamp()), aLoggedUser, aFields, aExclude);
+                if (EntityTags.matches(aIfNoneMatch, tag)) {
+                    return EntityTags.notModified(tag);
+                }
+            }
+            record = voToJson(rec, aIncludeChildren, aLoggedUser, projection);
+        }
+
+        JsonObjectBuilder json = JsonFactory.createObjectBuilder();
+        json.add(Constants.RECORD, record);
+        if (aCompletion != null) {
+            aCompletion.accept(json);
+        }
+        ResponseBuilder response = Response.ok(json.build().toString());
+        if (tag != null) {
+            response.header(HttpHeaders.ETAG, tag);
+        }
+        return response.build();
+    }
+
+    /**
+     * Le tag ne dépend que des timestamps: il n'est calculé que si l'enregistrement est lu et écrit par les méthodes de cette
+     * classe, pas par getRecord ou voToJson d'une sous-classe.
+     *
+     * @return true si l'ETag de l'enregistrement peut être calculé depuis les timestamps
+     */
+    protected boolean isRecordTag() {
+        return cRecordTags.computeIfAbsent(getClass(), aClass -> !isOverridden(aClass, "getRecord", String.class, ILoggedUser.class)
+                && !isOverridden(aClass, "voToJson", IValueObject.class, String.class, ILoggedUser.class)
+                && !isOverridden(aClass, "voToJson", IValueObject.class, String.class, ILoggedUser.class, FieldProjection.class));
+    }
+
+    /**
+     *
+     * @param aClass
+     *            classe de la resource
+     * @param aName
+     *            nom de la méthode de {@link AbstractResource}
+     * @param aParameterTypes
+     *            types des paramètres
+     * @return true si la méthode est redéfinie par la classe ou une classe parente sous AbstractResource
+     */
+    private static boolean isOverridden(Class<?> aClass, String aName, Class<?>... aParameterTypes) {
+        for (Class<?> type = aClass; type != AbstractResource.class; type = type.getSuperclass()) {
+            try {
+                type.getDeclaredMethod(aName, aParameterTypes);
+                return true;
+            } catch (NoSuchMethodException e) {
+                // Pas redéfinie à ce niveau
+            }
+        }
+        return false;
+    }
+
+    /**
+     *
+     * @param aTimestamp
+     *            timestamp de l'enregistrement
+     * @return les versions d'un enregistrement sans enfants, <code>null</code> sans timestamp
+     */
+    private static Object[] getTimestampVersions(Object aTimestamp) {
+        return aTimestamp instanceof Date ? new Object[] { ((Date) aTimestamp).getTime() } : null;
+    }
+
+    /**
+     *
+     * @param aVersions
+     *            timestamps de l'enregistrement et des enfants écrits
+     * @param aLoggedUser
+     *            the logged user
+     * @param aFields
+     *            attributs à écrire
+     * @param aExclude
+     *            attributs à ne pas écrire
+     * @return l'ETag faible, <code>null</code> sans versions
+     */
+    private String getRecordTag(Object[] aVersions, ILoggedUser aLoggedUser, String aFields, String aExclude) {
+        if (aVersions == null) {
+            return null;
+        }
+        return EntityTags.weak(iObjectName, iId, aLoggedUser.getUsername(), aFields, aExclude, Arrays.toString(aVersions));
+    }
+
 }
@@ -15,6 +15,10 @@
 
 package ch.inser.rest.core;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -23,13 +27,19 @@ import org.apache.commons.logging.LogFactory;
 
 import ch.inser.dynamic.common.ILoggedUser;
 import ch.inser.dynaplus.util.Constants.Entity;
+import ch.inser.rest.auth.PermissionMatrix;
+import ch.inser.rest.auth.PermissionMatrix.Permissions;
+import ch.inser.rest.util.JsonFactory;
 import ch.inser.rest.util.RestUtil;
 
-import jakarta.json.Json;
 import jakarta.json.JsonArrayBuilder;
+import jakarta.json.JsonObject;
 import jakarta.json.JsonObjectBuilder;
 import jakarta.servlet.ServletContext;
 import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.EntityTag;
+import jakarta.ws.rs.core.Request;
+import jakarta.ws.rs.core.Response;
 
 /**
  * Abstract Permission resource, implemented with Inser token or OIDC token
@@ -48,6 +58,82 @@ public abstract class AbstractPermResource {
     @Context
     protected ServletContext iContext;
 
+    /**
+     * La requête, pour les préconditions (If-None-Match)
+     */
+    @Context
+    protected Request iRequest;
+
+    /**
+     * Retourne le document des permissions du groupe de l'utilisateur. Le document est construit une seule fois pour les
+     * utilisateurs ayant les mêmes droits et partagé avec eux (ILoggedUser.setPermissions), il est reconstruit lorsque les droits
+     * changent: un document de groupe posé avant le changement est remplacé. Les permissions propres à l'utilisateur, déjà posées par
+     * l'application, sont gardées et retournées telles quelles.
+     *
+     * @param aLoggedUser
+     *            loggedUser avec les droits
+     * @return le document des permissions avec son entity tag
+     */
+    protected Permissions getGroupPermissions(ILoggedUser aLoggedUser) {
+        PermissionMatrix matrix = PermissionMatrix.get(aLoggedUser);
+        Permissions permissions = matrix.getPermissions();
+        JsonObject own = aLoggedUser.getPermissions();
+        if (own != null && !PermissionMatrix.isGroupDocument(own)) {
+            // Permissions propres à l'utilisateur
+            return new Permissions(own, getTag(own.toString()));
+        }
+        if (permissions == null) {
+            // Création de l'objet json vierge
+            JsonObjectBuilder json = JsonFactory.createObjectBuilder();
+            // Ajout des droits selon usergroup
+            // Droit sur menus
+            addMenus(aLoggedUser, json);
+            // Droit sur actions
+            addActions(aLoggedUser, json);
+            // Droit sur les champs
+            addFields(aLoggedUser, json);
+            JsonObject document = json.build();
+            permissions = new Permissions(document, getTag(document.toString()));
+            matrix.setPermissions(permissions);
+        }
+        if (own != permissions.getJson()) {
+            // Set des permissions, partagées par le groupe
+            aLoggedUser.setPermissions(permissions.getJson());
+        }
+        return permissions;
+    }
+
+    /**
+     * Réponse avec le document des permissions et son entity tag, ou 304 si le client a déjà ce document (If-None-Match).
+     *
+     * @param aPermissions
+     *            le document des permissions
+     * @return la réponse HTTP
+     */
+    protected Response getPermissionsResponse(Permissions aPermissions) {
+        EntityTag tag = new EntityTag(aPermissions.getTag());
+        Response.ResponseBuilder notModified = iRequest != null ? iRequest.evaluatePreconditions(tag) : null;
+        if (notModified != null) {
+            return notModified.build();
+        }
+        return Response.ok(aPermissions.toString()).tag(tag).build();
+    }
+
+    /**
+     *
+     * @param aDocument
+     *            le document sérialisé
+     * @return entity tag du document
+     */
+    private static String getTag(String aDocument) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(aDocument.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
     /**
      * Ajouter les droits sur les menus
      *
@@ -59,7 +145,7 @@ public abstract class AbstractPermResource {
     protected void addMenus(ILoggedUser aLoggedUser, JsonObjectBuilder aPermissions) {
 
         // Création json pour les menus
-        JsonObjectBuilder jsonMenus = Json.createObjectBuilder();
+        JsonObjectBuilder jsonMenus = JsonFactory.createObjectBuilder();
 
         // Traduire en json les droits sur les menus
         for (Map.Entry<String, Boolean> entry : aLoggedUser.getMapAuthMenu().entrySet()) {
@@ -81,13 +167,13 @@ public abstract class AbstractPermResource {
     protected void addActions(ILoggedUser aLoggedUser, JsonObjectBuilder aPermissions) {
 
         // Création json pour les actions
-        JsonObjectBuilder actions = Json.createObjectBuilder();
+        JsonObjectBuilder actions = JsonFactory.createObjectBuilder();
 
         // Traduire en json les actions sur les menus
         for (Map.Entry<String, Map<String, Boolean>> mapMenu : aLoggedUser.getMapAuthAction().entrySet()) {
             // Nom du menu
             String menu = mapMenu.getKey();
-            JsonArrayBuilder menuActions = Json.createArrayBuilder();
+            JsonArrayBuilder menuActions = JsonFactory.createArrayBuilder();
             // Parcourir toutes les actions
             for (Map.Entry<String, Boolean> mapAction : mapMenu.getValue().entrySet()) {
                 if (Boolean.TRUE.equals(mapAction.getValue())) {
@@ -130,8 +216,8 @@ public abstract class AbstractPermResource {
             return;
         }
         Map<String, Map<String, Integer>> fieldAuths = aLoggedUser.getMapAuthFields();
-        JsonObjectBuilder jsonWrite = Json.createObjectBuilder();
-        JsonObjectBuilder jsonRead = Json.createObjectBuilder();
+        JsonObjectBuilder jsonWrite = JsonFactory.createObjectBuilder();
+        JsonObjectBuilder jsonRead = JsonFactory.createObjectBuilder();
         for (Map<String, Integer> objectFields : fieldAuths.values()) {
             for (Entry<String, Integer> field : objectFields.entrySet()) {
                 jsonWrite.add(field.getKey(), field.getValue() > 0);
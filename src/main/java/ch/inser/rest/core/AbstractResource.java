@@ -15,10 +15,15 @@
 
 package ch.inser.rest.core;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -32,26 +37,35 @@ import ch.inser.dynamic.common.ILoggedUser;
 import ch.inser.dynamic.common.IValueObject;
 import ch.inser.dynamic.common.IValueObject.Type;
 import ch.inser.dynamic.util.AttributeInfo;
+import ch.inser.dynamic.util.ChildrenInfo;
+import ch.inser.dynamic.util.VOInfo;
 import ch.inser.dynaplus.bo.ChildrenlistObject;
 import ch.inser.dynaplus.format.IFormatEngine.Format;
 import ch.inser.dynaplus.vo.VOFactory;
 import ch.inser.jsl.exceptions.ISException;
 import ch.inser.jsl.list.ListHandler.Sort;
 import ch.inser.jsl.tools.NumberTools;
-import ch.inser.rest.auth.SecurityUtil;
-import ch.inser.rest.util.Constants;
+import ch.inser.rest.util.EntityTags;
+import ch.inser.rest.util.EntityVersions;
+import ch.inser.rest.util.FieldProjection;
+import ch.inser.rest.util.JsonFactory;
+import ch.inser.rest.util.JsonUtil;
 import ch.inser.rest.util.JsonVoUtil;
 import ch.inser.rest.util.RestUtil;
 import ch.inser.rest.util.ServiceLocator;
 
 import io.jsonwebtoken.Claims;
-import jakarta.json.Json;
 import jakarta.json.JsonObject;
 import jakarta.json.JsonObjectBuilder;
+import jakarta.json.JsonValue;
+import jakarta.json.stream.JsonGenerator;
 import jakarta.servlet.ServletContext;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.Response.ResponseBuilder;
 import jakarta.ws.rs.core.Response.Status;
+import jakarta.ws.rs.core.StreamingOutput;
 
 /**
  * Resource abstrait pour objects métiers
@@ -65,6 +79,42 @@ public abstract class AbstractResource {
      */
     private static final Log logger = LogFactory.getLog(AbstractResource.class);
 
+    /**
+     * The property key name to write the JSON lists directly to the response, "true" to enable
+     */
+    public static final String JSON_STREAMING = "json.streaming";
+
+    /**
+     * The property key name for the number of records read at a time by the NDJSON export, 500 by default
+     */
+    public static final String LIST_FETCH_SIZE = "list.fetch.size";
+
+    /**
+     * The property key name to validate the JSON lists with an ETag made of the entity versions, "true" to enable. Only for an
+     * application whose data is modified through the BP delegates of this instance.
+     */
+    public static final String JSON_LIST_ETAG = "json.list.etag";
+
+    /**
+     * Format NDJSON, un enregistrement json par ligne
+     */
+    protected static final String FORMAT_NDJSON = "ndjson";
+
+    /**
+     * Format table, {"columns":[...],"rows":[[...],...]} avec les noms des attributs une seule fois
+     */
+    protected static final String FORMAT_TABLE = "table";
+
+    /**
+     * Media type NDJSON
+     */
+    protected static final String APPLICATION_NDJSON = "application/x-ndjson";
+
+    /**
+     * Nombre d'enregistrements lus à la fois par défaut
+     */
+    private static final int DEFAULT_FETCH_SIZE = 500;
+
     /**
      * Le rest servlet context
      */
@@ -140,6 +190,207 @@ public abstract class AbstractResource {
         return JsonVoUtil.jsonToVos(aJson, ((VOFactory) iContext.getAttribute("VOFactory")).getVO(iObjectName));
     }
 
+    /**
+     *
+     * @return true si les listes json sont écrites directement dans la réponse (propriété json.streaming)
+     */
+    protected boolean isStreaming() {
+        return "true".equals(RestUtil.getContextManager().getProperty(JSON_STREAMING));
+    }
+
+    /**
+     *
+     * @return true si les listes json sont validées par ETag (propriété json.list.etag)
+     */
+    protected boolean isListTag() {
+        return "true".equals(RestUtil.getContextManager().getProperty(JSON_LIST_ETAG));
+    }
+
+    /**
+     * ETag faible d'une liste, fait des versions de l'objet métier et de ses enfants ({@link EntityVersions}), de l'utilisateur et
+     * des paramètres de la requête. Les versions sont lues avant la requête: une modification faite pendant la lecture donne une
+     * nouvelle version et la liste est relue à la requête suivante.
+     *
+     * @param aUser
+     *            utilisateur
+     * @param aQuery
+     *            expression json avec les critères de recherche, normalisée
+     * @param aParameters
+     *            autres paramètres de la représentation, p.ex. tri, tranche, format et champs
+     * @return l'ETag
+     */
+    protected String getListTag(ILoggedUser aUser, String aQuery, String... aParameters) {
+        List<Object> parts = new ArrayList<>();
+        parts.add(EntityVersions.getEpoch());
+        parts.add(iObjectName);
+        parts.add(EntityVersions.get(iObjectName));
+        VOInfo info = RestUtil.getVOInfo(iObjectName);
+        if (info != null && info.getChildrens() != null) {
+            for (ChildrenInfo child : info.getChildrens()) {
+                parts.add(child.getChildrenName());
+                parts.add(EntityVersions.get(child.getChildrenName()));
+            }
+        }
+        parts.add(aUser.getUsername());
+        parts.add(JsonUtil.toCanonicalString(aQuery));
+        parts.addAll(Arrays.asList(aParameters));
+        return EntityTags.weak(parts.toArray());
+    }
+
+    /**
+     *
+     * @param aResponse
+     *            la réponse
+     * @param aTag
+     *            ETag de la réponse, peut être <code>null</code>
+     * @return la réponse avec l'entête ETag
+     */
+    protected static Response withTag(Response aResponse, String aTag) {
+        if (aTag == null) {
+            return aResponse;
+        }
+        return Response.fromResponse(aResponse).header(HttpHeaders.ETAG, aTag).build();
+    }
+
+    /**
+     * Réponse {"records":[...],"ids":[...], ...} écrite directement dans le flux de la réponse: les enregistrements sont convertis
+     * un à un et l'arbre json de la liste n'est jamais construit.
+     *
+     * @param aList
+     *            les enregistrements
+     * @param aProjection
+     *            attributs écrits par enregistrement, <code>null</code> pour tous
+     * @param aTrailer
+     *            attributs ajoutés après les ids, p.ex. le token
+     * @return la réponse
+     */
+    protected Response getStreamingListResponse(List<IValueObject> aList, FieldProjection aProjection, JsonObject aTrailer) {
+        return getStreamingListResponse(aList, aProjection, aTrailer, false);
+    }
+
+    /**
+     * Réponse {"columns":[...],"rows":[[...],...],"ids":[...], ...} écrite directement dans le flux de la réponse: les noms des
+     * attributs ne sont écrits qu'une fois, puis les valeurs de chaque enregistrement dans l'ordre des colonnes.
+     *
+     * @param aList
+     *            les enregistrements
+     * @param aProjection
+     *            attributs écrits par enregistrement, <code>null</code> pour tous
+     * @param aTrailer
+     *            attributs ajoutés après les ids, p.ex. le token
+     * @return la réponse
+     */
+    protected Response getTableListResponse(List<IValueObject> aList, FieldProjection aProjection, JsonObject aTrailer) {
+        return getStreamingListResponse(aList, aProjection, aTrailer, true);
+    }
+
+    /**
+     *
+     * @param aList
+     *            les enregistrements
+     * @param aProjection
+     *            attributs écrits par enregistrement, <code>null</code> pour tous
+     * @param aTrailer
+     *            attributs ajoutés après les ids, p.ex. le token
+     * @param aTable
+     *            true pour écrire les enregistrements en colonnes
+     * @return la réponse
+     */
+    private Response getStreamingListResponse(List<IValueObject> aList, FieldProjection aProjection, JsonObject aTrailer,
+            boolean aTable) {
+        StreamingOutput output = aOut -> {
+            try (JsonGenerator generator = JsonFactory.createGenerator(aOut)) {
+                generator.writeStartObject();
+                List<Object> ids = aTable ? JsonVoUtil.writeTable(generator, aList, aProjection)
+                        : JsonVoUtil.writeVos(generator, "records", aList, aProjection);
+                generator.writeStartArray("ids");
+                for (Object id : ids) {
+                    if (id != null) {
+                        generator.write((Long) id);
+                    }
+                }
+                generator.writeEnd();
+                for (Map.Entry<String, JsonValue> entry : aTrailer.entrySet()) {
+                    generator.write(entry.getKey(), entry.getValue());
+                }
+                generator.writeEnd();
+            } catch (ISException e) {
+                logger.error("Erreur d'écriture de la liste " + iObjectName, e);
+                throw new WebApplicationException(e);
+            }
+        };
+        return Response.ok(output).build();
+    }
+
+    /**
+     * Export NDJSON: les enregistrements sont lus par le BP delegate par pages de list.fetch.size, à la suite de la dernière valeur
+     * de tri lue, et écrits un par ligne au fur et à mesure, la mémoire utilisée ne dépend pas du nombre d'enregistrements. Avec un
+     * range, seule la tranche demandée est lue.
+     *
+     * @param aVo
+     *            requête
+     * @param aLoggedUser
+     *            utilisateur authentifié
+     * @param aSortFields
+     *            tri ascendant
+     * @param aDescFields
+     *            tri descendant
+     * @param aRange
+     *            tranche, null pour tous les enregistrements
+     * @param aProjection
+     *            attributs écrits par enregistrement, <code>null</code> pour tous
+     * @return la réponse
+     */
+    protected Response getNdjson(IValueObject aVo, ILoggedUser aLoggedUser, String aSortFields, String aDescFields, String aRange,
+            FieldProjection aProjection) {
+        DAOParameter[] params = setSearchParameters(aSortFields, aDescFields, aRange);
+        int size = getFetchSize(RestUtil.getContextManager().getProperty(LIST_FETCH_SIZE));
+        StreamingOutput output = aOut -> {
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(aOut, StandardCharsets.UTF_8))) {
+                IBPDelegate.RecordHandler handler = aRecord -> {
+                    try {
+                        writer.write(JsonVoUtil.voToJson(aRecord, false, aLoggedUser, aProjection).toString());
+                        writer.write('\n');
+                    } catch (IOException e) {
+                        throw new ISException(e);
+                    }
+                };
+                if (aRange != null) {
+                    for (IValueObject rec : getList(aVo, aLoggedUser, params).getListObject()) {
+                        handler.handle(rec);
+                    }
+                } else if (aDescFields != null) {
+                    getBPDelegate().forEach(aVo, aLoggedUser, aDescFields.split(",")[0], Sort.DESCENDING, size, handler);
+                } else {
+                    getBPDelegate().forEach(aVo, aLoggedUser, aSortFields != null ? aSortFields.split(",")[0] : null, Sort.ASCENDING,
+                            size, handler);
+                }
+            } catch (ISException e) {
+                logger.error("Erreur d'export de la liste " + iObjectName, e);
+                throw new WebApplicationException(e);
+            }
+        };
+        return Response.ok(output, APPLICATION_NDJSON).build();
+    }
+
+    /**
+     *
+     * @param aFetchSize
+     *            valeur de la propriété list.fetch.size
+     * @return le nombre d'enregistrements lus à la fois, au moins 1, 500 si la propriété est absente ou invalide
+     */
+    static int getFetchSize(String aFetchSize) {
+        if (aFetchSize == null) {
+            return DEFAULT_FETCH_SIZE;
+        }
+        try {
+            return Math.max(1, Integer.parseInt(aFetchSize.trim()));
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid " + LIST_FETCH_SIZE + ": " + aFetchSize, e);
+            return DEFAULT_FETCH_SIZE;
+        }
+    }
+
     /**
      * Converti un vo en objet json
      *
@@ -157,6 +408,30 @@ public abstract class AbstractResource {
         return JsonVoUtil.voToJson(aRecord, aIncludeChildren == null || Boolean.TRUE.toString().equals(aIncludeChildren), aUser);
     }
 
+    /**
+     * Converti un vo en objet json avec les seuls attributs sélectionnés
+     *
+     * @param aRecord
+     *            vo à convertir
+     * @param aIncludeChildren
+     *            flag pour inclure les enfants
+     * @param aUser
+     *            utilisateur
+     * @param aProjection
+     *            attributs à écrire, <code>null</code> pour tous
+     * @return json
+     * @throws ISException
+     *             erreur de conversion
+     */
+    protected JsonObject voToJson(IValueObject aRecord, String aIncludeChildren, ILoggedUser aUser, FieldProjection aProjection)
+            throws ISException {
+        if (aProjection == null) {
+            return voToJson(aRecord, aIncludeChildren, aUser);
+        }
+        return JsonVoUtil.voToJson(aRecord, aIncludeChildren == null || Boolean.TRUE.toString().equals(aIncludeChildren), aUser,
+                aProjection);
+    }
+
     /**
      * Genère une réponse avec un enregistrement pdf
      *
@@ -388,10 +663,10 @@ public abstract class AbstractResource {
     protected Response getFieldsRequest(IValueObject aValueObject, String aFieldname, ILoggedUser aLoggedUser, Claims aClaims,
             DAOParameter... aParameters) throws ISException {
         IDAOResult result = getBPDelegate().getFieldsRequest(aValueObject, aFieldname, aLoggedUser, aParameters);
-        JsonObjectBuilder json = Json.createObjectBuilder();
+        JsonObjectBuilder json = JsonFactory.createObjectBuilder();
         json.add("fields", JsonVoUtil.fieldsToJsonArray(aValueObject, aFieldname, result.getListValue()));
         if (aClaims != null) {
-            json.add(Constants.TOKEN, SecurityUtil.getToken(aClaims, RestUtil.getContextManager()));
+            RestUtil.addToken(json, aClaims);
         }
         return Response.ok(json.build().toString()).build();
     }
@@ -15,9 +15,13 @@
 
 package ch.inser.rest.core;
 
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Pattern;
 
 import ch.inser.dynamic.common.DAOParameter;
 import ch.inser.dynamic.common.DAOParameter.Name;
@@ -27,9 +31,14 @@ import ch.inser.dynamic.common.IValueObject;
 import ch.inser.dynaplus.util.Constants.Entity;
 import ch.inser.dynaplus.vo.VOFactory;
 import ch.inser.jsl.exceptions.ISException;
+import ch.inser.rest.util.JsonFactory;
+import ch.inser.rest.util.JsonUtil;
+import ch.inser.rest.util.PublicResponseCache;
 import ch.inser.rest.util.RestUtil;
 import ch.inser.rest.util.ServiceLocator;
+import ch.inser.rest.util.TranslationBundles;
 
+import jakarta.json.JsonObject;
 import jakarta.servlet.ServletContext;
 import jakarta.ws.rs.core.Context;
 
@@ -40,12 +49,84 @@ import jakarta.ws.rs.core.Context;
  */
 public class AbstractTranslateResource {
 
+    /** The property key name for the comma separated languages of the translations */
+    public static final String TRANSLATE_LANGUAGES = "translate.languages";
+
+    /** Forme d'une langue sans translate.languages, p.ex. "fr" ou "de_CH" */
+    private static final Pattern LANGUAGE = Pattern.compile("[a-zA-Z]{2,3}([_-][a-zA-Z]{2})?");
+
     /**
      * Le rest servlet context
      */
     @Context
     protected ServletContext iContext;
 
+    /**
+     * Les langues inconnues ne sont pas lues dans la base, elles donneraient chacune un bundle vide.
+     *
+     * @param aLang
+     *            langue demandée
+     * @return true pour "empty" et les langues de translate.languages, sans cette propriété pour un code de langue
+     */
+    protected boolean isLanguage(String aLang) {
+        if (aLang == null) {
+            return false;
+        }
+        if ("empty".equals(aLang)) {
+            return true;
+        }
+        IContextManager ctx = ((ServiceLocator) iContext.getAttribute("ServiceLocator")).getContextManager();
+        String languages = ctx.getProperty(TRANSLATE_LANGUAGES);
+        if (languages == null) {
+            return LANGUAGE.matcher(aLang).matches();
+        }
+        return Arrays.stream(languages.split(",")).map(String::trim).anyMatch(aLang::equals);
+    }
+
+    /**
+     * Retourne les traductions d'une langue du bundle partagé, construit avec les méthodes add... à la première demande et après
+     * une modification des textes, des codes, des utilisateurs ou des communes.
+     *
+     * @param aLang
+     *            langue, "empty" pour un json vide, contrôlée par {@link #isLanguage(String)}
+     * @param aCodes
+     *            true pour inclure les codes
+     * @return le bundle de la langue
+     * @throws ISException
+     *             erreur de récuperation des libellés de la base
+     */
+    protected PublicResponseCache.Entry getLabelsBundle(String aLang, boolean aCodes) throws ISException {
+        String[] entities = aCodes
+                ? new String[] { Entity.HELPTEXT.toString(), Entity.CODE.toString(), Entity.CODETEXT.toString(),
+                        ch.inser.rest.util.Constants.Entity.USER.toString(), ch.inser.rest.util.Constants.Entity.COMMUNE.toString() }
+                : new String[] { Entity.HELPTEXT.toString() };
+        return TranslationBundles.getInstance().get("labels." + aLang + (aCodes ? ".codes" : ""), entities, () -> {
+            Map<String, Object> labels = new HashMap<>();
+            if (!"empty".equals(aLang)) {
+                ILoggedUser superUser = ((ServiceLocator) iContext.getAttribute("ServiceLocator")).getSuperUser();
+                addHelpTexts(aLang, labels, superUser);
+                if (aCodes) {
+                    addCodes(aLang, labels, superUser);
+                }
+            }
+            return JsonUtil.mapToJsonObject(labels).build().toString();
+        });
+    }
+
+    /**
+     * Ajoute le nouveau token aux traductions d'un bundle
+     *
+     * @param aBody
+     *            json du bundle
+     * @param aToken
+     *            nouveau token
+     * @return le json avec l'attribut "token"
+     */
+    protected static String addToken(byte[] aBody, String aToken) {
+        JsonObject labels = JsonFactory.createReader(new StringReader(new String(aBody, StandardCharsets.UTF_8))).readObject();
+        return JsonFactory.getBuilderFactory().createObjectBuilder(labels).add("token", aToken).build().toString();
+    }
+
     /**
      * Construit un map arborisé selon la structure hierarchique des clés, p.ex. "Button.edit" et "Button.create" donne
      * {"Button":{"edit":"Modifier". "create":"Ajouter"}}
@@ -101,7 +182,8 @@ public class AbstractTranslateResource {
             return;
         }
 
-        String subKey = aKey.split("\\.")[0];
+        int dot = aKey.indexOf('.');
+        String subKey = dot < 0 ? aKey : aKey.substring(0, dot);
 
         if (subKey.equals(aKey)) {
             // ex. project.title.buildings=Bâtiments, aKey=buildings
@@ -130,7 +212,7 @@ public class AbstractTranslateResource {
             throw new ISException("Childkey not JsonObject and not String. Label:" + aLabel + ". Key:" + aKey + ". Childkey:" + subKey
                     + "Child:" + aLabels.get(subKey));
         }
-        accumulate(aKey.substring(aKey.indexOf('.') + 1), aLabel, (Map<String, Object>) aLabels.get(subKey));
+        accumulate(aKey.substring(dot + 1), aLabel, (Map<String, Object>) aLabels.get(subKey));
     }
 
     /**
@@ -19,6 +19,7 @@ import javax.cache.Cache;
 
 import ch.inser.dynamic.common.ILoggedUser;
 import ch.inser.jsl.exceptions.ISException;
+import ch.inser.rest.auth.LoggedUserCache;
 import ch.inser.rest.util.ServiceLocator;
 
 import jakarta.json.JsonObjectBuilder;
@@ -65,14 +66,14 @@ public abstract class AbstractUserInfoResource {
     protected ILoggedUser getLoggedUser(String aUsername, boolean aRefresh) throws ISException {
         ServiceLocator serviceLocator = (ServiceLocator) iContext.getAttribute("ServiceLocator");
 
-        Cache<String, ILoggedUser> cache = serviceLocator.getContextManager().getCacheManager().getCache("userCache", String.class,
-                ILoggedUser.class);
-        if (!cache.containsKey(aUsername) || aRefresh) {
-            ILoggedUser newUser = (ILoggedUser) ((IBPDelegate) serviceLocator.getLocator("bp").getService("LoggedUser"))
-                    .executeMethode("initLoggedUser", aUsername, serviceLocator.getSuperUser());
-            cache.put(aUsername, newUser);
+        Cache<String, ILoggedUser> cache = serviceLocator.getContextManager().getCacheManager().getCache(LoggedUserCache.USER_CACHE,
+                String.class, ILoggedUser.class);
+        LoggedUserCache userCache = LoggedUserCache.getInstance(LoggedUserCache.USER_CACHE);
+        LoggedUserCache.Loader loader = () -> (ILoggedUser) ((IBPDelegate) serviceLocator.getLocator("bp").getService("LoggedUser"))
+                .executeMethode("initLoggedUser", aUsername, serviceLocator.getSuperUser());
+        if (aRefresh) {
+            return userCache.load(cache, aUsername, loader);
         }
-
-        return cache.get(aUsername);
+        return userCache.get(cache, aUsername, 0, loader);
     }
 }
@@ -35,6 +35,22 @@ import ch.inser.jsl.list.ListHandler.Sort;
  */
 public interface IBPDelegate extends IService, Serializable {
 
+    /**
+     * Traitement des enregistrements d'une liste parcourue par {@link IBPDelegate#forEach}
+     */
+    @FunctionalInterface
+    public interface RecordHandler {
+
+        /**
+         *
+         * @param aVo
+         *            l'enregistrement
+         * @throws ISException
+         *             erreur de traitement, le parcours est interrompu
+         */
+        public void handle(IValueObject aVo) throws ISException;
+    }
+
     /**
      * Lit un enregistrement correspondant à l'ID spécifié.
      *
@@ -230,6 +246,35 @@ public interface IBPDelegate extends IService, Serializable {
      */
     public IDAOResult getListCount(IValueObject vo, ILoggedUser aUser, DAOParameter... aParameters) throws ISException;
 
+    /**
+     * Parcourt le résultat d'une recherche un enregistrement à la fois, sans garder la liste complète en mémoire.
+     *
+     * L'implémentation par défaut lit le résultat par pages de aFetchSize enregistrements, chaque page commençant après la dernière
+     * valeur de l'attribut de tri lue ({@link KeysetPager}); une connexion est prise pour chaque page. Les enregistrements sans valeur
+     * de l'attribut de tri sont parcourus à la fin. Un delegate ayant accès au DAO peut la surcharger pour parcourir un curseur JDBC
+     * avec le même fetch size.
+     *
+     * @param aVo
+     *            Value object contenant les critères de recherche
+     * @param aUser
+     *            Utilisateur
+     * @param aSortKey
+     *            attribut de tri, <code>null</code> pour l'id
+     * @param aOrientation
+     *            orientation du tri, <code>null</code> pour ascendant
+     * @param aFetchSize
+     *            nombre d'enregistrements lus à la fois, au moins 1
+     * @param aHandler
+     *            traitement de chaque enregistrement
+     * @return le nombre d'enregistrements parcourus
+     * @throws ISException
+     *             en cas de problème au niveau de la requête à la base de données ou du traitement
+     */
+    public default long forEach(IValueObject aVo, ILoggedUser aUser, String aSortKey, Sort aOrientation, int aFetchSize,
+            RecordHandler aHandler) throws ISException {
+        return new KeysetPager(this, aVo, aUser, aSortKey, aOrientation, aFetchSize).forEach(aHandler);
+    }
+
     /**
      * Permet de modifier un champ sur chaque ligne d'une liste, la valeur à inserér pour le changement se trouve dans aLstValue.
      *
@@ -0,0 +1,197 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+
+package ch.inser.rest.core;
+
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ch.inser.dynamic.common.DAOParameter;
+import ch.inser.dynamic.common.DAOParameter.Name;
+import ch.inser.dynamic.common.DynamicDAO.Operator;
+import ch.inser.dynamic.common.ILoggedUser;
+import ch.inser.dynamic.common.IValueObject;
+import ch.inser.jsl.exceptions.ISException;
+import ch.inser.jsl.list.ListHandler.Sort;
+
+/**
+ * Parcours d'un résultat de recherche par pages, chaque page commençant après la dernière valeur de la clé de tri lue (keyset) au
+ * lieu d'un numéro de ligne: une page coûte le même prix quelle que soit sa position et un enregistrement ajouté ou supprimé pendant
+ * le parcours ne décale pas les pages suivantes.
+ *
+ * Les enregistrements ayant la même valeur de clé que la fin de la page sont relus par la page suivante et sautés par leur id. Si
+ * une page entière n'a que des enregistrements déjà lus, la taille des pages est doublée. Les enregistrements sans valeur de clé sont
+ * parcourus à la fin, par id.
+ *
+ * @author INSER SA *
+ */
+final class KeysetPager {
+
+    /** Le BP delegate */
+    private final IBPDelegate iDelegate;
+
+    /** Critères de recherche */
+    private final IValueObject iQuery;
+
+    /** Utilisateur */
+    private final ILoggedUser iUser;
+
+    /** Attribut de tri, l'id si aucun */
+    private final String iKey;
+
+    /** Nom de l'attribut id */
+    private final String iIdField;
+
+    /** true pour un tri ascendant */
+    private final boolean iAscending;
+
+    /** Nombre d'enregistrements lus à la fois */
+    private final int iFetchSize;
+
+    /**
+     *
+     * @param aDelegate
+     *            le BP delegate
+     * @param aQuery
+     *            critères de recherche
+     * @param aUser
+     *            utilisateur
+     * @param aSortKey
+     *            attribut de tri, <code>null</code> pour l'id
+     * @param aOrientation
+     *            orientation du tri, <code>null</code> pour ascendant
+     * @param aFetchSize
+     *            nombre d'enregistrements lus à la fois, au moins 1
+     */
+    KeysetPager(IBPDelegate aDelegate, IValueObject aQuery, ILoggedUser aUser, String aSortKey, Sort aOrientation, int aFetchSize) {
+        iDelegate = aDelegate;
+        iQuery = aQuery;
+        iUser = aUser;
+        iIdField = aQuery.getVOInfo().getId();
+        // Avec un critère d'égalité ou de nullité sur l'attribut de tri, tous les enregistrements ont la même valeur
+        iKey = aSortKey != null && isRange(aQuery.getProperty(aSortKey)) ? aSortKey : iIdField;
+        iAscending = !iKey.equals(aSortKey) || aOrientation != Sort.DESCENDING;
+        iFetchSize = Math.max(1, aFetchSize);
+    }
+
+    /**
+     *
+     * @param aHandler
+     *            traitement de chaque enregistrement
+     * @return le nombre d'enregistrements parcourus
+     * @throws ISException
+     *             en cas de problème au niveau de la requête à la base de données ou du traitement
+     */
+    long forEach(IBPDelegate.RecordHandler aHandler) throws ISException {
+        long count = walk(iQuery, iKey, iAscending, aHandler);
+        if (!iKey.equals(iIdField) && iQuery.getProperty(iKey) == null) {
+            IValueObject query = (IValueObject) iQuery.clone();
+            query.setProperty(iKey, Operator.getOperator(Operator.IS_NULL, null));
+            count += walk(query, iIdField, true, aHandler);
+        }
+        return count;
+    }
+
+    /**
+     *
+     * @param aQuery
+     *            critères de recherche
+     * @param aKey
+     *            attribut de tri
+     * @param aAscending
+     *            true pour un tri ascendant
+     * @param aHandler
+     *            traitement de chaque enregistrement
+     * @return le nombre d'enregistrements parcourus
+     * @throws ISException
+     *             en cas de problème au niveau de la requête à la base de données ou du traitement
+     */
+    private long walk(IValueObject aQuery, String aKey, boolean aAscending, IBPDelegate.RecordHandler aHandler) throws ISException {
+        Object criterion = aQuery.getProperty(aKey);
+        Operator operator = aAscending ? Operator.BIGGER_EQU : Operator.SMALLER_EQU;
+        Object last = null;
+        // Ids des enregistrements lus avec la dernière valeur de clé
+        Set<Object> seen = new HashSet<>();
+        int size = iFetchSize;
+        long count = 0;
+        while (true) {
+            IValueObject query = (IValueObject) aQuery.clone();
+            if (last != null) {
+                query.setProperty(aKey, bound(criterion, operator, last));
+            } else if (criterion == null) {
+                query.setProperty(aKey, Operator.getOperator(Operator.IS_NOT_NULL, null));
+            }
+            List<IValueObject> page = iDelegate.getList(query, iUser, new DAOParameter(Name.SORT_KEY, aKey),
+                    new DAOParameter(Name.SORT_ORIENTATION, aAscending ? Sort.ASCENDING : Sort.DESCENDING),
+                    new DAOParameter(Name.ROWNUM_START, 1L), new DAOParameter(Name.ROWNUM_END, (long) size)).getListObject();
+            int read = 0;
+            for (IValueObject vo : page) {
+                Object value = vo.getProperty(aKey);
+                if (value.equals(last)) {
+                    if (!seen.add(vo.getId())) {
+                        continue;
+                    }
+                } else {
+                    last = value;
+                    seen.clear();
+                    seen.add(vo.getId());
+                }
+                aHandler.handle(vo);
+                read++;
+            }
+            count += read;
+            if (page.size() < size) {
+                return count;
+            }
+            if (read == 0) {
+                size *= 2;
+            }
+        }
+    }
+
+    /**
+     *
+     * @param aCriterion
+     *            critère de recherche sur l'attribut de tri
+     * @return true si les enregistrements du critère peuvent avoir des valeurs différentes
+     */
+    private static boolean isRange(Object aCriterion) {
+        return aCriterion == null || aCriterion instanceof Map && !((Map<?, ?>) aCriterion).containsKey(Operator.IS_NULL);
+    }
+
+    /**
+     *
+     * @param aCriterion
+     *            critère de recherche sur l'attribut de tri, <code>null</code> si aucun
+     * @param aOperator
+     *            opérateur de la borne
+     * @param aLast
+     *            dernière valeur lue
+     * @return le critère avec la borne, la dernière valeur lue respecte déjà le critère
+     */
+    private static Map<Operator, Object> bound(Object aCriterion, Operator aOperator, Object aLast) {
+        Map<Operator, Object> bound = new EnumMap<>(Operator.class);
+        if (aCriterion instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) aCriterion).entrySet()) {
+                bound.put((Operator) entry.getKey(), entry.getValue());
+            }
+        }
+        bound.put(aOperator, aLast);
+        return bound;
+    }
+}
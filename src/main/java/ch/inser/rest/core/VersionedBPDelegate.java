@@ -0,0 +1,237 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+
+package ch.inser.rest.core;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import ch.inser.dynamic.common.DAOParameter;
+import ch.inser.dynamic.common.IDAOResult;
+import ch.inser.dynamic.common.ILoggedUser;
+import ch.inser.dynamic.common.IValueObject;
+import ch.inser.dynaplus.util.Constants.Mode;
+import ch.inser.jsl.exceptions.ISException;
+import ch.inser.jsl.list.ListHandler.Sort;
+import ch.inser.rest.util.EntityVersions;
+
+/**
+ * BP delegate qui incrémente la version de l'objet métier et celles de ses enfants ({@link EntityVersions}) après chaque
+ * modification faite par le delegate décoré: une modification du parent peut créer, modifier ou supprimer ses enfants. Les
+ * lectures sont déléguées telles quelles.
+ *
+ * La version est incrémentée aussi lorsque la modification échoue, une partie a pu être écrite. Les méthodes exécutées par
+ * executeMethode sont considérées comme des modifications.
+ *
+ * @author INSER SA *
+ */
+public class VersionedBPDelegate implements IBPDelegate {
+
+    /**
+     * UID
+     */
+    private static final long serialVersionUID = -3170468016742352417L;
+
+    /** Nom de l'objet métier */
+    private final String iName;
+
+    /** Noms des objets métier enfants */
+    private final List<String> iChildren;
+
+    /** Delegate décoré */
+    private final IBPDelegate iDelegate;
+
+    /**
+     *
+     * @param aName
+     *            nom de l'objet métier
+     * @param aDelegate
+     *            delegate décoré
+     */
+    public VersionedBPDelegate(String aName, IBPDelegate aDelegate) {
+        this(aName, Collections.<String> emptyList(), aDelegate);
+    }
+
+    /**
+     *
+     * @param aName
+     *            nom de l'objet métier
+     * @param aChildren
+     *            noms des objets métier enfants
+     * @param aDelegate
+     *            delegate décoré
+     */
+    public VersionedBPDelegate(String aName, Collection<String> aChildren, IBPDelegate aDelegate) {
+        iName = aName;
+        iChildren = new ArrayList<>(aChildren);
+        iDelegate = aDelegate;
+    }
+
+    @Override
+    public IDAOResult getRecord(Object id, ILoggedUser user, DAOParameter... aParameters) throws ISException {
+        return iDelegate.getRecord(id, user, aParameters);
+    }
+
+    @Override
+    public IDAOResult update(IValueObject valueObject, ILoggedUser user) throws ISException {
+        try {
+            return iDelegate.update(valueObject, user);
+        } finally {
+            increment();
+        }
+    }
+
+    @Override
+    public IDAOResult update(List<IValueObject> aRecords, List<IValueObject> aDeletes, ILoggedUser aLoggedUser, DAOParameter... aParameter)
+            throws ISException {
+        try {
+            return iDelegate.update(aRecords, aDeletes, aLoggedUser, aParameter);
+        } finally {
+            increment();
+        }
+    }
+
+    @Override
+    public IDAOResult create(IValueObject valueObject, ILoggedUser user) throws ISException {
+        try {
+            return iDelegate.create(valueObject, user);
+        } finally {
+            increment();
+        }
+    }
+
+    @Override
+    public IDAOResult delete(Object id, Timestamp timestamp, ILoggedUser user, DAOParameter... aParameter) throws ISException {
+        try {
+            return iDelegate.delete(id, timestamp, user, aParameter);
+        } finally {
+            increment();
+        }
+    }
+
+    @Override
+    public IDAOResult getTimestamp(Object id, ILoggedUser user) throws ISException {
+        return iDelegate.getTimestamp(id, user);
+    }
+
+    @Override
+    public IDAOResult getField(Object id, String fieldName) throws ISException {
+        return iDelegate.getField(id, fieldName);
+    }
+
+    @Override
+    public IDAOResult getFieldsRequest(IValueObject aVo, String aFieldName, DAOParameter... aParameters) throws ISException {
+        return iDelegate.getFieldsRequest(aVo, aFieldName, aParameters);
+    }
+
+    @Override
+    public IDAOResult getFieldsRequest(IValueObject aVo, String aFieldName, ILoggedUser aUser, DAOParameter... aParameters)
+            throws ISException {
+        return iDelegate.getFieldsRequest(aVo, aFieldName, aUser, aParameters);
+    }
+
+    @Override
+    public IValueObject getInitVO(ILoggedUser user) throws ISException {
+        return iDelegate.getInitVO(user);
+    }
+
+    @Override
+    public IValueObject getInitVO(Mode mode, ILoggedUser user) throws ISException {
+        return iDelegate.getInitVO(mode, user);
+    }
+
+    @Override
+    public IDAOResult getList(IValueObject aVo, ILoggedUser aUser, DAOParameter... aParameters) throws ISException {
+        return iDelegate.getList(aVo, aUser, aParameters);
+    }
+
+    @Override
+    public IDAOResult getListCount(IValueObject vo, ILoggedUser aUser, DAOParameter... aParameters) throws ISException {
+        return iDelegate.getListCount(vo, aUser, aParameters);
+    }
+
+    @Override
+    public long forEach(IValueObject aVo, ILoggedUser aUser, String aSortKey, Sort aOrientation, int aFetchSize,
+            RecordHandler aHandler) throws ISException {
+        return iDelegate.forEach(aVo, aUser, aSortKey, aOrientation, aFetchSize, aHandler);
+    }
+
+    @Override
+    public IDAOResult updateField(List<Object> aLstIds, String aFieldName, List<Object> aLstValues, ILoggedUser aUser) throws ISException {
+        try {
+            return iDelegate.updateField(aLstIds, aFieldName, aLstValues, aUser);
+        } finally {
+            increment();
+        }
+    }
+
+    @Override
+    public String getDefaultOrderKey() {
+        return iDelegate.getDefaultOrderKey();
+    }
+
+    @Override
+    public Sort getDefaultSortOrder() {
+        return iDelegate.getDefaultSortOrder();
+    }
+
+    @Override
+    public IDAOResult updateFields(Object id, String[] aFieldNames, Object[] aValues) throws ISException {
+        try {
+            return iDelegate.updateFields(id, aFieldNames, aValues);
+        } finally {
+            increment();
+        }
+    }
+
+    @Override
+    public IDAOResult updateFields(IValueObject aValueObject, ILoggedUser aUser) throws ISException {
+        try {
+            return iDelegate.updateFields(aValueObject, aUser);
+        } finally {
+            increment();
+        }
+    }
+
+    @Override
+    public Object executeMethode(String aNameMethode, Object anObject, ILoggedUser aUser) throws ISException {
+        try {
+            return iDelegate.executeMethode(aNameMethode, anObject, aUser);
+        } finally {
+            increment();
+        }
+    }
+
+    /**
+     * Incrémente la version de l'objet métier et celles de ses enfants.
+     */
+    private void increment() {
+        EntityVersions.increment(iName);
+        for (String child : iChildren) {
+            EntityVersions.increment(child);
+        }
+    }
+
+    /**
+     *
+     * @return le delegate décoré
+     */
+    public IBPDelegate getDelegate() {
+        return iDelegate;
+    }
+}
@@ -17,6 +17,7 @@ package ch.inser.rest.init;
 
 import ch.inser.dynaplus.bo.BPFactory;
 import ch.inser.dynaplus.vo.VOFactory;
+import ch.inser.rest.oidc.auth.SecurityGenericImplOIDC;
 import ch.inser.rest.util.RestUtil;
 import ch.inser.rest.util.ServiceLocator;
 
@@ -45,4 +46,11 @@ public class RestInitServlet extends org.jboss.resteasy.plugins.server.servlet.H
         RestUtil.setServletContext(servletConfig.getServletContext());
     }
 
+    @Override
+    public void destroy() {
+        // Arrêt du rafraîchissement des clés OIDC
+        SecurityGenericImplOIDC.closeAll();
+        super.destroy();
+    }
+
 }
@@ -27,19 +27,20 @@ import ch.inser.dynamic.common.ILoggedUser;
 import ch.inser.jsl.exceptions.ISException;
 import ch.inser.rest.auth.ISSecurityException;
 import ch.inser.rest.core.AbstractCodeResource;
-import ch.inser.rest.oidc.auth.SecurityUtilOIDC;
 import ch.inser.rest.util.Constants.Verb;
 import ch.inser.rest.util.JsonUtil;
 import ch.inser.rest.util.RestUtil;
 
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.Response.Status;
@@ -60,6 +61,8 @@ public class CodeResourceOIDC extends AbstractCodeResource {
      *
      * @param aAuthorization
      *            the Authorization "Bearer <token>"
+     * @param aSince
+     *            version of the codes known by the client, to get only the codes added and removed since
      * @return the codes as JSON
      */
     @ApiOperation(value = "Get the codes of the application")
@@ -68,12 +71,12 @@ public class CodeResourceOIDC extends AbstractCodeResource {
             @ApiResponse(code = 500, message = "Error querying the codes tables") })
     @GET
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getCodes(@HeaderParam("Authorization") String aAuthorization) {
+    public Response getCodes(@HeaderParam("Authorization") String aAuthorization,
+            @ApiParam(value = "Version of the codes known by the client", required = false) @QueryParam("since") String aSince) {
         try {
             logger.debug("GET codes");
 
-            JwtClaims claims = SecurityUtilOIDC.validateOIDCToken(RestUtil.parseAuthorization(aAuthorization),
-                    RestUtil.getContextManager());
+            JwtClaims claims = RestUtil.getClaimsOIDC(RestUtil.parseAuthorization(aAuthorization));
             RestUtil.addToNdc(claims);
             if (claims == null) {
                 return Response.status(Status.BAD_REQUEST).build();
@@ -85,6 +88,11 @@ public class CodeResourceOIDC extends AbstractCodeResource {
                 return Response.status(Status.FORBIDDEN).build();
             }
 
+            // Changes since the version of the client, from the catalog
+            if (aSince != null) {
+                return Response.ok(getCodesSince(aSince, loggedUser).build().toString()).build();
+            }
+
             // Get the codes from the database
             Map<String, List<String>> codes = new HashMap<>();
             addCodes(codes, loggedUser);
@@ -102,4 +110,17 @@ public class CodeResourceOIDC extends AbstractCodeResource {
         }
     }
 
+    /**
+     * Get the codes.
+     *
+     * All the codes, without the changes since a known version.
+     *
+     * @param aAuthorization
+     *            the Authorization "Bearer <token>"
+     * @return the codes as JSON
+     */
+    public Response getCodes(String aAuthorization) {
+        return getCodes(aAuthorization, null);
+    }
+
 }
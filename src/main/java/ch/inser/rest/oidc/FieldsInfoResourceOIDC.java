@@ -23,8 +23,8 @@ import ch.inser.dynamic.common.ILoggedUser;
 import ch.inser.jsl.exceptions.ISException;
 import ch.inser.rest.auth.ISSecurityException;
 import ch.inser.rest.core.AbstractFieldsInfoResource;
-import ch.inser.rest.oidc.auth.SecurityUtilOIDC;
 import ch.inser.rest.util.Constants.Verb;
+import ch.inser.rest.util.JsonFactory;
 import ch.inser.rest.util.RestUtil;
 
 import io.swagger.annotations.Api;
@@ -32,7 +32,6 @@ import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
-import jakarta.json.Json;
 import jakarta.json.JsonObjectBuilder;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.HeaderParam;
@@ -77,8 +76,7 @@ public class FieldsInfoResourceOIDC extends AbstractFieldsInfoResource {
             logger.debug("Get field infos " + aObjectName);
 
             // -- Contrôle si paramètre présent
-            JwtClaims claims = SecurityUtilOIDC.validateOIDCToken(RestUtil.parseAuthorization(aAuthorization),
-                    RestUtil.getContextManager());
+            JwtClaims claims = RestUtil.getClaimsOIDC(RestUtil.parseAuthorization(aAuthorization));
             RestUtil.addToNdc(claims);
             if (claims == null || !RestUtil.isResource(aObjectName)) {
                 logger.warn("Error initializing fields infos. Objectname " + aObjectName);
@@ -93,7 +91,7 @@ public class FieldsInfoResourceOIDC extends AbstractFieldsInfoResource {
             }
 
             // -- Récuperation des infos
-            JsonObjectBuilder json = Json.createObjectBuilder();
+            JsonObjectBuilder json = JsonFactory.createObjectBuilder();
             addFieldsInfo(aObjectName, json);
             return Response.ok(json.build().toString()).build();
 
@@ -24,9 +24,9 @@ import ch.inser.dynamic.common.IValueObject;
 import ch.inser.dynaplus.util.Constants.Entity;
 import ch.inser.jsl.exceptions.ISException;
 import ch.inser.rest.auth.ISSecurityException;
+import ch.inser.rest.auth.PermissionMatrix;
 import ch.inser.rest.core.AbstractFileItemResource;
 import ch.inser.rest.core.IBPDelegate;
-import ch.inser.rest.oidc.auth.SecurityUtilOIDC;
 import ch.inser.rest.util.Constants.Verb;
 import ch.inser.rest.util.RestUtil;
 
@@ -93,8 +93,7 @@ public class FileItemResourceOIDC extends AbstractFileItemResource {
             logger.debug("GET FILE : " + iId + (aObjName != null ? ", ObjectName: " + aObjName : ""));
 
             // -- Validate token
-            JwtClaims claims = SecurityUtilOIDC.validateOIDCToken(RestUtil.parseAuthorization(aAuthorization),
-                    RestUtil.getContextManager());
+            JwtClaims claims = RestUtil.getClaimsOIDC(RestUtil.parseAuthorization(aAuthorization));
             RestUtil.addToNdc(claims);
             if (claims == null || iId == null) {
                 logger.error("Erreur download file. Id: " + iId + (aObjName != null ? ", ObjectName: " + aObjName : ""));
@@ -102,7 +101,7 @@ public class FileItemResourceOIDC extends AbstractFileItemResource {
             }
             // -- Validate access rights
             ILoggedUser loggedUser = RestUtil.getLoggedUser(claims, Entity.DOCUMENT.toString(), Verb.GET);
-            if (loggedUser == null || aObjName != null && !loggedUser.isAuthAction(aObjName, Verb.GET.toString())) {
+            if (loggedUser == null || aObjName != null && !PermissionMatrix.isAuthAction(loggedUser, aObjName, Verb.GET)) {
                 return Response.status(Status.FORBIDDEN).build();
             }
             return downloadFile(loggedUser, aObjName, aFieldName);
@@ -138,8 +137,7 @@ public class FileItemResourceOIDC extends AbstractFileItemResource {
         try {
             logger.debug("Delete File : " + iId);
             // -- Validate token
-            JwtClaims claims = SecurityUtilOIDC.validateOIDCToken(RestUtil.parseAuthorization(aAuthorization),
-                    RestUtil.getContextManager());
+            JwtClaims claims = RestUtil.getClaimsOIDC(RestUtil.parseAuthorization(aAuthorization));
             RestUtil.addToNdc(claims);
             if (claims == null || iId == null) {
                 logger.error("Erreur de suppression de fichier. Id: " + iId);
@@ -23,8 +23,8 @@ import org.jose4j.jwt.JwtClaims;
 import ch.inser.dynamic.common.ILoggedUser;
 import ch.inser.dynaplus.util.Constants.Entity;
 import ch.inser.rest.auth.ISSecurityException;
-import ch.inser.rest.oidc.auth.SecurityUtilOIDC;
 import ch.inser.rest.util.Constants.Verb;
+import ch.inser.rest.util.JsonFactory;
 import ch.inser.rest.util.RestUtil;
 
 import io.swagger.annotations.Api;
@@ -32,7 +32,6 @@ import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
-import jakarta.json.Json;
 import jakarta.json.JsonObjectBuilder;
 import jakarta.servlet.ServletContext;
 import jakarta.ws.rs.GET;
@@ -98,8 +97,7 @@ public class FileResourceOIDC {
         try {
             logger.debug("Upload new file");
             // -- Validate token
-            JwtClaims claims = SecurityUtilOIDC.validateOIDCToken(RestUtil.parseAuthorization(aAuthorization),
-                    RestUtil.getContextManager());
+            JwtClaims claims = RestUtil.getClaimsOIDC(RestUtil.parseAuthorization(aAuthorization));
             RestUtil.addToNdc(claims);
             if (claims == null) {
                 return Response.status(Status.BAD_REQUEST).build();
@@ -122,7 +120,7 @@ public class FileResourceOIDC {
                 return Response.status(Status.NO_CONTENT).build();
             }
 
-            JsonObjectBuilder json = Json.createObjectBuilder().add("doc_id", id);
+            JsonObjectBuilder json = JsonFactory.createObjectBuilder().add("doc_id", id);
 
             return Response.status(Status.CREATED).entity(json.build().toString()).build();
 
@@ -23,9 +23,9 @@ import ch.inser.dynamic.common.ILoggedUser;
 import ch.inser.dynaplus.util.Constants.Mode;
 import ch.inser.jsl.exceptions.ISException;
 import ch.inser.rest.auth.ISSecurityException;
-import ch.inser.rest.oidc.auth.SecurityUtilOIDC;
 import ch.inser.rest.util.Constants;
 import ch.inser.rest.util.Constants.Verb;
+import ch.inser.rest.util.JsonFactory;
 import ch.inser.rest.util.JsonVoUtil;
 import ch.inser.rest.util.RestUtil;
 
@@ -34,7 +34,6 @@ import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
-import jakarta.json.Json;
 import jakarta.json.JsonObjectBuilder;
 import jakarta.servlet.ServletContext;
 import jakarta.ws.rs.GET;
@@ -87,8 +86,7 @@ public class InitObjectResourceOIDC {
             logger.debug("Get init object " + aObjectName + " for mode " + aMode);
 
             // -- Contrôle si paramètre présent
-            JwtClaims claims = SecurityUtilOIDC.validateOIDCToken(RestUtil.parseAuthorization(aAuthorization),
-                    RestUtil.getContextManager());
+            JwtClaims claims = RestUtil.getClaimsOIDC(RestUtil.parseAuthorization(aAuthorization));
             RestUtil.addToNdc(claims);
             if (claims == null || !RestUtil.isResource(aObjectName)) {
                 logger.warn("Error initializing object. Objectname " + aObjectName + ". Mode: " + aMode);
@@ -103,7 +101,7 @@ public class InitObjectResourceOIDC {
             }
 
             // -- Récuperation des infos
-            JsonObjectBuilder json = Json.createObjectBuilder();
+            JsonObjectBuilder json = JsonFactory.createObjectBuilder();
             json.add(Constants.RECORD, JsonVoUtil.voToJson(RestUtil.getBPDelegate(aObjectName).getInitVO(Mode.valueOf(aMode), loggedUser),
                     Mode.valueOf(aMode).equals(Mode.create), loggedUser));
             return Response.ok(json.build().toString()).build();
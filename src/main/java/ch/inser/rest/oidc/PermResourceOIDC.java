@@ -22,21 +22,15 @@ import org.jose4j.jwt.JwtClaims;
 import ch.inser.dynamic.common.ILoggedUser;
 import ch.inser.jsl.exceptions.ISException;
 import ch.inser.rest.auth.ISSecurityException;
+import ch.inser.rest.auth.PermissionMatrix.Permissions;
 import ch.inser.rest.core.AbstractPermResource;
-import ch.inser.rest.oidc.auth.SecurityUtilOIDC;
-import ch.inser.rest.util.Constants;
-import ch.inser.rest.util.JsonUtil;
 import ch.inser.rest.util.RestUtil;
-import ch.inser.rest.util.ServiceLocator;
 
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
-import jakarta.json.Json;
-import jakarta.json.JsonObject;
-import jakarta.json.JsonObjectBuilder;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.Path;
@@ -48,6 +42,8 @@ import jakarta.ws.rs.core.Response.Status;
 
 /**
  * Permission resource with OIDC authorization
+ *
+ * The permissions are served with an ETag, a client that already has them (If-None-Match) gets 304.
  */
 @Path("/permissions")
 @Api(value = "permissions")
@@ -83,10 +79,9 @@ public class PermResourceOIDC extends AbstractPermResource {
 
             // -- Contrôle de sécurite
             // Contrôle de sécurité
-            JwtClaims claims = SecurityUtilOIDC.validateOIDCToken(RestUtil.parseAuthorization(aAuthorization),
-                    RestUtil.getContextManager());
+            JwtClaims claims = RestUtil.getClaimsOIDC(RestUtil.parseAuthorization(aAuthorization));
             RestUtil.addToNdc(claims);
-            ILoggedUser loggedUser = SecurityUtilOIDC.getUser(claims, (ServiceLocator) iContext.getAttribute(Constants.SERVICE_LOCATOR));
+            ILoggedUser loggedUser = RestUtil.getUser(claims);
 
             if (loggedUser == null) {
                 return Response.status(Status.FORBIDDEN).build();
@@ -96,27 +91,10 @@ public class PermResourceOIDC extends AbstractPermResource {
             // l'utilisateur courant
             if (aUser.equals(loggedUser.getUsername())) {
 
-                JsonObject permissions;
-                if (loggedUser.getPermissions() == null) {
-                    // Création de l'objet json vierge
-                    JsonObjectBuilder json = Json.createObjectBuilder();
-                    // Ajout des droits selon usergroup
-                    // Droit sur menus
-                    addMenus(loggedUser, json);
-                    // Droit sur actions
-                    addActions(loggedUser, json);
-                    // Droit sur les champs
-                    addFields(loggedUser, json);
-                    permissions = json.build();
-                    // Set des permissions
-                    loggedUser.setPermissions(permissions);
-                } else {
-                    // -- Permission déjà existant prendre les informations de
-                    // l'utilisateur
-                    permissions = loggedUser.getPermissions();
-                }
+                // -- Permissions du groupe, construites une seule fois
+                Permissions permissions = getGroupPermissions(loggedUser);
 
-                return Response.ok(JsonUtil.jsonObjectToBuilder(permissions).build().toString()).build();
+                return getPermissionsResponse(permissions);
             }
 
             // -- Pas le droit à l'accès aux données
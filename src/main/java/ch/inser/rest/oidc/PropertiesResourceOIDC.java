@@ -25,7 +25,7 @@ import ch.inser.dynamic.common.IContextManager;
 import ch.inser.dynamic.common.ILoggedUser;
 import ch.inser.rest.auth.ISSecurityException;
 import ch.inser.rest.core.AbstractPropertiesResource;
-import ch.inser.rest.oidc.auth.SecurityUtilOIDC;
+import ch.inser.rest.util.JsonFactory;
 import ch.inser.rest.util.JsonUtil;
 import ch.inser.rest.util.RestUtil;
 import ch.inser.rest.util.ServiceLocator;
@@ -35,7 +35,6 @@ import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
-import jakarta.json.Json;
 import jakarta.json.JsonObject;
 import jakarta.json.JsonObjectBuilder;
 import jakarta.ws.rs.GET;
@@ -119,7 +118,7 @@ public class PropertiesResourceOIDC extends AbstractPropertiesResource {
         } else {
             // Properties for non-authenticated user
             listProperties = aContextManager.getProperty(FRONTEND_PROPERTIES_FREE);
-            properties = Json.createObjectBuilder();
+            properties = JsonFactory.createObjectBuilder();
         }
 
         if (listProperties != null) {
@@ -148,7 +147,7 @@ public class PropertiesResourceOIDC extends AbstractPropertiesResource {
             return false;
         }
         // Contrôle de sécurité
-        JwtClaims claims = SecurityUtilOIDC.validateOIDCToken(RestUtil.parseAuthorization(aAuthorization), RestUtil.getContextManager());
+        JwtClaims claims = RestUtil.getClaimsOIDC(RestUtil.parseAuthorization(aAuthorization));
         RestUtil.addToNdc(claims);
 
         if (Boolean.TRUE.toString().equals(RestUtil.getContextManager().getProperty(RESET_USER_CACHE_PROPERTY))) {
@@ -15,21 +15,15 @@
 
 package ch.inser.rest.oidc;
 
-import java.util.HashMap;
-import java.util.Map;
-
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.jose4j.jwt.JwtClaims;
 
-import ch.inser.dynamic.common.ILoggedUser;
 import ch.inser.jsl.exceptions.ISException;
+import ch.inser.rest.annotation.CachePolicy;
 import ch.inser.rest.auth.ISSecurityException;
 import ch.inser.rest.core.AbstractTranslateResource;
-import ch.inser.rest.oidc.auth.SecurityUtilOIDC;
-import ch.inser.rest.util.JsonUtil;
 import ch.inser.rest.util.RestUtil;
-import ch.inser.rest.util.ServiceLocator;
 
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
@@ -41,6 +35,7 @@ import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.Response.Status;
@@ -73,18 +68,29 @@ public class TranslateResourceOIDC extends AbstractTranslateResource {
      *            the language
      * @param aAuthorization
      *            token de sécurité OIDC: Authorization: "Bearer <token>"
+     * @param aIfNoneMatch
+     *            ETags des traductions connues du client
+     * @param aAcceptEncoding
+     *            encodages acceptés par le client
      * @return HTTP response containing the labels in a JSON tree
      */
     @ApiOperation(value = "Get the labels of the application")
     @ApiResponses(value = { @ApiResponse(code = 200, message = "OK"),
-            @ApiResponse(code = 400, message = "Error querying the multilingual tables") })
+            @ApiResponse(code = 400, message = "Error querying the multilingual tables"),
+            @ApiResponse(code = 404, message = "Language not configured") })
     @GET
     @Path("{lang}")
+    @CachePolicy(CachePolicy.PRIVATE_REVALIDATE)
     @Produces(MediaType.APPLICATION_JSON + "; charset=UTF-8")
     public Response getLabels(@ApiParam(value = "Security token", required = false) @HeaderParam("Authorization") String aAuthorization,
-            @PathParam("lang") String aLang) {
+            @PathParam("lang") String aLang,
+            @ApiParam(value = "ETags of the labels known by the client", required = false) @HeaderParam(HttpHeaders.IF_NONE_MATCH) String aIfNoneMatch,
+            @ApiParam(value = "Encodings accepted by the client", required = false) @HeaderParam(HttpHeaders.ACCEPT_ENCODING) String aAcceptEncoding) {
 
         logger.debug("Get labels " + aLang);
+        if (!isLanguage(aLang)) {
+            return Response.status(Status.NOT_FOUND).build();
+        }
 
         boolean fullData = false;
 
@@ -92,8 +98,7 @@ public class TranslateResourceOIDC extends AbstractTranslateResource {
         if (aAuthorization != null) {
             try {
                 // Contrôle de sécurité
-                JwtClaims claims = SecurityUtilOIDC.validateOIDCToken(RestUtil.parseAuthorization(aAuthorization),
-                        RestUtil.getContextManager());
+                JwtClaims claims = RestUtil.getClaimsOIDC(RestUtil.parseAuthorization(aAuthorization));
                 RestUtil.addToNdc(claims);
 
                 // Information si toutes les données sont à retourner
@@ -104,22 +109,11 @@ public class TranslateResourceOIDC extends AbstractTranslateResource {
             }
         }
 
-        // -- Rechercher les traductions
+        // -- Rechercher les traductions: les textes sont fournis à tous les clients, les codes uniquement si token disponible
         try {
-            Map<String, Object> labels = new HashMap<>();
-            // If the language is different from "empty"
-            if (!"empty".equals(aLang)) {
-                ILoggedUser superUser = ((ServiceLocator) iContext.getAttribute("ServiceLocator")).getSuperUser();
-
-                // Les textes sont fournis à tous les clients
-                addHelpTexts(aLang, labels, superUser);
-
-                // Les codes sont fournis uniquement si token disponible
-                if (fullData || Boolean.TRUE.toString().equals(RestUtil.getContextManager().getProperty(FRONTEND_CODES_FREE_PROPERTY))) {
-                    addCodes(aLang, labels, superUser);
-                }
-            }
-            return Response.ok(JsonUtil.mapToJsonObject(labels).build().toString()).build();
+            return getLabelsBundle(aLang,
+                    fullData || Boolean.TRUE.toString().equals(RestUtil.getContextManager().getProperty(FRONTEND_CODES_FREE_PROPERTY)))
+                            .toResponse(aIfNoneMatch, aAcceptEncoding);
         } catch (ISException e) {
             logger.error("Erreur de recherche des libellés.", e);
             return Response.status(Status.BAD_REQUEST).build();
@@ -128,4 +122,23 @@ public class TranslateResourceOIDC extends AbstractTranslateResource {
         }
     }
 
+    /**
+     * Get the labels for a given language. If the language is <code>"empty"</code> an empty response is returned.
+     *
+     * Sans ETag du client ni réponse compressée.
+     *
+     * Avec token, toutes les traductions sont fournies, sans token uniquement les labels (pas les codes)
+     *
+     * Voir si on a besoin d'aller plus loin dans le futur
+     *
+     * @param aLang
+     *            the language
+     * @param aAuthorization
+     *            token de sécurité OIDC: Authorization: "Bearer <token>"
+     * @return HTTP response containing the labels in a JSON tree
+     */
+    public Response getLabels(String aAuthorization, String aLang) {
+        return getLabels(aAuthorization, aLang, null, null);
+    }
+
 }
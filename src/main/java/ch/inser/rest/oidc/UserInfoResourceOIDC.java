@@ -23,17 +23,14 @@ import ch.inser.dynamic.common.ILoggedUser;
 import ch.inser.jsl.exceptions.ISException;
 import ch.inser.rest.auth.ISSecurityException;
 import ch.inser.rest.core.AbstractUserInfoResource;
-import ch.inser.rest.oidc.auth.SecurityUtilOIDC;
-import ch.inser.rest.util.Constants;
+import ch.inser.rest.util.JsonFactory;
 import ch.inser.rest.util.RestUtil;
-import ch.inser.rest.util.ServiceLocator;
 
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
-import jakarta.json.Json;
 import jakarta.json.JsonObjectBuilder;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.HeaderParam;
@@ -78,22 +75,21 @@ public class UserInfoResourceOIDC extends AbstractUserInfoResource {
             logger.debug("Get infos " + aUser);
 
             // -- Contrôle si paramètre présent
-            JwtClaims claims = SecurityUtilOIDC.validateOIDCToken(RestUtil.parseAuthorization(aAuthorization),
-                    RestUtil.getContextManager());
+            JwtClaims claims = RestUtil.getClaimsOIDC(RestUtil.parseAuthorization(aAuthorization));
             RestUtil.addToNdc(claims);
             if (aUser == null || claims == null) {
                 return Response.status(Status.BAD_REQUEST).build();
             }
 
             // -- Contrôle de sécurité
-            ILoggedUser loggedUser = SecurityUtilOIDC.getUser(claims, (ServiceLocator) iContext.getAttribute(Constants.SERVICE_LOCATOR));
+            ILoggedUser loggedUser = RestUtil.getUser(claims);
 
             if (!aUser.equals(loggedUser.getUsername())) {
                 logger.warn("Not autorized to access the userinfo of: " + aUser);
                 return Response.status(Status.FORBIDDEN).build();
             }
 
-            JsonObjectBuilder infos = Json.createObjectBuilder();
+            JsonObjectBuilder infos = JsonFactory.createObjectBuilder();
             if (Boolean.TRUE.toString().equals(RestUtil.getContextManager().getProperty("security.inituser.claims"))) {
                 addInfo(claims, infos);
             } else {
@@ -0,0 +1,333 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+
+package ch.inser.rest.oidc.auth;
+
+import java.io.IOException;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.security.Key;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jose4j.jwk.JsonWebKey;
+import org.jose4j.jwk.JsonWebKeySet;
+import org.jose4j.jwk.VerificationJwkSelector;
+import org.jose4j.jws.JsonWebSignature;
+import org.jose4j.jwx.JsonWebStructure;
+import org.jose4j.keys.resolvers.VerificationKeyResolver;
+import org.jose4j.lang.JoseException;
+import org.jose4j.lang.UnresolvableKeyException;
+
+/**
+ * Resolves the verification keys of the OIDC tokens from the JSON Web Key Set published by the identity provider.
+ * <p>
+ * One resolver is shared by the whole process for each certificate url. The key set is loaded once, then refreshed in the
+ * background before it gets stale, so that the validation of a token never waits for the identity provider. A token signed
+ * with an unknown key id (key rotation) triggers an immediate refresh, at most once per minimum refresh interval: a flood of
+ * tokens with unknown key ids cannot hammer the identity provider. While the first load fails, it is retried at most once per
+ * minimum refresh interval and the tokens arriving meanwhile are rejected without waiting for the identity provider.
+ * <p>
+ * The background refresh stops with {@link #close()}. {@link #closeAll()}, when the application stops, also stops the refresh
+ * thread, which is started again by the next resolver with a background refresh.
+ *
+ * @author INSER SA *
+ */
+public class JwksKeyResolver implements VerificationKeyResolver, AutoCloseable {
+
+    /** Définition de catégorie de logging */
+    private static final Log logger = LogFactory.getLog(JwksKeyResolver.class);
+
+    /** Default interval in milliseconds between two background refreshes of the key set */
+    public static final long DEFAULT_REFRESH_INTERVAL = 3600000;
+
+    /** Default minimum interval in milliseconds between two refreshes triggered by unknown key ids */
+    public static final long DEFAULT_MIN_REFRESH_INTERVAL = 30000;
+
+    /** Timeout of the requests to the identity provider */
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    /** Resolvers by certificate url */
+    private static final Map<String, JwksKeyResolver> cResolvers = new ConcurrentHashMap<>();
+
+    /** Background refresh of the key sets, <code>null</code> until the first resolver with a background refresh */
+    private static ScheduledExecutorService cScheduler;
+
+    /** Http client, thread safe */
+    private static final HttpClient cHttpClient = HttpClient.newBuilder().connectTimeout(TIMEOUT)
+            .followRedirects(HttpClient.Redirect.NORMAL).proxy(ProxySelector.getDefault()).build();
+
+    /** Url of the key set */
+    private final String iCertUrl;
+
+    /** Minimum interval in milliseconds between two refreshes triggered by unknown key ids */
+    private final long iMinRefreshInterval;
+
+    /** Current keys */
+    private volatile List<JsonWebKey> iKeys = Collections.emptyList();
+
+    /** Time of the last successful or failed refresh in milliseconds */
+    private volatile long iLastRefresh;
+
+    /** The key set has been loaded at least once */
+    private volatile boolean iLoaded;
+
+    /** Time of the last failed first load in milliseconds, 0 if none */
+    private volatile long iLoadFailedAt;
+
+    /** Scheduled background refresh, <code>null</code> if disabled */
+    private final ScheduledFuture<?> iRefreshTask;
+
+    /**
+     * Creates a resolver with its own key set. Use {@link #getResolver(String, long, long)} to share the key set in the process.
+     *
+     * @param aCertUrl
+     *            url of the key set
+     * @param aRefreshInterval
+     *            interval in milliseconds between two background refreshes, 0 to disable the background refresh
+     * @param aMinRefreshInterval
+     *            minimum interval in milliseconds between two refreshes triggered by unknown key ids
+     */
+    public JwksKeyResolver(String aCertUrl, long aRefreshInterval, long aMinRefreshInterval) {
+        iCertUrl = aCertUrl;
+        iMinRefreshInterval = aMinRefreshInterval;
+        if (aRefreshInterval > 0) {
+            iRefreshTask = getScheduler().scheduleWithFixedDelay(this::refreshInBackground, aRefreshInterval, aRefreshInterval,
+                    TimeUnit.MILLISECONDS);
+        } else {
+            iRefreshTask = null;
+        }
+    }
+
+    /**
+     * Returns the resolver shared in the process for the url, it is created the first time with the given intervals.
+     *
+     * @param aCertUrl
+     *            url of the key set
+     * @param aRefreshInterval
+     *            interval in milliseconds between two background refreshes
+     * @param aMinRefreshInterval
+     *            minimum interval in milliseconds between two refreshes triggered by unknown key ids
+     * @return the resolver
+     */
+    public static JwksKeyResolver getResolver(String aCertUrl, long aRefreshInterval, long aMinRefreshInterval) {
+        return cResolvers.computeIfAbsent(aCertUrl, url -> new JwksKeyResolver(url, aRefreshInterval, aMinRefreshInterval));
+    }
+
+    /**
+     *
+     * @return the scheduler of the background refreshes, created the first time
+     */
+    private static synchronized ScheduledExecutorService getScheduler() {
+        if (cScheduler == null) {
+            cScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "is-rest-jwks-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return cScheduler;
+    }
+
+    /**
+     * Stops the background refresh of all the shared resolvers and its thread, when the application stops.
+     */
+    public static void closeAll() {
+        for (JwksKeyResolver resolver : cResolvers.values()) {
+            resolver.close();
+        }
+        synchronized (JwksKeyResolver.class) {
+            if (cScheduler != null) {
+                cScheduler.shutdownNow();
+                cScheduler = null;
+            }
+        }
+    }
+
+    /**
+     *
+     * @return <code>true</code> if the thread of the background refreshes is running
+     */
+    static synchronized boolean isSchedulerRunning() {
+        return cScheduler != null;
+    }
+
+    /**
+     * Stops the background refresh, the current keys remain usable. A shared resolver is removed from the process.
+     */
+    @Override
+    public void close() {
+        if (iRefreshTask != null) {
+            iRefreshTask.cancel(false);
+        }
+        cResolvers.remove(iCertUrl, this);
+    }
+
+    /**
+     *
+     * @return <code>true</code> if the background refresh is stopped or disabled
+     */
+    public boolean isClosed() {
+        return iRefreshTask == null || iRefreshTask.isCancelled();
+    }
+
+    @Override
+    public Key resolveKey(JsonWebSignature aJws, List<JsonWebStructure> aNestingContext) throws UnresolvableKeyException {
+        if (!iLoaded) {
+            load();
+        }
+        JsonWebKey key = select(aJws);
+        if (key == null && refreshOnDemand()) {
+            key = select(aJws);
+        }
+        if (key == null) {
+            throw new UnresolvableKeyException("No key found for the token, kid: " + aJws.getKeyIdHeaderValue() + ", url: " + iCertUrl);
+        }
+        return key.getKey();
+    }
+
+    /**
+     *
+     * @return the current keys
+     */
+    public List<JsonWebKey> getKeys() {
+        return iKeys;
+    }
+
+    /**
+     * Selects the key of the signature among the current keys.
+     *
+     * @param aJws
+     *            the signature
+     * @return the key, <code>null</code> if not found
+     * @throws UnresolvableKeyException
+     *             the signature header is invalid
+     */
+    private JsonWebKey select(JsonWebSignature aJws) throws UnresolvableKeyException {
+        try {
+            return new VerificationJwkSelector().select(aJws, iKeys);
+        } catch (JoseException e) {
+            throw new UnresolvableKeyException("Unable to select a key for the token, url: " + iCertUrl, e);
+        }
+    }
+
+    /**
+     * Loads the key set the first time, the threads arriving meanwhile wait for the same load. After a failed load, the load is
+     * not attempted again within the minimum refresh interval.
+     *
+     * @throws UnresolvableKeyException
+     *             the key set cannot be loaded
+     */
+    private void load() throws UnresolvableKeyException {
+        checkBackOff();
+        synchronized (this) {
+            if (iLoaded) {
+                return;
+            }
+            // Failed meanwhile by the thread holding the lock
+            checkBackOff();
+            try {
+                refresh();
+            } catch (IOException | JoseException e) {
+                iLoadFailedAt = System.currentTimeMillis();
+                throw new UnresolvableKeyException("Unable to load the key set: " + iCertUrl, e);
+            }
+        }
+    }
+
+    /**
+     * Fails fast while the key set is not loaded and the last load failed within the minimum refresh interval.
+     *
+     * @throws UnresolvableKeyException
+     *             the last load failed recently
+     */
+    private void checkBackOff() throws UnresolvableKeyException {
+        long failedAt = iLoadFailedAt;
+        if (!iLoaded && failedAt > 0 && System.currentTimeMillis() - failedAt < iMinRefreshInterval) {
+            throw new UnresolvableKeyException("Key set not available, next load attempt after "
+                    + (failedAt + iMinRefreshInterval - System.currentTimeMillis()) + " ms: " + iCertUrl);
+        }
+    }
+
+    /**
+     * Refreshes the key set for an unknown key id, unless it has been refreshed within the minimum refresh interval.
+     *
+     * @return <code>true</code> if the keys may have changed since the selection
+     */
+    private synchronized boolean refreshOnDemand() {
+        long now = System.currentTimeMillis();
+        if (now - iLastRefresh < iMinRefreshInterval) {
+            return false;
+        }
+        try {
+            refresh();
+        } catch (IOException | JoseException e) {
+            logger.warn("Unable to refresh the key set: " + iCertUrl, e);
+        }
+        return true;
+    }
+
+    /**
+     * Scheduled refresh, the current keys are kept if the identity provider is not available.
+     */
+    private void refreshInBackground() {
+        try {
+            synchronized (this) {
+                refresh();
+            }
+        } catch (IOException | JoseException | RuntimeException e) {
+            logger.warn("Unable to refresh the key set: " + iCertUrl, e);
+        }
+    }
+
+    /**
+     * Downloads the key set.
+     *
+     * @throws IOException
+     *             error downloading the key set
+     * @throws JoseException
+     *             the key set is invalid
+     */
+    private void refresh() throws IOException, JoseException {
+        iLastRefresh = System.currentTimeMillis();
+        HttpRequest request = HttpRequest.newBuilder(URI.create(iCertUrl)).timeout(TIMEOUT).header("Accept", "application/json").GET()
+                .build();
+        HttpResponse<String> response;
+        try {
+            response = cHttpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted loading the key set: " + iCertUrl, e);
+        }
+        if (response.statusCode() != 200) {
+            throw new IOException("Unexpected status loading the key set: " + iCertUrl + ", status: " + response.statusCode());
+        }
+        iKeys = Collections.unmodifiableList(new JsonWebKeySet(response.body()).getJsonWebKeys());
+        iLoaded = true;
+        logger.debug("Key set loaded: " + iCertUrl + ", keys: " + iKeys.size());
+    }
+}
@@ -15,17 +15,22 @@
 
 package ch.inser.rest.oidc.auth;
 
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 import javax.cache.Cache;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.jose4j.jwa.AlgorithmConstraints.ConstraintType;
-import org.jose4j.jwk.HttpsJwks;
 import org.jose4j.jws.AlgorithmIdentifiers;
 import org.jose4j.jwt.JwtClaims;
+import org.jose4j.jwt.MalformedClaimException;
+import org.jose4j.jwt.NumericDate;
 import org.jose4j.jwt.consumer.InvalidJwtException;
+import org.jose4j.jwt.consumer.JwtConsumer;
 import org.jose4j.jwt.consumer.JwtConsumerBuilder;
-import org.jose4j.keys.resolvers.HttpsJwksVerificationKeyResolver;
 
 import ch.inser.dynamic.common.IContextManager;
 import ch.inser.dynamic.common.IDAOResult;
@@ -33,6 +38,8 @@ import ch.inser.dynamic.common.ILoggedUser;
 import ch.inser.dynaplus.auth.SuperUser;
 import ch.inser.jsl.exceptions.ISException;
 import ch.inser.rest.auth.ISSecurityException;
+import ch.inser.rest.auth.LoggedUserCache;
+import ch.inser.rest.auth.SessionRegistry;
 import ch.inser.rest.core.IBPDelegate;
 import ch.inser.rest.util.JsonUtil;
 import ch.inser.rest.util.ServiceLocator;
@@ -63,10 +70,48 @@ public class SecurityGenericImplOIDC implements ISecurityImplOIDC {
      */
     private static final String SECURITY_AUTHORIZED_PARTY = "security.authorized.party";
 
+    /**
+     * The property key name for the interval in milliseconds between two background refreshes of the key set of the certificate url
+     */
+    private static final String SECURITY_TOKEN_CERT_REFRESH = "security.token.cert.refresh";
+
+    /**
+     * The property key name for the minimum interval in milliseconds between two refreshes of the key set triggered by tokens with an
+     * unknown key id
+     */
+    private static final String SECURITY_TOKEN_CERT_REFRESH_MIN = "security.token.cert.refresh.min";
+
+    /**
+     * Token consumers by certificate url, audience and authorized party, shared by the whole process
+     */
+    private static final Map<String, JwtConsumer> cConsumers = new ConcurrentHashMap<>();
+
     @Override
     public JwtClaims validateOIDCToken(String token, IContextManager aContextManager) throws ISSecurityException {
-        return validateOIDCToken(token, aContextManager.getProperty(SECURITY_TOKEN_CERT_URL),
-                aContextManager.getProperty(SECURITY_AUDIENCE), aContextManager.getProperty(SECURITY_AUTHORIZED_PARTY));
+        String certUrl = aContextManager.getProperty(SECURITY_TOKEN_CERT_URL);
+        if (certUrl != null) {
+            // Shared resolver created with the configured intervals, before the consumer uses it with the default ones
+            JwksKeyResolver.getResolver(certUrl,
+                    getInterval(aContextManager, SECURITY_TOKEN_CERT_REFRESH, JwksKeyResolver.DEFAULT_REFRESH_INTERVAL),
+                    getInterval(aContextManager, SECURITY_TOKEN_CERT_REFRESH_MIN, JwksKeyResolver.DEFAULT_MIN_REFRESH_INTERVAL));
+        }
+        return validateOIDCToken(token, certUrl, aContextManager.getProperty(SECURITY_AUDIENCE),
+                aContextManager.getProperty(SECURITY_AUTHORIZED_PARTY));
+    }
+
+    /**
+     *
+     * @param aContextManager
+     *            context manager
+     * @param aProperty
+     *            property key name
+     * @param aDefault
+     *            default value
+     * @return the interval in milliseconds
+     */
+    private static long getInterval(IContextManager aContextManager, String aProperty, long aDefault) {
+        String value = aContextManager.getProperty(aProperty);
+        return value != null ? Long.parseLong(value) : aDefault;
     }
 
     @Override
@@ -78,11 +123,27 @@ public class SecurityGenericImplOIDC implements ISecurityImplOIDC {
         JsonObject claimsJSON = JsonUtil.stringToJsonObject(aClaims.getRawJson());
         String username = !claimsJSON.isEmpty() ? claimsJSON.getString("preferred_username") : null;
         if (username != null && "true".equals(aServiceLocator.getContextManager().getProperty(SECURITY_SESSION_CONTROL))) {
-            validateUserSession(username, aServiceLocator);
+            validateUserSession(username, getIssuedAt(aClaims), aServiceLocator);
         }
         return getLoggedUser(username, claimsJSON, aServiceLocator);
     }
 
+    /**
+     *
+     * @param aClaims
+     *            OIDC claims
+     * @return date d'émission du token, <code>null</code> si absente
+     */
+    private static Date getIssuedAt(JwtClaims aClaims) {
+        try {
+            NumericDate issuedAt = aClaims.getIssuedAt();
+            return issuedAt != null ? new Date(issuedAt.getValueInMillis()) : null;
+        } catch (MalformedClaimException e) {
+            logger.debug("Invalid iat claim", e);
+            return null;
+        }
+    }
+
     /**
      *
      * @param aUsername
@@ -104,15 +165,13 @@ public class SecurityGenericImplOIDC implements ISecurityImplOIDC {
             initData = aClaims;
         }
         if ("true".equals(contextManager.getProperty(SECURITY_USER_CACHE))) {
-            Cache<String, ILoggedUser> cache = contextManager.getCacheManager().getCache("userCache", String.class, ILoggedUser.class);
-
-            if (!cache.containsKey(aUsername)) {
-
-                ILoggedUser user = (ILoggedUser) ((IBPDelegate) aServiceLocator.getLocator("bp").getService("LoggedUser"))
-                        .executeMethode("initLoggedUser", initData, new SuperUser());
-                cache.put(aUsername, user);
-            }
-            return cache.get(aUsername);
+            Cache<String, ILoggedUser> cache = contextManager.getCacheManager().getCache(LoggedUserCache.USER_CACHE, String.class,
+                    ILoggedUser.class);
+            Object data = initData;
+            return LoggedUserCache.getInstance(LoggedUserCache.USER_CACHE).get(cache, aUsername,
+                    LoggedUserCache.getRefreshAfter(contextManager),
+                    () -> (ILoggedUser) ((IBPDelegate) aServiceLocator.getLocator("bp").getService("LoggedUser"))
+                            .executeMethode("initLoggedUser", data, new SuperUser()));
         }
 
         // -- Retour de l'utilisateur si configuration sans cache
@@ -121,43 +180,36 @@ public class SecurityGenericImplOIDC implements ISecurityImplOIDC {
     }
 
     /**
-     * Vérifie que l'utilisateur a une session en cours dans la base de données: le timestamp logout est null
+     * Vérifie que l'utilisateur a une session en cours dans la base de données: le timestamp logout est null. Une session valide
+     * est gardée en mémoire pendant <code>security.session.cache.ttl</code> millisecondes, une session révoquée par le logout est
+     * refusée sans consulter la base de données.
      *
      * @param aUsername
      *            nom d'utilisateur
+     * @param aIssuedAt
+     *            date d'émission du token, <code>null</code> si inconnue
      * @param aServiceLocator
      *            servicelocator avec accès à BP
      * @throws ISException
      *             erreur de consultation de table user
      */
-    private void validateUserSession(String aUsername, ServiceLocator aServiceLocator) throws ISException {
-        IDAOResult result = (IDAOResult) ((IBPDelegate) aServiceLocator.getLocator("bp").getService("LoggedUser"))
-                .executeMethode("validateSession", aUsername, new SuperUser());
-        if (!result.isStatusOK()) {
-            throw new ISSecurityException("User is not logged in: " + aUsername, null);
-        }
+    private void validateUserSession(String aUsername, Date aIssuedAt, ServiceLocator aServiceLocator) throws ISException {
+        SessionRegistry.getInstance().validate(aUsername, aIssuedAt, SessionRegistry.getTtl(aServiceLocator.getContextManager()),
+                () -> ((IDAOResult) ((IBPDelegate) aServiceLocator.getLocator("bp").getService("LoggedUser"))
+                        .executeMethode("validateSession", aUsername, new SuperUser())).isStatusOK());
     }
 
     @Override
     public JwtClaims validateOIDCToken(String aToken, String aCertUrl, String aAudience, String aAzp) throws ISSecurityException {
 
-        HttpsJwks httpsJkws = new HttpsJwks(aCertUrl);
-        HttpsJwksVerificationKeyResolver httpsJwksKeyResolver = new HttpsJwksVerificationKeyResolver(httpsJkws);
-        // Create the consumer that will process the JWT
-        JwtConsumerBuilder jwtConsumer = new JwtConsumerBuilder().setRequireExpirationTime()
-                .setJwsAlgorithmConstraints(ConstraintType.PERMIT, AlgorithmIdentifiers.RSA_USING_SHA256)
-                .setVerificationKeyResolver(httpsJwksKeyResolver);
-        if (aAudience != null && !aAudience.isBlank()) {
-            jwtConsumer.setExpectedAudience(aAudience);
-        } else if (aAzp != null && !aAzp.isBlank()) {
-            jwtConsumer.setSkipDefaultAudienceValidation();
-            jwtConsumer.registerValidator(new AzpValidator(aAzp));
+        if (aCertUrl == null) {
+            throw new ISSecurityException("The certificate url is not configured", null);
         }
 
         // JWT token parsing
         JwtClaims jwtClaims;
         try {
-            jwtClaims = jwtConsumer.build().processToClaims(aToken);
+            jwtClaims = getConsumer(aCertUrl, aAudience, aAzp).processToClaims(aToken);
             logger.debug("JWT validation succeeded! " + jwtClaims);
             return jwtClaims;
 
@@ -166,4 +218,42 @@ public class SecurityGenericImplOIDC implements ISecurityImplOIDC {
         }
     }
 
+    /**
+     * Returns the consumer of the tokens for the certificate url, audience and authorized party. The consumers are built once and
+     * share the key set of their certificate url.
+     *
+     * @param aCertUrl
+     *            url of the key set
+     * @param aAudience
+     *            expected audience
+     * @param aAzp
+     *            expected authorized party, used if no audience is given
+     * @return the consumer, thread safe
+     */
+    private static JwtConsumer getConsumer(String aCertUrl, String aAudience, String aAzp) {
+        return cConsumers.computeIfAbsent(aCertUrl + '|' + aAudience + '|' + aAzp, key -> {
+            // Create the consumer that will process the JWT
+            JwtConsumerBuilder jwtConsumer = new JwtConsumerBuilder().setRequireExpirationTime()
+                    .setJwsAlgorithmConstraints(ConstraintType.PERMIT, AlgorithmIdentifiers.RSA_USING_SHA256)
+                    .setVerificationKeyResolver(JwksKeyResolver.getResolver(aCertUrl, JwksKeyResolver.DEFAULT_REFRESH_INTERVAL,
+                            JwksKeyResolver.DEFAULT_MIN_REFRESH_INTERVAL));
+            if (aAudience != null && !aAudience.isBlank()) {
+                jwtConsumer.setExpectedAudience(aAudience);
+            } else if (aAzp != null && !aAzp.isBlank()) {
+                jwtConsumer.setSkipDefaultAudienceValidation();
+                jwtConsumer.registerValidator(new AzpValidator(aAzp));
+            }
+            return jwtConsumer.build();
+        });
+    }
+
+    /**
+     * Forgets the consumers and closes the shared key resolvers they use, when the application stops. The next validation builds
+     * a new consumer with a new resolver.
+     */
+    public static void closeAll() {
+        cConsumers.clear();
+        JwksKeyResolver.closeAll();
+    }
+
 }
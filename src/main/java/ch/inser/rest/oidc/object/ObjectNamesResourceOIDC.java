@@ -29,11 +29,14 @@ import ch.inser.dynamic.common.IValueObject;
 import ch.inser.dynamic.util.VOInfo;
 import ch.inser.dynaplus.format.IFormatEngine.Format;
 import ch.inser.jsl.exceptions.ISException;
+import ch.inser.rest.annotation.CachePolicy;
 import ch.inser.rest.auth.ISSecurityException;
 import ch.inser.rest.core.AbstractObjectNamesResource;
-import ch.inser.rest.oidc.auth.SecurityUtilOIDC;
 import ch.inser.rest.services.object.ObjectNamesResource;
 import ch.inser.rest.util.Constants.Verb;
+import ch.inser.rest.util.EntityTags;
+import ch.inser.rest.util.FieldProjection;
+import ch.inser.rest.util.JsonFactory;
 import ch.inser.rest.util.JsonVoUtil;
 import ch.inser.rest.util.RestUtil;
 
@@ -42,10 +45,10 @@ import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
-import jakarta.json.Json;
 import jakarta.json.JsonArray;
 import jakarta.json.JsonArrayBuilder;
 import jakarta.json.JsonObjectBuilder;
+import jakarta.json.JsonValue;
 import jakarta.servlet.ServletContext;
 import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.FormParam;
@@ -57,6 +60,7 @@ import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.Response.Status;
@@ -104,13 +108,17 @@ public class ObjectNamesResourceOIDC extends AbstractObjectNamesResource {
      * @param aFieldname
      *            nom du champ pour recevoir une liste de valeurs au lieu d'enregistrements
      * @param aFormat
-     *            format de output, ex. "csv". Par défaut json.
+     *            format de output, ex. "csv", "table" (colonnes et lignes). Par défaut json.
      * @param aLang
      *            Language of the formatted list
      * @param aFields
-     *            noms de champs à inclure dans le résultat (csv)
+     *            noms de champs à inclure dans le résultat (csv et json)
      * @param aLabelKeys
      *            les clés pour les entêtes du résultat (csv)
+     * @param aExclude
+     *            noms de champs à exclure du résultat (json)
+     * @param aIfNoneMatch
+     *            ETags des versions de la liste connues du client (json.list.etag)
      *
      *
      * @return la liste des objets métier recherchés pour un objectname donné
@@ -123,16 +131,19 @@ public class ObjectNamesResourceOIDC extends AbstractObjectNamesResource {
     })
     @GET
     @Produces(MediaType.APPLICATION_JSON)
+    @CachePolicy(CachePolicy.PRIVATE_REVALIDATE)
     public Response getList(@ApiParam(value = "Security token", required = true) @HeaderParam("Authorization") String aAuthorization,
             @ApiParam(value = "Filter criteria as an expression json", required = false) @QueryParam("query") String aQuery,
             @ApiParam(value = "Names of fields for ascending sorting", required = false) @QueryParam("sort") String aSortFields,
             @ApiParam(value = "Names of fields for descending sorting", required = false) @QueryParam("desc") String aDescFields,
             @ApiParam(value = "Request a partial result. Ex. range=1-10", required = false) @QueryParam("range") String aRange,
             @ApiParam(value = "Request not the whole records, but only one field", required = false) @QueryParam("fieldname") String aFieldname,
-            @ApiParam(value = "Format, ex. 'csv'. By default json.", required = false) @QueryParam("format") String aFormat,
+            @ApiParam(value = "Format, ex. 'csv' or 'table'. By default json.", required = false) @QueryParam("format") String aFormat,
             @ApiParam(value = "Language of the formatted list", required = false) @QueryParam("language") String aLang,
             @ApiParam(value = "Names of fields to include in the result", required = false) @QueryParam("fields") String aFields,
-            @ApiParam(value = "Names of label keys for column headers", required = false) @QueryParam("labelkeys") String aLabelKeys) {
+            @ApiParam(value = "Names of label keys for column headers", required = false) @QueryParam("labelkeys") String aLabelKeys,
+            @ApiParam(value = "Names of fields to exclude from the json result", required = false) @QueryParam("exclude") String aExclude,
+            @ApiParam(value = "ETags of the list known by the client", required = false) @HeaderParam(HttpHeaders.IF_NONE_MATCH) String aIfNoneMatch) {
 
         try {
             logger.debug("GET - ObjectName : " + iObjectName + ", query : " + aQuery + ", sort : " + aSortFields + ", desc : " + aDescFields
@@ -142,8 +153,7 @@ public class ObjectNamesResourceOIDC extends AbstractObjectNamesResource {
             }
 
             // -- Contrôle si paramètre présent
-            JwtClaims claims = SecurityUtilOIDC.validateOIDCToken(RestUtil.parseAuthorization(aAuthorization),
-                    RestUtil.getContextManager());
+            JwtClaims claims = RestUtil.getClaimsOIDC(RestUtil.parseAuthorization(aAuthorization));
             RestUtil.addToNdc(claims);
             if (claims == null || iObjectName == null || !RestUtil.isResource(iObjectName)) {
                 return Response.status(Status.BAD_REQUEST).build();
@@ -161,29 +171,44 @@ public class ObjectNamesResourceOIDC extends AbstractObjectNamesResource {
                         setCSVParameters(setSearchParameters(aSortFields, aDescFields, aRange), aFields, aLabelKeys, aLang));
             }
 
+            // Attributs des enregistrements json
+            FieldProjection projection = FieldProjection.of(aFields, aExclude);
+
             if (aFieldname != null) {
                 return getFieldsRequest(jsonToVo(aQuery), aFieldname, loggedUser, null,
                         setSearchParameters(aSortFields, aDescFields, aRange));
             }
 
+            // Une liste dont les objets métier n'ont pas changé depuis la requête du client n'est pas relue
+            String tag = null;
+            if (isListTag()) {
+                tag = getListTag(loggedUser, aQuery, aSortFields, aDescFields, aRange, aFormat, aFields, aExclude);
+                if (EntityTags.matches(aIfNoneMatch, tag)) {
+                    return EntityTags.notModified(tag);
+                }
+            }
+
             // Get the list
             List<IValueObject> list = getList(jsonToVo(aQuery), loggedUser, setSearchParameters(aSortFields, aDescFields, aRange))
                     .getListObject();
 
             // Build the response
+            if (FORMAT_TABLE.equalsIgnoreCase(aFormat)) {
+                return withTag(getTableListResponse(list, projection, JsonValue.EMPTY_JSON_OBJECT), tag);
+            }
             List<Object> idlist = new ArrayList<>();
             for (IValueObject rec : list) {
                 idlist.add(rec.getId());
             }
-            JsonArray records = vosToJson(list);
-            JsonArrayBuilder ids = Json.createArrayBuilder();
+            JsonArray records = vosToJson(list, projection);
+            JsonArrayBuilder ids = JsonFactory.createArrayBuilder();
             for (Object id : idlist) {
                 ids.add((Long) id);
             }
-            JsonObjectBuilder json = Json.createObjectBuilder();
+            JsonObjectBuilder json = JsonFactory.createObjectBuilder();
             json.add("records", records);
             json.add("ids", ids.build());
-            return Response.ok(json.build().toString()).build();
+            return withTag(Response.ok(json.build().toString()).build(), tag);
         } catch (ISSecurityException e) {
             logger.warn("Le token est invalid", e);
             return Response.status(Status.UNAUTHORIZED).build();
@@ -195,6 +220,42 @@ public class ObjectNamesResourceOIDC extends AbstractObjectNamesResource {
         }
     }
 
+    /**
+     * Recherche des objets métier
+     *
+     * Sans exclusion de champs ni ETag du client.
+     *
+     * @param aAuthorization
+     *            token de sécurité OIDC: Authorization: "Bearer <token>"
+     *
+     * @param aQuery
+     *            expression json avec les critères de recherche
+     * @param aSortFields
+     *            tri ascending sur les champs donnés
+     * @param aDescFields
+     *            tri descending sur les champs donnés
+     * @param aRange
+     *            trance a retourner
+     * @param aFieldname
+     *            nom du champ pour recevoir une liste de valeurs au lieu d'enregistrements
+     * @param aFormat
+     *            format de output, ex. "csv". Par défaut json.
+     * @param aLang
+     *            Language of the formatted list
+     * @param aFields
+     *            noms de champs à inclure dans le résultat (csv)
+     * @param aLabelKeys
+     *            les clés pour les entêtes du résultat (csv)
+     *
+     *
+     * @return la liste des objets métier recherchés pour un objectname donné
+     */
+    public Response getList(String aAuthorization, String aQuery, String aSortFields, String aDescFields, String aRange,
+            String aFieldname, String aFormat, String aLang, String aFields, String aLabelKeys) {
+        return getList(aAuthorization, aQuery, aSortFields, aDescFields, aRange, aFieldname, aFormat, aLang, aFields, aLabelKeys,
+                null, null);
+    }
+
     /**
      * COnversion from list of ValueObjects to Json array. Possible to customize
      *
@@ -208,6 +269,25 @@ public class ObjectNamesResourceOIDC extends AbstractObjectNamesResource {
         return JsonVoUtil.vosToJson(aList);
     }
 
+    /**
+     * Conversion from list of ValueObjects to Json array with the selected fields only. Without selection the conversion is
+     * {@link #vosToJson(List)}
+     *
+     * @param aList
+     *            vo list
+     * @param aProjection
+     *            fields to write, <code>null</code> for all
+     * @return JsonArray with vo items
+     * @throws ISException
+     *             conversion error
+     */
+    protected JsonArray vosToJson(List<IValueObject> aList, FieldProjection aProjection) throws ISException {
+        if (aProjection == null) {
+            return vosToJson(aList);
+        }
+        return JsonVoUtil.vosToJson(aList, aProjection);
+    }
+
     /**
      * Compte le nombre d'objets métier pour un nom donné
      *
@@ -236,8 +316,7 @@ public class ObjectNamesResourceOIDC extends AbstractObjectNamesResource {
             logger.debug("COUNT - ObjectName : " + iObjectName + ",query : " + aQuery);
 
             // -- Contrôle si paramètre présent
-            JwtClaims claims = SecurityUtilOIDC.validateOIDCToken(RestUtil.parseAuthorization(aAuthorization),
-                    RestUtil.getContextManager());
+            JwtClaims claims = RestUtil.getClaimsOIDC(RestUtil.parseAuthorization(aAuthorization));
             RestUtil.addToNdc(claims);
             if (claims == null || iObjectName == null || !RestUtil.isResource(iObjectName)) {
                 return Response.status(Status.BAD_REQUEST).build();
@@ -255,7 +334,7 @@ public class ObjectNamesResourceOIDC extends AbstractObjectNamesResource {
             logger.debug("COUNT RESULT - ObjectName : " + iObjectName + ",query : " + aQuery + ",count : " + nb);
 
             // Build the response
-            JsonObjectBuilder json = Json.createObjectBuilder().add("count", nb);
+            JsonObjectBuilder json = JsonFactory.createObjectBuilder().add("count", nb);
             return Response.ok(json.build().toString()).build();
         } catch (ISSecurityException e) {
             logger.warn("Invalid token", e);
@@ -298,8 +377,7 @@ public class ObjectNamesResourceOIDC extends AbstractObjectNamesResource {
         try {
 
             // -- Contrôle si paramètre présent
-            JwtClaims claims = SecurityUtilOIDC.validateOIDCToken(RestUtil.parseAuthorization(aAuthorization),
-                    RestUtil.getContextManager());
+            JwtClaims claims = RestUtil.getClaimsOIDC(RestUtil.parseAuthorization(aAuthorization));
             RestUtil.addToNdc(claims);
             if (claims == null || iObjectName == null || !RestUtil.isResource(iObjectName) || aRecords == null && aDeletes == null) {
                 return Response.status(Status.BAD_REQUEST).build();
@@ -346,7 +424,7 @@ public class ObjectNamesResourceOIDC extends AbstractObjectNamesResource {
             }
 
             // Build the response
-            JsonObjectBuilder json = Json.createObjectBuilder().add("nbr", result.getNbrRecords());
+            JsonObjectBuilder json = JsonFactory.createObjectBuilder().add("nbr", result.getNbrRecords());
 
             return Response.status(Status.OK).entity(json.build().toString()).build();
         } catch (ISSecurityException e) {
@@ -412,8 +490,7 @@ public class ObjectNamesResourceOIDC extends AbstractObjectNamesResource {
             logger.debug("POST - Records : " + aRecord);
 
             // Contrôle de token et autres paramètres présents
-            JwtClaims claims = SecurityUtilOIDC.validateOIDCToken(RestUtil.parseAuthorization(aAuthorization),
-                    RestUtil.getContextManager());
+            JwtClaims claims = RestUtil.getClaimsOIDC(RestUtil.parseAuthorization(aAuthorization));
             RestUtil.addToNdc(claims);
             if (claims == null || aRecord == null || iObjectName == null || !RestUtil.isResource(iObjectName)) {
                 return Response.status(Status.BAD_REQUEST).build();
@@ -443,7 +520,7 @@ public class ObjectNamesResourceOIDC extends AbstractObjectNamesResource {
             }
 
             // Build the response
-            JsonObjectBuilder json = Json.createObjectBuilder();
+            JsonObjectBuilder json = JsonFactory.createObjectBuilder();
             if (result.getValueObject() != null) {
                 json.add("record", voToJson(result.getValueObject(), Boolean.TRUE.toString(), loggedUser)).add("id", (Long) result.getId());
             }
@@ -23,12 +23,13 @@ import ch.inser.dynamic.common.IDAOResult;
 import ch.inser.dynamic.common.ILoggedUser;
 import ch.inser.dynamic.common.IValueObject;
 import ch.inser.jsl.exceptions.ISException;
+import ch.inser.rest.annotation.CachePolicy;
 import ch.inser.rest.annotation.PATCH;
 import ch.inser.rest.auth.ISSecurityException;
 import ch.inser.rest.core.AbstractObjectResource;
-import ch.inser.rest.oidc.auth.SecurityUtilOIDC;
 import ch.inser.rest.util.Constants;
 import ch.inser.rest.util.Constants.Verb;
+import ch.inser.rest.util.JsonFactory;
 import ch.inser.rest.util.RestUtil;
 
 import io.swagger.annotations.Api;
@@ -36,7 +37,6 @@ import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
-import jakarta.json.Json;
 import jakarta.json.JsonObject;
 import jakarta.json.JsonObjectBuilder;
 import jakarta.servlet.ServletContext;
@@ -46,6 +46,7 @@ import jakarta.ws.rs.GET;
 import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.PUT;
 import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.Response.Status;
@@ -97,7 +98,13 @@ public class ObjectResourceOIDC extends AbstractObjectResource {
      *            format, ex. pdf. by default json
      * @param aLang
      *            Language if format pdf, by default german
-     * @return enregistrement de type {objectname} et avec id {id}
+     * @param aFields
+     *            Names of the fields in the json record, by default all
+     * @param aExclude
+     *            Names of the fields to exclude from the json record
+     * @param aIfNoneMatch
+     *            ETags of the versions of the record known by the client
+     * @return enregistrement de type {objectname} et avec id {id}, 304 si le client a déjà cette version
      */
     @ApiOperation(value = "Get business object by object name and id")
     @ApiResponses(value = { @ApiResponse(code = 200, message = "OK"),
@@ -106,17 +113,20 @@ public class ObjectResourceOIDC extends AbstractObjectResource {
             @ApiResponse(code = 403, message = "No access permission"), @ApiResponse(code = 404, message = "Business object not found"),
             @ApiResponse(code = 500, message = "Unexpected error while consulting record"), })
     @GET
+    @CachePolicy(CachePolicy.PRIVATE_REVALIDATE)
     public Response getRecord(@ApiParam(value = "Authorization", required = true) @HeaderParam("Authorization") String aAuthorization,
             @ApiParam(value = "Flag include children. By default true", required = false) @QueryParam("includeChildren") String aIncludeChildren,
             @ApiParam(value = "Data format of the record (pdf, json). By default json", required = false) @QueryParam("format") String aFormat,
-            @ApiParam(value = "Language as iso-lang-code (fr,it,de,ro). By default de", required = false) @QueryParam("lang") String aLang) {
+            @ApiParam(value = "Language as iso-lang-code (fr,it,de,ro). By default de", required = false) @QueryParam("lang") String aLang,
+            @ApiParam(value = "Names of fields to include in the json record", required = false) @QueryParam("fields") String aFields,
+            @ApiParam(value = "Names of fields to exclude from the json record", required = false) @QueryParam("exclude") String aExclude,
+            @ApiParam(value = "ETags of the record known by the client", required = false) @HeaderParam(HttpHeaders.IF_NONE_MATCH) String aIfNoneMatch) {
 
         try {
             logger.debug("GET - ObjectName : " + iObjectName + ", ID : " + iId);
 
             // -- Contrôle si paramètre présent
-            JwtClaims claims = SecurityUtilOIDC.validateOIDCToken(RestUtil.parseAuthorization(aAuthorization),
-                    RestUtil.getContextManager());
+            JwtClaims claims = RestUtil.getClaimsOIDC(RestUtil.parseAuthorization(aAuthorization));
             RestUtil.addToNdc(claims);
             if (claims == null || iId == null || "undefined".equals(iId) || iObjectName == null || !RestUtil.isResource(iObjectName)) {
                 logger.error("Erreur getRecord. Type: " + iObjectName + ", id:" + iId);
@@ -134,17 +144,7 @@ public class ObjectResourceOIDC extends AbstractObjectResource {
                 return getPDF(iId, aLang, loggedUser);
             }
 
-            // -- Get JSON object
-            IValueObject rec = getRecord(iId, loggedUser).getValueObject();
-            if (rec == null) {
-                return Response.status(Status.NOT_FOUND).build();
-            }
-
-            // Build the response
-            JsonObjectBuilder json = Json.createObjectBuilder();
-            json.add(Constants.RECORD, voToJson(rec, aIncludeChildren, loggedUser));
-
-            return Response.ok(json.build().toString()).build();
+            return getRecordResponse(loggedUser, aIncludeChildren, aFields, aExclude, aIfNoneMatch, true, null);
 
         } catch (ISSecurityException e) {
             logger.warn("Token invalide", e);
@@ -158,6 +158,25 @@ public class ObjectResourceOIDC extends AbstractObjectResource {
 
     }
 
+    /**
+     * Get a record
+     *
+     * Sans sélection des champs ni ETag du client.
+     *
+     * @param aAuthorization
+     *            token de sécurité OIDC: Authorization: "Bearer <token>"
+     * @param aIncludeChildren
+     *            Flag include children. By default true.
+     * @param aFormat
+     *            format, ex. pdf. by default json
+     * @param aLang
+     *            Language if format pdf, by default german
+     * @return enregistrement de type {objectname} et avec id {id}
+     */
+    public Response getRecord(String aAuthorization, String aIncludeChildren, String aFormat, String aLang) {
+        return getRecord(aAuthorization, aIncludeChildren, aFormat, aLang, null, null, null);
+    }
+
     /**
      * Met à jour l'enregistrement
      *
@@ -184,8 +203,7 @@ public class ObjectResourceOIDC extends AbstractObjectResource {
             logger.debug("PUT - ObjectName : " + iObjectName + ", aJsonRecord : " + aJsonRecord);
 
             // -- Contrôle si paramètre présent
-            JwtClaims claims = SecurityUtilOIDC.validateOIDCToken(RestUtil.parseAuthorization(aAuthorization),
-                    RestUtil.getContextManager());
+            JwtClaims claims = RestUtil.getClaimsOIDC(RestUtil.parseAuthorization(aAuthorization));
             RestUtil.addToNdc(claims);
             if (claims == null || aJsonRecord == null || "undefined".equals(iId) || iObjectName == null
                     || !RestUtil.isResource(iObjectName)) {
@@ -214,7 +232,7 @@ public class ObjectResourceOIDC extends AbstractObjectResource {
             }
 
             // Build the response
-            JsonObjectBuilder jsonB = Json.createObjectBuilder();
+            JsonObjectBuilder jsonB = JsonFactory.createObjectBuilder();
             if (result.getValueObject() != null) {
                 jsonB.add(Constants.RECORD, voToJson(result.getValueObject(), Boolean.TRUE.toString(), loggedUser));
             }
@@ -260,8 +278,7 @@ public class ObjectResourceOIDC extends AbstractObjectResource {
         try {
 
             // -- Contrôle si paramètre présent
-            JwtClaims claims = SecurityUtilOIDC.validateOIDCToken(RestUtil.parseAuthorization(aAuthorization),
-                    RestUtil.getContextManager());
+            JwtClaims claims = RestUtil.getClaimsOIDC(RestUtil.parseAuthorization(aAuthorization));
             RestUtil.addToNdc(claims);
             if (claims == null || aPatch == null || "undefined".equals(iId) || iObjectName == null || !RestUtil.isResource(iObjectName)) {
                 logger.error("Erreur patch. Type: " + iObjectName + ", id:" + iId);
@@ -286,7 +303,7 @@ public class ObjectResourceOIDC extends AbstractObjectResource {
             }
 
             // Build the response
-            JsonObjectBuilder jsonB = Json.createObjectBuilder();
+            JsonObjectBuilder jsonB = JsonFactory.createObjectBuilder();
             if (result.getValueObject() != null) {
                 jsonB.add(Constants.RECORD, voToJson(result.getValueObject(), Boolean.TRUE.toString(), loggedUser));
             }
@@ -330,8 +347,7 @@ public class ObjectResourceOIDC extends AbstractObjectResource {
             logger.debug("DELETE - ObjectName : " + iObjectName + ",aRecord : " + aRecord + ", Id: " + iId);
 
             // -- Contrôle si paramètre présent
-            JwtClaims claims = SecurityUtilOIDC.validateOIDCToken(RestUtil.parseAuthorization(aAuthorization),
-                    RestUtil.getContextManager());
+            JwtClaims claims = RestUtil.getClaimsOIDC(RestUtil.parseAuthorization(aAuthorization));
             if (claims == null || aRecord == null || "undefined".equals(iId) || iObjectName == null || !RestUtil.isResource(iObjectName)) {
                 return Response.status(Status.BAD_REQUEST).build();
             }
@@ -51,6 +51,9 @@ import jakarta.ws.rs.container.ContainerRequestFilter;
  *
  *
  * and set the logger in the logging config.
+ *
+ * When the {@link AuthenticationFilter} is declared too, the token is not validated again: the claims are read from the security
+ * context of the request.
  */
 public class AuditingRequestFilter implements ContainerRequestFilter {
 
@@ -52,6 +52,9 @@ import jakarta.ws.rs.container.ContainerResponseFilter;
  *
  *
  * and set the logger in the logging config.
+ *
+ * When the {@link AuthenticationFilter} is declared too, the token is not validated again: the claims are read from the security
+ * context of the request.
  */
 public class AuditingResponseFilter implements ContainerResponseFilter {
 
@@ -0,0 +1,94 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+
+package ch.inser.rest.provider;
+
+import java.io.IOException;
+
+import ch.inser.rest.auth.SecurityUtil;
+import ch.inser.rest.auth.TokenSecurityContext;
+import ch.inser.rest.util.Constants;
+import ch.inser.rest.util.RestUtil;
+
+import jakarta.annotation.Priority;
+import jakarta.ws.rs.Priorities;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerRequestFilter;
+import jakarta.ws.rs.container.ContainerResponseContext;
+import jakarta.ws.rs.container.ContainerResponseFilter;
+import jakarta.ws.rs.core.HttpHeaders;
+
+/**
+ * Authentication of the REST requests.
+ *
+ * Installs a {@link TokenSecurityContext} for the request, holding the token (header "token") and the OIDC token (header
+ * "Authorization: Bearer"). The tokens are validated and the logged user is resolved only once per request, the auditing filters,
+ * {@link RestUtil} and the resources then read the result from the context. The filter does not reject any request, each
+ * resource still decides how to answer to a missing or invalid token.
+ *
+ * With the property <code>security.token.header=true</code> the renewed token is not added to the response bodies by the
+ * resources but to the response header "token" of each successful response whose token has been validated, the resources then
+ * return only data.
+ *
+ * To use it declare the filter in the application
+ *
+ * <servlet>
+ *
+ * <servlet-name>RestEasy REST Service</servlet-name>
+ *
+ * ...
+ *
+ * <init-param>
+ *
+ * <param-name>resteasy.providers</param-name>
+ *
+ * <param-value>...,ch.inser.rest.provider.AuthenticationFilter,...</param-value>
+ *
+ * <init-param>
+ *
+ * ..
+ *
+ * </servlet>
+ *
+ * @author INSER SA *
+ */
+@Priority(Priorities.AUTHENTICATION)
+public class AuthenticationFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+    @Override
+    public void filter(ContainerRequestContext aRequestContext) throws IOException {
+        String authorization = aRequestContext.getHeaderString(HttpHeaders.AUTHORIZATION);
+        TokenSecurityContext security = new TokenSecurityContext(aRequestContext.getHeaderString("token"),
+                authorization != null ? RestUtil.parseAuthorization(authorization) : null,
+                aRequestContext.getSecurityContext() != null && aRequestContext.getSecurityContext().isSecure());
+        TokenSecurityContext.bind(security);
+        aRequestContext.setSecurityContext(security);
+    }
+
+    @Override
+    public void filter(ContainerRequestContext aRequestContext, ContainerResponseContext aResponseContext) throws IOException {
+        try {
+            TokenSecurityContext security = TokenSecurityContext.current();
+            if (security != null && security.getValidatedClaims() != null && aResponseContext.getStatus() < 400
+                    && !aResponseContext.getHeaders().containsKey(Constants.TOKEN) && RestUtil.isTokenHeader()) {
+                aResponseContext.getHeaders().putSingle(Constants.TOKEN,
+                        SecurityUtil.getToken(security.getValidatedClaims(), RestUtil.getContextManager()));
+            }
+        } finally {
+            TokenSecurityContext.unbind();
+        }
+    }
+
+}
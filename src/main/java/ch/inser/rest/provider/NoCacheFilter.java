@@ -16,13 +16,20 @@
 package ch.inser.rest.provider;
 
 import java.io.IOException;
+import java.lang.reflect.Method;
+
+import ch.inser.rest.annotation.CachePolicy;
 
 import jakarta.ws.rs.container.ContainerRequestContext;
 import jakarta.ws.rs.container.ContainerResponseContext;
 import jakarta.ws.rs.container.ContainerResponseFilter;
+import jakarta.ws.rs.container.ResourceInfo;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.HttpHeaders;
 
 /**
- * Ajoute le header Cache-Control=no-cache dans tous les réponses GET.
+ * Ajoute le header Cache-Control dans les réponses GET: la politique {@link CachePolicy} de la méthode ou de la classe de resource,
+ * "no-cache" par défaut. Un Cache-Control déjà mis par le service est gardé.
  *
  * Important pour IE
  *
@@ -30,11 +37,33 @@ import jakarta.ws.rs.container.ContainerResponseFilter;
  */
 public class NoCacheFilter implements ContainerResponseFilter {
 
+    /** Resource appelée */
+    @Context
+    private ResourceInfo iResourceInfo;
+
     @Override
     public void filter(ContainerRequestContext aRequestContext, ContainerResponseContext aResponseContext) throws IOException {
-        if ("GET".equals(aRequestContext.getMethod())) {
-            aResponseContext.getHeaders().add("Cache-Control", "no-cache");
+        if ("GET".equals(aRequestContext.getMethod()) && !aResponseContext.getHeaders().containsKey(HttpHeaders.CACHE_CONTROL)) {
+            aResponseContext.getHeaders().add(HttpHeaders.CACHE_CONTROL, getCacheControl());
+        }
+    }
+
+    /**
+     *
+     * @return la politique de la resource appelée, "no-cache" sans annotation
+     */
+    private String getCacheControl() {
+        if (iResourceInfo != null) {
+            Method method = iResourceInfo.getResourceMethod();
+            CachePolicy policy = method != null ? method.getAnnotation(CachePolicy.class) : null;
+            if (policy == null && iResourceInfo.getResourceClass() != null) {
+                policy = iResourceInfo.getResourceClass().getAnnotation(CachePolicy.class);
+            }
+            if (policy != null) {
+                return policy.value();
+            }
         }
+        return "no-cache";
     }
 
 }
@@ -25,7 +25,6 @@ import org.apache.commons.logging.LogFactory;
 import ch.inser.dynamic.common.ILoggedUser;
 import ch.inser.jsl.exceptions.ISException;
 import ch.inser.rest.auth.ISSecurityException;
-import ch.inser.rest.auth.SecurityUtil;
 import ch.inser.rest.core.AbstractCodeResource;
 import ch.inser.rest.util.Constants.Verb;
 import ch.inser.rest.util.JsonUtil;
@@ -34,6 +33,7 @@ import ch.inser.rest.util.RestUtil;
 import io.jsonwebtoken.Claims;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
 import jakarta.json.JsonObjectBuilder;
@@ -41,6 +41,7 @@ import jakarta.ws.rs.GET;
 import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.Response.Status;
@@ -63,6 +64,8 @@ public class CodeResource extends AbstractCodeResource {
      *
      * @param aToken
      *            the security token
+     * @param aSince
+     *            version of the codes known by the client, to get only the codes added and removed since
      * @return the codes as JSON
      */
     @ApiOperation(value = "Get the codes of the application")
@@ -71,7 +74,8 @@ public class CodeResource extends AbstractCodeResource {
             @ApiResponse(code = 500, message = "Error querying the codes tables") })
     @GET
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getCodes(@HeaderParam("token") String aToken) {
+    public Response getCodes(@HeaderParam("token") String aToken,
+            @ApiParam(value = "Version of the codes known by the client", required = false) @QueryParam("since") String aSince) {
         try {
             logger.debug("GET codes");
 
@@ -87,13 +91,17 @@ public class CodeResource extends AbstractCodeResource {
                 return Response.status(Status.FORBIDDEN).build();
             }
 
+            // Changes since the version of the client, from the catalog
+            if (aSince != null) {
+                return Response.ok(RestUtil.addToken(getCodesSince(aSince, loggedUser), claims).build().toString()).build();
+            }
+
             // Get the codes from the database
             Map<String, List<String>> codes = new HashMap<>();
             addCodes(codes, loggedUser);
 
             // Convert to JSON and return
-            JsonObjectBuilder json = JsonUtil.mapToJsonObject(codes).add("token",
-                    SecurityUtil.getToken(claims, RestUtil.getContextManager()));
+            JsonObjectBuilder json = RestUtil.addToken(JsonUtil.mapToJsonObject(codes), claims);
             return Response.ok(json.build().toString()).build();
         } catch (ISSecurityException e) {
             logger.warn("Security error", e);
@@ -105,4 +113,17 @@ public class CodeResource extends AbstractCodeResource {
             RestUtil.cleanNdc();
         }
     }
+
+    /**
+     * Get the codes.
+     *
+     * All the codes, without the changes since a known version.
+     *
+     * @param aToken
+     *            the security token
+     * @return the codes as JSON
+     */
+    public Response getCodes(String aToken) {
+        return getCodes(aToken, null);
+    }
 }
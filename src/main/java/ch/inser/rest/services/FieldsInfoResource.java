@@ -21,9 +21,9 @@ import org.apache.commons.logging.LogFactory;
 import ch.inser.dynamic.common.ILoggedUser;
 import ch.inser.jsl.exceptions.ISException;
 import ch.inser.rest.auth.ISSecurityException;
-import ch.inser.rest.auth.SecurityUtil;
 import ch.inser.rest.core.AbstractFieldsInfoResource;
 import ch.inser.rest.util.Constants.Verb;
+import ch.inser.rest.util.JsonFactory;
 import ch.inser.rest.util.RestUtil;
 
 import io.jsonwebtoken.Claims;
@@ -32,7 +32,6 @@ import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
-import jakarta.json.Json;
 import jakarta.json.JsonObjectBuilder;
 import jakarta.servlet.ServletContext;
 import jakarta.ws.rs.GET;
@@ -100,9 +99,9 @@ public class FieldsInfoResource extends AbstractFieldsInfoResource {
             }
 
             // -- Récuperation des infos
-            JsonObjectBuilder json = Json.createObjectBuilder();
+            JsonObjectBuilder json = JsonFactory.createObjectBuilder();
             addFieldsInfo(aObjectName, json);
-            json.add("token", SecurityUtil.getToken(claims, RestUtil.getContextManager()));
+            RestUtil.addToken(json, claims);
             return Response.ok(json.build().toString()).build();
 
         } catch (ISSecurityException e) {
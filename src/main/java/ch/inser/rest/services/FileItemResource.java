@@ -23,10 +23,11 @@ import ch.inser.dynamic.common.IValueObject;
 import ch.inser.dynaplus.util.Constants.Entity;
 import ch.inser.jsl.exceptions.ISException;
 import ch.inser.rest.auth.ISSecurityException;
-import ch.inser.rest.auth.SecurityUtil;
+import ch.inser.rest.auth.PermissionMatrix;
 import ch.inser.rest.core.AbstractFileItemResource;
 import ch.inser.rest.core.IBPDelegate;
 import ch.inser.rest.util.Constants.Verb;
+import ch.inser.rest.util.JsonFactory;
 import ch.inser.rest.util.RestUtil;
 
 import io.jsonwebtoken.Claims;
@@ -35,7 +36,6 @@ import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
-import jakarta.json.Json;
 import jakarta.json.JsonObjectBuilder;
 import jakarta.servlet.ServletContext;
 import jakarta.ws.rs.DELETE;
@@ -109,7 +109,7 @@ public class FileItemResource extends AbstractFileItemResource {
 
             // -- Contrôle de sécurité
             ILoggedUser loggedUser = RestUtil.getLoggedUser(claims, Entity.DOCUMENT.toString(), Verb.GET);
-            if (loggedUser == null || aObjName != null && !loggedUser.isAuthAction(aObjName, Verb.GET.toString())) {
+            if (loggedUser == null || aObjName != null && !PermissionMatrix.isAuthAction(loggedUser, aObjName, Verb.GET)) {
                 return Response.status(Status.FORBIDDEN).build();
             }
             return downloadFile(loggedUser, aObjName, aFieldName);
@@ -174,8 +174,7 @@ public class FileItemResource extends AbstractFileItemResource {
 
             int retDel = (Integer) bp.executeMethode("restFileDeleteTemp", rec, loggedUser);
             if (retDel == 1) {
-                JsonObjectBuilder json = Json.createObjectBuilder().add("token",
-                        SecurityUtil.getToken(claims, RestUtil.getContextManager()));
+                JsonObjectBuilder json = RestUtil.addToken(JsonFactory.createObjectBuilder(), claims);
 
                 return Response.ok().entity(json.build().toString()).build();
             }
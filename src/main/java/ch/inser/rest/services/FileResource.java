@@ -22,8 +22,8 @@ import org.jboss.resteasy.plugins.providers.multipart.MultipartFormDataInput;
 import ch.inser.dynamic.common.ILoggedUser;
 import ch.inser.dynaplus.util.Constants.Entity;
 import ch.inser.rest.auth.ISSecurityException;
-import ch.inser.rest.auth.SecurityUtil;
 import ch.inser.rest.util.Constants.Verb;
+import ch.inser.rest.util.JsonFactory;
 import ch.inser.rest.util.RestUtil;
 
 import io.jsonwebtoken.Claims;
@@ -32,7 +32,6 @@ import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
-import jakarta.json.Json;
 import jakarta.json.JsonObjectBuilder;
 import jakarta.servlet.ServletContext;
 import jakarta.ws.rs.GET;
@@ -124,8 +123,7 @@ public class FileResource {
                 return Response.status(Status.NO_CONTENT).build();
             }
 
-            JsonObjectBuilder json = Json.createObjectBuilder().add("doc_id", id).add("token",
-                    SecurityUtil.getToken(claims, RestUtil.getContextManager()));
+            JsonObjectBuilder json = RestUtil.addToken(JsonFactory.createObjectBuilder().add("doc_id", id), claims);
 
             return Response.status(Status.CREATED).entity(json.build().toString()).build();
 
@@ -30,12 +30,15 @@ import ch.inser.dynamic.common.IValueObject;
 import ch.inser.dynaplus.util.Constants.Entity;
 import ch.inser.dynaplus.vo.VOFactory;
 import ch.inser.jsl.exceptions.ISException;
+import ch.inser.rest.annotation.CachePolicy;
 import ch.inser.rest.auth.ISSecurityException;
 import ch.inser.rest.auth.SecurityUtil;
 import ch.inser.rest.core.IBPDelegate;
 import ch.inser.rest.util.JsonUtil;
+import ch.inser.rest.util.PublicResponseCache;
 import ch.inser.rest.util.RestUtil;
 import ch.inser.rest.util.ServiceLocator;
+import ch.inser.rest.util.TranslationBundles;
 
 import io.jsonwebtoken.Claims;
 import io.swagger.annotations.Api;
@@ -50,6 +53,7 @@ import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.Response.Status;
@@ -77,6 +81,10 @@ public class HelpResource {
     /**
      * @param aToken
      *            le token
+     * @param aIfNoneMatch
+     *            ETags of the help texts known by the client
+     * @param aAcceptEncoding
+     *            encodings accepted by the client
      * @return HTTP response with short and long help texts for input labels
      */
     @ApiOperation(value = "Get the permissions for the application")
@@ -85,8 +93,11 @@ public class HelpResource {
             @ApiResponse(code = 403, message = "The rights are not sufficient to access data"),
             @ApiResponse(code = 500, message = "Error querying the permissions tables") })
     @GET
+    @CachePolicy(CachePolicy.PRIVATE_REVALIDATE)
     @Produces(MediaType.APPLICATION_JSON + "; charset=UTF-8")
-    public Response getHelpTexts(@ApiParam(value = "Security token", required = true) @HeaderParam("token") String aToken) {
+    public Response getHelpTexts(@ApiParam(value = "Security token", required = true) @HeaderParam("token") String aToken,
+            @ApiParam(value = "ETags of the help texts known by the client", required = false) @HeaderParam(HttpHeaders.IF_NONE_MATCH) String aIfNoneMatch,
+            @ApiParam(value = "Encodings accepted by the client", required = false) @HeaderParam(HttpHeaders.ACCEPT_ENCODING) String aAcceptEncoding) {
 
         try {
             logger.debug("Get help texts");
@@ -98,13 +109,14 @@ public class HelpResource {
             // Security
             IContextManager ctx = RestUtil.getContextManager();
             Claims claims = RestUtil.getClaims(aToken);
-            ILoggedUser loggedUser = SecurityUtil.getUser(claims, (ServiceLocator) iContext.getAttribute("ServiceLocator"));
 
-            // Help texts
-            JsonObject json = createHelpJson(loggedUser);
+            // Help texts, shared by all the users: read by the super user, not by the first caller, and rebuilt after a modification
+            PublicResponseCache.Entry bundle = TranslationBundles.getInstance().get("help", new String[] { Entity.HELPTEXT.toString() },
+                    () -> createHelpJson(((ServiceLocator) iContext.getAttribute("ServiceLocator")).getSuperUser()).toString());
 
             // Build the response
-            return Response.ok(json.toString()).header("token", SecurityUtil.getToken(claims, ctx)).build();
+            return Response.fromResponse(bundle.toResponse(aIfNoneMatch, aAcceptEncoding))
+                    .header("token", SecurityUtil.getToken(claims, ctx)).build();
         } catch (ISSecurityException e) {
             logger.warn("Invalid token", e);
             return Response.status(Status.UNAUTHORIZED).build();
@@ -116,13 +128,24 @@ public class HelpResource {
         }
     }
 
+    /**
+     * Without the ETag of the client nor a compressed response.
+     *
+     * @param aToken
+     *            le token
+     * @return HTTP response with short and long help texts for input labels
+     */
+    public Response getHelpTexts(String aToken) {
+        return getHelpTexts(aToken, null, null);
+    }
+
     /**
      * Creates a json object with the short and long help texts for input labels
      *
      * {<label key>: {<iso lang code>: {short:<short text>, long: <long text in HTML>}, <iso lang code 2>: {...}}, ....}
      *
      * @param aUser
-     *            authentified user
+     *            the super user
      * @return json object with help texts in all languages
      * @throws ISException
      *             error querying the help tables
@@ -150,7 +173,7 @@ public class HelpResource {
 
     /**
      * @param aUser
-     *            authentified user
+     *            the super user
      * @return help texts
      * @throws ISException
      *             error querying the help tables
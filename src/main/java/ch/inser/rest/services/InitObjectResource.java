@@ -22,9 +22,9 @@ import ch.inser.dynamic.common.ILoggedUser;
 import ch.inser.dynaplus.util.Constants.Mode;
 import ch.inser.jsl.exceptions.ISException;
 import ch.inser.rest.auth.ISSecurityException;
-import ch.inser.rest.auth.SecurityUtil;
 import ch.inser.rest.util.Constants;
 import ch.inser.rest.util.Constants.Verb;
+import ch.inser.rest.util.JsonFactory;
 import ch.inser.rest.util.JsonVoUtil;
 import ch.inser.rest.util.RestUtil;
 
@@ -34,7 +34,6 @@ import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
-import jakarta.json.Json;
 import jakarta.json.JsonObjectBuilder;
 import jakarta.servlet.ServletContext;
 import jakarta.ws.rs.GET;
@@ -104,11 +103,11 @@ public class InitObjectResource {
             }
 
             // -- Récuperation des infos
-            JsonObjectBuilder json = Json.createObjectBuilder();
+            JsonObjectBuilder json = JsonFactory.createObjectBuilder();
             json.add(Constants.RECORD,
                     JsonVoUtil.voToJson(RestUtil.getBPDelegate(aObjectName).getInitVO(Mode.valueOf(aMode), loggedUser),
-                            Mode.valueOf(aMode).equals(Mode.create), loggedUser))
-                    .add(Constants.TOKEN, SecurityUtil.getToken(claims, RestUtil.getContextManager()));
+                            Mode.valueOf(aMode).equals(Mode.create), loggedUser));
+            RestUtil.addToken(json, claims);
             return Response.ok(json.build().toString()).build();
 
         } catch (ISSecurityException e) {
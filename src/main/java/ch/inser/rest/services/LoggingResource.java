@@ -20,12 +20,13 @@ import java.io.StringReader;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import ch.inser.rest.util.JsonFactory;
+
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
-import jakarta.json.Json;
 import jakarta.json.JsonException;
 import jakarta.json.JsonObject;
 import jakarta.json.JsonReader;
@@ -67,7 +68,7 @@ public class LoggingResource {
             @ApiParam(value = "Content to be logged. {\"message\":le message,\"url\":le url,\"stack\":le stack}", required = true) String aLogContent) {
 
         logger.error("*********** START - LOG FRONTEND ***********");
-        try (JsonReader reader = Json.createReader(new StringReader(aLogContent))) {
+        try (JsonReader reader = JsonFactory.createReader(new StringReader(aLogContent))) {
             JsonObject json = reader.readObject();
             // Stacktrace de error handler is-angular 7
             if (json.containsKey("message")) {
@@ -21,12 +21,10 @@ import org.apache.commons.logging.LogFactory;
 import ch.inser.dynamic.common.ILoggedUser;
 import ch.inser.jsl.exceptions.ISException;
 import ch.inser.rest.auth.ISSecurityException;
-import ch.inser.rest.auth.SecurityUtil;
+import ch.inser.rest.auth.PermissionMatrix.Permissions;
 import ch.inser.rest.core.AbstractPermResource;
-import ch.inser.rest.util.Constants;
 import ch.inser.rest.util.JsonUtil;
 import ch.inser.rest.util.RestUtil;
-import ch.inser.rest.util.ServiceLocator;
 
 import io.jsonwebtoken.Claims;
 import io.swagger.annotations.Api;
@@ -34,9 +32,6 @@ import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
-import jakarta.json.Json;
-import jakarta.json.JsonObject;
-import jakarta.json.JsonObjectBuilder;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.Path;
@@ -52,6 +47,9 @@ import jakarta.ws.rs.core.Response.Status;
  * Cette ressource n'est accessible qu'en lecture, et seuls les droits de l'utilisteur demandeur sont fournis. La vérification s'effectue en
  * vérifiant le nom de l'utilisateur trouvé dans le token et le nom d'utilisateur passé en paramètre.
  *
+ * Lorsque le token est retourné dans le header (security.token.header), les permissions sont servies avec un ETag et un client qui
+ * les a déjà (If-None-Match) reçoit 304.
+ *
  * @author INSER SA *
  */
 @Path("/permissions")
@@ -88,7 +86,7 @@ public class PermResource extends AbstractPermResource {
 
             // -- Contrôle de sécurite
             Claims claims = RestUtil.getClaims(aToken);
-            ILoggedUser loggedUser = SecurityUtil.getUser(claims, (ServiceLocator) iContext.getAttribute(Constants.SERVICE_LOCATOR));
+            ILoggedUser loggedUser = RestUtil.getUser(claims);
 
             if (loggedUser == null) {
                 return Response.status(Status.FORBIDDEN).build();
@@ -98,28 +96,15 @@ public class PermResource extends AbstractPermResource {
             // l'utilisateur courant
             if (aUser.equals(loggedUser.getUsername())) {
 
-                JsonObject permissions;
-                if (loggedUser.getPermissions() == null) {
-                    // Création de l'objet json vierge
-                    JsonObjectBuilder json = Json.createObjectBuilder();
-                    // Ajout des droits selon usergroup
-                    // Droit sur menus
-                    addMenus(loggedUser, json);
-                    // Droit sur actions
-                    addActions(loggedUser, json);
-                    // Droit sur les champs
-                    addFields(loggedUser, json);
-                    permissions = json.build();
-                    // Set des permissions
-                    loggedUser.setPermissions(permissions);
-                } else {
-                    // -- Permission déjà existant prendre les informations de
-                    // l'utilisateur
-                    permissions = loggedUser.getPermissions();
-                }
+                // -- Permissions du groupe, construites une seule fois
+                Permissions permissions = getGroupPermissions(loggedUser);
 
-                return Response.ok(JsonUtil.jsonObjectToBuilder(permissions)
-                        .add("token", SecurityUtil.getToken(claims, RestUtil.getContextManager())).build().toString()).build();
+                if (RestUtil.isTokenHeader()) {
+                    // Le token est dans le header, le body ne contient que les permissions
+                    return getPermissionsResponse(permissions);
+                }
+                return Response.ok(RestUtil.addToken(JsonUtil.jsonObjectToBuilder(permissions.getJson()), claims).build().toString())
+                        .build();
             }
 
             // -- Pas le droit à l'accès aux données
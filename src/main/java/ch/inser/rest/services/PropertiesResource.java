@@ -22,6 +22,7 @@ import ch.inser.dynamic.common.IContextManager;
 import ch.inser.rest.auth.ISSecurityException;
 import ch.inser.rest.auth.SecurityUtil;
 import ch.inser.rest.core.AbstractPropertiesResource;
+import ch.inser.rest.util.JsonFactory;
 import ch.inser.rest.util.JsonUtil;
 import ch.inser.rest.util.RestUtil;
 import ch.inser.rest.util.ServiceLocator;
@@ -33,7 +34,6 @@ import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
-import jakarta.json.Json;
 import jakarta.json.JsonObjectBuilder;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.HeaderParam;
@@ -107,11 +107,13 @@ public class PropertiesResource extends AbstractPropertiesResource {
             // Properties for authenticated user
             listProperties = aContextManager.getProperty(FRONTEND_PROPERTIES);
             properties = JsonUtil.mapToJsonObject(aContextManager.getApplicationAboutMap());
-            properties.add("token", aToken);
+            if (!RestUtil.isTokenHeader()) {
+                properties.add("token", aToken);
+            }
         } else {
             // Properties for non-authenticated user
             listProperties = aContextManager.getProperty(FRONTEND_PROPERTIES_FREE);
-            properties = Json.createObjectBuilder();
+            properties = JsonFactory.createObjectBuilder();
         }
 
         if (listProperties != null) {
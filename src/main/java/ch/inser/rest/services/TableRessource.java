@@ -34,6 +34,7 @@ import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import ch.inser.dynamic.common.ILoggedUser;
 import ch.inser.jsl.exceptions.ISException;
 import ch.inser.rest.auth.ISSecurityException;
+import ch.inser.rest.util.JsonFactory;
 import ch.inser.rest.util.JsonUtil;
 import ch.inser.rest.util.RestUtil;
 
@@ -43,7 +44,6 @@ import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
-import jakarta.json.Json;
 import jakarta.json.JsonArray;
 import jakarta.json.JsonObject;
 import jakarta.json.JsonReader;
@@ -224,14 +224,14 @@ public class TableRessource {
             JsonObject domains = JsonUtil.stringToJsonObject(aDomains);
 
             // Crée l'en-tete du tableau
-            try (JsonReader jsonReader = Json.createReader(new StringReader(aColumns));) {
+            try (JsonReader jsonReader = JsonFactory.createReader(new StringReader(aColumns));) {
                 JsonArray array = jsonReader.readArray();
                 Row row = sheet.createRow(indexRow++);
                 formatHeaders(array, row);
             }
 
             // Ecrit le contenu du tableau dans le fichier Excel
-            try (JsonReader jsonReader = Json.createReader(new StringReader(aContent))) {
+            try (JsonReader jsonReader = JsonFactory.createReader(new StringReader(aContent))) {
                 JsonArray array = jsonReader.readArray();
                 for (JsonValue val : array) {
                     Row row = sheet.createRow(indexRow++);
@@ -31,10 +31,12 @@ import ch.inser.dynaplus.vo.IVOFactory;
 import ch.inser.jsl.exceptions.ISException;
 import ch.inser.jsl.tools.SecurityTools;
 import ch.inser.rest.auth.ISSecurityException;
+import ch.inser.rest.auth.LoggedUserCache;
 import ch.inser.rest.auth.SecurityUtil;
+import ch.inser.rest.auth.SessionRegistry;
 import ch.inser.rest.core.IBPDelegate;
-import ch.inser.rest.util.Constants;
 import ch.inser.rest.util.Constants.Entity;
+import ch.inser.rest.util.JsonFactory;
 import ch.inser.rest.util.RestUtil;
 import ch.inser.rest.util.ServiceLocator;
 import io.jsonwebtoken.Claims;
@@ -43,7 +45,6 @@ import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
-import jakarta.json.Json;
 import jakarta.json.JsonException;
 import jakarta.json.JsonObject;
 import jakarta.json.JsonObjectBuilder;
@@ -92,7 +93,7 @@ public class TokenResource {
     @Produces(MediaType.APPLICATION_JSON)
     public Response token(@ApiParam(value = "username and password", required = true) String authData, @Context HttpServletRequest req) {
 
-        try (JsonReader reader = Json.createReader(new StringReader(authData))) {
+        try (JsonReader reader = JsonFactory.createReader(new StringReader(authData))) {
             // -- Transformation des données d'entrée en objet JSON
             JsonObject authJson = reader.readObject();
             if (authJson.get("username") != null) {
@@ -129,10 +130,11 @@ public class TokenResource {
                     validUser.setStatus(userStatus);
 
                     // Put the user in the cache
-                    contextManager.getCacheManager().getCache("userCache", String.class, ILoggedUser.class).put(validUser.getUsername(),
-                            validUser);
+                    LoggedUserCache.getInstance(LoggedUserCache.USER_CACHE).put(
+                            contextManager.getCacheManager().getCache(LoggedUserCache.USER_CACHE, String.class, ILoggedUser.class),
+                            validUser.getUsername(), validUser);
                     logger.info("Login de l'utilisateur " + validUser.getUsername());
-                    JsonObjectBuilder resultJson = Json.createObjectBuilder().add("success", true).add("token",
+                    JsonObjectBuilder resultJson = JsonFactory.createObjectBuilder().add("success", true).add("token",
                             SecurityUtil.getToken(validUser, contextManager));
                     return Response.ok(resultJson.build().toString()).build();
                 }
@@ -237,7 +239,7 @@ public class TokenResource {
      */
     protected Response sendUnauthorized() {
         // Création de la réponse
-        JsonObjectBuilder resultJson = Json.createObjectBuilder().add("success", false);
+        JsonObjectBuilder resultJson = JsonFactory.createObjectBuilder().add("success", false);
 
         return Response.status(Response.Status.UNAUTHORIZED).entity(resultJson.build().toString()).build();
     }
@@ -262,10 +264,11 @@ public class TokenResource {
 
             // -- Contrôle de sécurite
             Claims claims = RestUtil.getClaims(aToken);
-            ILoggedUser loggedUser = SecurityUtil.getUser(claims, (ServiceLocator) iContext.getAttribute(Constants.SERVICE_LOCATOR));
+            ILoggedUser loggedUser = RestUtil.getUser(claims);
 
             // Logout
             RestUtil.getBPDelegate(Entity.LOGGED_USER.toString()).executeMethode("logout", null, loggedUser);
+            SessionRegistry.getInstance().revoke(loggedUser.getUsername());
             logger.info("Logout de l'utilisateur " + loggedUser.getUsername());
             return Response.ok().build();
         } catch (ISSecurityException e) {
@@ -15,19 +15,16 @@
 
 package ch.inser.rest.services;
 
-import java.util.HashMap;
-import java.util.Map;
-
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import ch.inser.dynamic.common.IContextManager;
-import ch.inser.dynamic.common.ILoggedUser;
 import ch.inser.jsl.exceptions.ISException;
+import ch.inser.rest.annotation.CachePolicy;
 import ch.inser.rest.auth.ISSecurityException;
 import ch.inser.rest.auth.SecurityUtil;
 import ch.inser.rest.core.AbstractTranslateResource;
-import ch.inser.rest.util.JsonUtil;
+import ch.inser.rest.util.PublicResponseCache;
 import ch.inser.rest.util.RestUtil;
 import ch.inser.rest.util.ServiceLocator;
 
@@ -37,12 +34,12 @@ import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
-import jakarta.json.JsonObjectBuilder;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.Response.Status;
@@ -71,18 +68,29 @@ public class TranslateResource extends AbstractTranslateResource {
      *            the language
      * @param aToken
      *            token de l'utilisateur
+     * @param aIfNoneMatch
+     *            ETags des traductions connues du client
+     * @param aAcceptEncoding
+     *            encodages acceptés par le client
      * @return HTTP response containing the labels in a JSON tree
      */
     @ApiOperation(value = "Get the labels of the application")
     @ApiResponses(value = { @ApiResponse(code = 200, message = "OK"),
-            @ApiResponse(code = 400, message = "Error querying the multilingual tables") })
+            @ApiResponse(code = 400, message = "Error querying the multilingual tables"),
+            @ApiResponse(code = 404, message = "Language not configured") })
     @GET
     @Path("{lang}")
+    @CachePolicy(CachePolicy.PRIVATE_REVALIDATE)
     @Produces(MediaType.APPLICATION_JSON + "; charset=UTF-8")
     public Response getLabels(@ApiParam(value = "Security token", required = false) @HeaderParam("token") String aToken,
-            @PathParam("lang") String aLang) {
+            @PathParam("lang") String aLang,
+            @ApiParam(value = "ETags of the labels known by the client", required = false) @HeaderParam(HttpHeaders.IF_NONE_MATCH) String aIfNoneMatch,
+            @ApiParam(value = "Encodings accepted by the client", required = false) @HeaderParam(HttpHeaders.ACCEPT_ENCODING) String aAcceptEncoding) {
 
         logger.debug("Get labels " + aLang);
+        if (!isLanguage(aLang)) {
+            return Response.status(Status.NOT_FOUND).build();
+        }
 
         boolean fullData = false;
         String newToken = null;
@@ -98,35 +106,24 @@ public class TranslateResource extends AbstractTranslateResource {
                 // Information si toutes les données sont à retourner
                 fullData = true;
 
-                // Prendre l'information sur le nouveau token
-                newToken = SecurityUtil.getToken(claims, contextManager);
+                // Prendre l'information sur le nouveau token, sauf s'il est retourné dans le header
+                if (!RestUtil.isTokenHeader()) {
+                    newToken = SecurityUtil.getToken(claims, contextManager);
+                }
 
             } catch (ISSecurityException e) {
                 logger.debug("Translate limited", e);
             }
         }
 
-        // -- Rechercher les traductions
+        // -- Rechercher les traductions: les textes sont fournis à tous les clients, les codes uniquement si token disponible
         try {
-            Map<String, Object> labels = new HashMap<>();
-            JsonObjectBuilder json;
-            // If the language is different from "empty"
-            if (!"empty".equals(aLang)) {
-                ILoggedUser superUser = ((ServiceLocator) iContext.getAttribute("ServiceLocator")).getSuperUser();
-
-                // Les textes sont fournis à tous les clients
-                addHelpTexts(aLang, labels, superUser);
-
-                // Les codes sont fournis uniquement si token disponible
-                if (fullData) {
-                    addCodes(aLang, labels, superUser);
-                }
+            PublicResponseCache.Entry bundle = getLabelsBundle(aLang, fullData);
+            if (newToken != null) {
+                // Le token dans le json rend la réponse propre à l'appelant
+                return Response.ok(addToken(bundle.getBody(), newToken)).build();
             }
-            json = JsonUtil.mapToJsonObject(labels);
-            if (fullData) {
-                json = json.add("token", newToken);
-            }
-            return Response.ok(json.build().toString()).build();
+            return bundle.toResponse(aIfNoneMatch, aAcceptEncoding);
         } catch (ISException e) {
             logger.error("Erreur de recherche des libellés.", e);
             return Response.status(Status.BAD_REQUEST).build();
@@ -134,4 +131,23 @@ public class TranslateResource extends AbstractTranslateResource {
             RestUtil.cleanNdc();
         }
     }
+
+    /**
+     * Get the labels for a given language. If the language is <code>"empty"</code> an empty response is returned.
+     *
+     * Sans ETag du client ni réponse compressée.
+     *
+     * Avec token, toutes les traductions sont fournies, sans token uniquement les labels (pas les codes)
+     *
+     * Voir si on a besoin d'aller plus loin dans le futur
+     *
+     * @param aLang
+     *            the language
+     * @param aToken
+     *            token de l'utilisateur
+     * @return HTTP response containing the labels in a JSON tree
+     */
+    public Response getLabels(String aToken, String aLang) {
+        return getLabels(aToken, aLang, null, null);
+    }
 }
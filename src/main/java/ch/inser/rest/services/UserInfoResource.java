@@ -21,10 +21,9 @@ import org.apache.commons.logging.LogFactory;
 import ch.inser.dynamic.common.ILoggedUser;
 import ch.inser.jsl.exceptions.ISException;
 import ch.inser.rest.auth.ISSecurityException;
-import ch.inser.rest.auth.SecurityUtil;
 import ch.inser.rest.core.AbstractUserInfoResource;
+import ch.inser.rest.util.JsonFactory;
 import ch.inser.rest.util.RestUtil;
-import ch.inser.rest.util.ServiceLocator;
 
 import io.jsonwebtoken.Claims;
 import io.swagger.annotations.Api;
@@ -32,7 +31,6 @@ import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
-import jakarta.json.Json;
 import jakarta.json.JsonObjectBuilder;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.HeaderParam;
@@ -90,21 +88,21 @@ public class UserInfoResource extends AbstractUserInfoResource {
             }
 
             // -- Contrôle de sécurité
-            ILoggedUser loggedUser = SecurityUtil.getUser(claims, (ServiceLocator) iContext.getAttribute("ServiceLocator"));
+            ILoggedUser loggedUser = RestUtil.getUser(claims);
 
             if (!aUser.equals(loggedUser.getUsername())) {
                 logger.warn("Not autorized to access the userinfo of: " + aUser);
                 return Response.status(Status.FORBIDDEN).build();
             }
 
-            JsonObjectBuilder infos = Json.createObjectBuilder();
+            JsonObjectBuilder infos = JsonFactory.createObjectBuilder();
             if (Boolean.TRUE.toString().equals(RestUtil.getContextManager().getProperty("security.inituser.claims"))) {
                 addInfo(claims, infos);
             } else {
                 addInfo(getLoggedUser(aUser, Boolean.TRUE.toString().equals(aRefresh)), infos);
             }
 
-            infos.add("token", SecurityUtil.getToken(claims, RestUtil.getContextManager()));
+            RestUtil.addToken(infos, claims);
 
             return Response.ok(infos.build().toString()).build();
 
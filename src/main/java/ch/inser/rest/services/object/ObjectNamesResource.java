@@ -28,11 +28,13 @@ import ch.inser.dynamic.common.IValueObject;
 import ch.inser.dynamic.util.VOInfo;
 import ch.inser.dynaplus.format.IFormatEngine.Format;
 import ch.inser.jsl.exceptions.ISException;
+import ch.inser.rest.annotation.CachePolicy;
 import ch.inser.rest.auth.ISSecurityException;
-import ch.inser.rest.auth.SecurityUtil;
 import ch.inser.rest.core.AbstractObjectNamesResource;
-import ch.inser.rest.util.Constants;
 import ch.inser.rest.util.Constants.Verb;
+import ch.inser.rest.util.EntityTags;
+import ch.inser.rest.util.FieldProjection;
+import ch.inser.rest.util.JsonFactory;
 import ch.inser.rest.util.JsonVoUtil;
 import ch.inser.rest.util.RestUtil;
 
@@ -42,7 +44,6 @@ import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
-import jakarta.json.Json;
 import jakarta.json.JsonArray;
 import jakarta.json.JsonArrayBuilder;
 import jakarta.json.JsonObjectBuilder;
@@ -57,6 +58,7 @@ import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.Response.Status;
@@ -103,13 +105,17 @@ public class ObjectNamesResource extends AbstractObjectNamesResource {
      * @param aFieldname
      *            nom du champ pour recevoir une liste de valeurs au lieu d'enregistrements
      * @param aFormat
-     *            format de output, ex. "csv". Par défaut json.
+     *            format de output, ex. "csv", "table" (colonnes et lignes). Par défaut json.
      * @param aLang
      *            Language of the formatted list
      * @param aFields
-     *            noms de champs à inclure dans le résultat (csv)
+     *            noms de champs à inclure dans le résultat (csv et json)
      * @param aLabelKeys
      *            les clés pour les entêtes du résultat (csv)
+     * @param aExclude
+     *            noms de champs à exclure du résultat (json)
+     * @param aIfNoneMatch
+     *            ETags des versions de la liste connues du client (json.list.etag)
      *
      *
      * @return la liste des objets métier recherchés pour un objectname donné
@@ -122,16 +128,19 @@ public class ObjectNamesResource extends AbstractObjectNamesResource {
     })
     @GET
     @Produces(MediaType.APPLICATION_JSON)
+    @CachePolicy(CachePolicy.PRIVATE_REVALIDATE)
     public Response getList(@ApiParam(value = "Security token", required = true) @HeaderParam("token") String aToken,
             @ApiParam(value = "Filter criteria as an expression json", required = false) @QueryParam("query") String aQuery,
             @ApiParam(value = "Names of fields for ascending sorting", required = false) @QueryParam("sort") String aSortFields,
             @ApiParam(value = "Names of fields for descending sorting", required = false) @QueryParam("desc") String aDescFields,
             @ApiParam(value = "Request a partial result. Ex. range=1-10", required = false) @QueryParam("range") String aRange,
             @ApiParam(value = "Request not the whole records, but only one field", required = false) @QueryParam("fieldname") String aFieldname,
-            @ApiParam(value = "Format, ex. 'csv'. By default json.", required = false) @QueryParam("format") String aFormat,
+            @ApiParam(value = "Format, ex. 'csv', 'ndjson' or 'table'. By default json.", required = false) @QueryParam("format") String aFormat,
             @ApiParam(value = "Language of the formatted list", required = false) @QueryParam("language") String aLang,
             @ApiParam(value = "Names of fields to include in the result", required = false) @QueryParam("fields") String aFields,
-            @ApiParam(value = "Names of label keys for column headers", required = false) @QueryParam("labelkeys") String aLabelKeys) {
+            @ApiParam(value = "Names of label keys for column headers", required = false) @QueryParam("labelkeys") String aLabelKeys,
+            @ApiParam(value = "Names of fields to exclude from the json result", required = false) @QueryParam("exclude") String aExclude,
+            @ApiParam(value = "ETags of the list known by the client", required = false) @HeaderParam(HttpHeaders.IF_NONE_MATCH) String aIfNoneMatch) {
 
         try {
             logger.debug("GET - ObjectName : " + iObjectName + ", query : " + aQuery + ", sort : " + aSortFields + ", desc : " + aDescFields
@@ -158,32 +167,57 @@ public class ObjectNamesResource extends AbstractObjectNamesResource {
                         setCSVParameters(setSearchParameters(aSortFields, aDescFields, aRange), aFields, aLabelKeys, aLang));
             }
 
+            // Attributs des enregistrements json
+            FieldProjection projection = FieldProjection.of(aFields, aExclude);
+
+            // Format ndjson, lu et écrit un enregistrement à la fois
+            if (FORMAT_NDJSON.equalsIgnoreCase(aFormat)) {
+                return getNdjson(jsonToVo(aQuery), loggedUser, aSortFields, aDescFields, aRange, projection);
+            }
+
             if (aFieldname != null) {
                 return getFieldsRequest(jsonToVo(aQuery), aFieldname, loggedUser, claims,
                         setSearchParameters(aSortFields, aDescFields, aRange));
             }
 
+            // Une liste dont les objets métier n'ont pas changé depuis la requête du client n'est pas relue
+            String tag = null;
+            if (isListTag() && RestUtil.isTokenHeader()) {
+                tag = getListTag(loggedUser, aQuery, aSortFields, aDescFields, aRange, aFormat, aFields, aExclude);
+                if (EntityTags.matches(aIfNoneMatch, tag)) {
+                    return EntityTags.notModified(tag);
+                }
+            }
+
             // Get the list
             List<IValueObject> list = getList(jsonToVo(aQuery), loggedUser, setSearchParameters(aSortFields, aDescFields, aRange))
                     .getListObject();
 
             // Build the response
+            if (FORMAT_TABLE.equalsIgnoreCase(aFormat)) {
+                return withTag(getTableListResponse(list, projection, RestUtil.addToken(JsonFactory.createObjectBuilder(), claims).build()), tag);
+            }
+            if (isStreaming()) {
+                // Le token est calculé avant l'écriture de la réponse
+                return withTag(getStreamingListResponse(list, projection, RestUtil.addToken(JsonFactory.createObjectBuilder(), claims).build()),
+                        tag);
+            }
             List<Object> idlist = new ArrayList<>();
             for (IValueObject rec : list) {
                 idlist.add(rec.getId());
             }
-            JsonArray records = JsonVoUtil.vosToJson(list);
-            JsonArrayBuilder ids = Json.createArrayBuilder();
+            JsonArray records = JsonVoUtil.vosToJson(list, projection);
+            JsonArrayBuilder ids = JsonFactory.createArrayBuilder();
             for (Object id : idlist) {
                 if (id != null) {
                     ids.add((Long) id);
                 }
             }
-            JsonObjectBuilder json = Json.createObjectBuilder();
+            JsonObjectBuilder json = JsonFactory.createObjectBuilder();
             json.add("records", records);
             json.add("ids", ids.build());
-            json.add(Constants.TOKEN, SecurityUtil.getToken(claims, RestUtil.getContextManager()));
-            return Response.ok(json.build().toString()).build();
+            RestUtil.addToken(json, claims);
+            return withTag(Response.ok(json.build().toString()).build(), tag);
         } catch (ISSecurityException e) {
             logger.warn("Le token est invalid", e);
             return Response.status(Status.UNAUTHORIZED).build();
@@ -195,6 +229,42 @@ public class ObjectNamesResource extends AbstractObjectNamesResource {
         }
     }
 
+    /**
+     * Recherche des objets métier
+     *
+     * Sans exclusion de champs ni ETag du client.
+     *
+     * @param aToken
+     *            token de sécurité
+     *
+     * @param aQuery
+     *            expression json avec les critères de recherche
+     * @param aSortFields
+     *            tri ascending sur les champs donnés
+     * @param aDescFields
+     *            tri descending sur les champs donnés
+     * @param aRange
+     *            trance a retourner
+     * @param aFieldname
+     *            nom du champ pour recevoir une liste de valeurs au lieu d'enregistrements
+     * @param aFormat
+     *            format de output, ex. "csv". Par défaut json.
+     * @param aLang
+     *            Language of the formatted list
+     * @param aFields
+     *            noms de champs à inclure dans le résultat (csv)
+     * @param aLabelKeys
+     *            les clés pour les entêtes du résultat (csv)
+     *
+     *
+     * @return la liste des objets métier recherchés pour un objectname donné
+     */
+    public Response getList(String aToken, String aQuery, String aSortFields, String aDescFields, String aRange,
+            String aFieldname, String aFormat, String aLang, String aFields, String aLabelKeys) {
+        return getList(aToken, aQuery, aSortFields, aDescFields, aRange, aFieldname, aFormat, aLang, aFields, aLabelKeys, null,
+                null);
+    }
+
     /**
      * Compte le nombre d'objets métier pour un nom donné
      *
@@ -240,8 +310,7 @@ public class ObjectNamesResource extends AbstractObjectNamesResource {
             logger.debug("COUNT RESULT - ObjectName : " + iObjectName + ",query : " + aQuery + ",count : " + nb);
 
             // Build the response
-            JsonObjectBuilder json = Json.createObjectBuilder().add("count", nb).add(Constants.TOKEN,
-                    SecurityUtil.getToken(claims, RestUtil.getContextManager()));
+            JsonObjectBuilder json = RestUtil.addToken(JsonFactory.createObjectBuilder().add("count", nb), claims);
             return Response.ok(json.build().toString()).build();
         } catch (ISSecurityException e) {
             logger.warn("Invalid token", e);
@@ -332,8 +401,7 @@ public class ObjectNamesResource extends AbstractObjectNamesResource {
             }
 
             // Build the response
-            JsonObjectBuilder json = Json.createObjectBuilder().add("nbr", result.getNbrRecords()).add("token",
-                    SecurityUtil.getToken(claims, RestUtil.getContextManager()));
+            JsonObjectBuilder json = RestUtil.addToken(JsonFactory.createObjectBuilder().add("nbr", result.getNbrRecords()), claims);
 
             return Response.status(Status.OK).entity(json.build().toString()).build();
         } catch (ISSecurityException e) {
@@ -428,11 +496,11 @@ public class ObjectNamesResource extends AbstractObjectNamesResource {
             }
 
             // Build the response
-            JsonObjectBuilder json = Json.createObjectBuilder();
+            JsonObjectBuilder json = JsonFactory.createObjectBuilder();
             if (result.getValueObject() != null) {
                 json.add("record", voToJson(result.getValueObject(), Boolean.TRUE.toString(), loggedUser)).add("id", (Long) result.getId());
             }
-            json.add("token", SecurityUtil.getToken(claims, RestUtil.getContextManager()));
+            RestUtil.addToken(json, claims);
             return Response.status(Status.CREATED).entity(json.build().toString()).build();
         } catch (ISSecurityException e) {
             logger.warn("Token invalid", e);
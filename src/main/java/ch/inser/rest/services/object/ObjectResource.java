@@ -23,12 +23,13 @@ import ch.inser.dynamic.common.IDAOResult;
 import ch.inser.dynamic.common.ILoggedUser;
 import ch.inser.dynamic.common.IValueObject;
 import ch.inser.jsl.exceptions.ISException;
+import ch.inser.rest.annotation.CachePolicy;
 import ch.inser.rest.annotation.PATCH;
 import ch.inser.rest.auth.ISSecurityException;
-import ch.inser.rest.auth.SecurityUtil;
 import ch.inser.rest.core.AbstractObjectResource;
 import ch.inser.rest.util.Constants;
 import ch.inser.rest.util.Constants.Verb;
+import ch.inser.rest.util.JsonFactory;
 import ch.inser.rest.util.RestUtil;
 import ch.inser.rest.util.ServiceLocator;
 
@@ -38,7 +39,6 @@ import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
-import jakarta.json.Json;
 import jakarta.json.JsonObject;
 import jakarta.json.JsonObjectBuilder;
 import jakarta.servlet.ServletContext;
@@ -48,6 +48,7 @@ import jakarta.ws.rs.GET;
 import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.PUT;
 import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.Response.Status;
@@ -100,7 +101,13 @@ public class ObjectResource extends AbstractObjectResource {
      *            format, ex. pdf. by default json
      * @param aLang
      *            Language if format pdf, by default german
-     * @return enregistrement de type {objectname} et avec id {id}
+     * @param aFields
+     *            Names of the fields in the json record, by default all
+     * @param aExclude
+     *            Names of the fields to exclude from the json record
+     * @param aIfNoneMatch
+     *            ETags of the versions of the record known by the client
+     * @return enregistrement de type {objectname} et avec id {id}, 304 si le client a déjà cette version
      */
     @ApiOperation(value = "Get business object by object name and id")
     @ApiResponses(value = { @ApiResponse(code = 200, message = "OK"),
@@ -109,16 +116,18 @@ public class ObjectResource extends AbstractObjectResource {
             @ApiResponse(code = 403, message = "No access permission"), @ApiResponse(code = 404, message = "Business object not found"),
             @ApiResponse(code = 500, message = "Unexpected error while consulting record"), })
     @GET
+    @CachePolicy(CachePolicy.PRIVATE_REVALIDATE)
     public Response getRecord(@ApiParam(value = "Security token", required = true) @HeaderParam("token") String aToken,
             @ApiParam(value = "Flag include children. By default true", required = false) @QueryParam("includeChildren") String aIncludeChildren,
             @ApiParam(value = "Data format of the record (pdf, json). By default json", required = false) @QueryParam("format") String aFormat,
-            @ApiParam(value = "Language as iso-lang-code (fr,it,de,ro). By default de", required = false) @QueryParam("lang") String aLang) {
+            @ApiParam(value = "Language as iso-lang-code (fr,it,de,ro). By default de", required = false) @QueryParam("lang") String aLang,
+            @ApiParam(value = "Names of fields to include in the json record", required = false) @QueryParam("fields") String aFields,
+            @ApiParam(value = "Names of fields to exclude from the json record", required = false) @QueryParam("exclude") String aExclude,
+            @ApiParam(value = "ETags of the record known by the client", required = false) @HeaderParam(HttpHeaders.IF_NONE_MATCH) String aIfNoneMatch) {
 
         try {
             logger.debug("GET - ObjectName : " + iObjectName + ", ID : " + iId);
 
-            IContextManager contextManager = RestUtil.getContextManager();
-
             // -- Contrôle si paramètre présent
             Claims claims = RestUtil.getClaims(aToken, iObjectName);
             if (claims == null || iId == null || "undefined".equals(iId)) {
@@ -137,18 +146,9 @@ public class ObjectResource extends AbstractObjectResource {
                 return getPDF(iId, aLang, loggedUser);
             }
 
-            // -- Get JSON object
-            IValueObject rec = getRecord(iId, loggedUser).getValueObject();
-            if (rec == null) {
-                return Response.status(Status.NOT_FOUND).build();
-            }
-
-            // Build the response
-            JsonObjectBuilder json = Json.createObjectBuilder();
-            json.add(Constants.RECORD, voToJson(rec, aIncludeChildren, loggedUser));
-            json.add(Constants.TOKEN, SecurityUtil.getToken(claims, contextManager));
-
-            return Response.ok(json.build().toString()).build();
+            // Avec le token renouvelé dans le corps, la réponse change à chaque appel
+            return getRecordResponse(loggedUser, aIncludeChildren, aFields, aExclude, aIfNoneMatch, RestUtil.isTokenHeader(),
+                    json -> RestUtil.addToken(json, claims));
 
         } catch (ISSecurityException e) {
             logger.warn("Token invalide", e);
@@ -162,6 +162,25 @@ public class ObjectResource extends AbstractObjectResource {
 
     }
 
+    /**
+     * Get a record
+     *
+     * Sans sélection des champs ni ETag du client.
+     *
+     * @param aToken
+     *            token de sécurité
+     * @param aIncludeChildren
+     *            Flag include children. By default true.
+     * @param aFormat
+     *            format, ex. pdf. by default json
+     * @param aLang
+     *            Language if format pdf, by default german
+     * @return enregistrement de type {objectname} et avec id {id}
+     */
+    public Response getRecord(String aToken, String aIncludeChildren, String aFormat, String aLang) {
+        return getRecord(aToken, aIncludeChildren, aFormat, aLang, null, null, null);
+    }
+
     /**
      * Met à jour l'enregistrement
      *
@@ -187,8 +206,6 @@ public class ObjectResource extends AbstractObjectResource {
         try {
             logger.debug("PUT - ObjectName : " + iObjectName + ",aJsonRecord : " + aJsonRecord);
 
-            IContextManager contextManager = RestUtil.getContextManager();
-
             // -- Contrôle si paramètre présent
             Claims claims = RestUtil.getClaims(aToken, iObjectName);
             if (claims == null || aJsonRecord == null || "undefined".equals(iId)) {
@@ -225,13 +242,13 @@ public class ObjectResource extends AbstractObjectResource {
             }
 
             // Build the response
-            JsonObjectBuilder jsonB = Json.createObjectBuilder();
+            JsonObjectBuilder jsonB = JsonFactory.createObjectBuilder();
             if (result.getValueObject() != null) {
                 jsonB.add(Constants.RECORD, voToJson(result.getValueObject(), Boolean.TRUE.toString(), loggedUser));
             }
-            jsonB.add(Constants.TOKEN, SecurityUtil.getToken(claims, contextManager));
+            RestUtil.addToken(jsonB, claims);
             JsonObject json = jsonB.build();
-            if (json.get(Constants.TOKEN) != null) {
+            if (!json.isEmpty()) {
                 return Response.ok(json.toString()).build();
             }
             return Response.ok().build();
@@ -305,13 +322,13 @@ public class ObjectResource extends AbstractObjectResource {
             }
 
             // Build the response
-            JsonObjectBuilder jsonB = Json.createObjectBuilder();
+            JsonObjectBuilder jsonB = JsonFactory.createObjectBuilder();
             if (result.getValueObject() != null) {
                 jsonB.add(Constants.RECORD, voToJson(result.getValueObject(), Boolean.TRUE.toString(), loggedUser));
             }
-            jsonB.add(Constants.TOKEN, SecurityUtil.getToken(claims, contextManager));
+            RestUtil.addToken(jsonB, claims);
             JsonObject json = jsonB.build();
-            if (json.get(Constants.TOKEN) != null) {
+            if (!json.isEmpty()) {
                 return Response.ok(json.toString()).build();
             }
             return Response.ok().build();
@@ -349,8 +366,6 @@ public class ObjectResource extends AbstractObjectResource {
         try {
             logger.debug("DELETE - ObjectName : " + iObjectName + ",aRecord : " + aRecord + ", Id: " + iId);
 
-            IContextManager contextManager = RestUtil.getContextManager();
-
             // -- Contrôle si paramètre présent
             Claims claims = RestUtil.getClaims(aToken, iObjectName);
             if (claims == null || aRecord == null || "undefined".equals(iId)) {
@@ -380,8 +395,8 @@ public class ObjectResource extends AbstractObjectResource {
             }
 
             // Build the response
-            JsonObject json = Json.createObjectBuilder().add("token", SecurityUtil.getToken(claims, contextManager)).build();
-            if (json.get("token") != null) {
+            JsonObject json = RestUtil.addToken(JsonFactory.createObjectBuilder(), claims).build();
+            if (!json.isEmpty()) {
                 return Response.ok(json.toString()).build();
             }
             return Response.ok().build();
@@ -25,11 +25,18 @@ import ch.inser.dynamic.common.ILoggedUser;
 import ch.inser.dynamic.common.IValueObject;
 import ch.inser.dynaplus.format.IFormatEngine.Format;
 import ch.inser.jsl.exceptions.ISException;
+import ch.inser.rest.annotation.CachePolicy;
 import ch.inser.rest.auth.ISSecurityException;
+import ch.inser.rest.auth.PermissionMatrix;
 import ch.inser.rest.auth.SecurityUtil;
 import ch.inser.rest.core.AbstractResource;
 import ch.inser.rest.util.Constants.Verb;
+import ch.inser.rest.util.EntityTags;
+import ch.inser.rest.util.FieldProjection;
+import ch.inser.rest.util.JsonFactory;
+import ch.inser.rest.util.JsonUtil;
 import ch.inser.rest.util.JsonVoUtil;
+import ch.inser.rest.util.PublicResponseCache;
 import ch.inser.rest.util.RestUtil;
 import ch.inser.rest.util.ServiceLocator;
 
@@ -38,16 +45,18 @@ import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
-import jakarta.json.Json;
 import jakarta.json.JsonArray;
 import jakarta.json.JsonArrayBuilder;
 import jakarta.json.JsonObjectBuilder;
+import jakarta.json.JsonValue;
 import jakarta.servlet.ServletContext;
 import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.Response.Status;
@@ -105,13 +114,19 @@ public class PublicNamesResource extends AbstractResource {
      * @param aFieldname
      *            nom du champ pour recevoir une liste de valeurs au lieu d'enregistrements
      * @param aFormat
-     *            format de output, ex. "csv". Par défaut json.
+     *            format de output, ex. "csv", "table" (colonnes et lignes). Par défaut json.
      * @param aLang
      *            Language of the formatted list
      * @param aFields
-     *            noms de champs à inclure dans le résultat (csv)
+     *            noms de champs à inclure dans le résultat (csv et json)
      * @param aLabelKeys
      *            les clés pour les entêtes du résultat (csv)
+     * @param aExclude
+     *            noms de champs à exclure du résultat (json)
+     * @param aIfNoneMatch
+     *            ETags des versions de la liste connues du client
+     * @param aAcceptEncoding
+     *            encodages acceptés par le client, pour une réponse compressée en cache
      *
      *
      * @return la liste des objets métier recherchés pour un objectname donné
@@ -124,16 +139,20 @@ public class PublicNamesResource extends AbstractResource {
     })
     @GET
     @Produces(MediaType.APPLICATION_JSON)
+    @CachePolicy(CachePolicy.PRIVATE_REVALIDATE)
     public final Response getList(
             @ApiParam(value = "Filter criteria as an expression json", required = false) @QueryParam("query") String aQuery,
             @ApiParam(value = "Names of fields for ascending sorting", required = false) @QueryParam("sort") String aSortFields,
             @ApiParam(value = "Names of fields for descending sorting", required = false) @QueryParam("desc") String aDescFields,
             @ApiParam(value = "Request a partial result. Ex. range=1-10", required = false) @QueryParam("range") String aRange,
             @ApiParam(value = "Request not the whole records, but only one field", required = false) @QueryParam("fieldname") String aFieldname,
-            @ApiParam(value = "Format, ex. 'csv'. By default json.", required = false) @QueryParam("format") String aFormat,
+            @ApiParam(value = "Format, ex. 'csv', 'ndjson' or 'table'. By default json.", required = false) @QueryParam("format") String aFormat,
             @ApiParam(value = "Language of the formatted list", required = false) @QueryParam("language") String aLang,
             @ApiParam(value = "Names of fields to include in the result", required = false) @QueryParam("fields") String aFields,
-            @ApiParam(value = "Names of label keys for column headers", required = false) @QueryParam("labelkeys") String aLabelKeys) {
+            @ApiParam(value = "Names of label keys for column headers", required = false) @QueryParam("labelkeys") String aLabelKeys,
+            @ApiParam(value = "Names of fields to exclude from the json result", required = false) @QueryParam("exclude") String aExclude,
+            @ApiParam(value = "ETags of the list known by the client", required = false) @HeaderParam(HttpHeaders.IF_NONE_MATCH) String aIfNoneMatch,
+            @ApiParam(value = "Encodings accepted by the client", required = false) @HeaderParam(HttpHeaders.ACCEPT_ENCODING) String aAcceptEncoding) {
 
         try {
             logger.debug("GET - ObjectName : " + iObjectName + ", query : " + aQuery + ", sort : " + aSortFields + ", desc : " + aDescFields
@@ -155,46 +174,139 @@ public class PublicNamesResource extends AbstractResource {
                         setCSVParameters(setSearchParameters(aSortFields, aDescFields, aRange), aFields, aLabelKeys, aLang));
             }
 
+            // Attributs des enregistrements json
+            FieldProjection projection = FieldProjection.of(aFields, aExclude);
+
+            // Format ndjson, lu et écrit un enregistrement à la fois
+            if (FORMAT_NDJSON.equalsIgnoreCase(aFormat)) {
+                return getNdjson(jsonToVo(aQuery), loggedUser, aSortFields, aDescFields, aRange, projection);
+            }
+
             if (aFieldname != null) {
                 return getFieldsRequest(jsonToVo(aQuery), aFieldname, loggedUser, null);
             }
 
-            // Get the list
-            List<IValueObject> list = getList(jsonToVo(aQuery), loggedUser, setSearchParameters(aSortFields, aDescFields, aRange))
-                    .getListObject();
+            // Les réponses json sont les mêmes pour tous les appelants, elles sont gardées en cache
+            PublicResponseCache cache = PublicResponseCache.getInstance();
+            if (cache.isEnabled(iObjectName)) {
+                String key = PublicResponseCache.key("list", JsonUtil.toCanonicalString(aQuery), aSortFields, aDescFields, aRange,
+                        aFormat != null ? aFormat.toLowerCase() : null, aFields, aExclude);
+                return cache.load(iObjectName, key, () -> PublicResponseCache
+                        .toBytes(getJsonList(aQuery, aSortFields, aDescFields, aRange, aFormat, projection, loggedUser, false)))
+                        .toResponse(aIfNoneMatch, aAcceptEncoding);
+            }
+
+            // Une liste dont les objets métier n'ont pas changé depuis la requête du client n'est pas relue
+            String tag = null;
+            if (isListTag()) {
+                tag = getListTag(loggedUser, aQuery, aSortFields, aDescFields, aRange, aFormat, aFields, aExclude);
+                if (EntityTags.matches(aIfNoneMatch, tag)) {
+                    return EntityTags.notModified(tag);
+                }
+            }
+            return withTag(getJsonList(aQuery, aSortFields, aDescFields, aRange, aFormat, projection, loggedUser, isStreaming()), tag);
+        } catch (ISSecurityException e) {
+            logger.warn("Le token est invalid", e);
+            return Response.status(Status.UNAUTHORIZED).build();
+        } catch (ISException e) {
+            logger.error("Erreur : ", e);
+            return Response.status(Status.INTERNAL_SERVER_ERROR).build();
+        } finally {
+            RestUtil.cleanNdc();
+        }
+    }
+
+    /**
+     * Lit la liste et construit la réponse json
+     *
+     * @param aQuery
+     *            expression json avec les critères de recherche
+     * @param aSortFields
+     *            tri ascending sur les champs donnés
+     * @param aDescFields
+     *            tri descending sur les champs donnés
+     * @param aRange
+     *            intervalle des enregistrements, p.ex. 1-10
+     * @param aFormat
+     *            format table ou json par défaut
+     * @param aProjection
+     *            attributs des enregistrements, <code>null</code> pour tous
+     * @param aUser
+     *            utilisateur public
+     * @param aStreaming
+     *            true pour écrire la réponse json pendant l'envoi
+     * @return la réponse
+     * @throws ISException
+     *             erreur de lecture de la liste
+     */
+    private Response getJsonList(String aQuery, String aSortFields, String aDescFields, String aRange, String aFormat,
+            FieldProjection aProjection, ILoggedUser aUser, boolean aStreaming) throws ISException {
+        // Get the list
+        List<IValueObject> list = getList(jsonToVo(aQuery), aUser, setSearchParameters(aSortFields, aDescFields, aRange))
+                .getListObject();
 
-            // Build the response
+        // Build the response
+        if (FORMAT_TABLE.equalsIgnoreCase(aFormat)) {
+            return getTableListResponse(list, aProjection, JsonValue.EMPTY_JSON_OBJECT);
+        } else if (aStreaming) {
+            return getStreamingListResponse(list, aProjection, JsonValue.EMPTY_JSON_OBJECT);
+        } else {
             List<Object> idlist = new ArrayList<>();
             for (IValueObject rec : list) {
                 idlist.add(rec.getId());
             }
-            JsonArray records = JsonVoUtil.vosToJson(list);
-            JsonArrayBuilder ids = Json.createArrayBuilder();
+            JsonArray records = JsonVoUtil.vosToJson(list, aProjection);
+            JsonArrayBuilder ids = JsonFactory.createArrayBuilder();
             for (Object id : idlist) {
                 ids.add((Long) id);
             }
-            JsonObjectBuilder json = Json.createObjectBuilder();
+            JsonObjectBuilder json = JsonFactory.createObjectBuilder();
             json.add("records", records);
             json.add("ids", ids.build());
             return Response.ok(json.build().toString()).build();
-        } catch (ISSecurityException e) {
-            logger.warn("Le token est invalid", e);
-            return Response.status(Status.UNAUTHORIZED).build();
-        } catch (ISException e) {
-            logger.error("Erreur : ", e);
-            return Response.status(Status.INTERNAL_SERVER_ERROR).build();
-        } finally {
-            RestUtil.cleanNdc();
         }
     }
 
+    /**
+     * Recherche des objets métier
+     *
+     * Sans exclusion de champs, ETag du client ni encodages acceptés.
+     *
+     * @param aQuery
+     *            expression json avec les critères de recherche
+     * @param aSortFields
+     *            tri ascending sur les champs donnés
+     * @param aDescFields
+     *            tri descending sur les champs donnés
+     * @param aRange
+     *            trance a retourner
+     * @param aFieldname
+     *            nom du champ pour recevoir une liste de valeurs au lieu d'enregistrements
+     * @param aFormat
+     *            format de output, ex. "csv". Par défaut json.
+     * @param aLang
+     *            Language of the formatted list
+     * @param aFields
+     *            noms de champs à inclure dans le résultat (csv)
+     * @param aLabelKeys
+     *            les clés pour les entêtes du résultat (csv)
+     *
+     *
+     * @return la liste des objets métier recherchés pour un objectname donné
+     */
+    public final Response getList(String aQuery, String aSortFields, String aDescFields, String aRange, String aFieldname,
+            String aFormat, String aLang, String aFields, String aLabelKeys) {
+        return getList(aQuery, aSortFields, aDescFields, aRange, aFieldname, aFormat, aLang, aFields, aLabelKeys, null, null,
+                null);
+    }
+
     /**
      * Valide les droits d'accès sur le service
      *
      * @param aUser
      *            utilisateur
      * @param aFormat
-     *            format de données (pdf ou autre)
+     *            format de données (pdf, ndjson, table ou autre)
      * @return réponse erreur si id manque, le nom d'objet métier est non-permi, l'utilisateur n'a pas le droit sur l'objet, le format
      *         demandé est invalde
      */
@@ -204,12 +316,13 @@ public class PublicNamesResource extends AbstractResource {
             return Response.status(Status.BAD_REQUEST).build();
         }
 
-        if (aUser == null || !aUser.isAuthAction(iObjectName, Verb.GET.toString())) {
+        if (aUser == null || !PermissionMatrix.isAuthAction(aUser, iObjectName, Verb.GET)) {
             logger.info("L'utilisateur publique n'a pas le droit de consulter entité: " + iObjectName);
             return Response.status(Status.FORBIDDEN).build();
         }
 
-        if (aFormat != null && !"pdf".equalsIgnoreCase(aFormat)) {
+        if (aFormat != null && !"pdf".equalsIgnoreCase(aFormat) && !FORMAT_NDJSON.equalsIgnoreCase(aFormat)
+                && !FORMAT_TABLE.equalsIgnoreCase(aFormat)) {
             logger.info("Le format de retour demandé n'est pas valide: " + aFormat);
             return Response.status(Status.BAD_REQUEST).build();
         }
@@ -15,16 +15,23 @@
 
 package ch.inser.rest.services.object;
 
+import java.nio.charset.StandardCharsets;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import ch.inser.dynamic.common.ILoggedUser;
 import ch.inser.dynamic.common.IValueObject;
+import ch.inser.jsl.exceptions.ISException;
+import ch.inser.rest.auth.PermissionMatrix;
 import ch.inser.rest.auth.SecurityUtil;
 import ch.inser.rest.core.AbstractResource;
 import ch.inser.rest.util.Constants;
 import ch.inser.rest.util.Constants.Verb;
+import ch.inser.rest.util.FieldProjection;
+import ch.inser.rest.util.JsonFactory;
 import ch.inser.rest.util.JsonVoUtil;
+import ch.inser.rest.util.PublicResponseCache;
 import ch.inser.rest.util.RestUtil;
 import ch.inser.rest.util.ServiceLocator;
 
@@ -32,11 +39,13 @@ import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
-import jakarta.json.Json;
+import jakarta.json.JsonObject;
 import jakarta.json.JsonObjectBuilder;
 import jakarta.servlet.ServletContext;
 import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.Response.Status;
 
@@ -79,6 +88,14 @@ public class PublicObjectResource extends AbstractResource {
      *            format, ex. pdf, json
      * @param aLang
      *            langue de l'enregistrement dans iso-lang-code ('fr', 'de')
+     * @param aFields
+     *            noms des champs à inclure dans le json, par défaut tous
+     * @param aExclude
+     *            noms des champs à exclure du json
+     * @param aIfNoneMatch
+     *            ETags de l'enregistrement connus du client
+     * @param aAcceptEncoding
+     *            encodages acceptés par le client, pour une réponse compressée en cache
      *
      * @return enregistrement de type {objectname} et avec id {id}
      */
@@ -91,7 +108,11 @@ public class PublicObjectResource extends AbstractResource {
     public final Response getRecord(
             @ApiParam(value = "<code>true</code> to include children, by default true", required = false) @QueryParam("includeChildren") String aIncludeChildren,
             @ApiParam(value = "Data format of the record", required = false) @QueryParam("format") String aFormat,
-            @ApiParam(value = "Language as iso-lang-code", required = false) @QueryParam("lang") String aLang) {
+            @ApiParam(value = "Language as iso-lang-code", required = false) @QueryParam("lang") String aLang,
+            @ApiParam(value = "Names of fields to include in the json record", required = false) @QueryParam("fields") String aFields,
+            @ApiParam(value = "Names of fields to exclude from the json record", required = false) @QueryParam("exclude") String aExclude,
+            @ApiParam(value = "ETags of the record known by the client", required = false) @HeaderParam(HttpHeaders.IF_NONE_MATCH) String aIfNoneMatch,
+            @ApiParam(value = "Encodings accepted by the client", required = false) @HeaderParam(HttpHeaders.ACCEPT_ENCODING) String aAcceptEncoding) {
         try {
             logger.info("GET PUBLIC RECORD. Objectname: " + iObjectName + ", Id: " + iId + ", Format: " + aFormat);
 
@@ -107,17 +128,24 @@ public class PublicObjectResource extends AbstractResource {
                 return getPDF(iId, aLang, loggedUser);
             }
 
-            // Get JSON object
-            IValueObject rec = getRecord(iId, loggedUser).getValueObject();
-            if (rec == null) {
-                return Response.status(Status.NOT_FOUND).build();
+            // Les réponses json sont les mêmes pour tous les appelants, elles sont gardées en cache
+            boolean children = aIncludeChildren == null || Boolean.valueOf(aIncludeChildren);
+            FieldProjection projection = FieldProjection.of(aFields, aExclude);
+            PublicResponseCache cache = PublicResponseCache.getInstance();
+            if (cache.isEnabled(iObjectName)) {
+                PublicResponseCache.Entry entry = cache.load(iObjectName,
+                        PublicResponseCache.key("record", iId, children, aFields, aExclude), () -> {
+                            JsonObject record = getJsonRecord(children, projection, loggedUser);
+                            return record != null ? record.toString().getBytes(StandardCharsets.UTF_8) : null;
+                        });
+                return entry != null ? entry.toResponse(aIfNoneMatch, aAcceptEncoding) : Response.status(Status.NOT_FOUND).build();
             }
 
-            // Build the response
-            JsonObjectBuilder json = Json.createObjectBuilder();
-            json.add(Constants.RECORD, JsonVoUtil.voToJson(rec, aIncludeChildren == null || Boolean.valueOf(aIncludeChildren), loggedUser));
-
-            return Response.ok(json.build().toString()).build();
+            JsonObject json = getJsonRecord(children, projection, loggedUser);
+            if (json == null) {
+                return Response.status(Status.NOT_FOUND).build();
+            }
+            return Response.ok(json.toString()).build();
 
         } catch (Exception e) {
             logger.error("Erreur de récuperation de l'enregistrement publique", e);
@@ -127,6 +155,48 @@ public class PublicObjectResource extends AbstractResource {
         }
     }
 
+    /**
+     * Lit l'enregistrement et construit la réponse json
+     *
+     * @param aChildren
+     *            true pour inclure les enfants
+     * @param aProjection
+     *            attributs de l'enregistrement, <code>null</code> pour tous
+     * @param aUser
+     *            utilisateur public
+     * @return la réponse json, <code>null</code> si l'enregistrement n'existe pas
+     * @throws ISException
+     *             erreur de lecture de l'enregistrement
+     */
+    private JsonObject getJsonRecord(boolean aChildren, FieldProjection aProjection, ILoggedUser aUser) throws ISException {
+        IValueObject rec = getRecord(iId, aUser).getValueObject();
+        if (rec == null) {
+            return null;
+        }
+        JsonObjectBuilder json = JsonFactory.createObjectBuilder();
+        json.add(Constants.RECORD, JsonVoUtil.voToJson(rec, aChildren, aUser, aProjection));
+        return json.build();
+    }
+
+    /**
+     * Get a public record as pdf (or json or other format)
+     *
+     * Sans sélection des champs, ETag du client ni encodages acceptés.
+     *
+     * @param aIncludeChildren
+     *            <code>true</code> to include children, by default true
+     *
+     * @param aFormat
+     *            format, ex. pdf, json
+     * @param aLang
+     *            langue de l'enregistrement dans iso-lang-code ('fr', 'de')
+     *
+     * @return enregistrement de type {objectname} et avec id {id}
+     */
+    public final Response getRecord(String aIncludeChildren, String aFormat, String aLang) {
+        return getRecord(aIncludeChildren, aFormat, aLang, null, null, null, null);
+    }
+
     /**
      * Valide les droits d'accès sur le service
      *
@@ -148,7 +218,7 @@ public class PublicObjectResource extends AbstractResource {
             return Response.status(Status.BAD_REQUEST).build();
         }
 
-        if (aUser == null || !aUser.isAuthAction(iObjectName, Verb.GET.toString())) {
+        if (aUser == null || !PermissionMatrix.isAuthAction(aUser, iObjectName, Verb.GET)) {
             logger.info("L'utilisateur publique n'a pas le droit de consulter entité: " + iObjectName);
             return Response.status(Status.FORBIDDEN).build();
         }
@@ -38,9 +38,9 @@ import ch.inser.dynamic.common.IValueObject;
 import ch.inser.jsl.exceptions.ISException;
 import ch.inser.jsl.tools.NumberTools;
 import ch.inser.rest.services.object.ObjectNamesResource;
+import ch.inser.rest.util.JsonFactory;
 import ch.inser.rest.util.ServiceLocator;
 
-import jakarta.json.Json;
 import jakarta.json.JsonNumber;
 import jakarta.json.JsonObject;
 import jakarta.json.JsonReader;
@@ -214,7 +214,7 @@ public abstract class FeatureObjectNamesResource extends ObjectNamesResource {
 
         // Read the JSON from the response
         JsonObject json;
-        try (JsonReader jsonReader = Json.createReader(new StringReader(response.readEntity(String.class)))) {
+        try (JsonReader jsonReader = JsonFactory.createReader(new StringReader(response.readEntity(String.class)))) {
             json = jsonReader.readObject();
         }
         logger.debug("getList: response: " + json);
@@ -22,8 +22,8 @@ import org.apache.commons.logging.LogFactory;
 
 import ch.inser.dynamic.common.IContextManager;
 import ch.inser.jsl.exceptions.ISException;
+import ch.inser.rest.util.JsonFactory;
 
-import jakarta.json.Json;
 import jakarta.json.JsonReader;
 import jakarta.ws.rs.client.ClientBuilder;
 import jakarta.ws.rs.client.Entity;
@@ -95,7 +95,7 @@ public class TokenResource {
         // Return the token form ArcGIS Portal
         String token = response.readEntity(String.class);
         logger.debug("getToken: response: " + token);
-        try (JsonReader reader = Json.createReader(new StringReader(token))) {
+        try (JsonReader reader = JsonFactory.createReader(new StringReader(token))) {
             return reader.readObject().getString("token");
         }
     }
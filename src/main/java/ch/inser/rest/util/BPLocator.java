@@ -16,18 +16,30 @@
 package ch.inser.rest.util;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+import ch.inser.dynamic.common.IContextManager;
+import ch.inser.dynamic.common.IValueObject;
+import ch.inser.dynamic.util.ChildrenInfo;
 import ch.inser.dynaplus.bo.BPFactory;
 import ch.inser.dynaplus.bo.IBusinessProcess;
 import ch.inser.dynaplus.util.ILocator;
 import ch.inser.dynaplus.util.IService;
+import ch.inser.dynaplus.vo.VOFactory;
+import ch.inser.rest.core.AbstractResource;
 import ch.inser.rest.core.GenericBPDelegate;
+import ch.inser.rest.core.VersionedBPDelegate;
 
 /**
  * BPLocator pour is-rest
  *
+ * Avec json.list.etag, les delegates sont des {@link VersionedBPDelegate} qui incrémentent les versions de l'objet métier et de
+ * ses enfants à chaque modification. Sinon ce sont des {@link GenericBPDelegate}, et les réponses publiques, les traductions et
+ * les catalogues de codes ne sont relus qu'après leurs délais.
+ *
  * @author INSER SA *
  */
 public class BPLocator implements ILocator, Serializable {
@@ -53,6 +65,38 @@ public class BPLocator implements ILocator, Serializable {
         if (bp == null) {
             return null;
         }
-        return iDelegates.computeIfAbsent(name, k -> new GenericBPDelegate(bp));
+        return iDelegates.computeIfAbsent(name, k -> {
+            if (!isVersioned()) {
+                return new GenericBPDelegate(bp);
+            }
+            // Les modifications incrémentent la version de l'objet métier et de ses enfants
+            return new VersionedBPDelegate(name, getChildren(name), new GenericBPDelegate(bp));
+        });
+    }
+
+    /**
+     *
+     * @return true si les versions des objets métier sont tenues (propriété json.list.etag)
+     */
+    private static boolean isVersioned() {
+        IContextManager ctx = RestUtil.getContextManager();
+        return ctx != null && "true".equals(ctx.getProperty(AbstractResource.JSON_LIST_ETAG));
+    }
+
+    /**
+     *
+     * @param aName
+     *            nom de l'objet métier
+     * @return les noms des objets métier enfants
+     */
+    private static List<String> getChildren(String aName) {
+        List<String> children = new ArrayList<>();
+        IValueObject vo = VOFactory.getInstance().getVO(aName);
+        if (vo != null && vo.getVOInfo().getChildrens() != null) {
+            for (ChildrenInfo child : vo.getVOInfo().getChildrens()) {
+                children.add(child.getChildrenName());
+            }
+        }
+        return children;
     }
 }
@@ -0,0 +1,452 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+
+package ch.inser.rest.util;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import ch.inser.dynamic.common.DAOParameter;
+import ch.inser.dynamic.common.DAOParameter.Name;
+import ch.inser.dynamic.common.DynamicDAO.Operator;
+import ch.inser.dynamic.common.ILoggedUser;
+import ch.inser.dynamic.common.IValueObject;
+import ch.inser.dynamic.util.ChildrenInfo;
+import ch.inser.dynamic.util.VOInfo;
+import ch.inser.dynaplus.bo.BPFactory;
+import ch.inser.dynaplus.util.Constants.Entity;
+import ch.inser.dynaplus.vo.IVOFactory;
+import ch.inser.jsl.exceptions.ISException;
+
+/**
+ * Chargement groupé des enfants d'une liste de vos du même type.
+ *
+ * Au lieu d'une requête par parent et par type d'enfant, les valeurs de lien des parents sont collectées et chaque type d'enfant
+ * est lu avec une requête IN par tranche de {@link #CHUNK_SIZE} parents, puis les enfants sont groupés en mémoire par parent. Pour
+ * les liens sur plusieurs colonnes, la requête IN porte sur la première colonne et les enfants sont groupés sur toutes les colonnes.
+ * Les enfants passant par une table de lien, ainsi que les parents dont une valeur de lien est nulle, ne sont pas chargés ici et
+ * restent lus par parent. Les sous-enfants sont chargés de la même manière pour tous les enfants d'un type à la fois.
+ *
+ * Comme la lecture par parent, qui est limitée à datasourceMaxRowsPerQuery enregistrements, chaque parent garde au plus ce nombre
+ * d'enfants, les premiers dans l'ordre de lecture. La requête groupée est limitée au nombre de parents de la tranche fois ce
+ * nombre: si elle atteint sa limite, les enfants du type ne sont pas chargés ici et restent lus par parent.
+ *
+ * Les enfants d'un seul enregistrement peuvent aussi être chargés d'avance, pour calculer son ETag depuis leurs timestamps avant
+ * de l'écrire.
+ *
+ * @author INSER SA *
+ */
+class ChildrenBatch {
+
+    /** Définition de catégorie de logging */
+    private static final Log logger = LogFactory.getLog(ChildrenBatch.class);
+
+    /** Nombre maximal de valeurs dans une requête IN */
+    static final int CHUNK_SIZE = 500;
+
+    /** BP Factory */
+    private final BPFactory iBPFactory;
+
+    /** VO Factory */
+    private final IVOFactory iVOFactory;
+
+    /** Utilisateur du service */
+    private final ILoggedUser iUser;
+
+    /** true s'il faut exclure la récursion sur les enfants du même type que les parents */
+    private final boolean iExcludeRecursive;
+
+    /** Nom de l'objet métier des parents */
+    private final String iParentName;
+
+    /** Type d'enfant exclu, <code>null</code> si aucun */
+    private final String iExcludeType;
+
+    /** Nombre minimal de parents pour un chargement groupé, les sous-enfants sont chargés avec le même minimum */
+    private final int iMinVos;
+
+    /** Nombre maximal d'enfants d'un type par parent, 0 pour aucune limite */
+    private final int iMaxRows;
+
+    /** Enfants groupés par clé de lien du parent, par nom d'enfant */
+    private final Map<String, Map<List<String>, List<IValueObject>>> iChildren = new HashMap<>();
+
+    /** Chargements groupés des sous-enfants, par nom d'enfant */
+    private final Map<String, ChildrenBatch> iSubBatches = new HashMap<>();
+
+    /**
+     *
+     * @param aBPFactory
+     *            BP factory
+     * @param aVOFactory
+     *            VO factory
+     * @param aParentName
+     *            nom de l'objet métier des parents
+     * @param aExcludeType
+     *            type d'enfant exclu
+     * @param aExcludeRecursive
+     *            true s'il faut exclure la récursion sur les enfants du même type que les parents
+     * @param aMaxRows
+     *            nombre maximal d'enfants d'un type par parent, 0 pour aucune limite
+     * @param aUser
+     *            utilisateur du service
+     * @param aMinVos
+     *            nombre minimal de parents pour un chargement groupé
+     */
+    private ChildrenBatch(BPFactory aBPFactory, IVOFactory aVOFactory, String aParentName, String aExcludeType,
+            boolean aExcludeRecursive, int aMaxRows, ILoggedUser aUser, int aMinVos) {
+        iBPFactory = aBPFactory;
+        iVOFactory = aVOFactory;
+        iParentName = aParentName;
+        iExcludeType = aExcludeType;
+        iMinVos = aMinVos;
+        iExcludeRecursive = aExcludeRecursive;
+        iMaxRows = aMaxRows;
+        iUser = aUser;
+    }
+
+    /**
+     * Charge les enfants des vos.
+     *
+     * @param aBPFactory
+     *            BP factory
+     * @param aVOFactory
+     *            VO factory
+     * @param aVos
+     *            les parents
+     * @param aExcludeType
+     *            type d'enfant à exclure
+     * @param aExcludeRecursive
+     *            true s'il faut exclure la récursion sur les enfants du même type que les parents
+     * @param aMaxRows
+     *            nombre maximal d'enfants d'un type par parent, 0 pour aucune limite
+     * @param aUser
+     *            utilisateur du service
+     * @return les enfants chargés, <code>null</code> s'il n'y a rien à grouper
+     * @throws ISException
+     *             erreur au niveau bd
+     */
+    static ChildrenBatch load(BPFactory aBPFactory, IVOFactory aVOFactory, Collection<IValueObject> aVos, String aExcludeType,
+            boolean aExcludeRecursive, int aMaxRows, ILoggedUser aUser) throws ISException {
+        return load(aBPFactory, aVOFactory, aVos, aExcludeType, aExcludeRecursive, aMaxRows, aUser, 2);
+    }
+
+    /**
+     * Charge les enfants d'un enregistrement et leurs sous-enfants, sans exclure la récursion, pour calculer son ETag avec
+     * {@link #addVersions(IValueObject, List)} avant de l'écrire.
+     *
+     * @param aBPFactory
+     *            BP factory
+     * @param aVOFactory
+     *            VO factory
+     * @param aVo
+     *            l'enregistrement
+     * @param aMaxRows
+     *            nombre maximal d'enfants d'un type par parent, 0 pour aucune limite
+     * @param aUser
+     *            utilisateur du service
+     * @return les enfants chargés, <code>null</code> si le type n'a pas d'enfants
+     * @throws ISException
+     *             erreur au niveau bd
+     */
+    static ChildrenBatch loadRecord(BPFactory aBPFactory, IVOFactory aVOFactory, IValueObject aVo, int aMaxRows, ILoggedUser aUser)
+            throws ISException {
+        return load(aBPFactory, aVOFactory, Collections.singletonList(aVo), null, true, aMaxRows, aUser, 1);
+    }
+
+    /**
+     *
+     * @param aBPFactory
+     *            BP factory
+     * @param aVOFactory
+     *            VO factory
+     * @param aVos
+     *            les parents
+     * @param aExcludeType
+     *            type d'enfant à exclure
+     * @param aExcludeRecursive
+     *            true s'il faut exclure la récursion sur les enfants du même type que les parents
+     * @param aMaxRows
+     *            nombre maximal d'enfants d'un type par parent, 0 pour aucune limite
+     * @param aUser
+     *            utilisateur du service
+     * @param aMinVos
+     *            nombre minimal de parents, au moins 1
+     * @return les enfants chargés, <code>null</code> s'il n'y a rien à grouper
+     * @throws ISException
+     *             erreur au niveau bd
+     */
+    private static ChildrenBatch load(BPFactory aBPFactory, IVOFactory aVOFactory, Collection<IValueObject> aVos, String aExcludeType,
+            boolean aExcludeRecursive, int aMaxRows, ILoggedUser aUser, int aMinVos) throws ISException {
+        if (aBPFactory == null || aVos.isEmpty() || aVos.size() < aMinVos) {
+            return null;
+        }
+        VOInfo voInfo = aVos.iterator().next().getVOInfo();
+        if (!hasChildren(voInfo)) {
+            return null;
+        }
+        for (IValueObject vo : aVos) {
+            if (vo.getVOInfo() != voInfo) {
+                // Liste de types différents, chargement par parent
+                return null;
+            }
+        }
+        ChildrenBatch batch = new ChildrenBatch(aBPFactory, aVOFactory, voInfo.getName(), aExcludeType, aExcludeRecursive, aMaxRows,
+                aUser, aMinVos);
+        for (ChildrenInfo info : voInfo.getChildrens()) {
+            if (!info.getChildrenName().equals(aExcludeType) && info.getLinkTable() == null) {
+                batch.load(info, aVos);
+            }
+        }
+        return batch;
+    }
+
+    /**
+     *
+     * @param aInfo
+     *            le type d'enfant
+     * @param aVo
+     *            le parent
+     * @return les enfants du parent, <code>null</code> s'ils n'ont pas été chargés ici
+     */
+    List<IValueObject> getChildren(ChildrenInfo aInfo, IValueObject aVo) {
+        Map<List<String>, List<IValueObject>> children = iChildren.get(aInfo.getChildrenName());
+        if (children == null) {
+            return null;
+        }
+        List<String> key = getKey(aVo, aInfo.getMasterLink().split(","));
+        if (key == null) {
+            return null;
+        }
+        List<IValueObject> list = children.get(key);
+        return list != null ? list : Collections.emptyList();
+    }
+
+    /**
+     * Charge les sous-enfants de tous les enfants d'un type, la première fois.
+     *
+     * @param aInfo
+     *            le type d'enfant
+     * @return les sous-enfants chargés, <code>null</code> s'il n'y a rien à grouper
+     * @throws ISException
+     *             erreur au niveau bd
+     */
+    ChildrenBatch getSubBatch(ChildrenInfo aInfo) throws ISException {
+        String name = aInfo.getChildrenName();
+        if (!iSubBatches.containsKey(name)) {
+            List<IValueObject> all = new ArrayList<>();
+            Map<List<String>, List<IValueObject>> children = iChildren.get(name);
+            if (children != null) {
+                for (List<IValueObject> list : children.values()) {
+                    all.addAll(list);
+                }
+            }
+            iSubBatches.put(name,
+                    load(iBPFactory, iVOFactory, all, iExcludeRecursive ? iParentName : null, iExcludeRecursive, iMaxRows, iUser, iMinVos));
+        }
+        return iSubBatches.get(name);
+    }
+
+    /**
+     * Ajoute aux versions le type, l'id et le timestamp de chaque enfant du parent et de leurs sous-enfants, dans l'ordre de leur
+     * écriture.
+     *
+     * @param aVo
+     *            le parent
+     * @param aVersions
+     *            versions en construction
+     * @return false si des enfants écrits avec le parent ne sont pas chargés ici ou n'ont pas de timestamp
+     * @throws ISException
+     *             erreur au niveau bd en chargeant les sous-enfants
+     */
+    boolean addVersions(IValueObject aVo, List<Object> aVersions) throws ISException {
+        if (!hasChildren(aVo.getVOInfo())) {
+            return true;
+        }
+        for (ChildrenInfo info : aVo.getVOInfo().getChildrens()) {
+            if (info.getChildrenName().equals(iExcludeType)) {
+                continue;
+            }
+            List<IValueObject> children = getChildren(info, aVo);
+            if (children == null) {
+                // Table de lien ou valeur de lien nulle, les enfants sont lus à l'écriture
+                return false;
+            }
+            ChildrenBatch subBatch = info.isSubChildrens() ? getSubBatch(info) : null;
+            for (IValueObject child : children) {
+                if (!(child.getTimestamp() instanceof Date)) {
+                    return false;
+                }
+                aVersions.add(info.getChildrenName());
+                aVersions.add(child.getId());
+                aVersions.add(((Date) child.getTimestamp()).getTime());
+                if (info.isSubChildrens() && hasChildren(child.getVOInfo())
+                        && (subBatch == null || !subBatch.addVersions(child, aVersions))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     *
+     * @param aVOInfo
+     *            un type de vo
+     * @return true si le type a des enfants
+     */
+    static boolean hasChildren(VOInfo aVOInfo) {
+        return aVOInfo.getChildrens() != null && !aVOInfo.getChildrens().isEmpty();
+    }
+
+    /**
+     * Charge les enfants d'un type pour tous les parents.
+     *
+     * @param aInfo
+     *            le type d'enfant
+     * @param aVos
+     *            les parents
+     * @throws ISException
+     *             erreur au niveau bd
+     */
+    private void load(ChildrenInfo aInfo, Collection<IValueObject> aVos) throws ISException {
+        String[] childLinks = aInfo.getChildrenLink().split(",");
+        String[] masterLinks = aInfo.getMasterLink().split(",");
+
+        // Clés des parents et valeurs de la première colonne de lien, avec leur nombre de parents
+        Set<List<String>> keys = new LinkedHashSet<>();
+        Map<String, Object> values = new LinkedHashMap<>();
+        Map<String, Integer> parents = new HashMap<>();
+        for (IValueObject vo : aVos) {
+            List<String> key = vo.getId() != null ? getKey(vo, masterLinks) : null;
+            if (key != null && keys.add(key)) {
+                values.putIfAbsent(key.get(0), vo.getProperty(masterLinks[0]));
+                parents.merge(key.get(0), 1, Integer::sum);
+            }
+        }
+        List<IValueObject> children = new ArrayList<>();
+        List<String> inKeys = new ArrayList<>(values.keySet());
+        for (int start = 0; start < inKeys.size(); start += CHUNK_SIZE) {
+            List<Object> inValues = new ArrayList<>();
+            int chunkParents = 0;
+            for (String inKey : inKeys.subList(start, Math.min(start + CHUNK_SIZE, inKeys.size()))) {
+                inValues.add(values.get(inKey));
+                chunkParents += parents.get(inKey);
+            }
+            IValueObject query = iVOFactory.getVO(aInfo.getChildrenName());
+            Map<Operator, Object> in = new EnumMap<>(Operator.class);
+            in.put(Operator.IN, inValues);
+            query.setProperty(childLinks[0], in);
+            if (Entity.DOCUMENT.toString().equals(aInfo.getChildrenName())) {
+                query.setProperty("doc_obj_name", iParentName);
+            }
+            int limit = getLimit(chunkParents, iMaxRows);
+            List<IValueObject> chunk = iBPFactory.getBP(aInfo.getChildrenName())
+                    .getList(query, iUser, new DAOParameter(Name.ROWNUM_MAX, limit)).getListObject();
+            if (limit > 0 && chunk.size() >= limit) {
+                // Résultat peut-être tronqué, les enfants de ce type sont lus par parent
+                logger.debug("Children " + aInfo.getChildrenName() + " of " + iParentName + " exceed " + limit
+                        + " rows, loaded by parent");
+                return;
+            }
+            children.addAll(chunk);
+        }
+        iChildren.put(aInfo.getChildrenName(), group(children, childLinks, keys, iMaxRows));
+        logger.debug("Children " + aInfo.getChildrenName() + " loaded for " + keys.size() + " parents " + iParentName);
+    }
+
+    /**
+     *
+     * @param aParents
+     *            nombre de parents de la requête groupée
+     * @param aMaxRows
+     *            nombre maximal d'enfants par parent, 0 pour aucune limite
+     * @return nombre maximal d'enfants lus par la requête groupée, une ligne de plus que les enfants gardés pour détecter un
+     *         dépassement, 0 pour aucune limite
+     */
+    static int getLimit(int aParents, int aMaxRows) {
+        if (aMaxRows <= 0) {
+            return 0;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, (long) aParents * aMaxRows + 1);
+    }
+
+    /**
+     * Groupe les enfants par parent.
+     *
+     * @param aChildren
+     *            les enfants lus, dans l'ordre de lecture
+     * @param aChildLinks
+     *            les champs de lien des enfants
+     * @param aKeys
+     *            les clés de lien des parents
+     * @param aMaxRows
+     *            nombre maximal d'enfants par parent, 0 pour aucune limite
+     * @return les enfants par clé de lien du parent
+     */
+    static Map<List<String>, List<IValueObject>> group(Collection<IValueObject> aChildren, String[] aChildLinks,
+            Set<List<String>> aKeys, int aMaxRows) {
+        Map<List<String>, List<IValueObject>> children = new HashMap<>();
+        for (IValueObject child : aChildren) {
+            List<String> key = getKey(child, aChildLinks);
+            // Les autres colonnes de lien sont filtrées ici
+            if (key != null && aKeys.contains(key)) {
+                List<IValueObject> list = children.computeIfAbsent(key, k -> new ArrayList<>());
+                if (aMaxRows <= 0 || list.size() < aMaxRows) {
+                    list.add(child);
+                }
+            }
+        }
+        return children;
+    }
+
+    /**
+     *
+     * @param aVo
+     *            le vo
+     * @param aLinks
+     *            les champs de lien
+     * @return les valeurs de lien en string (les nombres sous forme normalisée), <code>null</code> si une valeur est nulle
+     */
+    private static List<String> getKey(IValueObject aVo, String[] aLinks) {
+        List<String> key = new ArrayList<>(aLinks.length);
+        for (String link : aLinks) {
+            Object value = aVo.getProperty(link);
+            if (value == null) {
+                return null;
+            }
+            if (value instanceof Number) {
+                // 5, 5L et 5.0 donnent la même clé
+                key.add(new BigDecimal(value.toString()).stripTrailingZeros().toPlainString());
+            } else {
+                key.add(value.toString());
+            }
+        }
+        return key;
+    }
+}
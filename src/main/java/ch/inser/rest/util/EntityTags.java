@@ -0,0 +1,152 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+
+package ch.inser.rest.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.Response.Status;
+
+/**
+ * Calcul et comparaison des ETags des réponses.
+ *
+ * Les sous-ressources sont créées par les locators et n'ont pas accès au {@link jakarta.ws.rs.core.Request}, l'entête
+ * If-None-Match est donc comparé ici, avec la comparaison faible de la RFC 9110.
+ *
+ * @author INSER SA *
+ */
+public final class EntityTags {
+
+    /** Nombre d'octets du digest gardés dans un tag */
+    private static final int TAG_BYTES = 16;
+
+    /**
+     * Constructeur privé
+     */
+    private EntityTags() {
+    }
+
+    /**
+     *
+     * @param aParts
+     *            valeurs dont dépend la représentation, p.ex. le type, l'id, le timestamp et les paramètres
+     * @return un ETag faible W/"..." calculé depuis les valeurs
+     */
+    public static String weak(Object... aParts) {
+        StringBuilder value = new StringBuilder();
+        for (Object part : aParts) {
+            value.append(part).append('\u0000');
+        }
+        return "W/\"" + digest(value.toString().getBytes(StandardCharsets.UTF_8)) + '"';
+    }
+
+    /**
+     *
+     * @param aBody
+     *            corps de la réponse
+     * @return un ETag fort "..." calculé depuis le corps
+     */
+    public static String strong(String aBody) {
+        return strong(aBody.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     *
+     * @param aBody
+     *            corps de la réponse
+     * @return un ETag fort "..." calculé depuis le corps
+     */
+    public static String strong(byte[] aBody) {
+        return '"' + digest(aBody) + '"';
+    }
+
+    /**
+     * Les différents encodages d'une représentation doivent avoir des ETags forts différents (RFC 9110, 8.8.3).
+     *
+     * @param aTag
+     *            ETag fort de la représentation non encodée
+     * @param aCoding
+     *            encodage du contenu, p.ex. "gzip"
+     * @return l'ETag de la représentation encodée
+     */
+    public static String encoded(String aTag, String aCoding) {
+        return aTag.substring(0, aTag.length() - 1) + '-' + aCoding + '"';
+    }
+
+    /**
+     *
+     * @param aIfNoneMatch
+     *            valeur de l'entête If-None-Match, peut être <code>null</code>
+     * @param aTag
+     *            ETag de la représentation courante
+     * @return true si le client a déjà la représentation
+     */
+    public static boolean matches(String aIfNoneMatch, String aTag) {
+        if (aIfNoneMatch == null || aTag == null) {
+            return false;
+        }
+        String tag = opaque(aTag);
+        for (String candidate : aIfNoneMatch.split(",")) {
+            String value = candidate.trim();
+            if ("*".equals(value) || opaque(value).equals(tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     *
+     * @param aTag
+     *            ETag de la représentation
+     * @return la réponse 304 avec l'ETag
+     */
+    public static Response notModified(String aTag) {
+        return Response.status(Status.NOT_MODIFIED).header(HttpHeaders.ETAG, aTag).build();
+    }
+
+    /**
+     *
+     * @param aTag
+     *            ETag faible ou fort
+     * @return le tag sans le préfixe W/
+     */
+    private static String opaque(String aTag) {
+        return aTag.startsWith("W/") ? aTag.substring(2) : aTag;
+    }
+
+    /**
+     *
+     * @param aBytes
+     *            contenu
+     * @return les premiers octets du SHA-256 du contenu en base64 url
+     */
+    private static String digest(byte[] aBytes) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(aBytes);
+            byte[] tag = new byte[TAG_BYTES];
+            System.arraycopy(hash, 0, tag, 0, TAG_BYTES);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(tag);
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 est disponible dans toutes les JVM
+            throw new IllegalStateException(e);
+        }
+    }
+}
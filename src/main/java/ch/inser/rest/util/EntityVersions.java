@@ -0,0 +1,74 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+
+package ch.inser.rest.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compteurs de version par objet métier, incrémentés à chaque modification faite par un BP delegate du {@link BPLocator}.
+ *
+ * Les compteurs sont locaux à la JVM et repartent de zéro au démarrage, l'époque de démarrage les distingue d'une instance à
+ * l'autre. Les modifications faites sans passer par les delegates (autre noeud, batch, accès direct à la base de données) ne sont
+ * pas comptées.
+ *
+ * @author INSER SA *
+ */
+public final class EntityVersions {
+
+    /** Epoque des compteurs, l'heure de démarrage */
+    private static final long EPOCH = System.currentTimeMillis();
+
+    /** Compteurs par nom d'objet métier */
+    private static final Map<String, AtomicLong> cVersions = new ConcurrentHashMap<>();
+
+    /**
+     * Constructeur privé
+     */
+    private EntityVersions() {
+    }
+
+    /**
+     *
+     * @param aEntity
+     *            nom de l'objet métier
+     * @return la version courante de l'objet métier
+     */
+    public static long get(String aEntity) {
+        AtomicLong version = cVersions.get(aEntity);
+        return version != null ? version.get() : 0;
+    }
+
+    /**
+     * Incrémente la version d'un objet métier modifié
+     *
+     * @param aEntity
+     *            nom de l'objet métier
+     * @return la nouvelle version
+     */
+    public static long increment(String aEntity) {
+        return cVersions.computeIfAbsent(aEntity, k -> new AtomicLong()).incrementAndGet();
+    }
+
+    /**
+     *
+     * @return l'époque des compteurs
+     */
+    public static long getEpoch() {
+        return EPOCH;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+
+package ch.inser.rest.util;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Sélection des attributs écrits dans le json d'un enregistrement, selon les paramètres <code>fields</code> et
+ * <code>exclude</code> des services.
+ *
+ * La sélection porte sur les attributs de premier niveau des enregistrements. Le nom <code>children</code> désigne les enfants:
+ * s'ils ne sont pas sélectionnés, ils ne sont pas lus.
+ *
+ * @author INSER SA *
+ */
+public final class FieldProjection {
+
+    /** Nom des enfants dans le json d'un enregistrement */
+    public static final String CHILDREN = "children";
+
+    /** Attributs à inclure, <code>null</code> pour tous */
+    private final Set<String> iFields;
+
+    /** Attributs à exclure */
+    private final Set<String> iExclude;
+
+    /**
+     *
+     * @param aFields
+     *            attributs à inclure, <code>null</code> pour tous
+     * @param aExclude
+     *            attributs à exclure
+     */
+    private FieldProjection(Set<String> aFields, Set<String> aExclude) {
+        iFields = aFields;
+        iExclude = aExclude;
+    }
+
+    /**
+     *
+     * @param aFields
+     *            noms des attributs à inclure séparés par des virgules, <code>null</code> pour tous
+     * @param aExclude
+     *            noms des attributs à exclure séparés par des virgules, peut être <code>null</code>
+     * @return la sélection, <code>null</code> si tous les attributs sont écrits
+     */
+    public static FieldProjection of(String aFields, String aExclude) {
+        Set<String> fields = split(aFields);
+        Set<String> exclude = split(aExclude);
+        if (fields.isEmpty() && exclude.isEmpty()) {
+            return null;
+        }
+        return new FieldProjection(fields.isEmpty() ? null : fields, exclude);
+    }
+
+    /**
+     *
+     * @param aField
+     *            nom de l'attribut
+     * @return true si l'attribut est écrit
+     */
+    public boolean includes(String aField) {
+        return (iFields == null || iFields.contains(aField)) && !iExclude.contains(aField);
+    }
+
+    /**
+     *
+     * @param aNames
+     *            noms séparés par des virgules
+     * @return les noms, sans les espaces et les noms vides
+     */
+    private static Set<String> split(String aNames) {
+        if (aNames == null || aNames.trim().isEmpty()) {
+            return Collections.emptySet();
+        }
+        Set<String> names = new HashSet<>();
+        for (String name : aNames.split(",")) {
+            if (!name.trim().isEmpty()) {
+                names.add(name.trim());
+            }
+        }
+        return names;
+    }
+
+    @Override
+    public String toString() {
+        return "fields: " + iFields + ", exclude: " + iExclude;
+    }
+}
@@ -0,0 +1,399 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+
+package ch.inser.rest.util;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+
+import ch.inser.dynamic.common.IContextManager;
+
+/**
+ * Formats des dates et timestamps écrits en JSON, choisis une seule fois selon les propriétés date.showtime, date.iso8601 et
+ * date.iso.timezone.zero.
+ *
+ * Les dates sont formatées avec un {@link DateTimeFormatter} immuable partagé au lieu d'un nouveau {@link SimpleDateFormat} par
+ * valeur. Le résultat est identique à celui de SimpleDateFormat dans le fuseau horaire par défaut, y compris le 'Z' du format UTC
+ * qui est un littéral. Les dates hors des années 1901 à 2036 sont formatées avec SimpleDateFormat: avant, le calendrier julien et
+ * les heures locales anciennes diffèrent, après, les règles de certains fuseaux horaires de {@link java.util.TimeZone} et de
+ * {@link ZoneId} diffèrent.
+ *
+ * Les dates et timestamps reçus en string sont reconnus en une passe selon leur longueur et la position des séparateurs, sans
+ * expression régulière, puis calculés comme SimpleDateFormat en mode lenient (un mois 13 est le janvier suivant, une heure dans le
+ * changement d'heure est décalée).
+ *
+ * @author INSER SA *
+ */
+final class JsonDateFormat {
+
+    /** Property name of the flag that adds the time to the dates */
+    static final String DATE_SHOWTIME_PROPERTY = "date.showtime";
+
+    /** Property name of the ISO 8601 flag, "T" between date and time */
+    static final String ISO_DATE_FORMAT_PROPERTY = "date.iso8601";
+
+    /** Property name of the ISO 8601 UTC flag, suffix ".000Z" */
+    static final String ISO_DATE_UTC_PROPERTY = "date.iso.timezone.zero";
+
+    /** Début du domaine du formatter, 1901-01-02T00:00:00Z */
+    private static final long MIN_MILLIS = -2177366400000L;
+
+    /** Fin du domaine du formatter, 2036-12-31T00:00:00Z */
+    private static final long MAX_MILLIS = 2114294400000L;
+
+    /** Format de l'année */
+    private static final String YEAR = "yyyy";
+
+    /** Format de date suisse */
+    private static final String DATE_CH = "dd.MM.yyyy";
+
+    /** Format de date */
+    private static final String DATE = "yyyy-MM-dd";
+
+    /** Format de date avec heures et minutes */
+    private static final String DATE_MINUTES = "yyyy-MM-dd HH:mm";
+
+    /** Format de date avec heure */
+    private static final String DATE_TIME = "yyyy-MM-dd HH:mm:ss";
+
+    /** Format de date avec heure, ISO 8601 */
+    private static final String DATE_TIME_ISO = "yyyy-MM-dd'T'HH:mm:ss";
+
+    /** Format de date avec heure et millisecondes */
+    private static final String DATE_MILLIS = "yyyy-MM-dd HH:mm:ss.SSS";
+
+    /** Format de date avec heure et millisecondes, ISO 8601 */
+    private static final String DATE_MILLIS_ISO = "yyyy-MM-dd'T'HH:mm:ss.SSS";
+
+    /** Format de date avec heure et millisecondes, ISO 8601 avec 'Z' littéral */
+    private static final String DATE_MILLIS_UTC = "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'";
+
+    /** Première année calculée sans SimpleDateFormat */
+    private static final int MIN_YEAR = 1901;
+
+    /** Dernière année calculée sans SimpleDateFormat */
+    private static final int MAX_YEAR = 2036;
+
+    /** Format sans propriétés, dates sans heure et timestamps avec espace */
+    private static final JsonDateFormat DEFAULT = new JsonDateFormat(null, false);
+
+    /** Pattern des dates avec heure, <code>null</code> pour les dates sans heure */
+    private final String iPattern;
+
+    /** Formatter des dates avec heure, <code>null</code> pour les dates sans heure */
+    private final DateTimeFormatter iFormatter;
+
+    /** true pour un "T" entre date et heure des timestamps */
+    private final boolean iIsoTimestamp;
+
+    /**
+     *
+     * @param aPattern
+     *            pattern des dates avec heure, <code>null</code> pour les dates sans heure
+     * @param aIsoTimestamp
+     *            true pour un "T" entre date et heure des timestamps
+     */
+    private JsonDateFormat(String aPattern, boolean aIsoTimestamp) {
+        iPattern = aPattern;
+        iFormatter = aPattern != null ? DateTimeFormatter.ofPattern(aPattern) : null;
+        iIsoTimestamp = aIsoTimestamp;
+    }
+
+    /**
+     *
+     * @param aContextManager
+     *            context manager, <code>null</code> pour les formats par défaut
+     * @return les formats selon les propriétés
+     */
+    static JsonDateFormat of(IContextManager aContextManager) {
+        if (aContextManager == null) {
+            return DEFAULT;
+        }
+        boolean iso = "true".equals(aContextManager.getProperty(ISO_DATE_FORMAT_PROPERTY));
+        String pattern = null;
+        if ("true".equals(aContextManager.getProperty(DATE_SHOWTIME_PROPERTY))) {
+            pattern = DATE_TIME;
+            if (iso) {
+                if ("true".equals(aContextManager.getProperty(ISO_DATE_UTC_PROPERTY))) {
+                    pattern = DATE_MILLIS_UTC;
+                } else {
+                    pattern = DATE_TIME_ISO;
+                }
+            }
+        }
+        return new JsonDateFormat(pattern, iso);
+    }
+
+    /**
+     * Ajoute les heures et minutes à la date si date.showtime est à true
+     *
+     * @param aDate
+     *            une date
+     * @return la date en format string
+     */
+    String format(Date aDate) {
+        if (iFormatter == null) {
+            return aDate.toString();
+        }
+        long time = aDate.getTime();
+        if (time < MIN_MILLIS || time >= MAX_MILLIS) {
+            return new SimpleDateFormat(iPattern).format(aDate);
+        }
+        return iFormatter.format(Instant.ofEpochMilli(time).atZone(ZoneId.systemDefault()));
+    }
+
+    /**
+     *
+     * @param aTimestamp
+     *            un timestamp
+     * @return le timestamp en format string (iso 8601 selon configuration)
+     */
+    String format(Timestamp aTimestamp) {
+        if (iIsoTimestamp) {
+            return aTimestamp.toString().replace(' ', 'T');
+        }
+        return aTimestamp.toString();
+    }
+
+    /**
+     * Lit une date ou un timestamp dans un des formats reconnus: yyyy, dd.MM.yyyy, yyyy-MM-dd, yyyy-MM-dd HH:mm,
+     * yyyy-MM-dd HH:mm:ss, yyyy-MM-dd'T'HH:mm:ss, yyyy-MM-dd HH:mm:ss.SSS, yyyy-MM-dd'T'HH:mm:ss.SSS et yyyy-MM-dd'T'HH:mm:ss.SSS'Z'.
+     *
+     * @param aValue
+     *            date ou timestamp en string
+     * @return la date, <code>null</code> si la valeur n'a la forme d'aucun format
+     * @throws ParseException
+     *             la valeur a la forme d'un format mais pas ses séparateurs
+     */
+    static java.util.Date parse(String aValue) throws ParseException {
+        String pattern = getPattern(aValue);
+        if (pattern == null) {
+            return null;
+        }
+        int year;
+        int month = 1;
+        int day = 1;
+        if (YEAR.equals(pattern)) {
+            year = getInt(aValue, 0, 4);
+        } else if (DATE_CH.equals(pattern)) {
+            checkSeparator(aValue, 2, '.');
+            checkSeparator(aValue, 5, '.');
+            day = getInt(aValue, 0, 2);
+            month = getInt(aValue, 3, 5);
+            year = getInt(aValue, 6, 10);
+        } else {
+            year = getInt(aValue, 0, 4);
+            month = getInt(aValue, 5, 7);
+            day = getInt(aValue, 8, 10);
+        }
+        int hour = 0;
+        int minute = 0;
+        int second = 0;
+        int millis = 0;
+        if (aValue.length() >= 16) {
+            hour = getInt(aValue, 11, 13);
+            minute = getInt(aValue, 14, 16);
+        }
+        if (aValue.length() >= 19) {
+            second = getInt(aValue, 17, 19);
+        }
+        if (aValue.length() >= 23) {
+            checkSeparator(aValue, 19, '.');
+            millis = getInt(aValue, 20, 23);
+        }
+        // Champs hors limites ajoutés comme SimpleDateFormat lenient
+        LocalDateTime local = LocalDateTime.of(year, 1, 1, 0, 0).plusMonths(month - 1L).plusDays(day - 1L).plusHours(hour)
+                .plusMinutes(minute).plusSeconds(second).plusNanos(millis * 1000000L);
+        if (local.getYear() < MIN_YEAR || local.getYear() > MAX_YEAR) {
+            // Calendrier julien, heures locales anciennes et règles futures des fuseaux horaires de SimpleDateFormat
+            return new SimpleDateFormat(pattern).parse(aValue);
+        }
+        ZonedDateTime zoned = ZonedDateTime.ofLocal(local, ZoneId.systemDefault(), null).withLaterOffsetAtOverlap();
+        return new java.util.Date(zoned.toInstant().toEpochMilli());
+    }
+
+    /**
+     *
+     * @param aValue
+     *            date ou timestamp en string
+     * @return le format dont la valeur a la forme, <code>null</code> si aucun
+     */
+    private static String getPattern(String aValue) {
+        switch (aValue.length()) {
+            case 4:
+                return isDigits(aValue, 0, 4) ? YEAR : null;
+            case 10:
+                if (isDigits(aValue, 0, 2) && isAny(aValue, 2) && isDigits(aValue, 3, 5) && isAny(aValue, 5) && isDigits(aValue, 6, 10)) {
+                    return DATE_CH;
+                }
+                return isDate(aValue) ? DATE : null;
+            case 16:
+                return isDate(aValue) && aValue.charAt(10) == ' ' && isMinutes(aValue) ? DATE_MINUTES : null;
+            case 19:
+                if (!isDate(aValue) || !isSeconds(aValue)) {
+                    return null;
+                }
+                return getTimeSeparatorPattern(aValue, DATE_TIME, DATE_TIME_ISO);
+            case 23:
+                if (!isDate(aValue) || !isSeconds(aValue) || !isAny(aValue, 19) || !isDigits(aValue, 20, 23)) {
+                    return null;
+                }
+                return getTimeSeparatorPattern(aValue, DATE_MILLIS, DATE_MILLIS_ISO);
+            case 24:
+                if (!isDate(aValue) || aValue.charAt(10) != 'T' || !isSeconds(aValue) || !isAny(aValue, 19) || !isDigits(aValue, 20, 23)
+                        || aValue.charAt(23) != 'Z') {
+                    return null;
+                }
+                return DATE_MILLIS_UTC;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     *
+     * @param aValue
+     *            timestamp en string
+     * @param aSpace
+     *            format avec un espace entre date et heure
+     * @param aIso
+     *            format avec un 'T' entre date et heure
+     * @return le format selon le séparateur entre date et heure, <code>null</code> si aucun
+     */
+    private static String getTimeSeparatorPattern(String aValue, String aSpace, String aIso) {
+        switch (aValue.charAt(10)) {
+            case ' ':
+                return aSpace;
+            case 'T':
+                return aIso;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     *
+     * @param aValue
+     *            date en string
+     * @return true si la valeur commence par yyyy-MM-dd
+     */
+    private static boolean isDate(String aValue) {
+        return isDigits(aValue, 0, 4) && aValue.charAt(4) == '-' && isDigits(aValue, 5, 7) && aValue.charAt(7) == '-'
+                && isDigits(aValue, 8, 10);
+    }
+
+    /**
+     *
+     * @param aValue
+     *            timestamp en string
+     * @return true si la valeur a HH:mm après la date
+     */
+    private static boolean isMinutes(String aValue) {
+        return isDigits(aValue, 11, 13) && aValue.charAt(13) == ':' && isDigits(aValue, 14, 16);
+    }
+
+    /**
+     *
+     * @param aValue
+     *            timestamp en string
+     * @return true si la valeur a HH:mm:ss après la date
+     */
+    private static boolean isSeconds(String aValue) {
+        return isMinutes(aValue) && aValue.charAt(16) == ':' && isDigits(aValue, 17, 19);
+    }
+
+    /**
+     *
+     * @param aValue
+     *            la valeur
+     * @param aIndex
+     *            position
+     * @return true si le caractère est accepté comme séparateur libre, tout sauf une fin de ligne
+     */
+    private static boolean isAny(String aValue, int aIndex) {
+        switch (aValue.charAt(aIndex)) {
+            case '\n':
+            case '\r':
+            case '\u0085':
+            case '\u2028':
+            case '\u2029':
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     *
+     * @param aValue
+     *            la valeur
+     * @param aStart
+     *            début
+     * @param aEnd
+     *            fin exclue
+     * @return true si les caractères sont des chiffres ASCII
+     */
+    private static boolean isDigits(String aValue, int aStart, int aEnd) {
+        for (int i = aStart; i < aEnd; i++) {
+            char c = aValue.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     *
+     * @param aValue
+     *            la valeur
+     * @param aStart
+     *            début
+     * @param aEnd
+     *            fin exclue
+     * @return l'entier des chiffres
+     */
+    private static int getInt(String aValue, int aStart, int aEnd) {
+        int value = 0;
+        for (int i = aStart; i < aEnd; i++) {
+            value = value * 10 + aValue.charAt(i) - '0';
+        }
+        return value;
+    }
+
+    /**
+     *
+     * @param aValue
+     *            la valeur
+     * @param aIndex
+     *            position du séparateur
+     * @param aSeparator
+     *            séparateur du format
+     * @throws ParseException
+     *             le séparateur est différent, comme SimpleDateFormat
+     */
+    private static void checkSeparator(String aValue, int aIndex, char aSeparator) throws ParseException {
+        if (aValue.charAt(aIndex) != aSeparator) {
+            throw new ParseException("Unparseable date: \"" + aValue + "\"", aIndex);
+        }
+    }
+}
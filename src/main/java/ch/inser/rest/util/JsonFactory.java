@@ -0,0 +1,152 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+
+package ch.inser.rest.util;
+
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Collections;
+
+import jakarta.json.JsonArrayBuilder;
+import jakarta.json.JsonBuilderFactory;
+import jakarta.json.JsonObjectBuilder;
+import jakarta.json.JsonReader;
+import jakarta.json.JsonReaderFactory;
+import jakarta.json.spi.JsonProvider;
+import jakarta.json.stream.JsonGenerator;
+import jakarta.json.stream.JsonGeneratorFactory;
+import jakarta.json.stream.JsonParser;
+import jakarta.json.stream.JsonParserFactory;
+
+/**
+ * Création des objets JSON-P de la couche REST.
+ *
+ * Remplace les méthodes statiques de {@link jakarta.json.Json}, qui cherchent le {@link JsonProvider} avec le ServiceLoader à chaque
+ * appel: le provider et ses factories sont créés une seule fois et partagés, ils sont thread safe.
+ *
+ * @author INSER SA *
+ */
+public final class JsonFactory {
+
+    /** Le provider JSON-P */
+    private static final JsonProvider cProvider = JsonProvider.provider();
+
+    /** Factory des builders */
+    private static final JsonBuilderFactory cBuilderFactory = cProvider.createBuilderFactory(Collections.emptyMap());
+
+    /** Factory des readers */
+    private static final JsonReaderFactory cReaderFactory = cProvider.createReaderFactory(Collections.emptyMap());
+
+    /** Factory des parsers */
+    private static final JsonParserFactory cParserFactory = cProvider.createParserFactory(Collections.emptyMap());
+
+    /** Factory des generators */
+    private static final JsonGeneratorFactory cGeneratorFactory = cProvider.createGeneratorFactory(Collections.emptyMap());
+
+    /**
+     * Constructeur privé
+     */
+    private JsonFactory() {
+    }
+
+    /**
+     *
+     * @return un builder d'objet json
+     */
+    public static JsonObjectBuilder createObjectBuilder() {
+        return cBuilderFactory.createObjectBuilder();
+    }
+
+    /**
+     *
+     * @return un builder de tableau json
+     */
+    public static JsonArrayBuilder createArrayBuilder() {
+        return cBuilderFactory.createArrayBuilder();
+    }
+
+    /**
+     *
+     * @param aReader
+     *            source json
+     * @return un reader json
+     */
+    public static JsonReader createReader(Reader aReader) {
+        return cReaderFactory.createReader(aReader);
+    }
+
+    /**
+     *
+     * @param aReader
+     *            source json
+     * @return un parser json
+     */
+    public static JsonParser createParser(Reader aReader) {
+        return cParserFactory.createParser(aReader);
+    }
+
+    /**
+     *
+     * @param aOut
+     *            flux de sortie, le json est écrit en UTF-8
+     * @return un generator json
+     */
+    public static JsonGenerator createGenerator(OutputStream aOut) {
+        return cGeneratorFactory.createGenerator(aOut);
+    }
+
+    /**
+     *
+     * @param aWriter
+     *            sortie
+     * @return un generator json
+     */
+    public static JsonGenerator createGenerator(Writer aWriter) {
+        return cGeneratorFactory.createGenerator(aWriter);
+    }
+
+    /**
+     *
+     * @return le provider JSON-P partagé
+     */
+    public static JsonProvider getProvider() {
+        return cProvider;
+    }
+
+    /**
+     *
+     * @return la factory des builders partagée
+     */
+    public static JsonBuilderFactory getBuilderFactory() {
+        return cBuilderFactory;
+    }
+
+    /**
+     *
+     * @return la factory des readers partagée
+     */
+    public static JsonReaderFactory getReaderFactory() {
+        return cReaderFactory;
+    }
+
+    /**
+     *
+     * @return la factory des generators partagée
+     */
+    public static JsonGeneratorFactory getGeneratorFactory() {
+        return cGeneratorFactory;
+    }
+}
@@ -18,14 +18,15 @@ package ch.inser.rest.util;
 import java.io.StringReader;
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
-import jakarta.json.Json;
 import jakarta.json.JsonArray;
 import jakarta.json.JsonArrayBuilder;
+import jakarta.json.JsonException;
 import jakarta.json.JsonNumber;
 import jakarta.json.JsonObject;
 import jakarta.json.JsonObjectBuilder;
@@ -56,7 +57,7 @@ public class JsonUtil {
      * @return jsonbuilder pour modifier le json
      */
     public static JsonObjectBuilder jsonObjectToBuilder(JsonObject aJson) {
-        JsonObjectBuilder job = Json.createObjectBuilder();
+        JsonObjectBuilder job = JsonFactory.createObjectBuilder();
         for (Entry<String, JsonValue> entry : aJson.entrySet()) {
             job.add(entry.getKey(), entry.getValue());
         }
@@ -71,7 +72,7 @@ public class JsonUtil {
      * @return jsonArrayBuilder pour modifier le array
      */
     public static JsonArrayBuilder jsonArrayToBuilder(JsonArray aJson) {
-        JsonArrayBuilder job = Json.createArrayBuilder();
+        JsonArrayBuilder job = JsonFactory.createArrayBuilder();
         for (JsonValue element : aJson) {
             job.add(element);
         }
@@ -93,7 +94,7 @@ public class JsonUtil {
         if (aValue == null || aPropertyName == null || aPropertyName.length() == 0) {
             return aJson;
         }
-        try (JsonReader jsonReader = Json.createReader(new StringReader(aJson))) {
+        try (JsonReader jsonReader = JsonFactory.createReader(new StringReader(aJson))) {
             JsonObjectBuilder job = jsonObjectToBuilder(jsonReader.readObject());
 
             if (aValue instanceof Long) {
@@ -116,7 +117,7 @@ public class JsonUtil {
      * @return JsonObject hierarchique selon le structure hierarchique du map
      */
     public static JsonObjectBuilder mapToJsonObject(Map<?, ?> aObjects) {
-        JsonObjectBuilder job = Json.createObjectBuilder();
+        JsonObjectBuilder job = JsonFactory.createObjectBuilder();
         for (Entry<?, ?> entry : aObjects.entrySet()) {
             addObject(job, entry.getKey(), entry.getValue());
         }
@@ -144,7 +145,7 @@ public class JsonUtil {
         }
         if (aValue instanceof JsonArray) {
             JsonArray jArray = (JsonArray) aValue;
-            JsonArrayBuilder builder = Json.createArrayBuilder();
+            JsonArrayBuilder builder = JsonFactory.createArrayBuilder();
             for (JsonValue jVal : jArray) {
                 builder.add(jVal);
             }
@@ -178,7 +179,7 @@ public class JsonUtil {
      * @return json array builder avec les éléments de la liste
      */
     private static JsonArrayBuilder listToJsonArray(List<?> aList) {
-        JsonArrayBuilder arrayJob = Json.createArrayBuilder();
+        JsonArrayBuilder arrayJob = JsonFactory.createArrayBuilder();
         for (Object item : aList) {
             if (item instanceof String) {
                 arrayJob.add((String) item);
@@ -230,11 +231,69 @@ public class JsonUtil {
      * @return the JSON Object
      */
     public static JsonStructure stringToJsonStructure(String aJson) {
-        try (JsonReader jsonReader = Json.createReader(new StringReader(aJson))) {
+        try (JsonReader jsonReader = JsonFactory.createReader(new StringReader(aJson))) {
             return jsonReader.read();
         }
     }
 
+    /**
+     * Forme normalisée d'un json, avec les attributs des objets triés et sans espaces: deux json équivalents ont la même forme.
+     *
+     * @param aJson
+     *            le json, peut être <code>null</code>
+     * @return le json normalisé, aJson s'il n'est pas valide
+     */
+    public static String toCanonicalString(String aJson) {
+        if (aJson == null || aJson.trim().isEmpty()) {
+            return aJson;
+        }
+        try (JsonReader jsonReader = JsonFactory.createReader(new StringReader(aJson))) {
+            StringBuilder canonical = new StringBuilder(aJson.length());
+            appendCanonical(jsonReader.readValue(), canonical);
+            return canonical.toString();
+        } catch (JsonException e) {
+            return aJson;
+        }
+    }
+
+    /**
+     *
+     * @param aJson
+     *            valeur json
+     * @param aCanonical
+     *            json normalisé en construction
+     */
+    private static void appendCanonical(JsonValue aJson, StringBuilder aCanonical) {
+        switch (aJson.getValueType()) {
+            case OBJECT:
+                aCanonical.append('{');
+                List<String> keys = new ArrayList<>(((JsonObject) aJson).keySet());
+                Collections.sort(keys);
+                for (int i = 0; i < keys.size(); i++) {
+                    if (i > 0) {
+                        aCanonical.append(',');
+                    }
+                    aCanonical.append(JsonFactory.getProvider().createValue(keys.get(i))).append(':');
+                    appendCanonical(((JsonObject) aJson).get(keys.get(i)), aCanonical);
+                }
+                aCanonical.append('}');
+                break;
+            case ARRAY:
+                aCanonical.append('[');
+                JsonArray array = (JsonArray) aJson;
+                for (int i = 0; i < array.size(); i++) {
+                    if (i > 0) {
+                        aCanonical.append(',');
+                    }
+                    appendCanonical(array.get(i), aCanonical);
+                }
+                aCanonical.append(']');
+                break;
+            default:
+                aCanonical.append(aJson);
+        }
+    }
+
     /**
      * @param aJson
      *            the string that will be used to create the JsonObject
@@ -244,7 +303,7 @@ public class JsonUtil {
         if (aJson == null || aJson.isEmpty()) {
             return null;
         }
-        try (JsonReader jsonReader = Json.createReader(new StringReader(aJson))) {
+        try (JsonReader jsonReader = JsonFactory.createReader(new StringReader(aJson))) {
             return jsonReader.readObject();
         }
     }
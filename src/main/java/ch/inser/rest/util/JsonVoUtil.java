@@ -19,16 +19,17 @@ import java.io.StringReader;
 import java.sql.Date;
 import java.sql.Timestamp;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.EnumMap;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -40,6 +41,7 @@ import ch.inser.dynamic.common.ILoggedUser;
 import ch.inser.dynamic.common.IValueObject;
 import ch.inser.dynamic.common.IValueObject.Type;
 import ch.inser.dynamic.util.ChildrenInfo;
+import ch.inser.dynamic.util.VOInfo;
 import ch.inser.dynaplus.bo.BPFactory;
 import ch.inser.dynaplus.bo.ChildrenlistObject;
 import ch.inser.dynaplus.util.Constants.Entity;
@@ -51,15 +53,19 @@ import ch.inser.jsl.tools.StringTools;
 import ch.inser.rest.util.Constants.PatchItem;
 import ch.inser.rest.util.Constants.PatchOperation;
 
-import jakarta.json.Json;
 import jakarta.json.JsonArray;
 import jakarta.json.JsonArrayBuilder;
 import jakarta.json.JsonNumber;
 import jakarta.json.JsonObject;
 import jakarta.json.JsonObjectBuilder;
 import jakarta.json.JsonReader;
+import jakarta.json.JsonString;
 import jakarta.json.JsonValue;
 import jakarta.json.JsonValue.ValueType;
+import jakarta.json.stream.JsonGenerator;
+import jakarta.json.stream.JsonParser;
+import jakarta.json.stream.JsonParser.Event;
+import jakarta.json.stream.JsonParsingException;
 
 /**
  * Outils pour la transformation entre vo et JSONObject
@@ -77,22 +83,17 @@ public class JsonVoUtil {
     private static final List<Type> JSON_DATATYPES = Arrays.asList(Type.LONG, Type.STRING, Type.DOUBLE, Type.BOOLEAN, Type.TIMESTAMP,
             Type.DATE, Type.CLOB);
 
-    /**
-     * Property name of flag that converts Java dates and timestamps to strings in ISO 8601 format with "T" between date and time:
-     * yyyy-MM-ddTHH:mm:ss...
-     */
-    private static final String ISO_DATE_FORMAT_PROPERTY = "date.iso8601";
+    /** Attributs json liés au vo après les autres attributs */
+    private static final List<String> SUBTREES = Arrays.asList("children", "joins", "childrenmap", "extent", "advancedSearchMap");
 
-    /**
-     * Property name of flag that converts Java dates to strings in ISO 8601 format with "T" between date and time AND timezone UTC:
-     * yyyy-MM-ddTHH:mm:ss.000Z
-     */
-    private static final String ISO_DATE_UTC_PROPERTY = "date.iso.timezone.zero";
+    /** Formats des dates selon la configuration, lus au premier usage */
+    private static volatile JsonDateFormat cDateFormat;
 
-    /**
-     * Formats de date reconnus.
-     */
-    private static LinkedHashMap<String, String> DATE_FORMATS = new LinkedHashMap<>();
+    /** Nombre maximal d'enfants d'un type par parent (datasourceMaxRowsPerQuery), lu au premier usage, -1 avant */
+    private static volatile int cMaxRowsPerQuery = -1;
+
+    /** Plans de sérialisation par type de vo */
+    private static final Map<VOInfo, SerializationPlan> cPlans = new ConcurrentHashMap<>();
 
     /** VO Factory pour créer des VOs à partir des JSON */
     private static IVOFactory iVOFactory;
@@ -107,19 +108,6 @@ public class JsonVoUtil {
      */
     private static IContextManager iContextManager;
 
-    static {
-        // Initialisation des formats de date
-        DATE_FORMATS.put("\\d{4}", "yyyy");
-        DATE_FORMATS.put("\\d{2}.\\d{2}.\\d{4}", "dd.MM.yyyy");
-        DATE_FORMATS.put("\\d{4}-\\d{2}-\\d{2}", "yyyy-MM-dd");
-        DATE_FORMATS.put("\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}", "yyyy-MM-dd HH:mm");
-        DATE_FORMATS.put("\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2}", "yyyy-MM-dd HH:mm:ss");
-        DATE_FORMATS.put("\\d{4}-\\d{2}-\\d{2}T\\d{2}:\\d{2}:\\d{2}", "yyyy-MM-dd'T'HH:mm:ss");
-        DATE_FORMATS.put("\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2}.\\d{3}", "yyyy-MM-dd HH:mm:ss.SSS");
-        DATE_FORMATS.put("\\d{4}-\\d{2}-\\d{2}T\\d{2}:\\d{2}:\\d{2}.\\d{3}", "yyyy-MM-dd'T'HH:mm:ss.SSS");
-        DATE_FORMATS.put("\\d{4}-\\d{2}-\\d{2}T\\d{2}:\\d{2}:\\d{2}.\\d{3}Z", "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
-    }
-
     /**
      * Constructeur privé
      */
@@ -208,13 +196,179 @@ public class JsonVoUtil {
      */
     private static JsonArrayBuilder vosToJson(Collection<IValueObject> aVos, boolean aChildren, String aExcludeType,
             boolean aExcludeRecursive, ILoggedUser aUser) throws ISException {
-        JsonArrayBuilder jsonArrayBuilder = Json.createArrayBuilder();
+        // Les enfants de tous les vos sont chargés en une requête par type d'enfant
+        ChildrenBatch batch = aChildren ? ChildrenBatch.load(iBPFactory, iVOFactory, aVos, aExcludeType, aExcludeRecursive, getMaxRowsPerQuery(), aUser)
+                : null;
+        return vosToJson(aVos, aChildren, aExcludeType, aExcludeRecursive, aUser, batch);
+    }
+
+    /**
+     *
+     * @param aVos
+     *            liste de vos
+     * @param aChildren
+     *            flag inclure les enfants
+     * @param aExcludeType
+     *            Type d'enfant à exclure
+     * @param aExcludeRecursive
+     *            true s'il faut exclure la récursion sur les enfants du même type que aVos
+     * @param aUser
+     *            utilisateur du service
+     * @param aBatch
+     *            enfants déjà chargés pour aVos, <code>null</code> pour les lire par vo
+     * @return json array avec les enregistrements [{obj1},{obj2}]
+     * @throws ISException
+     *             on database access problems
+     */
+    private static JsonArrayBuilder vosToJson(Collection<IValueObject> aVos, boolean aChildren, String aExcludeType,
+            boolean aExcludeRecursive, ILoggedUser aUser, ChildrenBatch aBatch) throws ISException {
+        JsonArrayBuilder jsonArrayBuilder = JsonFactory.createArrayBuilder();
         for (IValueObject vo : aVos) {
-            jsonArrayBuilder.add(voToJson(vo, aChildren, aExcludeType, aExcludeRecursive, aUser));
+            jsonArrayBuilder.add(voToJson(vo, aChildren, aExcludeType, aExcludeRecursive, aUser, aBatch, null));
         }
         return jsonArrayBuilder;
     }
 
+    /**
+     * Conversion de vos sans enfants en json array, avec les seuls attributs sélectionnés
+     *
+     * @param aVos
+     *            liste de vos
+     * @param aProjection
+     *            attributs à écrire, <code>null</code> pour tous
+     * @return json array avec les enregistrements [{obj1},{obj2}]
+     * @throws ISException
+     *             erreur de conversion
+     */
+    public static JsonArray vosToJson(Collection<IValueObject> aVos, FieldProjection aProjection) throws ISException {
+        JsonArrayBuilder jsonArrayBuilder = JsonFactory.createArrayBuilder();
+        for (IValueObject vo : aVos) {
+            jsonArrayBuilder.add(voToJson(vo, false, null, true, null, null, aProjection));
+        }
+        return jsonArrayBuilder.build();
+    }
+
+    /**
+     * Ecrit les vos sans enfants dans un tableau du generator, comme {@link #vosToJson(Collection)} mais un enregistrement à la
+     * fois.
+     *
+     * @param aGenerator
+     *            generator positionné dans un objet
+     * @param aName
+     *            nom du tableau
+     * @param aVos
+     *            liste de vos
+     * @return les ids des vos, dans l'ordre
+     * @throws ISException
+     *             erreur de conversion
+     */
+    public static List<Object> writeVos(JsonGenerator aGenerator, String aName, Collection<IValueObject> aVos) throws ISException {
+        return writeVos(aGenerator, aName, aVos, null);
+    }
+
+    /**
+     * Ecrit les vos sans enfants dans un tableau du generator, avec les seuls attributs sélectionnés.
+     *
+     * @param aGenerator
+     *            generator positionné dans un objet
+     * @param aName
+     *            nom du tableau
+     * @param aVos
+     *            liste de vos
+     * @param aProjection
+     *            attributs à écrire, <code>null</code> pour tous
+     * @return les ids des vos, dans l'ordre
+     * @throws ISException
+     *             erreur de conversion
+     */
+    public static List<Object> writeVos(JsonGenerator aGenerator, String aName, Collection<IValueObject> aVos,
+            FieldProjection aProjection) throws ISException {
+        List<Object> ids = new ArrayList<>(aVos.size());
+        aGenerator.writeStartArray(aName);
+        for (IValueObject vo : aVos) {
+            aGenerator.write(voToJson(vo, false, null, true, null, null, aProjection).build());
+            ids.add(vo.getId());
+        }
+        aGenerator.writeEnd();
+        return ids;
+    }
+
+    /**
+     * Ecrit les vos sans enfants en colonnes dans le generator: <code>"columns":[...]</code> avec les noms des attributs, une seule
+     * fois, puis <code>"rows":[[...],...]</code> avec les valeurs de chaque vo dans l'ordre des colonnes. Les valeurs sont lues
+     * directement dans les vos et écrites par les writers de colonne du plan de sérialisation, résolus une fois par type de vo.
+     *
+     * @param aGenerator
+     *            generator positionné dans un objet
+     * @param aVos
+     *            liste de vos
+     * @param aProjection
+     *            attributs à écrire, <code>null</code> pour tous
+     * @return les ids des vos, dans l'ordre
+     * @throws ISException
+     *             erreur de conversion
+     */
+    public static List<Object> writeTable(JsonGenerator aGenerator, Collection<IValueObject> aVos, FieldProjection aProjection)
+            throws ISException {
+        // Les vos d'une liste ont en principe les mêmes attributs, les autres sont ajoutés à la fin
+        Set<String> columnSet = new LinkedHashSet<>();
+        for (IValueObject vo : aVos) {
+            for (String field : vo.getProperties().keySet()) {
+                if (aProjection == null || aProjection.includes(field)) {
+                    columnSet.add(field);
+                }
+            }
+        }
+        String[] columns = columnSet.toArray(new String[0]);
+        aGenerator.writeStartArray("columns");
+        for (String column : columns) {
+            aGenerator.write(column);
+        }
+        aGenerator.writeEnd();
+
+        List<Object> ids = new ArrayList<>(aVos.size());
+        VOInfo info = null;
+        ValueWriter[] writers = null;
+        aGenerator.writeStartArray("rows");
+        for (IValueObject vo : aVos) {
+            if (writers == null || vo.getVOInfo() != info) {
+                info = vo.getVOInfo();
+                writers = getValueWriters(vo, columns);
+            }
+            Map<String, Object> properties = vo.getProperties();
+            aGenerator.writeStartArray();
+            for (int i = 0; i < columns.length; i++) {
+                Object value = properties.get(columns[i]);
+                if (value == null) {
+                    aGenerator.writeNull();
+                } else {
+                    writers[i].write(aGenerator, value);
+                }
+            }
+            aGenerator.writeEnd();
+            ids.add(vo.getId());
+        }
+        aGenerator.writeEnd();
+        return ids;
+    }
+
+    /**
+     *
+     * @param aVo
+     *            vo du type
+     * @param aColumns
+     *            noms des colonnes
+     * @return les writers des colonnes, du plan de sérialisation du type de vo s'il en a un
+     */
+    private static ValueWriter[] getValueWriters(IValueObject aVo, String[] aColumns) {
+        SerializationPlan plan = aVo.getVOInfo() != null ? getPlan(aVo.getVOInfo()) : null;
+        ValueWriter[] writers = new ValueWriter[aColumns.length];
+        for (int i = 0; i < aColumns.length; i++) {
+            writers[i] = plan != null ? plan.getValueWriter(aVo, aColumns[i]) : SerializationPlan.createValueWriter(aVo, aColumns[i]);
+        }
+        return writers;
+    }
+
     /**
      * Transform a value object to a JSON object.
      *
@@ -252,7 +406,66 @@ public class JsonVoUtil {
         if (aVo == null) {
             return null;
         }
-        return voToJson(aVo, aChildren, null, aExcludeRecursive, aUser).build();
+        return voToJson(aVo, aChildren, null, aExcludeRecursive, aUser, null, null).build();
+    }
+
+    /**
+     * Transform a value object to a JSON object with the selected attributes only. The children are read only if they are
+     * selected.
+     *
+     * @param aVo
+     *            the value object
+     * @param aChildren
+     *            <code>true</code> to get also the children on the value object
+     * @param aUser
+     *            the user to get the children, can be <code>null</code> if the children aren't required
+     * @param aProjection
+     *            the attributes to write, <code>null</code> for all
+     * @return the JSON object with the selected attributes from the value object
+     * @throws ISException
+     *             on database access problems
+     */
+    public static JsonObject voToJson(IValueObject aVo, boolean aChildren, ILoggedUser aUser, FieldProjection aProjection)
+            throws ISException {
+        if (aVo == null) {
+            return null;
+        }
+        boolean children = aChildren && (aProjection == null || aProjection.includes(FieldProjection.CHILDREN));
+        return voToJson(aVo, children, null, true, aUser, null, aProjection).build();
+    }
+
+    /**
+     * Transform a value object to a JSON object with its children already loaded.
+     *
+     * @param aVo
+     *            the value object
+     * @param aUser
+     *            the user to get the children which are not loaded
+     * @param aProjection
+     *            the attributes to write, <code>null</code> for all
+     * @param aBatch
+     *            the children loaded for the value object, <code>null</code> to query them
+     * @return the JSON object with the children
+     * @throws ISException
+     *             on database access problems
+     */
+    static JsonObject voToJson(IValueObject aVo, ILoggedUser aUser, FieldProjection aProjection, ChildrenBatch aBatch)
+            throws ISException {
+        return voToJson(aVo, true, null, true, aUser, aBatch, aProjection).build();
+    }
+
+    /**
+     *
+     * @param aVo
+     *            the value object
+     * @param aUser
+     *            the user to get the children
+     * @return the children and sub-children of the value object, <code>null</code> if its type has no children
+     * @throws ISException
+     *             on database access problems
+     */
+    static ChildrenBatch loadChildren(IValueObject aVo, ILoggedUser aUser) throws ISException {
+        return ChildrenBatch.loadRecord(iBPFactory, iVOFactory, aVo, getMaxRowsPerQuery(), aUser);
     }
 
     /**
@@ -268,20 +481,22 @@ public class JsonVoUtil {
      *            true s'il faut exclure la recursion sur les enfants du même type que aVo
      * @param aUser
      *            utilisateur
+     * @param aBatch
+     *            enfants déjà chargés, <code>null</code> pour les lire pour ce vo
+     * @param aProjection
+     *            attributs à écrire, <code>null</code> pour tous
      * @return json avec les attributs du vo (et enfants)
      * @throws ISException
      *             erreur au niveau bd
      */
     private static JsonObjectBuilder voToJson(IValueObject aVo, boolean aChildren, String aExcludeType, boolean aExcludeRecursive,
-            ILoggedUser aUser) throws ISException {
-        JsonObjectBuilder jsonBuilder = Json.createObjectBuilder();
-        for (String field : aVo.getProperties().keySet()) {
-            addJsonValue(aVo, field, jsonBuilder);
-        }
+            ILoggedUser aUser, ChildrenBatch aBatch, FieldProjection aProjection) throws ISException {
+        JsonObjectBuilder jsonBuilder = JsonFactory.createObjectBuilder();
+        addJsonValues(aVo, jsonBuilder, aProjection);
 
         // Add the children VOs
         if (aChildren) {
-            addChildren(aVo, aExcludeType, aExcludeRecursive, aUser, jsonBuilder);
+            addChildren(aVo, aExcludeType, aExcludeRecursive, aUser, jsonBuilder, aBatch);
         }
         return jsonBuilder;
     }
@@ -299,23 +514,31 @@ public class JsonVoUtil {
      *            the user to get the children
      * @param aJsonBuilder
      *            the JSON builder
+     * @param aBatch
+     *            the children already loaded, <code>null</code> to query the children of the value object
      * @throws ISException
      *             on database access problems
      */
     private static void addChildren(IValueObject aVo, String aExcludeType, boolean aExcludeRecursive, ILoggedUser aUser,
-            JsonObjectBuilder aJsonBuilder) throws ISException {
+            JsonObjectBuilder aJsonBuilder, ChildrenBatch aBatch) throws ISException {
         List<ChildrenInfo> childrens = aVo.getVOInfo().getChildrens();
         if (childrens == null || childrens.isEmpty()) {
             return;
         }
 
-        JsonObjectBuilder jsonBuilder = Json.createObjectBuilder();
+        JsonObjectBuilder jsonBuilder = JsonFactory.createObjectBuilder();
         for (ChildrenInfo info : childrens) {
             if (info.getChildrenName().equals(aExcludeType)) {
                 continue;
             }
+            List<IValueObject> children = aVo.getId() != null && aBatch != null ? aBatch.getChildren(info, aVo) : null;
             if (aVo.getId() == null) {
-                jsonBuilder.add(info.getChildrenName(), Json.createArrayBuilder());
+                jsonBuilder.add(info.getChildrenName(), JsonFactory.createArrayBuilder());
+            } else if (children != null) {
+                // Children loaded with the other value objects, the sub-children too
+                jsonBuilder.add(info.getChildrenName(),
+                        vosToJson(children, info.isSubChildrens(), aExcludeRecursive ? aVo.getVOInfo().getName() : null, aExcludeRecursive,
+                                aUser, info.isSubChildrens() ? aBatch.getSubBatch(info) : null));
             } else {
                 IValueObject query = childrenQuery(aVo, info);
 
@@ -330,6 +553,59 @@ public class JsonVoUtil {
         aJsonBuilder.add("children", jsonBuilder);
     }
 
+    /**
+     * Ajoute les attributs du vo dans l'objet JSON, avec le plan de sérialisation de son type
+     *
+     * @param aVo
+     *            vo avec attributs-valeurs
+     * @param aJsonBuilder
+     *            json object en construction
+     * @param aProjection
+     *            attributs à écrire, <code>null</code> pour tous
+     * @throws ISException
+     *             erreur d'ajout d'un childrenmap
+     */
+    private static void addJsonValues(IValueObject aVo, JsonObjectBuilder aJsonBuilder, FieldProjection aProjection)
+            throws ISException {
+        VOInfo voInfo = aVo.getVOInfo();
+        if (voInfo == null) {
+            for (String field : aVo.getProperties().keySet()) {
+                if (aProjection == null || aProjection.includes(field)) {
+                    addJsonValue(aVo, field, aJsonBuilder);
+                }
+            }
+            return;
+        }
+        getPlan(voInfo).write(aVo, aJsonBuilder, aProjection);
+    }
+
+    /**
+     *
+     * @param aVOInfo
+     *            type de vo
+     * @return le plan de sérialisation du type, créé la première fois
+     */
+    private static SerializationPlan getPlan(VOInfo aVOInfo) {
+        SerializationPlan plan = cPlans.get(aVOInfo);
+        if (plan == null) {
+            plan = new SerializationPlan();
+            SerializationPlan existing = cPlans.putIfAbsent(aVOInfo, plan);
+            if (existing != null) {
+                plan = existing;
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * Oublie les plans de sérialisation et les formats de date, à appeler lorsque la configuration est rechargée
+     */
+    public static void clearSerializationPlans() {
+        cDateFormat = null;
+        cMaxRowsPerQuery = -1;
+        cPlans.clear();
+    }
+
     /**
      * Ajoute une valeur dans l'objet JSON
      *
@@ -382,11 +658,7 @@ public class JsonVoUtil {
      * @return le timestamp en format string (iso 8601 selon configuration)
      */
     private static String timestampToString(Timestamp aTimestamp) {
-        if ("true".equals(iContextManager.getProperty("date.iso8601"))) {
-            String origFormat = aTimestamp.toString();
-            return origFormat.replace(" ", "T");
-        }
-        return aTimestamp.toString();
+        return getDateFormat().format(aTimestamp);
     }
 
     /**
@@ -401,7 +673,7 @@ public class JsonVoUtil {
      * @return jsonarray avec les valeurs
      */
     public static JsonArray fieldsToJsonArray(IValueObject aVo, String aField, List<Object> aList) {
-        JsonArrayBuilder jarray = Json.createArrayBuilder();
+        JsonArrayBuilder jarray = JsonFactory.createArrayBuilder();
         for (Object value : aList) {
             addJsonValue(aVo, aField, value, jarray);
 
@@ -454,18 +726,41 @@ public class JsonVoUtil {
      * @return Une chaine de caractères contenant la date et l'heure
      */
     private static String dateTimeToString(java.sql.Date aDate) {
-        if (iContextManager != null && "true".equals(iContextManager.getProperty("date.showtime"))) {
-            SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-            if ("true".equals(iContextManager.getProperty(ISO_DATE_FORMAT_PROPERTY))) {
-                if ("true".equals(iContextManager.getProperty(ISO_DATE_UTC_PROPERTY))) {
-                    df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
-                } else {
-                    df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+        return getDateFormat().format(aDate);
+    }
+
+    /**
+     *
+     * @return les formats des dates selon la configuration
+     */
+    private static JsonDateFormat getDateFormat() {
+        JsonDateFormat format = cDateFormat;
+        if (format == null) {
+            format = JsonDateFormat.of(iContextManager);
+            cDateFormat = format;
+        }
+        return format;
+    }
+
+    /**
+     *
+     * @return le nombre maximal d'enregistrements d'une requête (datasourceMaxRowsPerQuery), 0 pour aucune limite
+     */
+    private static int getMaxRowsPerQuery() {
+        int maxRows = cMaxRowsPerQuery;
+        if (maxRows < 0) {
+            maxRows = 0;
+            String property = iContextManager != null ? iContextManager.getProperty("datasourceMaxRowsPerQuery") : null;
+            if (property != null) {
+                try {
+                    maxRows = Math.max(0, Integer.parseInt(property.trim()));
+                } catch (NumberFormatException e) {
+                    logger.debug("Invalid datasourceMaxRowsPerQuery: " + property, e);
                 }
             }
-            return df.format(aDate);
+            cMaxRowsPerQuery = maxRows;
         }
-        return aDate.toString();
+        return maxRows;
     }
 
     /**
@@ -482,7 +777,7 @@ public class JsonVoUtil {
      */
     private static void addUntypedJsonValue(String aField, Object aValue, JsonObjectBuilder aJsonBuilder) throws ISException {
         if (aValue instanceof Collection) {
-            JsonArrayBuilder arrayBuilder = Json.createArrayBuilder();
+            JsonArrayBuilder arrayBuilder = JsonFactory.createArrayBuilder();
             for (Object value : (Collection<?>) aValue) {
                 if (value instanceof IValueObject) {
                     arrayBuilder.add(getAnonymousVOBuilder((IValueObject) value));
@@ -500,6 +795,36 @@ public class JsonVoUtil {
         aJsonBuilder.add(aField, aValue.toString());
     }
 
+    /**
+     * Ecrit une valeur d'un type inconnu dans un tableau du generator, comme addUntypedJsonValue
+     *
+     * @param aGenerator
+     *            generator positionné dans un tableau
+     * @param aValue
+     *            valeur avec type inconnu
+     * @throws ISException
+     *             erreur en écrivant une valeur de type IValueObject
+     */
+    private static void writeUntypedValue(JsonGenerator aGenerator, Object aValue) throws ISException {
+        if (aValue instanceof Collection) {
+            aGenerator.writeStartArray();
+            for (Object value : (Collection<?>) aValue) {
+                if (value instanceof IValueObject) {
+                    aGenerator.write(getAnonymousVOBuilder((IValueObject) value).build());
+                } else {
+                    aGenerator.write(value.toString());
+                }
+            }
+            aGenerator.writeEnd();
+            return;
+        }
+        if (aValue instanceof IValueObject) {
+            aGenerator.write(getAnonymousVOBuilder((IValueObject) aValue).build());
+            return;
+        }
+        aGenerator.write(aValue.toString());
+    }
+
     /**
      * Add a map of advanced search filters to the VO.
      *
@@ -511,10 +836,8 @@ public class JsonVoUtil {
      */
     private static JsonObjectBuilder getAnonymousVOBuilder(IValueObject aVo) throws ISException {
 
-        JsonObjectBuilder voJsonBuilder = Json.createObjectBuilder();
-        for (String field : aVo.getProperties().keySet()) {
-            addJsonValue(aVo, field, voJsonBuilder);
-        }
+        JsonObjectBuilder voJsonBuilder = JsonFactory.createObjectBuilder();
+        addJsonValues(aVo, voJsonBuilder, null);
         return voJsonBuilder;
     }
 
@@ -526,7 +849,7 @@ public class JsonVoUtil {
      *             erreur de construction de l'objet json
      */
     private static JsonObjectBuilder addChildrenMap(Map<?, ?> aChildrenMap) throws ISException {
-        JsonObjectBuilder jsonBuilder = Json.createObjectBuilder();
+        JsonObjectBuilder jsonBuilder = JsonFactory.createObjectBuilder();
         for (Entry<?, ?> child : aChildrenMap.entrySet()) {
             jsonBuilder.add((String) child.getKey(), voToJson((IValueObject) child.getValue(), false, null));
         }
@@ -546,10 +869,16 @@ public class JsonVoUtil {
      */
     public static List<IValueObject> jsonToVos(String aJson, IValueObject aVo) throws ISException {
         List<IValueObject> vos = new ArrayList<>();
-        try (JsonReader reader = Json.createReader(new StringReader(aJson))) {
-            JsonArray array = reader.readArray();
-            for (Object json : array) {
-                vos.add(jsonToVo(json.toString(), (IValueObject) aVo.clone()));
+        try (JsonParser parser = JsonFactory.createParser(new StringReader(aJson))) {
+            if (!parser.hasNext() || parser.next() != Event.START_ARRAY) {
+                throw new JsonParsingException("Tableau json attendu", parser.getLocation());
+            }
+            // Un enregistrement à la fois, sans construire l'arbre du tableau
+            for (Event event = parser.next(); event != Event.END_ARRAY; event = parser.next()) {
+                if (event != Event.START_OBJECT) {
+                    throw new JsonParsingException("Objet json attendu", parser.getLocation());
+                }
+                vos.add(bindVo(parser, (IValueObject) aVo.clone()));
             }
         }
         return vos;
@@ -570,35 +899,97 @@ public class JsonVoUtil {
         if (aJson == null) {
             return aVo;
         }
-        try (JsonReader jsonReader = Json.createReader(new StringReader(aJson))) {
-            JsonObject json = jsonReader.readObject();
-            for (String field : json.keySet()) {
-                addJsonValue(json, field, aVo);
-            }
-            // Listes d'enfants
-            if (json.containsKey("children")) {
-                addChildren(aVo, json.getJsonObject("children"));
-            }
-            // Objets métier joints
-            if (json.containsKey("joins")) {
-                addJoins(aVo, json.getJsonArray("joins"));
-            }
-            // Critères de recherche sur enfants
-            if (json.containsKey("childrenmap")) {
-                addChildrenMap(aVo, json.getJsonObject("childrenmap"));
-            }
-            // Map extent
-            if (json.containsKey("extent")) {
-                addExtent(aVo, json.getJsonObject("extent"));
+        try (JsonParser parser = JsonFactory.createParser(new StringReader(aJson))) {
+            if (!parser.hasNext() || parser.next() != Event.START_OBJECT) {
+                throw new JsonParsingException("Objet json attendu", parser.getLocation());
             }
-            if (json.containsKey("advancedSearchMap")) {
-                addAdvancedSearchFilter(json.getJsonObject("advancedSearchMap"), aVo);
+            return bindVo(parser, aVo);
+        }
+    }
+
+    /**
+     * Lie les attributs d'un objet json au vo au fil des événements du parser. Seuls les sous-arbres children, joins,
+     * childrenmap, extent et advancedSearchMap sont construits, et liés après les autres attributs.
+     *
+     * @param aParser
+     *            parser positionné au début de l'objet
+     * @param aVo
+     *            vo vierge
+     * @return valueobject avec attributs-valeurs
+     * @throws ISException
+     *             on database access problems
+     */
+    private static IValueObject bindVo(JsonParser aParser, IValueObject aVo) throws ISException {
+        Map<String, JsonValue> subtrees = null;
+        for (Event event = aParser.next(); event != Event.END_OBJECT; event = aParser.next()) {
+            String field = aParser.getString();
+            aParser.next();
+            JsonValue value = aParser.getValue();
+            addJsonValue(field, value, aVo);
+            if (SUBTREES.contains(field)) {
+                if (subtrees == null) {
+                    subtrees = new HashMap<>();
+                }
+                subtrees.put(field, value);
             }
+        }
+        if (subtrees != null) {
+            addSubtrees(aVo, subtrees);
+        }
+        return aVo;
+    }
 
+    /**
+     * Lie les attributs d'un objet json déjà construit au vo
+     *
+     * @param aJson
+     *            objet json avec attributs-valeurs
+     * @param aVo
+     *            vo vierge
+     * @return valueobject avec attributs-valeurs
+     * @throws ISException
+     *             on database access problems
+     */
+    private static IValueObject bindVo(JsonObject aJson, IValueObject aVo) throws ISException {
+        for (Map.Entry<String, JsonValue> entry : aJson.entrySet()) {
+            addJsonValue(entry.getKey(), entry.getValue(), aVo);
         }
+        addSubtrees(aVo, aJson);
         return aVo;
     }
 
+    /**
+     * Lie les enfants, jointures, critères sur enfants, extent et critères avancés au vo
+     *
+     * @param aVo
+     *            vo avec ses attributs
+     * @param aSubtrees
+     *            sous-arbres json par nom d'attribut
+     * @throws ISException
+     *             on database access problems
+     */
+    private static void addSubtrees(IValueObject aVo, Map<String, JsonValue> aSubtrees) throws ISException {
+        // Listes d'enfants
+        if (aSubtrees.containsKey("children")) {
+            addChildren(aVo, (JsonObject) aSubtrees.get("children"));
+        }
+        // Objets métier joints
+        if (aSubtrees.containsKey("joins")) {
+            addJoins(aVo, (JsonArray) aSubtrees.get("joins"));
+        }
+        // Critères de recherche sur enfants
+        if (aSubtrees.containsKey("childrenmap")) {
+            addChildrenMap(aVo, (JsonObject) aSubtrees.get("childrenmap"));
+        }
+        // Map extent
+        if (aSubtrees.containsKey("extent")) {
+            addExtent(aVo, (JsonObject) aSubtrees.get("extent"));
+        }
+        if (aSubtrees.containsKey("advancedSearchMap")) {
+            addAdvancedSearchFilter((JsonObject) aSubtrees.get("advancedSearchMap"), aVo);
+        }
+    }
+
     /**
      * Add a map extent tot he VO.
      *
@@ -628,7 +1019,7 @@ public class JsonVoUtil {
     private static void addChildrenMap(IValueObject aVo, JsonObject aJson) throws ISException {
         Map<String, IValueObject> childrenMap = new HashMap<>();
         for (String type : aJson.keySet()) {
-            childrenMap.put(type, jsonToVo(aJson.getJsonObject(type).toString(), iVOFactory.getVO(type)));
+            childrenMap.put(type, bindVo(aJson.getJsonObject(type), iVOFactory.getVO(type)));
         }
         aVo.setProperty("childrenmap", childrenMap);
     }
@@ -649,7 +1040,7 @@ public class JsonVoUtil {
             JsonObject join = aJoins.getJsonObject(i);
             String objectType = join.keySet().iterator().next();
             List<IValueObject> joins = joinVos.computeIfAbsent(objectType, k -> new ArrayList<>());
-            joins.add(jsonToVo(join.getJsonObject(objectType).toString(), iVOFactory.getVO(objectType)));
+            joins.add(bindVo(join.getJsonObject(objectType), iVOFactory.getVO(objectType)));
         }
         aVo.setProperty("joins", joinVos);
     }
@@ -659,14 +1050,17 @@ public class JsonVoUtil {
      *
      * @param aField
      *            nom du champ
-     * @param aJson
-     *            objet json
+     * @param aValue
+     *            valeur json
      * @param aVo
      *            vo à remplir
      */
-    private static void addJsonValue(JsonObject aJson, String aField, IValueObject aVo) {
+    private static void addJsonValue(String aField, JsonValue aValue, IValueObject aVo) {
         if ("DISTINCT".equalsIgnoreCase(aField)) {
-            aVo.setProperty("DISTINCT", aJson.getBoolean(aField));
+            if (aValue.getValueType() != ValueType.TRUE && aValue.getValueType() != ValueType.FALSE) {
+                throw new ClassCastException("La valeur de " + aField + " n'est pas un booléen: " + aValue);
+            }
+            aVo.setProperty("DISTINCT", aValue.getValueType() == ValueType.TRUE);
             return;
         }
         if ("children".equalsIgnoreCase(aField) || "joins".equalsIgnoreCase(aField) || "childrenmap".equalsIgnoreCase(aField)
@@ -677,7 +1071,7 @@ public class JsonVoUtil {
 
         if (aVo.getPropertyType(propertyField) == null) {
             // Champ non-configuré. Type inconnu
-            Object value = getJsonValue(aJson, aField);
+            Object value = getJsonValue(aValue);
             if (value == null || value.toString().isEmpty() || "null".equals(value)) {
                 return;
             }
@@ -688,11 +1082,11 @@ public class JsonVoUtil {
             aVo.setProperty(aField, value);
             return;
         }
-        if (!JSON_DATATYPES.contains(aVo.getPropertyType(propertyField)) && aJson.get(aField).getValueType() != ValueType.STRING) {
+        if (!JSON_DATATYPES.contains(aVo.getPropertyType(propertyField)) && aValue.getValueType() != ValueType.STRING) {
             throw new UnsupportedOperationException(
                     "Le type " + aVo.getPropertyType(propertyField) + " de l'attribut " + aField + " n'est pas supporté.");
         }
-        aVo.setProperty(aField, getValueOf(aJson, aField, aVo.getPropertyType(propertyField)));
+        aVo.setProperty(aField, getValueOf(aValue, aVo.getPropertyType(propertyField)));
     }
 
     /**
@@ -743,7 +1137,7 @@ public class JsonVoUtil {
         List<Object> deletes = getChildrenIds(aVo, aChildName);
         if (aRecords != null) {
             for (int i = 0; i < aRecords.size(); i++) {
-                IValueObject vo = jsonToVo(aRecords.getJsonObject(i).toString(), iVOFactory.getVO(aChildName));
+                IValueObject vo = bindVo(aRecords.getJsonObject(i), iVOFactory.getVO(aChildName));
                 if (vo.getId() == null) {
                     creations.add(vo);
                 } else {
@@ -854,7 +1248,7 @@ public class JsonVoUtil {
             return aVo;
         }
         aVo.setId(aId);
-        try (JsonReader jsonReader = Json.createReader(new StringReader(aPatch))) {
+        try (JsonReader jsonReader = JsonFactory.createReader(new StringReader(aPatch))) {
             JsonArray json = jsonReader.readArray();
             for (int i = 0; i < json.size(); i++) {
                 JsonObject instruction = json.getJsonObject(i);
@@ -908,10 +1302,23 @@ public class JsonVoUtil {
      * @return la valeur dans le bon type selon config
      */
     private static Object getValueOf(JsonObject aJson, String aField, Type aType) {
-        if (aJson.get(aField) == null) {
+        return getValueOf(aJson.get(aField), aType);
+    }
+
+    /**
+     * Transforme une valeur json (integer,double,boolean,string) en bon type selon vo info
+     *
+     * @param aValue
+     *            the JSON value, <code>null</code> if absent
+     * @param aType
+     *            the type
+     * @return la valeur dans le bon type selon config
+     */
+    private static Object getValueOf(JsonValue aValue, Type aType) {
+        if (aValue == null) {
             return null;
         }
-        Object value = getJsonValue(aJson, aField);
+        Object value = getJsonValue(aValue);
         if (value == null) {
             return null;
         }
@@ -943,25 +1350,35 @@ public class JsonVoUtil {
      * @return valeur: boolean, string, JsonObject, JsonArray, JsonNumber (long, double, ...)
      */
     private static Object getJsonValue(JsonObject aJson, String aField) {
-        JsonValue jsonValue = aJson.get(aField);
-        if (jsonValue == null) {
+        return getJsonValue(aJson.get(aField));
+    }
+
+    /**
+     * Pour une valeur json recupère la valeur
+     *
+     * @param aValue
+     *            valeur json, <code>null</code> si absente
+     * @return valeur: boolean, string, JsonObject, JsonArray, JsonNumber (long, double, ...)
+     */
+    private static Object getJsonValue(JsonValue aValue) {
+        if (aValue == null) {
             return null;
         }
-        switch (jsonValue.getValueType()) {
+        switch (aValue.getValueType()) {
             case NULL:
                 return null;
             case ARRAY:
-                return aJson.getJsonArray(aField);
+                return aValue.asJsonArray();
             case STRING:
-                return aJson.getString(aField);
+                return ((JsonString) aValue).getString();
             case NUMBER:
-                return aJson.getJsonNumber(aField);
+                return aValue;
             case TRUE:
                 return true;
             case FALSE:
                 return false;
             case OBJECT:
-                return aJson.getJsonObject(aField);
+                return aValue.asJsonObject();
             default:
                 break;
         }
@@ -978,26 +1395,7 @@ public class JsonVoUtil {
      * @return valeur: boolean, string, JsonObject, JsonArray, JsonNumber (long, double, ...)
      */
     private static Object getJsonValue(JsonArray aJsonArray, int index) {
-        JsonValue jsonValue = aJsonArray.get(index);
-        switch (jsonValue.getValueType()) {
-            case NULL:
-                return null;
-            case ARRAY:
-                return aJsonArray.getJsonArray(index);
-            case STRING:
-                return aJsonArray.getString(index);
-            case NUMBER:
-                return aJsonArray.getJsonNumber(index);
-            case TRUE:
-                return true;
-            case FALSE:
-                return false;
-            case OBJECT:
-                return aJsonArray.getJsonObject(index);
-            default:
-                break;
-        }
-        return null;
+        return getJsonValue(aJsonArray.get(index));
     }
 
     /**
@@ -1179,13 +1577,13 @@ public class JsonVoUtil {
      * @return objet timestamp
      */
     public static Object getTimestamp(String aValue) {
-        String dateFormat = getDateFormat(aValue);
-        if (dateFormat != null) {
-            try {
-                return new java.sql.Timestamp(new SimpleDateFormat(dateFormat).parse(aValue).getTime());
-            } catch (ParseException e) {
-                logger.error("Erreur de parsing de timestamp: " + aValue, e);
+        try {
+            java.util.Date date = JsonDateFormat.parse(aValue);
+            if (date != null) {
+                return new java.sql.Timestamp(date.getTime());
             }
+        } catch (ParseException e) {
+            logger.error("Erreur de parsing de timestamp: " + aValue, e);
         }
         if ("true".equals(iContextManager.getProperty("date.iso8601"))) {
             String nonIsoFormat = aValue.replace("T", " ");
@@ -1202,9 +1600,9 @@ public class JsonVoUtil {
     public static Date getDate(String aValue) {
         if (aValue != null) {
             try {
-                String dateFormat = getDateFormat(aValue);
-                if (dateFormat != null) {
-                    return new java.sql.Date(new SimpleDateFormat(dateFormat).parse(aValue).getTime());
+                java.util.Date date = JsonDateFormat.parse(aValue);
+                if (date != null) {
+                    return new java.sql.Date(date.getTime());
                 }
             } catch (ParseException e) {
                 logger.error("Erreur de parsing de date: " + aValue, e);
@@ -1214,20 +1612,6 @@ public class JsonVoUtil {
         throw new IllegalArgumentException("Format de date non connu: " + aValue);
     }
 
-    /**
-     * @param aValue
-     *            valeur date ou timestamp
-     * @return format pour créer un objet date
-     */
-    private static String getDateFormat(String aValue) {
-        for (Map.Entry<String, String> entry : DATE_FORMATS.entrySet()) {
-            if (aValue.matches(entry.getKey())) {
-                return entry.getValue();
-            }
-        }
-        return null;
-    }
-
     /**
      * Prépare les requête avancé avec des opérateurs "de-à" (différents combinaisons de >, >=, <, <=)
      *
@@ -1368,6 +1752,217 @@ public class JsonVoUtil {
      */
     public static void setContextManager(IContextManager aIContextManager) {
         iContextManager = aIContextManager;
+        clearSerializationPlans();
+    }
+
+    /**
+     * Ecriture d'un attribut dans l'objet JSON
+     */
+    @FunctionalInterface
+    private interface FieldWriter {
+
+        /**
+         *
+         * @param aJsonBuilder
+         *            json object en construction
+         * @param aField
+         *            nom de l'attribut
+         * @param aValue
+         *            valeur de l'attribut
+         * @throws ISException
+         *             erreur d'ajout d'un childrenmap
+         */
+        void write(JsonObjectBuilder aJsonBuilder, String aField, Object aValue) throws ISException;
     }
 
+    /**
+     * Ecriture de la valeur d'un attribut dans un tableau du generator, p.ex. une ligne du format table
+     */
+    @FunctionalInterface
+    private interface ValueWriter {
+
+        /**
+         *
+         * @param aGenerator
+         *            generator positionné dans un tableau
+         * @param aValue
+         *            valeur de l'attribut, pas <code>null</code>
+         * @throws ISException
+         *             erreur d'écriture d'un childrenmap
+         */
+        void write(JsonGenerator aGenerator, Object aValue) throws ISException;
+    }
+
+    /**
+     * Plan de sérialisation d'un type de vo.
+     *
+     * Le type de chaque attribut est résolu une seule fois en un {@link FieldWriter}. L'ordre des attributs du premier vo est
+     * gardé dans un tableau: tant que les vos suivants ont les mêmes attributs dans le même ordre, ce qui est le cas des vos d'une
+     * liste, les writers sont lus dans le tableau, sinon dans la map par nom d'attribut.
+     */
+    private static final class SerializationPlan {
+
+        /** Writers par nom d'attribut */
+        private final Map<String, FieldWriter> iWriters = new ConcurrentHashMap<>();
+
+        /** Writers des valeurs en tableau par nom d'attribut */
+        private final Map<String, ValueWriter> iValueWriters = new ConcurrentHashMap<>();
+
+        /** Noms des attributs du premier vo, dans l'ordre */
+        private volatile String[] iFields;
+
+        /** Writers des attributs du premier vo, dans l'ordre */
+        private volatile FieldWriter[] iLayout;
+
+        /**
+         * Ajoute les attributs du vo dans l'objet JSON
+         *
+         * @param aVo
+         *            vo avec attributs-valeurs
+         * @param aJsonBuilder
+         *            json object en construction
+         * @param aProjection
+         *            attributs à écrire, <code>null</code> pour tous
+         * @throws ISException
+         *             erreur d'ajout d'un childrenmap
+         */
+        void write(IValueObject aVo, JsonObjectBuilder aJsonBuilder, FieldProjection aProjection) throws ISException {
+            FieldWriter[] layout = iLayout;
+            if (layout == null) {
+                layout = learn(aVo);
+            }
+            String[] fields = iFields;
+            int i = 0;
+            for (String field : aVo.getProperties().keySet()) {
+                if (aProjection == null || aProjection.includes(field)) {
+                    FieldWriter writer = i < layout.length && fields[i].equals(field) ? layout[i] : getWriter(aVo, field);
+                    writer.write(aJsonBuilder, field, aVo.getProperty(field));
+                }
+                i++;
+            }
+        }
+
+        /**
+         * Garde l'ordre des attributs du vo
+         *
+         * @param aVo
+         *            le premier vo du type
+         * @return les writers des attributs du vo, dans l'ordre
+         */
+        private synchronized FieldWriter[] learn(IValueObject aVo) {
+            if (iLayout == null) {
+                List<String> fields = new ArrayList<>(aVo.getProperties().keySet());
+                FieldWriter[] layout = new FieldWriter[fields.size()];
+                for (int i = 0; i < layout.length; i++) {
+                    layout[i] = getWriter(aVo, fields.get(i));
+                }
+                // Les noms sont publiés avant les writers, lus en premier par write
+                iFields = fields.toArray(new String[0]);
+                iLayout = layout;
+            }
+            return iLayout;
+        }
+
+        /**
+         *
+         * @param aVo
+         *            vo du type
+         * @param aField
+         *            nom de l'attribut
+         * @return le writer de l'attribut, créé la première fois
+         */
+        private FieldWriter getWriter(IValueObject aVo, String aField) {
+            FieldWriter writer = iWriters.get(aField);
+            if (writer == null) {
+                writer = createWriter(aVo, aField);
+                iWriters.put(aField, writer);
+            }
+            return writer;
+        }
+
+        /**
+         *
+         * @param aVo
+         *            vo du type
+         * @param aField
+         *            nom de l'attribut
+         * @return le writer selon le type de l'attribut, comme addJsonValue
+         */
+        private static FieldWriter createWriter(IValueObject aVo, String aField) {
+            if ("childrenmap".equals(aField)) {
+                return (builder, field, value) -> builder.add(field, addChildrenMap((Map<?, ?>) value));
+            }
+            Type type = aVo.getPropertyType(aField);
+            if (type == null) {
+                return (builder, field, value) -> addUntypedJsonValue(field, value, builder);
+            }
+            switch (type) {
+                case LONG:
+                    return (builder, field, value) -> builder.add(field, (Long) value);
+                case DOUBLE:
+                    return (builder, field, value) -> builder.add(field, (Double) value);
+                case BOOLEAN:
+                    return (builder, field, value) -> builder.add(field, (Boolean) value);
+                case STRING:
+                    return (builder, field, value) -> builder.add(field, (String) value);
+                case DATE:
+                    return (builder, field, value) -> builder.add(field, dateTimeToString((Date) value));
+                case TIMESTAMP:
+                    return (builder, field, value) -> builder.add(field, timestampToString((Timestamp) value));
+                default:
+                    return (builder, field, value) -> builder.add(field, value.toString());
+            }
+        }
+
+        /**
+         *
+         * @param aVo
+         *            vo du type
+         * @param aField
+         *            nom de l'attribut
+         * @return le writer de la valeur de l'attribut dans un tableau, créé la première fois
+         */
+        ValueWriter getValueWriter(IValueObject aVo, String aField) {
+            ValueWriter writer = iValueWriters.get(aField);
+            if (writer == null) {
+                writer = createValueWriter(aVo, aField);
+                iValueWriters.put(aField, writer);
+            }
+            return writer;
+        }
+
+        /**
+         *
+         * @param aVo
+         *            vo du type
+         * @param aField
+         *            nom de l'attribut
+         * @return le writer de la valeur selon le type de l'attribut, comme createWriter
+         */
+        static ValueWriter createValueWriter(IValueObject aVo, String aField) {
+            if ("childrenmap".equals(aField)) {
+                return (generator, value) -> generator.write(addChildrenMap((Map<?, ?>) value).build());
+            }
+            Type type = aVo.getPropertyType(aField);
+            if (type == null) {
+                return JsonVoUtil::writeUntypedValue;
+            }
+            switch (type) {
+                case LONG:
+                    return (generator, value) -> generator.write((Long) value);
+                case DOUBLE:
+                    return (generator, value) -> generator.write((Double) value);
+                case BOOLEAN:
+                    return (generator, value) -> generator.write((Boolean) value);
+                case STRING:
+                    return (generator, value) -> generator.write((String) value);
+                case DATE:
+                    return (generator, value) -> generator.write(dateTimeToString((Date) value));
+                case TIMESTAMP:
+                    return (generator, value) -> generator.write(timestampToString((Timestamp) value));
+                default:
+                    return (generator, value) -> generator.write(value.toString());
+            }
+        }
+    }
 }
@@ -0,0 +1,619 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+
+package ch.inser.rest.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import ch.inser.dynamic.common.IContextManager;
+import ch.inser.dynamic.util.ChildrenInfo;
+import ch.inser.dynamic.util.VOInfo;
+import ch.inser.jsl.exceptions.ISException;
+
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
+
+/**
+ * Cache des réponses json des services publics.
+ *
+ * Les services publics sont appelés avec le même utilisateur public: leurs réponses sont les mêmes pour tous les appelants. Les
+ * octets de la réponse sont gardés par objet métier et par paramètres normalisés, avec leur ETag et, avec
+ * security.public.cache.gzip, leur forme compressée. Une réponse est gardée pendant le délai security.public.cache.ttl ou
+ * security.public.cache.ttl.&lt;objet métier&gt; (en millisecondes, pas de cache par défaut) et tant que les versions de l'objet
+ * métier et de ses enfants ({@link EntityVersions}) n'ont pas changé. Lorsque le nombre de réponses dépasse
+ * security.public.cache.size (1000 par défaut) ou que leurs octets dépassent security.public.cache.bytes (64 Mo par défaut), celles
+ * qui expirent en premier sont retirées. Une réponse de plus de security.public.cache.entry.bytes (1 Mo par défaut) n'est pas
+ * gardée.
+ *
+ * Une réponse absente est lue par une seule requête à la fois, les requêtes de la même réponse attendent sa lecture.
+ *
+ * @author INSER SA *
+ */
+public class PublicResponseCache {
+
+    /** The property key name for the time in milliseconds a public response is kept, for all the public entities */
+    public static final String SECURITY_PUBLIC_CACHE_TTL = "security.public.cache.ttl";
+
+    /** The property key name for the maximum number of public responses kept */
+    public static final String SECURITY_PUBLIC_CACHE_SIZE = "security.public.cache.size";
+
+    /** The property key name for the maximum number of bytes of the public responses kept, compressed forms included */
+    public static final String SECURITY_PUBLIC_CACHE_BYTES = "security.public.cache.bytes";
+
+    /** The property key name for the maximum number of bytes of a public response kept */
+    public static final String SECURITY_PUBLIC_CACHE_ENTRY_BYTES = "security.public.cache.entry.bytes";
+
+    /**
+     * The property key name to keep the public responses compressed too, "true" to enable. Not to be used with a gzip encoding
+     * interceptor, which would compress the response again.
+     */
+    public static final String SECURITY_PUBLIC_CACHE_GZIP = "security.public.cache.gzip";
+
+    /** Nombre maximal de réponses par défaut */
+    private static final int DEFAULT_MAX_SIZE = 1000;
+
+    /** Nombre maximal d'octets des réponses par défaut */
+    private static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    /** Nombre maximal d'octets d'une réponse par défaut */
+    private static final long DEFAULT_MAX_ENTRY_BYTES = 1024L * 1024;
+
+    /** Définition de catégorie de logging */
+    private static final Log logger = LogFactory.getLog(PublicResponseCache.class);
+
+    /** L'instance du cache */
+    private static final PublicResponseCache cInstance = new PublicResponseCache();
+
+    /** Réponses par objet métier et paramètres */
+    private final Map<String, Entry> iEntries = new ConcurrentHashMap<>();
+
+    /** Lectures en cours par objet métier et paramètres */
+    private final Map<String, CompletableFuture<Entry>> iLoading = new ConcurrentHashMap<>();
+
+    /** Nombre d'octets des réponses gardées */
+    private final AtomicLong iBytes = new AtomicLong();
+
+    /** Context manager des délais */
+    private volatile IContextManager iContextManager;
+
+    /** Délais lus par objet métier */
+    private final Map<String, Long> iTtls = new ConcurrentHashMap<>();
+
+    /** Nombre maximal de réponses */
+    private volatile int iMaxSize = DEFAULT_MAX_SIZE;
+
+    /** Nombre maximal d'octets des réponses */
+    private volatile long iMaxBytes = DEFAULT_MAX_BYTES;
+
+    /** Nombre maximal d'octets d'une réponse */
+    private volatile long iMaxEntryBytes = DEFAULT_MAX_ENTRY_BYTES;
+
+    /** true pour garder les réponses compressées */
+    private volatile boolean iGzip;
+
+    /** Réponses trouvées */
+    private final LongAdder iHits = new LongAdder();
+
+    /** Réponses non trouvées, expirées ou modifiées */
+    private final LongAdder iMisses = new LongAdder();
+
+    /**
+     * Lecture d'une réponse absente du cache
+     */
+    @FunctionalInterface
+    public interface Loader {
+
+        /**
+         *
+         * @return le corps de la réponse, <code>null</code> s'il n'y a rien à garder, p.ex. un enregistrement non trouvé
+         * @throws ISException
+         *             erreur de lecture
+         */
+        byte[] load() throws ISException;
+    }
+
+    /**
+     * Réponse gardée
+     */
+    public static final class Entry {
+
+        /** Corps de la réponse */
+        private final byte[] iBody;
+
+        /** Corps compressé, <code>null</code> sans gzip */
+        private final byte[] iGzip;
+
+        /** ETag du corps */
+        private final String iTag;
+
+        /** ETag du corps compressé, <code>null</code> sans gzip */
+        private final String iGzipTag;
+
+        /** Versions de l'objet métier et de ses enfants à la lecture */
+        private final String iVersions;
+
+        /** Heure d'expiration en millisecondes */
+        private final long iExpires;
+
+        /**
+         *
+         * @param aBody
+         *            corps de la réponse
+         * @param aGzip
+         *            corps compressé, <code>null</code> sans gzip
+         * @param aVersions
+         *            versions de l'objet métier et de ses enfants
+         * @param aExpires
+         *            heure d'expiration
+         */
+        Entry(byte[] aBody, byte[] aGzip, String aVersions, long aExpires) {
+            iBody = aBody;
+            iGzip = aGzip;
+            iTag = EntityTags.strong(aBody);
+            iGzipTag = aGzip != null ? EntityTags.encoded(iTag, "gzip") : null;
+            iVersions = aVersions;
+            iExpires = aExpires;
+        }
+
+        /**
+         *
+         * @param aIfNoneMatch
+         *            entête If-None-Match de la requête
+         * @param aAcceptEncoding
+         *            entête Accept-Encoding de la requête
+         * @return la réponse, 304 si le client a déjà le corps, compressée si le client accepte gzip, avec l'ETag de l'encodage
+         */
+        public Response toResponse(String aIfNoneMatch, String aAcceptEncoding) {
+            if (iGzip == null) {
+                if (EntityTags.matches(aIfNoneMatch, iTag)) {
+                    return EntityTags.notModified(iTag);
+                }
+                return Response.ok(iBody, MediaType.APPLICATION_JSON).header(HttpHeaders.ETAG, iTag).build();
+            }
+            boolean gzip = aAcceptEncoding != null && aAcceptEncoding.toLowerCase().contains("gzip");
+            String tag = gzip ? iGzipTag : iTag;
+            if (EntityTags.matches(aIfNoneMatch, tag)) {
+                return Response.fromResponse(EntityTags.notModified(tag)).header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING).build();
+            }
+            Response.ResponseBuilder builder = gzip
+                    ? Response.ok(iGzip, MediaType.APPLICATION_JSON).header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                    : Response.ok(iBody, MediaType.APPLICATION_JSON);
+            return builder.header(HttpHeaders.ETAG, tag).header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING).build();
+        }
+
+        /**
+         *
+         * @return corps de la réponse
+         */
+        public byte[] getBody() {
+            return iBody;
+        }
+
+        /**
+         *
+         * @return versions des objets métier à la lecture
+         */
+        public String getVersions() {
+            return iVersions;
+        }
+
+        /**
+         *
+         * @return heure d'expiration en millisecondes
+         */
+        long getExpires() {
+            return iExpires;
+        }
+
+        /**
+         *
+         * @param aNow
+         *            heure courante en millisecondes
+         * @return true si la réponse a expiré
+         */
+        boolean isExpired(long aNow) {
+            return iExpires <= aNow;
+        }
+
+        /**
+         *
+         * @return nombre d'octets du corps et du corps compressé
+         */
+        long getBytes() {
+            return iBody.length + (iGzip != null ? (long) iGzip.length : 0);
+        }
+    }
+
+    /**
+     * Constructeur
+     */
+    PublicResponseCache() {
+        // Cache vide
+    }
+
+    /**
+     *
+     * @return le cache des réponses publiques
+     */
+    public static PublicResponseCache getInstance() {
+        return cInstance;
+    }
+
+    /**
+     * Lit les tailles maximales et l'option gzip dans les propriétés et vide le cache. Les délais sont lus à la première réponse de
+     * chaque objet métier. Une valeur qui n'est pas un nombre est remplacée par la valeur par défaut.
+     *
+     * @param aContextManager
+     *            context manager
+     */
+    public void configure(IContextManager aContextManager) {
+        iMaxSize = (int) Math.min(Integer.MAX_VALUE, getLong(aContextManager, SECURITY_PUBLIC_CACHE_SIZE, DEFAULT_MAX_SIZE));
+        iMaxBytes = getLong(aContextManager, SECURITY_PUBLIC_CACHE_BYTES, DEFAULT_MAX_BYTES);
+        iMaxEntryBytes = getLong(aContextManager, SECURITY_PUBLIC_CACHE_ENTRY_BYTES, DEFAULT_MAX_ENTRY_BYTES);
+        iGzip = "true".equals(aContextManager.getProperty(SECURITY_PUBLIC_CACHE_GZIP));
+        iContextManager = aContextManager;
+        iTtls.clear();
+        clear();
+    }
+
+    /**
+     * Vide le cache
+     */
+    public void clear() {
+        for (Map.Entry<String, Entry> entry : iEntries.entrySet()) {
+            remove(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     *
+     * @param aEntity
+     *            nom de l'objet métier
+     * @return le délai en millisecondes pendant lequel les réponses de l'objet métier sont gardées, 0 pour aucun
+     */
+    public long getTtl(String aEntity) {
+        IContextManager ctx = iContextManager;
+        if (ctx == null) {
+            return 0;
+        }
+        return iTtls.computeIfAbsent(aEntity, entity -> {
+            String name = SECURITY_PUBLIC_CACHE_TTL + "." + entity;
+            return getLong(ctx, ctx.getProperty(name) != null ? name : SECURITY_PUBLIC_CACHE_TTL, 0);
+        });
+    }
+
+    /**
+     *
+     * @param aContextManager
+     *            context manager
+     * @param aName
+     *            nom de la propriété
+     * @param aDefault
+     *            valeur par défaut
+     * @return la valeur de la propriété, la valeur par défaut si elle est absente ou n'est pas un nombre
+     */
+    private static long getLong(IContextManager aContextManager, String aName, long aDefault) {
+        String value = aContextManager.getProperty(aName);
+        if (value == null) {
+            return aDefault;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid " + aName + ": " + value, e);
+            return aDefault;
+        }
+    }
+
+    /**
+     *
+     * @param aEntity
+     *            nom de l'objet métier
+     * @return true si les réponses de l'objet métier sont gardées
+     */
+    public boolean isEnabled(String aEntity) {
+        return getTtl(aEntity) > 0;
+    }
+
+    /**
+     *
+     * @param aParts
+     *            paramètres normalisés de la requête
+     * @return la clé de la réponse
+     */
+    public static String key(Object... aParts) {
+        StringBuilder key = new StringBuilder();
+        for (Object part : aParts) {
+            key.append(part).append('\u0000');
+        }
+        return key.toString();
+    }
+
+    /**
+     *
+     * @param aEntity
+     *            nom de l'objet métier
+     * @param aKey
+     *            clé de la réponse
+     * @return la réponse gardée, <code>null</code> si elle n'est pas en cache, a expiré ou si l'objet métier a été modifié
+     */
+    public Entry get(String aEntity, String aKey) {
+        Entry entry = iEntries.get(aEntity + '\u0000' + aKey);
+        if (entry == null || entry.iExpires <= System.currentTimeMillis() || !entry.iVersions.equals(getVersions(aEntity))) {
+            iMisses.increment();
+            return null;
+        }
+        iHits.increment();
+        return entry;
+    }
+
+    /**
+     * Retourne la réponse gardée ou la lit et la garde. Si la même réponse est déjà en lecture par une autre requête, attend cette
+     * lecture au lieu de lire la réponse une seconde fois.
+     *
+     * @param aEntity
+     *            nom de l'objet métier
+     * @param aKey
+     *            clé de la réponse
+     * @param aLoader
+     *            lecture de la réponse
+     * @return la réponse, <code>null</code> si le loader n'a rien retourné
+     * @throws ISException
+     *             erreur de lecture
+     */
+    public Entry load(String aEntity, String aKey, Loader aLoader) throws ISException {
+        Entry entry = get(aEntity, aKey);
+        if (entry != null) {
+            return entry;
+        }
+        String key = aEntity + '\u0000' + aKey;
+        CompletableFuture<Entry> future = new CompletableFuture<>();
+        CompletableFuture<Entry> running = iLoading.putIfAbsent(key, future);
+        if (running != null) {
+            return await(running);
+        }
+        try {
+            // Versions lues avant la requête
+            String versions = getVersions(aEntity);
+            byte[] body = aLoader.load();
+            Entry loaded = body != null ? put(aEntity, aKey, versions, body) : null;
+            future.complete(loaded);
+            return loaded;
+        } catch (ISException | RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            iLoading.remove(key, future);
+        }
+    }
+
+    /**
+     * Garde une réponse. Les versions sont lues avant la requête par l'appelant: une réponse lue pendant une modification est
+     * gardée avec les anciennes versions et n'est plus retournée.
+     *
+     * @param aEntity
+     *            nom de l'objet métier
+     * @param aKey
+     *            clé de la réponse
+     * @param aVersions
+     *            versions de l'objet métier lues avant la requête, voir {@link #getVersions(String)}
+     * @param aBody
+     *            corps de la réponse
+     * @return la réponse, gardée si elle ne dépasse pas security.public.cache.entry.bytes
+     * @throws ISException
+     *             erreur de compression
+     */
+    public Entry put(String aEntity, String aKey, String aVersions, byte[] aBody) throws ISException {
+        long now = System.currentTimeMillis();
+        if (aBody.length > iMaxEntryBytes) {
+            return new Entry(aBody, null, aVersions, now);
+        }
+        Entry entry = new Entry(aBody, iGzip ? gzip(aBody) : null, aVersions, now + getTtl(aEntity));
+        Entry previous = iEntries.put(aEntity + '\u0000' + aKey, entry);
+        iBytes.addAndGet(entry.getBytes() - (previous != null ? previous.getBytes() : 0));
+        if (iEntries.size() > iMaxSize || iBytes.get() > iMaxBytes) {
+            evict(now);
+        }
+        return entry;
+    }
+
+    /**
+     *
+     * @param aEntity
+     *            nom de l'objet métier
+     * @return les versions de l'objet métier et de ses enfants
+     */
+    public String getVersions(String aEntity) {
+        StringBuilder versions = new StringBuilder().append(EntityVersions.get(aEntity));
+        VOInfo info = RestUtil.getVOInfo(aEntity);
+        if (info != null && info.getChildrens() != null) {
+            for (ChildrenInfo child : info.getChildrens()) {
+                versions.append(',').append(EntityVersions.get(child.getChildrenName()));
+            }
+        }
+        return versions.toString();
+    }
+
+    /**
+     *
+     * @param aResponse
+     *            réponse avec un corps String ou {@link StreamingOutput}
+     * @return le corps de la réponse en UTF-8
+     * @throws ISException
+     *             erreur d'écriture du corps
+     */
+    public static byte[] toBytes(Response aResponse) throws ISException {
+        Object entity = aResponse.getEntity();
+        if (entity instanceof byte[]) {
+            return (byte[]) entity;
+        }
+        if (entity instanceof StreamingOutput) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try {
+                ((StreamingOutput) entity).write(out);
+            } catch (IOException e) {
+                throw new ISException(e);
+            }
+            return out.toByteArray();
+        }
+        return String.valueOf(entity).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     *
+     * @return true si les réponses sont gardées aussi sous forme compressée
+     */
+    public boolean isGzip() {
+        return iGzip;
+    }
+
+    /**
+     *
+     * @return nombre de réponses gardées
+     */
+    public int getSize() {
+        return iEntries.size();
+    }
+
+    /**
+     *
+     * @return nombre d'octets des réponses gardées
+     */
+    public long getBytes() {
+        return iBytes.get();
+    }
+
+    /**
+     *
+     * @return nombre de réponses trouvées
+     */
+    public long getHits() {
+        return iHits.sum();
+    }
+
+    /**
+     *
+     * @return nombre de réponses non trouvées, expirées ou modifiées
+     */
+    public long getMisses() {
+        return iMisses.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "PublicResponseCache [size=" + getSize() + ", bytes=" + getBytes() + ", hits=" + getHits() + ", misses=" + getMisses() + "]";
+    }
+
+    /**
+     * Retire les réponses expirées puis, si le nombre ou les octets maximaux sont encore dépassés, celles qui expirent en premier.
+     *
+     * @param aNow
+     *            heure courante
+     */
+    private synchronized void evict(long aNow) {
+        for (Map.Entry<String, Entry> entry : iEntries.entrySet()) {
+            if (entry.getValue().iExpires <= aNow) {
+                remove(entry.getKey(), entry.getValue());
+            }
+        }
+        if (iEntries.size() <= iMaxSize && iBytes.get() <= iMaxBytes) {
+            return;
+        }
+        List<Map.Entry<String, Entry>> entries = new ArrayList<>(iEntries.entrySet());
+        entries.sort((e1, e2) -> Long.compare(e1.getValue().iExpires, e2.getValue().iExpires));
+        // Retire un dixième en plus pour ne pas trier à chaque ajout
+        int size = iMaxSize - iMaxSize / 10;
+        long bytes = iMaxBytes - iMaxBytes / 10;
+        for (Map.Entry<String, Entry> entry : entries) {
+            if (iEntries.size() <= size && iBytes.get() <= bytes) {
+                return;
+            }
+            remove(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     *
+     * @param aKey
+     *            clé de la réponse
+     * @param aEntry
+     *            réponse gardée sous la clé
+     */
+    private void remove(String aKey, Entry aEntry) {
+        if (iEntries.remove(aKey, aEntry)) {
+            iBytes.addAndGet(-aEntry.getBytes());
+        }
+    }
+
+    /**
+     * Attend une lecture commencée par une autre requête.
+     *
+     * @param aFuture
+     *            la lecture
+     * @return la réponse
+     * @throws ISException
+     *             erreur de lecture
+     */
+    private static Entry await(CompletableFuture<Entry> aFuture) throws ISException {
+        try {
+            return aFuture.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ISException("Interrupted waiting for the response", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ISException) {
+                throw (ISException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new ISException(e.getCause());
+        }
+    }
+
+    /**
+     *
+     * @param aBody
+     *            corps de la réponse
+     * @return le corps compressé
+     * @throws ISException
+     *             erreur de compression
+     */
+    static byte[] gzip(byte[] aBody) throws ISException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(aBody.length / 4 + 16);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(aBody);
+        } catch (IOException e) {
+            throw new ISException(e);
+        }
+        return out.toByteArray();
+    }
+}
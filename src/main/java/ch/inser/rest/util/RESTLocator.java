@@ -30,6 +30,10 @@ import ch.inser.dynamic.util.VOInfo;
 import ch.inser.dynaplus.util.ILocator;
 import ch.inser.dynaplus.util.IService;
 import ch.inser.jsl.exceptions.ISException;
+import ch.inser.rest.auth.PermissionMatrix;
+import ch.inser.rest.auth.RESTActiveUsers;
+import ch.inser.rest.auth.SessionRegistry;
+import ch.inser.rest.code.CodeCatalog;
 
 /**
  * Locator pour accéder aux configs propres à la couche REST
@@ -72,6 +76,12 @@ public class RESTLocator implements ILocator, Serializable {
      */
     public void init() throws ISException {
         logger.debug("INIT");
+        // Les plans de sérialisation des vos sont recalculés avec la nouvelle configuration
+        JsonVoUtil.clearSerializationPlans();
+        PublicResponseCache.getInstance().clear();
+        TranslationBundles.getInstance().clear();
+        // Les matrices des droits sont recompilées depuis les droits en mémoire des utilisateurs
+        PermissionMatrix.clear();
         String configDir = iCtx.getProperty("configDir");
         URL urlprop = null;
 
@@ -125,6 +135,12 @@ public class RESTLocator implements ILocator, Serializable {
      */
     public void setContextManager(IContextManager aCtx) {
         iCtx = aCtx;
+        RESTActiveUsers.getInstance().configure(aCtx);
+        SessionRegistry.getInstance().configure(aCtx);
+        PublicResponseCache.getInstance().configure(aCtx);
+        TranslationBundles.getInstance().configure(aCtx);
+        CodeCatalog.configure(aCtx);
+        PermissionMatrix.clear();
     }
 
     @Override
@@ -0,0 +1,105 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+
+package ch.inser.rest.util;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import ch.inser.dynamic.common.ILoggedUser;
+import ch.inser.dynamic.common.IValueObject;
+import ch.inser.jsl.exceptions.ISException;
+
+import jakarta.json.JsonObject;
+
+/**
+ * Enregistrement avec ses enfants et sous-enfants chargés avant son écriture en json, pour valider l'ETag du client avec les
+ * timestamps de l'enregistrement et des enfants sans écrire la réponse.
+ *
+ * @author INSER SA *
+ */
+public final class RecordTree {
+
+    /** L'enregistrement */
+    private final IValueObject iVo;
+
+    /** Utilisateur du service */
+    private final ILoggedUser iUser;
+
+    /** Enfants chargés, <code>null</code> si le type n'a pas d'enfants */
+    private final ChildrenBatch iBatch;
+
+    /**
+     *
+     * @param aVo
+     *            l'enregistrement
+     * @param aUser
+     *            utilisateur du service
+     * @param aBatch
+     *            enfants chargés
+     */
+    private RecordTree(IValueObject aVo, ILoggedUser aUser, ChildrenBatch aBatch) {
+        iVo = aVo;
+        iUser = aUser;
+        iBatch = aBatch;
+    }
+
+    /**
+     * Charge les enfants et sous-enfants de l'enregistrement avec les droits de l'utilisateur.
+     *
+     * @param aVo
+     *            l'enregistrement
+     * @param aUser
+     *            utilisateur du service
+     * @return l'enregistrement avec ses enfants
+     * @throws ISException
+     *             erreur au niveau bd
+     */
+    public static RecordTree load(IValueObject aVo, ILoggedUser aUser) throws ISException {
+        return new RecordTree(aVo, aUser, JsonVoUtil.loadChildren(aVo, aUser));
+    }
+
+    /**
+     *
+     * @return le timestamp de l'enregistrement puis le type, l'id et le timestamp de chaque enfant, <code>null</code> si un
+     *         timestamp manque ou si des enfants ne sont lus qu'à l'écriture
+     * @throws ISException
+     *             erreur au niveau bd
+     */
+    public Object[] getVersions() throws ISException {
+        if (!(iVo.getTimestamp() instanceof Date)) {
+            return null;
+        }
+        List<Object> versions = new ArrayList<>();
+        versions.add(((Date) iVo.getTimestamp()).getTime());
+        if (iBatch == null) {
+            return ChildrenBatch.hasChildren(iVo.getVOInfo()) ? null : versions.toArray();
+        }
+        return iBatch.addVersions(iVo, versions) ? versions.toArray() : null;
+    }
+
+    /**
+     *
+     * @param aProjection
+     *            attributs à écrire, <code>null</code> pour tous
+     * @return l'enregistrement avec les enfants chargés en json
+     * @throws ISException
+     *             erreur au niveau bd
+     */
+    public JsonObject toJson(FieldProjection aProjection) throws ISException {
+        return JsonVoUtil.voToJson(iVo, iUser, aProjection, iBatch);
+    }
+}
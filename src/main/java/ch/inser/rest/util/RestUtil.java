@@ -27,13 +27,16 @@ import ch.inser.dynaplus.vo.IVOFactory;
 import ch.inser.dynaplus.vo.VOFactory;
 import ch.inser.jsl.exceptions.ISException;
 import ch.inser.rest.auth.ISSecurityException;
+import ch.inser.rest.auth.PermissionMatrix;
 import ch.inser.rest.auth.SecurityUtil;
+import ch.inser.rest.auth.TokenSecurityContext;
 import ch.inser.rest.core.IBPDelegate;
 import ch.inser.rest.oidc.auth.SecurityUtilOIDC;
 import ch.inser.rest.util.Constants.Verb;
 
 import io.jsonwebtoken.Claims;
 import jakarta.json.JsonObject;
+import jakarta.json.JsonObjectBuilder;
 import jakarta.servlet.ServletContext;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.Response.Status;
@@ -58,6 +61,12 @@ public class RestUtil {
     /** Le rest servlet context */
     private static ServletContext iContext;
 
+    /**
+     * The property key name to return the renewed token in the response header "token" instead of the response body, "true" to
+     * enable. Requires the {@link ch.inser.rest.provider.AuthenticationFilter}.
+     */
+    public static final String SECURITY_TOKEN_HEADER = "security.token.header";
+
     /**
      * Get claims from token and push username into the context of the logger.
      *
@@ -80,8 +89,7 @@ public class RestUtil {
             logger.warn("Token absent: " + aObjectName);
             return null;
         }
-        IContextManager ctx = getContextManager();
-        Claims claims = SecurityUtil.validateToken(aToken, ctx);
+        Claims claims = validateToken(aToken);
         addToNdc(claims != null ? (String) claims.get("userName") : null);
 
         if (aObjectName == null) {
@@ -107,12 +115,28 @@ public class RestUtil {
      *             an exception trying to validate the token: the token is invalid
      */
     public static Claims getClaims(String aToken) throws ISSecurityException {
-        IContextManager ctx = getContextManager();
-        Claims claims = SecurityUtil.validateToken(aToken, ctx);
+        Claims claims = validateToken(aToken);
         addToNdc(claims != null ? (String) claims.get("userName") : null);
         return claims;
     }
 
+    /**
+     * Validates the token, or reads the result of its validation from the security context of the request.
+     *
+     * @param aToken
+     *            security token
+     * @return the claims encoded in the token
+     * @throws ISSecurityException
+     *             an exception trying to validate the token: the token is invalid
+     */
+    private static Claims validateToken(String aToken) throws ISSecurityException {
+        TokenSecurityContext security = TokenSecurityContext.current();
+        if (security != null && security.isToken(aToken)) {
+            return security.getClaims(getContextManager());
+        }
+        return SecurityUtil.validateToken(aToken, getContextManager());
+    }
+
     /**
      * Get claims from OIDC token
      *
@@ -126,6 +150,10 @@ public class RestUtil {
      *             an exception trying to validate the token: the token is invalid
      */
     public static JwtClaims getClaimsOIDC(String aToken) throws ISSecurityException {
+        TokenSecurityContext security = TokenSecurityContext.current();
+        if (security != null && security.isBearerToken(aToken)) {
+            return security.getClaimsOIDC(getContextManager());
+        }
         return SecurityUtilOIDC.validateOIDCToken(aToken, getContextManager());
     }
 
@@ -173,7 +201,7 @@ public class RestUtil {
      *             error retrieving user with claims
      */
     public static ILoggedUser getLoggedUser(Claims aClaims, String aObjectName, Verb aHttpAction) throws ISException {
-        ILoggedUser loggedUser = SecurityUtil.getUser(aClaims, (ServiceLocator) iContext.getAttribute(Constants.SERVICE_LOCATOR));
+        ILoggedUser loggedUser = getUser(aClaims);
         return isAuthorized(loggedUser, aObjectName, aHttpAction) ? loggedUser : null;
     }
 
@@ -190,10 +218,54 @@ public class RestUtil {
      *             error retrieving user with claims
      */
     public static ILoggedUser getLoggedUser(JwtClaims aClaims, String aObjectName, Verb aHttpAction) throws ISException {
-        ILoggedUser loggedUser = SecurityUtilOIDC.getUser(aClaims, (ServiceLocator) iContext.getAttribute(Constants.SERVICE_LOCATOR));
+        ILoggedUser loggedUser = getUser(aClaims);
         return isAuthorized(loggedUser, aObjectName, aHttpAction) ? loggedUser : null;
     }
 
+    /**
+     * Resolves the user of the claims. The user of the claims of the request is resolved only once, then read from the security
+     * context of the request.
+     *
+     * @param aClaims
+     *            user claims encoded in the security token
+     * @return loggeduser corresponding to claims
+     * @throws ISException
+     *             error retrieving user with claims
+     */
+    public static ILoggedUser getUser(Claims aClaims) throws ISException {
+        TokenSecurityContext security = TokenSecurityContext.current();
+        ILoggedUser loggedUser = security != null ? security.getUser(aClaims) : null;
+        if (loggedUser == null) {
+            loggedUser = SecurityUtil.getUser(aClaims, (ServiceLocator) iContext.getAttribute(Constants.SERVICE_LOCATOR));
+            if (security != null && aClaims != null) {
+                security.setUser(aClaims, loggedUser);
+            }
+        }
+        return loggedUser;
+    }
+
+    /**
+     * Resolves the user of the OIDC claims. The user of the claims of the request is resolved only once, then read from the
+     * security context of the request.
+     *
+     * @param aClaims
+     *            OIDC claims
+     * @return loggeduser corresponding to claims
+     * @throws ISException
+     *             error retrieving user with claims
+     */
+    public static ILoggedUser getUser(JwtClaims aClaims) throws ISException {
+        TokenSecurityContext security = TokenSecurityContext.current();
+        ILoggedUser loggedUser = security != null ? security.getUser(aClaims) : null;
+        if (loggedUser == null) {
+            loggedUser = SecurityUtilOIDC.getUser(aClaims, (ServiceLocator) iContext.getAttribute(Constants.SERVICE_LOCATOR));
+            if (security != null && aClaims != null) {
+                security.setUser(aClaims, loggedUser);
+            }
+        }
+        return loggedUser;
+    }
+
     /**
      *
      * @param aUser
@@ -211,7 +283,7 @@ public class RestUtil {
         }
 
         // Contrôle métier
-        if (!aUser.isAuthAction(aObjectName, aHttpAction.toString())) {
+        if (!PermissionMatrix.isAuthAction(aUser, aObjectName, aHttpAction)) {
             logger.warn("Utilisateur non autorisé: " + aObjectName + "/" + aHttpAction);
             return false;
         }
@@ -228,7 +300,7 @@ public class RestUtil {
      *             error retrieving user with claims
      */
     public static ILoggedUser getLoggedUser(Claims aClaims) throws ISException {
-        ILoggedUser loggedUser = SecurityUtil.getUser(aClaims, (ServiceLocator) iContext.getAttribute(Constants.SERVICE_LOCATOR));
+        ILoggedUser loggedUser = getUser(aClaims);
         if (loggedUser == null) {
             logger.warn("Utilisateur non connu: " + aClaims.get("userName"));
             return null;
@@ -344,4 +416,29 @@ public class RestUtil {
         return authorization.substring(BEARER.length());
     }
 
+    /**
+     *
+     * @return <code>true</code> if the renewed token is returned in the response header "token" by the
+     *         {@link ch.inser.rest.provider.AuthenticationFilter} instead of the response body
+     */
+    public static boolean isTokenHeader() {
+        return TokenSecurityContext.current() != null && "true".equals(getContextManager().getProperty(SECURITY_TOKEN_HEADER));
+    }
+
+    /**
+     * Adds the renewed token to the response body, unless it is returned in the response header.
+     *
+     * @param aJson
+     *            the response body
+     * @param aClaims
+     *            user claims encoded in the security token
+     * @return the response body
+     */
+    public static JsonObjectBuilder addToken(JsonObjectBuilder aJson, Claims aClaims) {
+        if (!isTokenHeader()) {
+            aJson.add(Constants.TOKEN, SecurityUtil.getToken(aClaims, getContextManager()));
+        }
+        return aJson;
+    }
+
 }
@@ -0,0 +1,228 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+
+package ch.inser.rest.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import ch.inser.dynamic.common.IContextManager;
+import ch.inser.jsl.exceptions.ISException;
+import ch.inser.rest.util.PublicResponseCache.Entry;
+
+/**
+ * Traductions et textes d'aide compilés, partagés par les services translate et help.
+ *
+ * Un bundle est le json d'une langue et d'une variante (p.ex. libellés seuls ou libellés et codes), gardé sérialisé en UTF-8 avec
+ * son ETag et, avec security.public.cache.gzip, sa forme compressée. Il est construit à la première demande et reconstruit à la
+ * demande suivante une modification d'un des objets métier dont il est tiré ({@link EntityVersions}) ou après le délai
+ * translate.bundle.refresh, pour les modifications faites par une autre instance ou sans json.list.etag. Au plus
+ * translate.bundle.size bundles sont gardés, ceux qui expirent le plus tôt sont retirés. Un seul appelant construit un bundle donné,
+ * les autres attendent le résultat.
+ *
+ * @author INSER SA *
+ */
+public final class TranslationBundles {
+
+    /** The property key name for the maximum time in milliseconds a bundle is kept */
+    public static final String TRANSLATE_BUNDLE_REFRESH = "translate.bundle.refresh";
+
+    /** The property key name for the maximum number of bundles */
+    public static final String TRANSLATE_BUNDLE_SIZE = "translate.bundle.size";
+
+    /** Délai de reconstruction par défaut, 5 minutes */
+    public static final long DEFAULT_REFRESH = 300000;
+
+    /** Nombre de bundles par défaut */
+    public static final int DEFAULT_MAX_SIZE = 100;
+
+    /** Définition de catégorie de logging */
+    private static final Log logger = LogFactory.getLog(TranslationBundles.class);
+
+    /** L'instance des bundles */
+    private static final TranslationBundles cInstance = new TranslationBundles();
+
+    /**
+     * Construction du json d'un bundle
+     */
+    @FunctionalInterface
+    public interface Builder {
+
+        /**
+         *
+         * @return le json du bundle
+         * @throws ISException
+         *             erreur de lecture des traductions
+         */
+        String build() throws ISException;
+    }
+
+    /** Bundles par clé */
+    private final Map<String, Entry> iBundles = new ConcurrentHashMap<>();
+
+    /** Verrous de construction par clé */
+    private final Map<String, Object> iLocks = new ConcurrentHashMap<>();
+
+    /** Constructions de bundles */
+    private final LongAdder iBuilds = new LongAdder();
+
+    /** Délai maximal pendant lequel un bundle est gardé */
+    private long iRefresh = DEFAULT_REFRESH;
+
+    /** Nombre maximal de bundles */
+    private int iMaxSize = DEFAULT_MAX_SIZE;
+
+    /**
+     * Constructeur
+     */
+    TranslationBundles() {
+        // Aucun bundle
+    }
+
+    /**
+     *
+     * @return les bundles de l'application
+     */
+    public static TranslationBundles getInstance() {
+        return cInstance;
+    }
+
+    /**
+     * Lit le délai de reconstruction et le nombre maximal de bundles dans les propriétés et retire tous les bundles.
+     *
+     * @param aContextManager
+     *            context manager
+     */
+    public void configure(IContextManager aContextManager) {
+        String refresh = aContextManager.getProperty(TRANSLATE_BUNDLE_REFRESH);
+        iRefresh = refresh != null ? Long.parseLong(refresh) : DEFAULT_REFRESH;
+        String size = aContextManager.getProperty(TRANSLATE_BUNDLE_SIZE);
+        iMaxSize = size != null ? Integer.parseInt(size) : DEFAULT_MAX_SIZE;
+        clear();
+    }
+
+    /**
+     *
+     * @param aKey
+     *            clé du bundle, p.ex. langue et variante
+     * @param aEntities
+     *            noms des objets métier dont le bundle est tiré
+     * @param aBuilder
+     *            construction du json du bundle
+     * @return le bundle à jour
+     * @throws ISException
+     *             erreur de construction du bundle
+     */
+    public Entry get(String aKey, String[] aEntities, Builder aBuilder) throws ISException {
+        String versions = getVersions(aEntities);
+        Entry bundle = iBundles.get(aKey);
+        if (isValid(bundle, versions)) {
+            return bundle;
+        }
+        synchronized (iLocks.computeIfAbsent(aKey, k -> new Object())) {
+            // Construit entretemps par un autre appelant
+            versions = getVersions(aEntities);
+            bundle = iBundles.get(aKey);
+            if (isValid(bundle, versions)) {
+                return bundle;
+            }
+            // Les versions sont lues avant les traductions: une modification pendant la construction donne un nouveau bundle
+            byte[] body = aBuilder.build().getBytes(StandardCharsets.UTF_8);
+            bundle = new Entry(body, PublicResponseCache.getInstance().isGzip() ? PublicResponseCache.gzip(body) : null, versions,
+                    System.currentTimeMillis() + iRefresh);
+            if (iBundles.put(aKey, bundle) == null) {
+                evict();
+            }
+            iBuilds.increment();
+            logger.debug("Bundle " + aKey + " built, " + body.length + " bytes, versions " + versions);
+            return bundle;
+        }
+    }
+
+    /**
+     * Retire tous les bundles, p.ex. à la relecture de la configuration.
+     */
+    public void clear() {
+        iBundles.clear();
+        iLocks.clear();
+    }
+
+    /**
+     *
+     * @return nombre de bundles gardés
+     */
+    public int getSize() {
+        return iBundles.size();
+    }
+
+    /**
+     *
+     * @return nombre de bundles construits
+     */
+    public long getBuilds() {
+        return iBuilds.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "TranslationBundles [size=" + iBundles.size() + ", builds=" + getBuilds() + "]";
+    }
+
+    /**
+     *
+     * @param aBundle
+     *            bundle gardé, <code>null</code> si aucun
+     * @param aVersions
+     *            versions courantes des objets métier du bundle
+     * @return true si le bundle est à jour
+     */
+    private static boolean isValid(Entry aBundle, String aVersions) {
+        return aBundle != null && !aBundle.isExpired(System.currentTimeMillis()) && aBundle.getVersions().equals(aVersions);
+    }
+
+    /**
+     * Retire les bundles qui expirent le plus tôt au-delà du nombre maximal.
+     */
+    private void evict() {
+        while (iBundles.size() > iMaxSize) {
+            Map.Entry<String, Entry> first = iBundles.entrySet().stream()
+                    .min(Comparator.comparingLong(e -> e.getValue().getExpires())).orElse(null);
+            if (first == null || !iBundles.remove(first.getKey(), first.getValue())) {
+                return;
+            }
+            logger.debug("Bundle " + first.getKey() + " removed");
+        }
+    }
+
+    /**
+     *
+     * @param aEntities
+     *            noms des objets métier
+     * @return les versions des objets métier
+     */
+    private static String getVersions(String[] aEntities) {
+        StringBuilder versions = new StringBuilder().append(EntityVersions.getEpoch());
+        for (String entity : aEntities) {
+            versions.append(',').append(EntityVersions.get(entity));
+        }
+        return versions.toString();
+    }
+}
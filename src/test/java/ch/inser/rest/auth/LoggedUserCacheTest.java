@@ -0,0 +1,252 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+
+package ch.inser.rest.auth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.cache.Cache;
+
+import org.junit.Test;
+
+import ch.inser.dynamic.common.ILoggedUser;
+import ch.inser.dynamic.common.ILoggedUser.Status;
+import ch.inser.jsl.exceptions.ISException;
+
+import jakarta.json.JsonObject;
+import jakarta.json.JsonValue;
+
+/**
+ * Test the loading of the cached users.
+ *
+ * @author INSER SA
+ */
+public class LoggedUserCacheTest {
+
+    /** Users of the cache */
+    private final Map<String, ILoggedUser> iUsers = new ConcurrentHashMap<>();
+
+    /** Calls of get on the cache */
+    private final AtomicInteger iGets = new AtomicInteger();
+
+    /**
+     * The hits and misses are counted and a cached user is not loaded again.
+     *
+     * @throws ISException
+     *             the exceptions
+     */
+    @Test
+    public void testCounters() throws ISException {
+        LoggedUserCache userCache = LoggedUserCache.getInstance("testCounters");
+        Cache<String, ILoggedUser> cache = createCache();
+        ILoggedUser user = mock(ILoggedUser.class);
+
+        assertSame(user, userCache.get(cache, "user", 0, () -> user));
+        assertSame(user, userCache.get(cache, "user", 0, () -> mock(ILoggedUser.class)));
+        assertSame(user, userCache.get(cache, "user", 0, () -> mock(ILoggedUser.class)));
+        assertEquals(1, userCache.getMisses());
+        assertEquals(2, userCache.getHits());
+        assertEquals(1, userCache.getLoads());
+        assertEquals(0, userCache.getLoadFailures());
+    }
+
+    /**
+     * The concurrent requests for a missing user wait for a single load.
+     *
+     * @throws Exception
+     *             the exceptions
+     */
+    @Test
+    public void testSingleFlight() throws Exception {
+        int threads = 8;
+        LoggedUserCache userCache = LoggedUserCache.getInstance("testSingleFlight");
+        Cache<String, ILoggedUser> cache = createCache();
+        ILoggedUser user = mock(ILoggedUser.class);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        LoggedUserCache.Loader loader = () -> {
+            loads.incrementAndGet();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return user;
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<ILoggedUser>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(() -> userCache.get(cache, "user", 0, loader)));
+            }
+            // All the requests have missed the user before the load ends
+            long end = System.currentTimeMillis() + 10000;
+            while (iGets.get() < threads && System.currentTimeMillis() < end) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+            for (Future<ILoggedUser> result : results) {
+                assertSame(user, result.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, loads.get());
+        assertEquals(1, userCache.getLoads());
+        assertEquals(threads, userCache.getMisses());
+    }
+
+    /**
+     * A user reloaded in the background keeps the login status of the cached user, not its permissions document.
+     *
+     * @throws Exception
+     *             the exceptions
+     */
+    @Test
+    public void testRefreshKeepsLoginState() throws Exception {
+        LoggedUserCache userCache = LoggedUserCache.getInstance("testRefreshKeepsLoginState");
+        Cache<String, ILoggedUser> cache = createCache();
+        ILoggedUser user = mock(ILoggedUser.class);
+        when(user.getStatus()).thenReturn(Status.VALID);
+        when(user.getPermissions()).thenReturn(JsonValue.EMPTY_JSON_OBJECT);
+        ILoggedUser reloaded = mock(ILoggedUser.class);
+        userCache.put(cache, "user", user);
+
+        Thread.sleep(20);
+        assertSame(user, userCache.get(cache, "user", 10, () -> reloaded));
+        waitFor(() -> iUsers.get("user") == reloaded);
+        verify(reloaded).setStatus(Status.VALID);
+        verify(reloaded, never()).setPermissions(any(JsonObject.class));
+
+        // An explicit refresh after a change of the rights neither keeps the previous document
+        ILoggedUser refreshed = mock(ILoggedUser.class);
+        assertSame(refreshed, userCache.load(cache, "user", () -> refreshed));
+        verify(refreshed, never()).setPermissions(any(JsonObject.class));
+        assertEquals(1, userCache.getRefreshes());
+    }
+
+    /**
+     * After a failed reload, the cached user is not reloaded again before the delay.
+     *
+     * @throws Exception
+     *             the exceptions
+     */
+    @Test
+    public void testRefreshFailureBackOff() throws Exception {
+        LoggedUserCache userCache = LoggedUserCache.getInstance("testRefreshFailureBackOff");
+        Cache<String, ILoggedUser> cache = createCache();
+        ILoggedUser user = mock(ILoggedUser.class);
+        userCache.put(cache, "user", user);
+        LoggedUserCache.Loader failing = () -> {
+            throw new ISException("Unavailable");
+        };
+
+        Thread.sleep(300);
+        assertSame(user, userCache.get(cache, "user", 200, failing));
+        waitFor(() -> userCache.getLoadFailures() == 1);
+        // End of the background reload
+        Thread.sleep(20);
+        for (int i = 0; i < 5; i++) {
+            assertSame(user, userCache.get(cache, "user", 200, failing));
+        }
+        assertEquals(1, userCache.getRefreshes());
+        assertEquals(1, userCache.getLoadFailures());
+    }
+
+    /**
+     * The load times of the users evicted from the cache are removed.
+     */
+    @Test
+    public void testPurge() {
+        LoggedUserCache userCache = LoggedUserCache.getInstance("testPurge");
+        Cache<String, ILoggedUser> cache = createCache();
+        for (int i = 0; i < 1000; i++) {
+            userCache.put(cache, "user" + i, mock(ILoggedUser.class));
+        }
+        assertEquals(1000, userCache.getLoadTimes());
+
+        // Evicted by the cache
+        iUsers.clear();
+        userCache.put(cache, "other", mock(ILoggedUser.class));
+        assertEquals(1, userCache.getLoadTimes());
+    }
+
+    /**
+     *
+     * @return a cache backed by the users of the test
+     */
+    @SuppressWarnings("unchecked")
+    private Cache<String, ILoggedUser> createCache() {
+        Cache<String, ILoggedUser> cache = mock(Cache.class);
+        when(cache.get(anyString())).thenAnswer(invocation -> {
+            iGets.incrementAndGet();
+            return iUsers.get(invocation.getArguments()[0]);
+        });
+        when(cache.containsKey(anyString())).thenAnswer(invocation -> iUsers.containsKey(invocation.getArguments()[0]));
+        doAnswer(invocation -> iUsers.put((String) invocation.getArguments()[0], (ILoggedUser) invocation.getArguments()[1]))
+                .when(cache).put(anyString(), any(ILoggedUser.class));
+        return cache;
+    }
+
+    /**
+     * Condition waited for
+     */
+    @FunctionalInterface
+    private interface Condition {
+
+        /**
+         *
+         * @return true when reached
+         */
+        boolean isReached();
+    }
+
+    /**
+     * Waits at most 5 seconds for a background reload.
+     *
+     * @param aCondition
+     *            the condition
+     * @throws InterruptedException
+     *             the exceptions
+     */
+    private static void waitFor(Condition aCondition) throws InterruptedException {
+        long end = System.currentTimeMillis() + 5000;
+        while (!aCondition.isReached() && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        assertTrue(aCondition.isReached());
+    }
+}
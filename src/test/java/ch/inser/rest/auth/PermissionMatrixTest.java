@@ -0,0 +1,236 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+
+package ch.inser.rest.auth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.inser.dynamic.common.ILoggedUser;
+import ch.inser.rest.util.Constants.Verb;
+
+/**
+ * Test the compiled authorizations of the users.
+ *
+ * @author INSER SA
+ */
+public class PermissionMatrixTest {
+
+    /** Calls of isAuthAction on the users */
+    private final AtomicInteger iChecks = new AtomicInteger();
+
+    /**
+     * Forgets the matrices of the previous tests.
+     */
+    @Before
+    public void clear() {
+        PermissionMatrix.clear();
+    }
+
+    /**
+     * The matrix answers like the user and asks each authorization only once.
+     */
+    @Test
+    public void testIsAuthAction() {
+        ILoggedUser user = createUser("Adresse", "GET", "PUT");
+        PermissionMatrix.register(user);
+
+        int checks = 0;
+        for (int i = 0; i < 3; i++) {
+            assertTrue(PermissionMatrix.isAuthAction(user, "Adresse", Verb.GET));
+            assertTrue(PermissionMatrix.isAuthAction(user, "Adresse", Verb.PUT));
+            assertFalse(PermissionMatrix.isAuthAction(user, "Adresse", Verb.DELETE));
+            assertFalse(PermissionMatrix.isAuthAction(user, "Personne", Verb.GET));
+            if (i == 0) {
+                checks = iChecks.get();
+            }
+        }
+        assertEquals(checks, iChecks.get());
+    }
+
+    /**
+     * The users with the same rights share the same matrix.
+     */
+    @Test
+    public void testSharedByGroup() {
+        ILoggedUser user1 = createUser("Adresse", "GET");
+        ILoggedUser user2 = createUser("Adresse", "GET");
+        ILoggedUser admin = createUser("Adresse", "GET", "DELETE");
+
+        assertSame(PermissionMatrix.get(user1), PermissionMatrix.get(user2));
+        assertNotSame(PermissionMatrix.get(user1), PermissionMatrix.get(admin));
+        assertEquals(2, PermissionMatrix.getMatrixCount());
+
+        assertFalse(PermissionMatrix.isAuthAction(user1, "Adresse", Verb.DELETE));
+        int checks = iChecks.get();
+        assertFalse(PermissionMatrix.isAuthAction(user2, "Adresse", Verb.DELETE));
+        assertEquals(checks, iChecks.get());
+        assertTrue(PermissionMatrix.isAuthAction(admin, "Adresse", Verb.DELETE));
+    }
+
+    /**
+     * The users not materialized are asked directly, without compiling their rights.
+     */
+    @Test
+    public void testNotRegistered() {
+        ILoggedUser user = createUser("Adresse", "GET");
+
+        assertTrue(PermissionMatrix.isAuthAction(user, "Adresse", Verb.GET));
+        assertTrue(PermissionMatrix.isAuthAction(user, "Adresse", Verb.GET));
+        assertEquals(2, iChecks.get());
+        assertEquals(0, PermissionMatrix.getMatrixCount());
+    }
+
+    /**
+     * The users with the same maps but another class, or without maps, do not share the matrix of a group.
+     */
+    @Test
+    public void testNotSharedByClass() {
+        ILoggedUser user = createUser("Adresse", "GET");
+        ILoggedUser superUser = mock(SuperUserStub.class);
+        when(superUser.getMapAuthAction()).thenReturn(user.getMapAuthAction());
+        when(superUser.getMapAuthMenu()).thenReturn(user.getMapAuthMenu());
+        when(superUser.getMapAuthFields()).thenReturn(user.getMapAuthFields());
+        when(superUser.isAuthAction(anyString(), anyString())).thenReturn(Boolean.TRUE);
+        ILoggedUser noMaps = mock(ILoggedUser.class);
+        when(noMaps.getMapAuthAction()).thenReturn(null);
+        when(noMaps.getMapAuthMenu()).thenReturn(null);
+        when(noMaps.getMapAuthFields()).thenReturn(null);
+        when(noMaps.isAuthAction(anyString(), anyString())).thenReturn(Boolean.TRUE);
+        ILoggedUser publicUser = mock(ILoggedUser.class);
+        when(publicUser.getMapAuthAction()).thenReturn(null);
+        when(publicUser.getMapAuthMenu()).thenReturn(null);
+        when(publicUser.getMapAuthFields()).thenReturn(null);
+
+        PermissionMatrix.register(user);
+        PermissionMatrix.register(superUser);
+        PermissionMatrix.register(noMaps);
+        PermissionMatrix.register(publicUser);
+        assertNotSame(PermissionMatrix.get(noMaps), PermissionMatrix.get(publicUser));
+        assertNotSame(PermissionMatrix.get(user), PermissionMatrix.get(superUser));
+
+        assertFalse(PermissionMatrix.isAuthAction(user, "Adresse", Verb.DELETE));
+        assertTrue(PermissionMatrix.isAuthAction(superUser, "Adresse", Verb.DELETE));
+        assertTrue(PermissionMatrix.isAuthAction(noMaps, "Adresse", Verb.DELETE));
+        assertFalse(PermissionMatrix.isAuthAction(publicUser, "Adresse", Verb.DELETE));
+    }
+
+    /**
+     * After a clear, the users still materialized are compiled again.
+     */
+    @Test
+    public void testClear() {
+        ILoggedUser user = createUser("Adresse", "GET");
+        PermissionMatrix matrix = PermissionMatrix.register(user);
+        assertTrue(PermissionMatrix.isAuthAction(user, "Adresse", Verb.GET));
+
+        PermissionMatrix.clear();
+        assertEquals(1, PermissionMatrix.getMatrixCount());
+        assertNotSame(matrix, PermissionMatrix.get(user));
+        int checks = iChecks.get();
+        assertTrue(PermissionMatrix.isAuthAction(user, "Adresse", Verb.GET));
+        assertEquals(checks, iChecks.get());
+    }
+
+    /**
+     * The users of an excluded class are asked each authorization, their answer depending on their own state.
+     */
+    @Test
+    public void testExclude() {
+        ILoggedUser user = createUser("Adresse", "GET");
+        ILoggedUser other = mock(PerUserStub.class);
+        when(other.getMapAuthAction()).thenReturn(user.getMapAuthAction());
+        when(other.getMapAuthMenu()).thenReturn(user.getMapAuthMenu());
+        when(other.isAuthAction("Adresse", "GET")).thenReturn(Boolean.FALSE, Boolean.TRUE);
+
+        PermissionMatrix.exclude(PerUserStub.class);
+        PermissionMatrix.register(other);
+        assertNull(PermissionMatrix.get(other).getSignature());
+        assertFalse(PermissionMatrix.isAuthAction(other, "Adresse", Verb.GET));
+        assertTrue(PermissionMatrix.isAuthAction(other, "Adresse", Verb.GET));
+        verify(other, times(2)).isAuthAction("Adresse", "GET");
+    }
+
+    /**
+     * A class of user whose authorizations depend on its own state
+     */
+    private abstract static class PerUserStub implements ILoggedUser {
+        // Mocked
+    }
+
+    /**
+     * Another class of user, with the same maps as the users of a group
+     */
+    private abstract static class SuperUserStub implements ILoggedUser {
+        // Mocked
+    }
+
+    /**
+     * Creates a user authorized for some actions on one object.
+     *
+     * @param aObjectName
+     *            object name
+     * @param aVerbs
+     *            authorized verbs
+     * @return the user
+     */
+    private ILoggedUser createUser(String aObjectName, String... aVerbs) {
+        Map<String, Boolean> actions = new HashMap<>();
+        for (String verb : aVerbs) {
+            actions.put(verb, Boolean.TRUE);
+        }
+        Map<String, Map<String, Boolean>> mapAuthAction = new HashMap<>();
+        mapAuthAction.put(aObjectName, actions);
+        Map<String, Boolean> mapAuthMenu = new HashMap<>();
+        mapAuthMenu.put(aObjectName, Boolean.TRUE);
+
+        return (ILoggedUser) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { ILoggedUser.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "isAuthAction":
+                            iChecks.incrementAndGet();
+                            Map<String, Boolean> objectActions = mapAuthAction.get(args[0]);
+                            return objectActions != null && Boolean.TRUE.equals(objectActions.get(args[1]));
+                        case "getMapAuthAction":
+                            return mapAuthAction;
+                        case "getMapAuthMenu":
+                            return mapAuthMenu;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            return null;
+                    }
+                });
+    }
+}
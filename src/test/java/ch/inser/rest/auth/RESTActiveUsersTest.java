@@ -0,0 +1,79 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+
+package ch.inser.rest.auth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+
+import org.junit.Test;
+
+import ch.inser.dynamic.common.ILoggedUser;
+
+/**
+ * Test the eviction of the active users.
+ *
+ * @author INSER SA
+ */
+public class RESTActiveUsersTest {
+
+    /**
+     * The users beyond the maximum size are evicted.
+     */
+    @Test
+    public void testMaxSize() {
+        RESTActiveUsers users = new RESTActiveUsers();
+        users.configure(0, 10);
+        for (int i = 0; i < 20; i++) {
+            users.addUser(createUser("user" + i));
+        }
+        assertTrue(users.getActiveUsers() <= 10);
+        assertEquals(20 - users.getActiveUsers(), users.getEvictions());
+    }
+
+    /**
+     * A user not read during the idle time is evicted.
+     *
+     * @throws InterruptedException
+     *             the exceptions
+     */
+    @Test
+    public void testIdle() throws InterruptedException {
+        RESTActiveUsers users = new RESTActiveUsers();
+        users.configure(50, 100);
+        users.addUser(createUser("user"));
+        assertNotNull(users.getUser("user"));
+
+        Thread.sleep(100);
+        assertNull(users.getUser("user"));
+        assertEquals(0, users.getActiveUsers());
+        assertEquals(1, users.getEvictions());
+    }
+
+    /**
+     *
+     * @param aUsername
+     *            username
+     * @return a user with the username
+     */
+    private static ILoggedUser createUser(String aUsername) {
+        return (ILoggedUser) Proxy.newProxyInstance(RESTActiveUsersTest.class.getClassLoader(), new Class<?>[] { ILoggedUser.class },
+                (proxy, method, args) -> "getUsername".equals(method.getName()) ? aUsername : null);
+    }
+}
@@ -16,15 +16,23 @@
 package ch.inser.rest.auth;
 
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 import java.security.NoSuchAlgorithmException;
 import java.util.Base64;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
 
 import javax.crypto.SecretKey;
 
 import org.junit.Test;
 
+import ch.inser.dynamic.common.IContextManager;
 import ch.inser.dynamic.common.ILoggedUser.Status;
 
 import io.jsonwebtoken.Claims;
@@ -71,6 +79,170 @@ public class SecurityUtilTest {
         printBody(token);
     }
 
+    /**
+     * Test that a verified token is served from the cache until it expires.
+     *
+     * @throws ISSecurityException
+     *             the exceptions
+     */
+    @Test
+    public void testValidateTokenCache() throws ISSecurityException {
+        String key = "TRNKpoTfEJlJv3Mp0fDtSWLlgAFhHK+WX6aA/c/lh/RFGoiuztFDtzNJfP44UDxa/HZUtrecMLjPOztNKtfPjw==";
+        SecretKey secretKey = Keys.hmacShaKeyFor(Base64.getDecoder().decode(key));
+        Date now = new Date();
+        String token = Jwts.builder().subject("Test").issuedAt(now).expiration(new Date(now.getTime() + 3600000))
+                .signWith(secretKey, Jwts.SIG.HS512).compact();
+
+        SecurityGenericImpl security = new SecurityGenericImpl();
+        Claims claims = security.validateToken(token, key);
+        assertNotNull(claims);
+        assertSame(claims, security.validateToken(token, key));
+    }
+
+    /**
+     * Test that the keys used alternately keep their verified tokens.
+     *
+     * @throws ISSecurityException
+     *             the exceptions
+     */
+    @Test
+    public void testValidateTokenAlternateKeys() throws ISSecurityException {
+        String key1 = "TRNKpoTfEJlJv3Mp0fDtSWLlgAFhHK+WX6aA/c/lh/RFGoiuztFDtzNJfP44UDxa/HZUtrecMLjPOztNKtfPjw==";
+        SecretKey secretKey2 = Jwts.SIG.HS512.key().build();
+        String key2 = Base64.getEncoder().encodeToString(secretKey2.getEncoded());
+        Date now = new Date();
+        String token1 = Jwts.builder().subject("Test1").expiration(new Date(now.getTime() + 3600000))
+                .signWith(Keys.hmacShaKeyFor(Base64.getDecoder().decode(key1)), Jwts.SIG.HS512).compact();
+        String token2 = Jwts.builder().subject("Test2").expiration(new Date(now.getTime() + 3600000))
+                .signWith(secretKey2, Jwts.SIG.HS512).compact();
+
+        SecurityGenericImpl security = new SecurityGenericImpl();
+        Claims claims1 = security.validateToken(token1, key1);
+        Claims claims2 = security.validateToken(token2, key2);
+        assertSame(claims1, security.validateToken(token1, key1));
+        assertSame(claims2, security.validateToken(token2, key2));
+    }
+
+    /**
+     * Test that an expired token is rejected.
+     *
+     * @throws ISSecurityException
+     *             the expected exception
+     */
+    @Test(expected = ISSecurityException.class)
+    public void testValidateExpiredToken() throws ISSecurityException {
+        String key = "TRNKpoTfEJlJv3Mp0fDtSWLlgAFhHK+WX6aA/c/lh/RFGoiuztFDtzNJfP44UDxa/HZUtrecMLjPOztNKtfPjw==";
+        SecretKey secretKey = Keys.hmacShaKeyFor(Base64.getDecoder().decode(key));
+        Date now = new Date();
+        String token = Jwts.builder().subject("Test").issuedAt(new Date(now.getTime() - 7200000))
+                .expiration(new Date(now.getTime() - 3600000)).signWith(secretKey, Jwts.SIG.HS512).compact();
+
+        new SecurityGenericImpl().validateToken(token, key);
+    }
+
+    /**
+     * The token validated by the authentication filter is returned unchanged while its remaining lifetime is above the threshold,
+     * even without the cache of the verified tokens.
+     *
+     * @throws ISSecurityException
+     *             the exceptions
+     */
+    @Test
+    public void testRenewThresholdFilter() throws ISSecurityException {
+        Map<String, String> properties = getTokenProperties("0.5");
+        properties.put("security.token.cache.size", "0");
+        IContextManager contextManager = createContextManager(properties);
+        SecurityGenericImpl security = new SecurityGenericImpl();
+        String token = security.getToken(createClaims(), contextManager);
+
+        SecurityUtil.setSecurityImpl(security);
+        TokenSecurityContext context = new TokenSecurityContext(token, null, false);
+        TokenSecurityContext.bind(context);
+        try {
+            Claims claims = context.getClaims(contextManager);
+            assertSame(token, security.getToken(claims, contextManager));
+
+            // Without the filter and the cache, the token is unknown
+            TokenSecurityContext.unbind();
+            assertNotSame(token, security.getToken(security.validateToken(token, contextManager), contextManager));
+        } finally {
+            TokenSecurityContext.unbind();
+            SecurityUtil.setSecurityImpl(new SecurityGenericImpl());
+        }
+    }
+
+    /**
+     * The token validated by another entry point than the authentication filter is returned unchanged through the cache of the
+     * verified tokens.
+     *
+     * @throws ISSecurityException
+     *             the exceptions
+     */
+    @Test
+    public void testRenewThresholdWithoutFilter() throws ISSecurityException {
+        IContextManager contextManager = createContextManager(getTokenProperties("0.5"));
+        SecurityGenericImpl security = new SecurityGenericImpl();
+        String token = security.getToken(createClaims(), contextManager);
+
+        Claims claims = security.validateToken(token, contextManager);
+        assertSame(token, security.getToken(claims, contextManager));
+    }
+
+    /**
+     * A new token is issued when the remaining lifetime is below the threshold, and when the threshold is not set or invalid.
+     *
+     * @throws ISSecurityException
+     *             the exceptions
+     */
+    @Test
+    public void testRenewThresholdNewToken() throws ISSecurityException {
+        for (String threshold : new String[] { "1.1", null, "invalid" }) {
+            IContextManager contextManager = createContextManager(getTokenProperties(threshold));
+            SecurityGenericImpl security = new SecurityGenericImpl();
+            String token = security.getToken(createClaims(), contextManager);
+
+            Claims claims = security.validateToken(token, contextManager);
+            assertNotSame(token, security.getToken(claims, contextManager));
+        }
+    }
+
+    /**
+     *
+     * @param aThreshold
+     *            renewal threshold, <code>null</code> if not set
+     * @return the properties to issue and validate the tokens
+     */
+    private static Map<String, String> getTokenProperties(String aThreshold) {
+        Map<String, String> properties = new HashMap<>();
+        properties.put("security.token.key", "TRNKpoTfEJlJv3Mp0fDtSWLlgAFhHK+WX6aA/c/lh/RFGoiuztFDtzNJfP44UDxa/HZUtrecMLjPOztNKtfPjw==");
+        properties.put("security.timeout", "3600000");
+        if (aThreshold != null) {
+            properties.put("security.token.renew.threshold", aThreshold);
+        }
+        return properties;
+    }
+
+    /**
+     *
+     * @param aProperties
+     *            the properties
+     * @return a context manager with the properties
+     */
+    private static IContextManager createContextManager(Map<String, String> aProperties) {
+        IContextManager contextManager = mock(IContextManager.class);
+        when(contextManager.getProperty(anyString())).thenAnswer(invocation -> aProperties.get(invocation.getArguments()[0]));
+        when(contextManager.getApplicationName()).thenReturn("test");
+        return contextManager;
+    }
+
+    /**
+     *
+     * @return the claims of a user
+     */
+    private static Claims createClaims() {
+        return Jwts.claims().add("userId", "1").add("userName", "user").add("status", Status.VALID.toString()).build();
+    }
+
     /**
      * Generate a JWT token.
      *
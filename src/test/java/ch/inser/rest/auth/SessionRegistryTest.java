@@ -0,0 +1,109 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+
+package ch.inser.rest.auth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import ch.inser.jsl.exceptions.ISException;
+
+/**
+ * Test the session registry with two nodes sharing an in-process bus.
+ *
+ * @author INSER SA
+ */
+public class SessionRegistryTest {
+
+    /**
+     * A valid session is checked once in the database during its time to live.
+     *
+     * @throws ISException
+     *             the exceptions
+     */
+    @Test
+    public void testValidSessionCached() throws ISException {
+        SessionRegistry registry = new SessionRegistry(new LocalSessionBus());
+        AtomicInteger checks = new AtomicInteger();
+        Date issuedAt = new Date();
+        for (int i = 0; i < 5; i++) {
+            registry.validate("user", issuedAt, 60000, () -> checks.incrementAndGet() > 0);
+        }
+        assertEquals(1, checks.get());
+    }
+
+    /**
+     * A logout on one node revokes the tokens on the other node without querying the database.
+     *
+     * @throws ISException
+     *             the exceptions
+     */
+    @Test
+    public void testRevocationShared() throws ISException {
+        LocalSessionBus bus = new LocalSessionBus();
+        SessionRegistry node1 = new SessionRegistry(bus);
+        SessionRegistry node2 = new SessionRegistry(bus);
+        AtomicInteger checks = new AtomicInteger();
+        Date issuedAt = new Date(System.currentTimeMillis() - 5000);
+        node2.validate("user", issuedAt, 60000, () -> checks.incrementAndGet() > 0);
+
+        node1.revoke("user");
+        try {
+            node2.validate("user", issuedAt, 60000, () -> checks.incrementAndGet() > 0);
+            fail("Session revoked");
+        } catch (ISSecurityException e) {
+            // Expected
+        }
+        assertEquals(1, checks.get());
+
+        // A new login is checked in the database again
+        node2.validate("user", new Date(System.currentTimeMillis() + 1000), 60000, () -> checks.incrementAndGet() > 0);
+        assertEquals(2, checks.get());
+    }
+
+    /**
+     * The revocations older than the lifetime of the tokens are removed.
+     *
+     * @throws InterruptedException
+     *             the exceptions
+     */
+    @Test
+    public void testRevocationsPurged() throws InterruptedException {
+        SessionRegistry registry = new SessionRegistry(new LocalSessionBus());
+        registry.setTokenLifetime(10);
+        registry.revoke("user1");
+        assertEquals(1, registry.getRevocations());
+
+        Thread.sleep(50);
+        registry.revoke("user2");
+        assertEquals(1, registry.getRevocations());
+    }
+
+    /**
+     * A session without a valid database session is rejected.
+     *
+     * @throws ISException
+     *             the expected exception
+     */
+    @Test(expected = ISSecurityException.class)
+    public void testInvalidSession() throws ISException {
+        new SessionRegistry(new LocalSessionBus()).validate("user", new Date(), 60000, () -> false);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+
+package ch.inser.rest.auth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+
+/**
+ * Test the cache of the verified claims.
+ *
+ * @author INSER SA
+ */
+public class VerifiedTokenCacheTest {
+
+    /**
+     * The claims are found until the expiration of the token.
+     *
+     * @throws InterruptedException
+     *             the exceptions
+     */
+    @Test
+    public void testExpiration() throws InterruptedException {
+        VerifiedTokenCache cache = new VerifiedTokenCache(10, 60000);
+        cache.put("token", Jwts.claims().subject("user").expiration(new Date(System.currentTimeMillis() + 50)).build());
+        assertEquals("user", cache.get("token").getSubject());
+
+        Thread.sleep(100);
+        assertNull(cache.get("token"));
+    }
+
+    /**
+     * The claims kept are the verified claims, which cannot be modified.
+     */
+    @Test(expected = UnsupportedOperationException.class)
+    public void testImmutable() {
+        Map<String, Object> values = new HashMap<>();
+        values.put("userName", "user");
+        Claims claims = Jwts.claims().add(values).build();
+        VerifiedTokenCache cache = new VerifiedTokenCache(10, 60000);
+        cache.put("token", claims);
+
+        Claims cached = cache.get("token");
+        assertSame(claims, cached);
+        assertEquals("user", cached.get("userName"));
+        cached.put("userName", "other");
+    }
+
+    /**
+     * The token of the claims kept is known until its entry is removed.
+     */
+    @Test
+    public void testToken() {
+        Claims claims = Jwts.claims().subject("user").build();
+        VerifiedTokenCache cache = new VerifiedTokenCache(10, 60000);
+        assertNull(cache.getToken(claims));
+        cache.put("token", claims);
+        assertEquals("token", cache.getToken(claims));
+        assertNull(cache.getToken(Jwts.claims().subject("other").build()));
+
+        cache.clear();
+        assertNull(cache.getToken(claims));
+    }
+
+    /**
+     * The cache is bounded.
+     */
+    @Test
+    public void testMaxSize() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(5, 60000);
+        for (int i = 0; i < 20; i++) {
+            cache.put("token" + i, Jwts.claims().subject("user" + i).build());
+        }
+        assertEquals(5, cache.size());
+    }
+}
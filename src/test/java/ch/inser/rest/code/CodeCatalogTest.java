@@ -0,0 +1,215 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+
+package ch.inser.rest.code;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.inser.dynamic.common.IContextManager;
+import ch.inser.jsl.exceptions.ISException;
+import ch.inser.rest.util.EntityVersions;
+
+import jakarta.json.JsonObject;
+
+/**
+ * Test the changes of the code catalog since a version.
+ *
+ * @author INSER SA *
+ */
+public class CodeCatalogTest {
+
+    /** Name of the test code entity */
+    private static final String ENTITY = "TestCode";
+
+    /** Codes read by the catalog */
+    private final Map<String, List<String>> iCodes = new HashMap<>();
+
+    /** The catalog */
+    private CodeCatalog iCatalog;
+
+    /**
+     * Catalog with two fields.
+     *
+     * @throws ISException
+     *             the exceptions
+     */
+    @Before
+    public void initCatalog() throws ISException {
+        iCodes.put("status", new ArrayList<>(Arrays.asList("1", "2")));
+        iCodes.put("type", new ArrayList<>(Arrays.asList("A")));
+        iCatalog = new CodeCatalog(ENTITY);
+        iCatalog.configure(2, CodeCatalog.DEFAULT_REFRESH);
+        iCatalog.refresh(this::load);
+    }
+
+    /**
+     * An unknown version gives all the codes.
+     */
+    @Test
+    public void testFull() {
+        JsonObject json = iCatalog.toJson(null).build();
+        assertTrue(json.getBoolean("full"));
+        assertEquals(2, json.getJsonObject("codes").getJsonArray("status").size());
+
+        assertTrue(iCatalog.toJson("0.1").build().getBoolean("full"));
+        assertTrue(iCatalog.toJson(EntityVersions.getEpoch() + ".x").build().getBoolean("full"));
+    }
+
+    /**
+     * A known version gives the codes added and removed since.
+     *
+     * @throws ISException
+     *             the exceptions
+     */
+    @Test
+    public void testChanges() throws ISException {
+        String version = iCatalog.getVersion();
+        JsonObject json = iCatalog.toJson(version).build();
+        assertFalse(json.getBoolean("full"));
+        assertTrue(json.getJsonObject("added").isEmpty());
+
+        // Code 3 added, code 1 invalidated
+        iCodes.get("status").remove("1");
+        iCodes.get("status").add("3");
+        modify();
+        assertNotEquals(version, iCatalog.getVersion());
+        json = iCatalog.toJson(version).build();
+        assertFalse(json.getBoolean("full"));
+        assertEquals("3", json.getJsonObject("added").getJsonArray("status").getString(0));
+        assertEquals("1", json.getJsonObject("removed").getJsonArray("status").getString(0));
+
+        // Code 1 valid again: only code 3 differs from the client version
+        iCodes.get("status").add("1");
+        modify();
+        json = iCatalog.toJson(version).build();
+        assertEquals(1, json.getJsonObject("added").getJsonArray("status").size());
+        assertTrue(json.getJsonObject("removed").isEmpty());
+    }
+
+    /**
+     * A version no longer in the history gives all the codes.
+     *
+     * @throws ISException
+     *             the exceptions
+     */
+    @Test
+    public void testHistory() throws ISException {
+        String version = iCatalog.getVersion();
+        for (int i = 0; i < 3; i++) {
+            iCodes.get("type").add("B" + i);
+            modify();
+        }
+        assertTrue(iCatalog.toJson(version).build().getBoolean("full"));
+    }
+
+    /**
+     * A modification without changes of the codes keeps the version.
+     *
+     * @throws ISException
+     *             the exceptions
+     */
+    @Test
+    public void testNoChange() throws ISException {
+        String version = iCatalog.getVersion();
+        modify();
+        assertEquals(version, iCatalog.getVersion());
+    }
+
+    /**
+     * Modifies the code entity and refreshes the catalog.
+     *
+     * @throws ISException
+     *             the exceptions
+     */
+    private void modify() throws ISException {
+        EntityVersions.increment(ENTITY);
+        iCatalog.refresh(this::load);
+    }
+
+    /**
+     *
+     * @return a copy of the codes
+     */
+    private Map<String, List<String>> load() {
+        Map<String, List<String>> codes = new HashMap<>();
+        for (Map.Entry<String, List<String>> entry : iCodes.entrySet()) {
+            codes.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+        }
+        return codes;
+    }
+
+    /**
+     * The users of a same scope share a catalog, the users of another scope have their own.
+     */
+    @Test
+    public void testScope() {
+        assertSame(CodeCatalog.getInstance(ENTITY, "user1"), CodeCatalog.getInstance(ENTITY, "user1"));
+        assertNotSame(CodeCatalog.getInstance(ENTITY, "user1"), CodeCatalog.getInstance(ENTITY, "user2"));
+    }
+
+    /**
+     * The catalogs are bounded, the least recently used is forgotten. The properties are read once, invalid values are ignored.
+     */
+    @Test
+    public void testSize() {
+        IContextManager ctx = mock(IContextManager.class);
+        when(ctx.getProperty(CodeCatalog.CODES_CATALOG_SIZE)).thenReturn("2");
+        when(ctx.getProperty(CodeCatalog.CODES_HISTORY_SIZE)).thenReturn("x");
+        CodeCatalog.configure(ctx);
+        try {
+            CodeCatalog first = CodeCatalog.getInstance(ENTITY, "scope1");
+            CodeCatalog.getInstance(ENTITY, "scope2");
+            assertSame(first, CodeCatalog.getInstance(ENTITY, "scope1"));
+            CodeCatalog.getInstance(ENTITY, "scope3");
+            assertEquals(2, CodeCatalog.getSize());
+            assertSame(first, CodeCatalog.getInstance(ENTITY, "scope1"));
+            verify(ctx, times(1)).getProperty(CodeCatalog.CODES_CATALOG_SIZE);
+        } finally {
+            CodeCatalog.configure(mock(IContextManager.class));
+        }
+    }
+
+    /**
+     * A version of another catalog is unknown.
+     *
+     * @throws ISException
+     *             the exceptions
+     */
+    @Test
+    public void testOtherCatalog() throws ISException {
+        CodeCatalog other = new CodeCatalog(ENTITY);
+        other.refresh(this::load);
+        assertTrue(other.toJson(iCatalog.getVersion()).build().getBoolean("full"));
+        assertFalse(other.toJson(other.getVersion()).build().getBoolean("full"));
+    }
+}
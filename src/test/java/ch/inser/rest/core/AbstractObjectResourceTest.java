@@ -0,0 +1,261 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+
+package ch.inser.rest.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.StringReader;
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+
+import ch.inser.dynamic.common.DAOParameter;
+import ch.inser.dynamic.common.IContextManager;
+import ch.inser.dynamic.common.IDAOResult;
+import ch.inser.dynamic.common.ILoggedUser;
+import ch.inser.dynamic.common.IValueObject;
+import ch.inser.dynamic.util.ChildrenInfo;
+import ch.inser.dynamic.util.VOInfo;
+import ch.inser.dynaplus.bo.BPFactory;
+import ch.inser.dynaplus.bo.IBusinessProcess;
+import ch.inser.dynaplus.vo.IVOFactory;
+import ch.inser.jsl.exceptions.ISException;
+import ch.inser.rest.services.object.ObjectResource;
+import ch.inser.rest.util.JsonFactory;
+import ch.inser.rest.util.JsonVoUtil;
+
+import jakarta.json.JsonObject;
+import jakarta.servlet.ServletContext;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.Response.Status;
+
+/**
+ * Test the ETag of the records of the object resource, computed from the timestamps of the record and of its children.
+ *
+ * @author INSER SA *
+ */
+public class AbstractObjectResourceTest {
+
+    /** The BP delegate of the persons */
+    private final IBPDelegate iDelegate = mock(IBPDelegate.class);
+
+    /** The user */
+    private final ILoggedUser iUser = mock(ILoggedUser.class);
+
+    /** Timestamp of the person */
+    private Timestamp iTimestamp = Timestamp.valueOf("2016-06-10 08:06:02.765");
+
+    /** Timestamp of the address of the person */
+    private Timestamp iChildTimestamp = Timestamp.valueOf("2016-06-11 10:00:00.0");
+
+    /**
+     * Initializes the person with an address.
+     *
+     * @throws ISException
+     *             the exceptions
+     */
+    @Before
+    public void init() throws ISException {
+        JsonVoUtil.setContextManager(mock(IContextManager.class));
+        when(iUser.getUsername()).thenReturn("user");
+
+        VOInfo addressInfo = mock(VOInfo.class);
+        when(addressInfo.getName()).thenReturn("Adresse");
+        when(addressInfo.getChildrens()).thenReturn(Collections.emptyList());
+        ChildrenInfo children = mock(ChildrenInfo.class);
+        when(children.getChildrenName()).thenReturn("Adresse");
+        when(children.getChildrenLink()).thenReturn("adr_per_id");
+        when(children.getMasterLink()).thenReturn("per_id");
+        VOInfo personInfo = mock(VOInfo.class);
+        when(personInfo.getName()).thenReturn("Personne");
+        when(personInfo.getId()).thenReturn("per_id");
+        when(personInfo.getChildrens()).thenReturn(Collections.singletonList(children));
+
+        Map<String, Object> person = new HashMap<>();
+        person.put("per_id", 1L);
+        person.put("per_name", "Thatcher");
+        IValueObject record = createVo(personInfo, "per_id", person);
+        when(record.getTimestamp()).thenAnswer(invocation -> iTimestamp);
+        IDAOResult recordResult = mock(IDAOResult.class);
+        when(recordResult.getValueObject()).thenReturn(record);
+        when(iDelegate.getRecord(eq("1"), any(ILoggedUser.class), Matchers.<DAOParameter> anyVararg())).thenReturn(recordResult);
+
+        Map<String, Object> address = new HashMap<>();
+        address.put("adr_id", 10L);
+        address.put("adr_per_id", 1L);
+        IValueObject child = createVo(addressInfo, "adr_id", address);
+        when(child.getTimestamp()).thenAnswer(invocation -> iChildTimestamp);
+        IDAOResult childrenResult = mock(IDAOResult.class);
+        when(childrenResult.getListObject()).thenReturn(Collections.singletonList(child));
+        IBusinessProcess bp = mock(IBusinessProcess.class);
+        when(bp.getList(any(IValueObject.class), any(ILoggedUser.class), Matchers.<DAOParameter> anyVararg()))
+                .thenReturn(childrenResult);
+        BPFactory bpFactory = mock(BPFactory.class);
+        when(bpFactory.getBP("Adresse")).thenReturn(bp);
+        JsonVoUtil.setBPFactory(bpFactory);
+        IVOFactory voFactory = mock(IVOFactory.class);
+        when(voFactory.getVO(anyString())).thenAnswer(invocation -> createVo(addressInfo, "adr_id", new HashMap<>()));
+        JsonVoUtil.setVOFactory(voFactory);
+    }
+
+    /**
+     * Without children the tag of the client is compared to the timestamp before the record is read.
+     *
+     * @throws ISException
+     *             the exceptions
+     */
+    @Test
+    public void testTimestamp() throws ISException {
+        AbstractObjectResource resource = createResource();
+        Response response = resource.getRecordResponse(iUser, "false", null, null, null, true, null);
+        assertEquals(Status.OK.getStatusCode(), response.getStatus());
+        String tag = response.getHeaderString(HttpHeaders.ETAG);
+        assertTrue(tag.startsWith("W/"));
+        assertFalse(read(response).containsKey("children"));
+
+        assertEquals(Status.NOT_MODIFIED.getStatusCode(), resource.getRecordResponse(iUser, "false", null, null, tag, true, null)
+                .getStatus());
+        verify(iDelegate, times(1)).getRecord(eq("1"), any(ILoggedUser.class), Matchers.<DAOParameter> anyVararg());
+
+        iTimestamp = Timestamp.valueOf("2016-06-12 08:00:00.0");
+        response = resource.getRecordResponse(iUser, "false", null, null, tag, true, null);
+        assertEquals(Status.OK.getStatusCode(), response.getStatus());
+        assertNotEquals(tag, response.getHeaderString(HttpHeaders.ETAG));
+    }
+
+    /**
+     * With the children the tag is computed from the timestamps of the record and of its children, a change of a child gives
+     * another tag.
+     *
+     * @throws ISException
+     *             the exceptions
+     */
+    @Test
+    public void testChildren() throws ISException {
+        AbstractObjectResource resource = createResource();
+        Response response = resource.getRecordResponse(iUser, null, null, null, null, true, null);
+        assertEquals(Status.OK.getStatusCode(), response.getStatus());
+        String tag = response.getHeaderString(HttpHeaders.ETAG);
+        assertNotNull(tag);
+        assertEquals("10", read(response).getJsonObject("children").getJsonArray("Adresse").getJsonObject(0).getString("adr_id"));
+        assertNotEquals(tag, resource.getRecordResponse(iUser, "false", null, null, null, true, null).getHeaderString(HttpHeaders.ETAG));
+
+        assertEquals(Status.NOT_MODIFIED.getStatusCode(), resource.getRecordResponse(iUser, null, null, null, tag, true, null)
+                .getStatus());
+
+        iChildTimestamp = Timestamp.valueOf("2016-06-12 08:00:00.0");
+        response = resource.getRecordResponse(iUser, null, null, null, tag, true, null);
+        assertEquals(Status.OK.getStatusCode(), response.getStatus());
+        assertNotEquals(tag, response.getHeaderString(HttpHeaders.ETAG));
+    }
+
+    /**
+     * A resource converting the records itself has no tag, and a resource whose response changes on every call neither.
+     *
+     * @throws ISException
+     *             the exceptions
+     */
+    @Test
+    public void testNoTag() throws ISException {
+        AbstractObjectResource resource = new ObjectResource(mock(ServletContext.class), "Personne", "1") {
+
+            @Override
+            protected IBPDelegate getBPDelegate() {
+                return iDelegate;
+            }
+
+            @Override
+            protected JsonObject voToJson(IValueObject aRecord, String aIncludeChildren, ILoggedUser aUser) throws ISException {
+                return JsonFactory.createObjectBuilder().add("label", "Thatcher").build();
+            }
+        };
+        assertFalse(resource.isRecordTag());
+        Response response = resource.getRecordResponse(iUser, null, null, null, "*", true, null);
+        assertEquals(Status.OK.getStatusCode(), response.getStatus());
+        assertNull(response.getHeaderString(HttpHeaders.ETAG));
+        assertEquals("Thatcher", read(response).getString("label"));
+
+        response = createResource().getRecordResponse(iUser, "false", null, null, "*", false, null);
+        assertEquals(Status.OK.getStatusCode(), response.getStatus());
+        assertNull(response.getHeaderString(HttpHeaders.ETAG));
+    }
+
+    /**
+     *
+     * @return the object resource of the person, reading its timestamp from the record
+     */
+    private AbstractObjectResource createResource() {
+        return new ObjectResource(mock(ServletContext.class), "Personne", "1") {
+
+            @Override
+            protected IBPDelegate getBPDelegate() {
+                return iDelegate;
+            }
+
+            @Override
+            protected Object getTimestamp(ILoggedUser aLoggedUser) {
+                return iTimestamp;
+            }
+        };
+    }
+
+    /**
+     *
+     * @param aResponse
+     *            a response
+     * @return the record of the response
+     */
+    private static JsonObject read(Response aResponse) {
+        return JsonFactory.createReader(new StringReader((String) aResponse.getEntity())).readObject().getJsonObject("record");
+    }
+
+    /**
+     *
+     * @param aInfo
+     *            the type of the value object
+     * @param aIdField
+     *            the name of the id field
+     * @param aProperties
+     *            the values
+     * @return a value object backed by the values
+     */
+    private static IValueObject createVo(VOInfo aInfo, String aIdField, Map<String, Object> aProperties) {
+        IValueObject vo = mock(IValueObject.class);
+        when(vo.getVOInfo()).thenReturn(aInfo);
+        when(vo.getProperties()).thenReturn(aProperties);
+        when(vo.getId()).thenAnswer(invocation -> aProperties.get(aIdField));
+        when(vo.getProperty(anyString())).thenAnswer(invocation -> aProperties.get(invocation.getArguments()[0]));
+        return vo;
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+
+package ch.inser.rest.core;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.inser.dynamic.common.ILoggedUser;
+import ch.inser.rest.auth.PermissionMatrix;
+import ch.inser.rest.auth.PermissionMatrix.Permissions;
+import ch.inser.rest.util.JsonFactory;
+
+import jakarta.json.JsonObject;
+import jakarta.json.JsonObjectBuilder;
+
+/**
+ * Test the permissions document shared by the users of a group.
+ *
+ * @author INSER SA
+ */
+public class AbstractPermResourceTest {
+
+    /** The resource, without the field rights */
+    private final AbstractPermResource iResource = new AbstractPermResource() {
+
+        @Override
+        protected void addFields(ILoggedUser aLoggedUser, JsonObjectBuilder aPermissions) {
+            // No tabitem in the tests
+        }
+    };
+
+    /**
+     * Forgets the matrices of the previous tests.
+     */
+    @Before
+    public void clear() {
+        PermissionMatrix.clear();
+    }
+
+    /**
+     * The users with the same rights get the same document.
+     */
+    @Test
+    public void testShared() {
+        ILoggedUser user1 = createUser("Adresse");
+        ILoggedUser user2 = createUser("Adresse");
+
+        Permissions permissions = iResource.getGroupPermissions(user1);
+        assertSame(permissions, iResource.getGroupPermissions(user2));
+        assertSame(permissions.getJson(), user1.getPermissions());
+        assertSame(permissions.getJson(), user2.getPermissions());
+        assertTrue(permissions.getJson().getJsonObject("menus").getBoolean("Adresse"));
+        assertSame(permissions, iResource.getGroupPermissions(user1));
+    }
+
+    /**
+     * The permissions set on a user are kept and returned instead of the document of the group.
+     */
+    @Test
+    public void testUserPermissions() {
+        ILoggedUser user = createUser("Adresse");
+        ILoggedUser other = createUser("Adresse");
+        Permissions group = iResource.getGroupPermissions(other);
+        JsonObject own = JsonFactory.createObjectBuilder().add("menus", JsonFactory.createObjectBuilder().add("Personne", true))
+                .build();
+        user.setPermissions(own);
+
+        Permissions permissions = iResource.getGroupPermissions(user);
+        assertSame(own, permissions.getJson());
+        assertSame(own, user.getPermissions());
+        assertNotEquals(group.getTag(), permissions.getTag());
+        assertSame(group, iResource.getGroupPermissions(other));
+    }
+
+    /**
+     * After a change of the rights, a user holding the document of its former group gets a new document.
+     */
+    @Test
+    public void testRightsChange() {
+        AtomicReference<Map<String, Boolean>> menus = new AtomicReference<>(Collections.singletonMap("Adresse", Boolean.TRUE));
+        ILoggedUser user = createUser(menus);
+        Permissions before = iResource.getGroupPermissions(user);
+        assertSame(before.getJson(), user.getPermissions());
+
+        menus.set(Collections.singletonMap("Personne", Boolean.TRUE));
+        PermissionMatrix.clear();
+        Permissions after = iResource.getGroupPermissions(user);
+        assertNotEquals(before.getTag(), after.getTag());
+        assertSame(after.getJson(), user.getPermissions());
+        assertTrue(after.getJson().getJsonObject("menus").getBoolean("Personne"));
+        assertFalse(after.getJson().getJsonObject("menus").containsKey("Adresse"));
+    }
+
+    /**
+     *
+     * @param aMenu
+     *            authorized menu
+     * @return a user authorized for the menu, keeping its permissions
+     */
+    private static ILoggedUser createUser(String aMenu) {
+        return createUser(new AtomicReference<>(Collections.singletonMap(aMenu, Boolean.TRUE)));
+    }
+
+    /**
+     *
+     * @param aMenus
+     *            authorized menus, changed by the test
+     * @return a user authorized for the menus, keeping its permissions
+     */
+    private static ILoggedUser createUser(AtomicReference<Map<String, Boolean>> aMenus) {
+        ILoggedUser user = mock(ILoggedUser.class);
+        when(user.getMapAuthMenu()).thenAnswer(invocation -> aMenus.get());
+        AtomicReference<JsonObject> permissions = new AtomicReference<>();
+        when(user.getPermissions()).thenAnswer(invocation -> permissions.get());
+        doAnswer(invocation -> {
+            permissions.set((JsonObject) invocation.getArguments()[0]);
+            return null;
+        }).when(user).setPermissions(any(JsonObject.class));
+        return user;
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+
+package ch.inser.rest.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.junit.Test;
+import org.mockito.Matchers;
+
+import ch.inser.dynamic.common.DAOParameter;
+import ch.inser.dynamic.common.DAOParameter.Name;
+import ch.inser.dynamic.common.DynamicDAO.Operator;
+import ch.inser.dynamic.common.IDAOResult;
+import ch.inser.dynamic.common.ILoggedUser;
+import ch.inser.dynamic.common.IValueObject;
+import ch.inser.dynamic.util.VOInfo;
+import ch.inser.jsl.exceptions.ISException;
+import ch.inser.jsl.list.ListHandler.Sort;
+
+/**
+ * Test the record-at-a-time traversal of a search result by keyset pages.
+ *
+ * @author INSER SA *
+ */
+public class KeysetPagerTest {
+
+    /** Name of the id field */
+    private static final String ID = "per_id";
+
+    /** Name of the sort field */
+    private static final String NAME = "per_name";
+
+    /** The records of the table */
+    private final List<IValueObject> iTable = new ArrayList<>();
+
+    /** Number of getList calls */
+    private int iQueries;
+
+    /**
+     * Each record is read once, in the order of the sort field, also when more records than a page have the same value.
+     *
+     * @throws ISException
+     *             the exceptions
+     */
+    @Test
+    public void testTies() throws ISException {
+        addRecords("a", "c", "b", "b", "b", "b", "b", "a", "d");
+        List<Object> ids = new ArrayList<>();
+
+        KeysetPager pager = new KeysetPager(createDelegate(), createQuery(), null, NAME, Sort.ASCENDING, 2);
+        long count = pager.forEach(aVo -> ids.add(aVo.getId()));
+        assertEquals(9, count);
+        assertEquals(Arrays.asList(1L, 8L, 3L, 4L, 5L, 6L, 7L, 2L, 9L), ids);
+    }
+
+    /**
+     * The records without a value of the sort field are read at the end, by id, and the descending sort is kept.
+     *
+     * @throws ISException
+     *             the exceptions
+     */
+    @Test
+    public void testNullsDescending() throws ISException {
+        addRecords(null, "a", "c", null, "b");
+        List<Object> ids = new ArrayList<>();
+
+        KeysetPager pager = new KeysetPager(createDelegate(), createQuery(), null, NAME, Sort.DESCENDING, 2);
+        long count = pager.forEach(aVo -> ids.add(aVo.getId()));
+        assertEquals(5, count);
+        assertEquals(Arrays.asList(3L, 5L, 2L, 1L, 4L), ids);
+    }
+
+    /**
+     * Without sort field the records are read by id, and a record deleted during the traversal doesn't shift the following pages.
+     *
+     * @throws ISException
+     *             the exceptions
+     */
+    @Test
+    public void testDeleteDuringTraversal() throws ISException {
+        addRecords("a", "b", "c", "d", "e", "f", "g");
+        List<Object> ids = new ArrayList<>();
+
+        new KeysetPager(createDelegate(), createQuery(), null, null, null, 3).forEach(aVo -> {
+            ids.add(aVo.getId());
+            if (ids.size() == 1) {
+                iTable.remove(0);
+            }
+        });
+        assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 5L, 6L, 7L), ids);
+        assertEquals(4, iQueries);
+    }
+
+    /**
+     * A fetch size under 1 reads one record at a time instead of looping.
+     *
+     * @throws ISException
+     *             the exceptions
+     */
+    @Test
+    public void testFetchSize() throws ISException {
+        addRecords("a", "b");
+
+        assertEquals(2, new KeysetPager(createDelegate(), createQuery(), null, NAME, null, 0).forEach(aVo -> {
+            // Counted only
+        }));
+        assertEquals(1, AbstractResource.getFetchSize("0"));
+        assertEquals(1, AbstractResource.getFetchSize("-3"));
+        assertEquals(20, AbstractResource.getFetchSize(" 20 "));
+        assertEquals(500, AbstractResource.getFetchSize("many"));
+        assertEquals(500, AbstractResource.getFetchSize(null));
+    }
+
+    /**
+     * Adds records with the ids 1, 2, ...
+     *
+     * @param aNames
+     *            values of the sort field
+     */
+    private void addRecords(String... aNames) {
+        for (String name : aNames) {
+            Map<String, Object> properties = new HashMap<>();
+            properties.put(ID, (long) iTable.size() + 1);
+            properties.put(NAME, name);
+            iTable.add(createVo(properties));
+        }
+    }
+
+    /**
+     *
+     * @return an empty query
+     */
+    private static IValueObject createQuery() {
+        return createVo(new HashMap<>());
+    }
+
+    /**
+     *
+     * @param aProperties
+     *            the properties of the value object
+     * @return a value object backed by the properties
+     */
+    private static IValueObject createVo(Map<String, Object> aProperties) {
+        IValueObject vo = mock(IValueObject.class);
+        VOInfo info = mock(VOInfo.class);
+        when(info.getId()).thenReturn(ID);
+        when(vo.getVOInfo()).thenReturn(info);
+        when(vo.getId()).thenAnswer(invocation -> aProperties.get(ID));
+        when(vo.getProperty(anyString())).thenAnswer(invocation -> aProperties.get(invocation.getArguments()[0]));
+        doAnswer(invocation -> aProperties.put((String) invocation.getArguments()[0], invocation.getArguments()[1])).when(vo)
+                .setProperty(anyString(), any());
+        when(vo.clone()).thenAnswer(invocation -> createVo(new HashMap<>(aProperties)));
+        return vo;
+    }
+
+    /**
+     *
+     * @return a delegate searching the records of the table
+     * @throws ISException
+     *             the exceptions
+     */
+    private IBPDelegate createDelegate() throws ISException {
+        IBPDelegate delegate = mock(IBPDelegate.class);
+        when(delegate.getList(any(IValueObject.class), any(ILoggedUser.class), Matchers.<DAOParameter> anyVararg()))
+                .thenAnswer(invocation -> {
+            iQueries++;
+            Object[] args = invocation.getArguments();
+            IValueObject query = (IValueObject) args[0];
+            String key = null;
+            boolean ascending = true;
+            long end = Long.MAX_VALUE;
+            for (int i = 2; i < args.length; i++) {
+                DAOParameter param = (DAOParameter) args[i];
+                if (param.getName() == Name.SORT_KEY) {
+                    key = (String) param.getValue();
+                } else if (param.getName() == Name.SORT_ORIENTATION) {
+                    ascending = param.getValue() != Sort.DESCENDING;
+                } else if (param.getName() == Name.ROWNUM_END) {
+                    end = (Long) param.getValue();
+                }
+            }
+            String sortKey = key;
+            Comparator<IValueObject> order = (aVo1, aVo2) -> compare(aVo1.getProperty(sortKey), aVo2.getProperty(sortKey));
+            order = (ascending ? order : order.reversed()).thenComparing((aVo1, aVo2) -> compare(aVo1.getId(), aVo2.getId()));
+            List<IValueObject> result = new ArrayList<>();
+            for (IValueObject vo : iTable) {
+                if (matches(vo.getProperty(NAME), query.getProperty(NAME)) && matches(vo.getId(), query.getProperty(ID))) {
+                    result.add(vo);
+                }
+            }
+            result.sort(order);
+            IDAOResult daoResult = mock(IDAOResult.class);
+            when(daoResult.getListObject()).thenReturn(result.subList(0, (int) Math.min(end, result.size())));
+            return daoResult;
+        });
+        return delegate;
+    }
+
+    /**
+     *
+     * @param aValue1
+     *            a value, <code>null</code> after the others
+     * @param aValue2
+     *            the other value
+     * @return the comparison of the values
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static int compare(Object aValue1, Object aValue2) {
+        return Comparator.nullsLast(Comparator.<Comparable> naturalOrder()).compare((Comparable) aValue1, (Comparable) aValue2);
+    }
+
+    /**
+     *
+     * @param aValue
+     *            value of a record
+     * @param aCriterion
+     *            criterion of the query
+     * @return true if the value matches the criterion
+     */
+    private static boolean matches(Object aValue, Object aCriterion) {
+        if (aCriterion == null) {
+            return true;
+        }
+        if (Objects.equals(aCriterion, Operator.getOperator(Operator.IS_NULL, null))) {
+            return aValue == null;
+        }
+        if (Objects.equals(aCriterion, Operator.getOperator(Operator.IS_NOT_NULL, null))) {
+            return aValue != null;
+        }
+        if (!(aCriterion instanceof Map)) {
+            return aCriterion.equals(aValue);
+        }
+        if (aValue == null) {
+            return false;
+        }
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>) aCriterion).entrySet()) {
+            int comparison = compare(aValue, entry.getValue());
+            if (entry.getKey() == Operator.BIGGER_EQU && comparison < 0 || entry.getKey() == Operator.SMALLER_EQU && comparison > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+
+package ch.inser.rest.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import ch.inser.dynamic.common.ILoggedUser;
+import ch.inser.dynamic.common.IValueObject;
+import ch.inser.jsl.exceptions.ISException;
+import ch.inser.rest.util.EntityVersions;
+
+/**
+ * Test the versions of the entities incremented by the modifications.
+ *
+ * @author INSER SA *
+ */
+public class VersionedBPDelegateTest {
+
+    /**
+     * The modifications increment the version, the reads don't.
+     *
+     * @throws ISException
+     *             the exceptions
+     */
+    @Test
+    public void testVersions() throws ISException {
+        IBPDelegate delegate = new VersionedBPDelegate("VersionedTest", mock(IBPDelegate.class));
+        long version = EntityVersions.get("VersionedTest");
+
+        delegate.getList(null, null);
+        delegate.getRecord(1L, null);
+        assertEquals(version, EntityVersions.get("VersionedTest"));
+
+        delegate.create(null, null);
+        delegate.update(null, null);
+        delegate.updateFields(null, null);
+        delegate.delete(1L, null, null);
+        assertEquals(version + 4, EntityVersions.get("VersionedTest"));
+        assertEquals(0, EntityVersions.get("VersionedOther"));
+    }
+
+    /**
+     * The modifications increment the versions of the children too.
+     *
+     * @throws ISException
+     *             the exceptions
+     */
+    @Test
+    public void testChildren() throws ISException {
+        IBPDelegate delegate = new VersionedBPDelegate("VersionedParent", Arrays.asList("VersionedChild1", "VersionedChild2"),
+                mock(IBPDelegate.class));
+        long version = EntityVersions.get("VersionedChild1");
+
+        delegate.getRecord(1L, null);
+        assertEquals(version, EntityVersions.get("VersionedChild1"));
+
+        delegate.create(null, null);
+        delegate.update(null, null);
+        delegate.delete(1L, null, null);
+        assertEquals(version + 3, EntityVersions.get("VersionedChild1"));
+        assertEquals(version + 3, EntityVersions.get("VersionedChild2"));
+        assertEquals(version + 3, EntityVersions.get("VersionedParent"));
+    }
+
+    /**
+     * A failed modification increments the version too.
+     *
+     * @throws ISException
+     *             the exceptions
+     */
+    @Test
+    public void testFailure() throws ISException {
+        IBPDelegate failing = mock(IBPDelegate.class);
+        when(failing.update(any(IValueObject.class), any(ILoggedUser.class))).thenThrow(new ISException("update"));
+        IBPDelegate delegate = new VersionedBPDelegate("VersionedFailure", failing);
+        try {
+            delegate.update(mock(IValueObject.class), mock(ILoggedUser.class));
+            fail("The exception is thrown");
+        } catch (ISException e) {
+            assertEquals(1, EntityVersions.get("VersionedFailure"));
+        }
+    }
+}
@@ -0,0 +1,316 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+
+package ch.inser.rest.oidc.auth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jose4j.jwa.AlgorithmConstraints.ConstraintType;
+import org.jose4j.jwk.JsonWebKeySet;
+import org.jose4j.jwk.RsaJsonWebKey;
+import org.jose4j.jwk.RsaJwkGenerator;
+import org.jose4j.jws.AlgorithmIdentifiers;
+import org.jose4j.jws.JsonWebSignature;
+import org.jose4j.jwt.JwtClaims;
+import org.jose4j.jwt.consumer.InvalidJwtException;
+import org.jose4j.jwt.consumer.JwtConsumer;
+import org.jose4j.jwt.consumer.JwtConsumerBuilder;
+import org.jose4j.lang.JoseException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+import ch.inser.rest.auth.ISSecurityException;
+
+/**
+ * Test the resolution of the OIDC keys against a local JWKS server.
+ *
+ * @author INSER SA
+ */
+public class JwksKeyResolverTest {
+
+    /** Audience of the test tokens */
+    private static final String AUDIENCE = "is-rest-test";
+
+    /** Local JWKS server */
+    private HttpServer iServer;
+
+    /** Key set published by the server, <code>null</code> if unavailable */
+    private volatile String iJwks;
+
+    /** Number of requests received by the server */
+    private final AtomicInteger iRequests = new AtomicInteger();
+
+    /**
+     * Starts the local JWKS server.
+     *
+     * @throws IOException
+     *             the exceptions
+     */
+    @Before
+    public void startServer() throws IOException {
+        iServer = HttpServer.create(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0), 0);
+        iServer.createContext("/certs", exchange -> {
+            iRequests.incrementAndGet();
+            if (iJwks == null) {
+                exchange.sendResponseHeaders(503, -1);
+                exchange.close();
+                return;
+            }
+            byte[] body = iJwks.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        iServer.start();
+    }
+
+    /**
+     * Stops the local JWKS server.
+     */
+    @After
+    public void stopServer() {
+        iServer.stop(0);
+    }
+
+    /**
+     * The key set is loaded once and shared by the validations.
+     *
+     * @throws Exception
+     *             the exceptions
+     */
+    @Test
+    public void testValidateOIDCToken() throws Exception {
+        RsaJsonWebKey key = generateKey("k1");
+        iJwks = new JsonWebKeySet(key).toJson();
+
+        SecurityGenericImplOIDC security = new SecurityGenericImplOIDC();
+        for (int i = 0; i < 3; i++) {
+            JwtClaims claims = security.validateOIDCToken(sign(key, "user" + i), getCertUrl(), AUDIENCE, null);
+            assertEquals("user" + i, claims.getStringClaimValue("preferred_username"));
+        }
+        assertEquals(1, iRequests.get());
+    }
+
+    /**
+     * A token signed with a rotated key refreshes the key set.
+     *
+     * @throws Exception
+     *             the exceptions
+     */
+    @Test
+    public void testKeyRotation() throws Exception {
+        RsaJsonWebKey key1 = generateKey("k1");
+        RsaJsonWebKey key2 = generateKey("k2");
+        iJwks = new JsonWebKeySet(key1).toJson();
+        JwtConsumer consumer = getConsumer(new JwksKeyResolver(getCertUrl(), 0, 0));
+
+        consumer.processToClaims(sign(key1, "user"));
+        iJwks = new JsonWebKeySet(key1, key2).toJson();
+        consumer.processToClaims(sign(key2, "user"));
+        assertEquals(2, iRequests.get());
+    }
+
+    /**
+     * The tokens with an unknown key id do not refresh the key set more than once per minimum refresh interval.
+     *
+     * @throws Exception
+     *             the exceptions
+     */
+    @Test
+    public void testUnknownKeyRateLimited() throws Exception {
+        RsaJsonWebKey key = generateKey("k1");
+        RsaJsonWebKey unknown = generateKey("unknown");
+        iJwks = new JsonWebKeySet(key).toJson();
+        JwtConsumer consumer = getConsumer(new JwksKeyResolver(getCertUrl(), 0, 60000));
+
+        consumer.processToClaims(sign(key, "user"));
+        for (int i = 0; i < 5; i++) {
+            try {
+                consumer.processToClaims(sign(unknown, "user"));
+                fail("Token signed with an unknown key");
+            } catch (InvalidJwtException e) {
+                // Expected
+            }
+        }
+        assertEquals(1, iRequests.get());
+    }
+
+    /**
+     * While the identity provider is unavailable, the first load is not attempted again within the minimum refresh interval.
+     *
+     * @throws Exception
+     *             the exceptions
+     */
+    @Test
+    public void testLoadBackOff() throws Exception {
+        RsaJsonWebKey key = generateKey("k1");
+        JwtConsumer consumer = getConsumer(new JwksKeyResolver(getCertUrl(), 0, 60000));
+
+        for (int i = 0; i < 5; i++) {
+            try {
+                consumer.processToClaims(sign(key, "user"));
+                fail("Key set not available");
+            } catch (InvalidJwtException e) {
+                // Expected
+            }
+        }
+        assertEquals(1, iRequests.get());
+
+        // Without minimum interval the load is attempted again
+        consumer = getConsumer(new JwksKeyResolver(getCertUrl(), 0, 0));
+        try {
+            consumer.processToClaims(sign(key, "user"));
+            fail("Key set not available");
+        } catch (InvalidJwtException e) {
+            // Expected
+        }
+        iJwks = new JsonWebKeySet(key).toJson();
+        consumer.processToClaims(sign(key, "user"));
+        assertEquals(3, iRequests.get());
+    }
+
+    /**
+     * Closing the resolvers stops their background refresh and removes the shared ones.
+     */
+    @Test
+    public void testClose() {
+        JwksKeyResolver resolver = JwksKeyResolver.getResolver(getCertUrl(), 3600000, 0);
+        assertFalse(resolver.isClosed());
+
+        JwksKeyResolver.closeAll();
+        assertTrue(resolver.isClosed());
+        assertFalse(JwksKeyResolver.isSchedulerRunning());
+
+        JwksKeyResolver other = JwksKeyResolver.getResolver(getCertUrl(), 3600000, 0);
+        assertNotSame(resolver, other);
+        assertTrue(JwksKeyResolver.isSchedulerRunning());
+        other.close();
+        assertTrue(other.isClosed());
+    }
+
+    /**
+     * After closing, the validation uses a new consumer and a new shared resolver, which loads the key set again.
+     *
+     * @throws Exception
+     *             the exceptions
+     */
+    @Test
+    public void testCloseAll() throws Exception {
+        RsaJsonWebKey key = generateKey("k1");
+        iJwks = new JsonWebKeySet(key).toJson();
+        SecurityGenericImplOIDC security = new SecurityGenericImplOIDC();
+        security.validateOIDCToken(sign(key, "user"), getCertUrl(), AUDIENCE, null);
+        JwksKeyResolver resolver = JwksKeyResolver.getResolver(getCertUrl(), 3600000, 0);
+
+        SecurityGenericImplOIDC.closeAll();
+        assertTrue(resolver.isClosed());
+        assertFalse(JwksKeyResolver.isSchedulerRunning());
+
+        security.validateOIDCToken(sign(key, "user"), getCertUrl(), AUDIENCE, null);
+        assertEquals(2, iRequests.get());
+        assertNotSame(resolver, JwksKeyResolver.getResolver(getCertUrl(), 3600000, 0));
+        SecurityGenericImplOIDC.closeAll();
+    }
+
+    /**
+     * A token signed with another key is rejected.
+     *
+     * @throws Exception
+     *             the exceptions
+     */
+    @Test(expected = ISSecurityException.class)
+    public void testInvalidSignature() throws Exception {
+        RsaJsonWebKey key = generateKey("k1");
+        RsaJsonWebKey other = generateKey("k1");
+        iJwks = new JsonWebKeySet(key).toJson();
+
+        new SecurityGenericImplOIDC().validateOIDCToken(sign(other, "user"), getCertUrl(), AUDIENCE, null);
+    }
+
+    /**
+     *
+     * @return url of the key set of the local server
+     */
+    private String getCertUrl() {
+        return "http://127.0.0.1:" + iServer.getAddress().getPort() + "/certs";
+    }
+
+    /**
+     *
+     * @param aResolver
+     *            key resolver
+     * @return consumer as built by the OIDC security implementation
+     */
+    private static JwtConsumer getConsumer(JwksKeyResolver aResolver) {
+        return new JwtConsumerBuilder().setRequireExpirationTime()
+                .setJwsAlgorithmConstraints(ConstraintType.PERMIT, AlgorithmIdentifiers.RSA_USING_SHA256)
+                .setVerificationKeyResolver(aResolver).setExpectedAudience(AUDIENCE).build();
+    }
+
+    /**
+     *
+     * @param aKeyId
+     *            key id
+     * @return a new RSA key
+     * @throws JoseException
+     *             the exceptions
+     */
+    private static RsaJsonWebKey generateKey(String aKeyId) throws JoseException {
+        RsaJsonWebKey key = RsaJwkGenerator.generateJwk(2048);
+        key.setKeyId(aKeyId);
+        return key;
+    }
+
+    /**
+     *
+     * @param aKey
+     *            signing key
+     * @param aUsername
+     *            preferred username
+     * @return the signed token
+     * @throws JoseException
+     *             the exceptions
+     */
+    private static String sign(RsaJsonWebKey aKey, String aUsername) throws JoseException {
+        JwtClaims claims = new JwtClaims();
+        claims.setAudience(AUDIENCE);
+        claims.setExpirationTimeMinutesInTheFuture(10);
+        claims.setIssuedAtToNow();
+        claims.setClaim("preferred_username", aUsername);
+
+        JsonWebSignature jws = new JsonWebSignature();
+        jws.setPayload(claims.toJson());
+        jws.setKey(aKey.getPrivateKey());
+        jws.setKeyIdHeaderValue(aKey.getKeyId());
+        jws.setAlgorithmHeaderValue(AlgorithmIdentifiers.RSA_USING_SHA256);
+        return jws.getCompactSerialization();
+    }
+}
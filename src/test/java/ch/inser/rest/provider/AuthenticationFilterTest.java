@@ -0,0 +1,287 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+
+package ch.inser.rest.provider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.inser.dynamic.common.IContextManager;
+import ch.inser.dynamic.common.ILoggedUser;
+import ch.inser.jsl.exceptions.ISException;
+import ch.inser.rest.auth.ISSecurityException;
+import ch.inser.rest.auth.ISecurityImpl;
+import ch.inser.rest.auth.SecurityGenericImpl;
+import ch.inser.rest.auth.SecurityUtil;
+import ch.inser.rest.auth.TokenSecurityContext;
+import ch.inser.rest.util.Constants;
+import ch.inser.rest.util.JsonFactory;
+import ch.inser.rest.util.RestUtil;
+import ch.inser.rest.util.ServiceLocator;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import jakarta.json.JsonObject;
+import jakarta.servlet.ServletContext;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerResponseContext;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MultivaluedHashMap;
+import jakarta.ws.rs.core.MultivaluedMap;
+
+/**
+ * Test that the token of a request is validated and its user resolved once.
+ *
+ * @author INSER SA
+ */
+public class AuthenticationFilterTest {
+
+    /** Claims of the valid token */
+    private static final Claims CLAIMS = Jwts.claims().add("userName", "user").build();
+
+    /** Validation of the tokens */
+    private ISecurityImpl iSecurity;
+
+    /** Context manager of the application */
+    private IContextManager iContextManager;
+
+    /** Service locator of the application */
+    private ServiceLocator iServiceLocator;
+
+    /** The filter */
+    private final AuthenticationFilter iFilter = new AuthenticationFilter();
+
+    /**
+     * Security implementation and servlet context mocked.
+     *
+     * @throws ISException
+     *             the exceptions
+     */
+    @Before
+    public void initSecurity() throws ISException {
+        iSecurity = mock(ISecurityImpl.class);
+        iContextManager = mock(IContextManager.class);
+        when(iSecurity.validateToken(eq("valid"), any(IContextManager.class))).thenReturn(CLAIMS);
+        when(iSecurity.validateToken(eq("invalid"), any(IContextManager.class))).thenThrow(new ISSecurityException("Invalid", null));
+        when(iSecurity.getToken(any(Claims.class), any(IContextManager.class))).thenReturn("renewed");
+        SecurityUtil.setSecurityImpl(iSecurity);
+
+        iServiceLocator = mock(ServiceLocator.class);
+        when(iServiceLocator.getContextManager()).thenReturn(iContextManager);
+        ServletContext servletContext = mock(ServletContext.class);
+        when(servletContext.getAttribute(Constants.SERVICE_LOCATOR)).thenReturn(iServiceLocator);
+        RestUtil.setServletContext(servletContext);
+    }
+
+    /**
+     * Restores the default security implementation.
+     */
+    @After
+    public void restoreSecurity() {
+        TokenSecurityContext.unbind();
+        SecurityUtil.setSecurityImpl(new SecurityGenericImpl());
+    }
+
+    /**
+     * The token of the request is validated once, a different token at each call.
+     *
+     * @throws Exception
+     *             the exceptions
+     */
+    @Test
+    public void testValidatedOnce() throws Exception {
+        iFilter.filter(createRequest("valid"));
+        assertSame(CLAIMS, RestUtil.getClaims("valid"));
+        assertSame(CLAIMS, RestUtil.getClaims("valid"));
+        verify(iSecurity, times(1)).validateToken(eq("valid"), any(IContextManager.class));
+
+        // Another token than the token of the request
+        when(iSecurity.validateToken(eq("other"), any(IContextManager.class))).thenReturn(CLAIMS);
+        RestUtil.getClaims("other");
+        RestUtil.getClaims("other");
+        verify(iSecurity, times(2)).validateToken(eq("other"), any(IContextManager.class));
+    }
+
+    /**
+     * An invalid token is rejected at each call, validated once.
+     *
+     * @throws Exception
+     *             the exceptions
+     */
+    @Test
+    public void testInvalidOnce() throws Exception {
+        iFilter.filter(createRequest("invalid"));
+        for (int i = 0; i < 2; i++) {
+            try {
+                RestUtil.getClaims("invalid");
+                fail("Invalid token");
+            } catch (ISSecurityException e) {
+                // Expected
+            }
+        }
+        verify(iSecurity, times(1)).validateToken(eq("invalid"), any(IContextManager.class));
+    }
+
+    /**
+     * The user of the claims of the request is resolved once.
+     *
+     * @throws Exception
+     *             the exceptions
+     */
+    @Test
+    public void testUserResolvedOnce() throws Exception {
+        ILoggedUser user = mock(ILoggedUser.class);
+        when(iSecurity.getUser(any(Claims.class), any(ServiceLocator.class))).thenReturn(user);
+        iFilter.filter(createRequest("valid"));
+
+        Claims claims = RestUtil.getClaims("valid");
+        assertSame(user, RestUtil.getUser(claims));
+        assertSame(user, RestUtil.getUser(claims));
+        verify(iSecurity, times(1)).getUser(any(Claims.class), any(ServiceLocator.class));
+    }
+
+    /**
+     * Without the filter the token is validated at each call.
+     *
+     * @throws Exception
+     *             the exceptions
+     */
+    @Test
+    public void testWithoutFilter() throws Exception {
+        RestUtil.getClaims("valid");
+        RestUtil.getClaims("valid");
+        verify(iSecurity, times(2)).validateToken(anyString(), any(IContextManager.class));
+    }
+
+    /**
+     * The context of the request is unbound by the response filter.
+     *
+     * @throws Exception
+     *             the exceptions
+     */
+    @Test
+    public void testUnbound() throws Exception {
+        ContainerRequestContext request = createRequest("valid");
+        iFilter.filter(request);
+        assertNotNull(TokenSecurityContext.current());
+
+        iFilter.filter(request, createResponse(200));
+        assertNull(TokenSecurityContext.current());
+    }
+
+    /**
+     * With security.token.header the renewed token is in the response header and not in the body.
+     *
+     * @throws Exception
+     *             the exceptions
+     */
+    @Test
+    public void testTokenHeader() throws Exception {
+        when(iContextManager.getProperty("security.token.header")).thenReturn("true");
+        ContainerRequestContext request = createRequest("valid");
+        iFilter.filter(request);
+        Claims claims = RestUtil.getClaims("valid");
+        JsonObject body = RestUtil.addToken(JsonFactory.createObjectBuilder(), claims).build();
+        assertFalse(body.containsKey(Constants.TOKEN));
+
+        ContainerResponseContext response = createResponse(200);
+        iFilter.filter(request, response);
+        assertEquals("renewed", response.getHeaders().getFirst(Constants.TOKEN));
+    }
+
+    /**
+     * Without security.token.header the renewed token is in the body, not in the response header.
+     *
+     * @throws Exception
+     *             the exceptions
+     */
+    @Test
+    public void testTokenBody() throws Exception {
+        ContainerRequestContext request = createRequest("valid");
+        iFilter.filter(request);
+        Claims claims = RestUtil.getClaims("valid");
+        JsonObject body = RestUtil.addToken(JsonFactory.createObjectBuilder(), claims).build();
+        assertEquals("renewed", body.getString(Constants.TOKEN));
+
+        ContainerResponseContext response = createResponse(200);
+        iFilter.filter(request, response);
+        assertFalse(response.getHeaders().containsKey(Constants.TOKEN));
+    }
+
+    /**
+     * No token is added to the error responses, nor to the responses of requests whose token has not been validated.
+     *
+     * @throws Exception
+     *             the exceptions
+     */
+    @Test
+    public void testTokenHeaderSkipped() throws Exception {
+        when(iContextManager.getProperty("security.token.header")).thenReturn("true");
+        ContainerRequestContext request = createRequest("valid");
+        iFilter.filter(request);
+        RestUtil.getClaims("valid");
+        ContainerResponseContext response = createResponse(403);
+        iFilter.filter(request, response);
+        assertFalse(response.getHeaders().containsKey(Constants.TOKEN));
+
+        iFilter.filter(request);
+        response = createResponse(200);
+        iFilter.filter(request, response);
+        assertFalse(response.getHeaders().containsKey(Constants.TOKEN));
+        verify(iSecurity, times(0)).getToken(any(Claims.class), any(IContextManager.class));
+    }
+
+    /**
+     *
+     * @param aToken
+     *            token of the request
+     * @return a request with the token
+     */
+    static ContainerRequestContext createRequest(String aToken) {
+        ContainerRequestContext request = mock(ContainerRequestContext.class);
+        when(request.getHeaderString("token")).thenReturn(aToken);
+        when(request.getHeaderString(HttpHeaders.AUTHORIZATION)).thenReturn(null);
+        return request;
+    }
+
+    /**
+     *
+     * @param aStatus
+     *            status of the response
+     * @return a response with the status and modifiable headers
+     */
+    static ContainerResponseContext createResponse(int aStatus) {
+        ContainerResponseContext response = mock(ContainerResponseContext.class);
+        MultivaluedMap<String, Object> headers = new MultivaluedHashMap<>();
+        when(response.getStatus()).thenReturn(aStatus);
+        when(response.getHeaders()).thenReturn(headers);
+        return response;
+    }
+}
@@ -16,6 +16,7 @@
 package ch.inser.rest.services;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
@@ -27,7 +28,12 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.StringReader;
+import java.io.StringWriter;
+import java.sql.Timestamp;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
 
@@ -40,12 +46,17 @@ import ch.inser.dynamic.common.IValueObject.Type;
 import ch.inser.dynaplus.vo.GenericValueObject;
 import ch.inser.dynaplus.vo.VOFactory;
 import ch.inser.jsl.exceptions.ISException;
+import ch.inser.rest.util.FieldProjection;
 import ch.inser.rest.util.GenericContextManager;
+import ch.inser.rest.util.JsonFactory;
 import ch.inser.rest.util.JsonVoUtil;
 
 import jakarta.json.Json;
+import jakarta.json.JsonArray;
 import jakarta.json.JsonObject;
 import jakarta.json.JsonReader;
+import jakarta.json.JsonValue;
+import jakarta.json.stream.JsonGenerator;
 import jakarta.servlet.ServletContext;
 
 /**
@@ -164,6 +175,179 @@ public class ObjectResourceTest {
         }
     }
 
+    /**
+     * Les valeurs liées par le parser sont celles de la lecture de l'objet json construit: types configurés, nombres non
+     * configurés gardés en texte, valeurs vides ou nulles ignorées et DISTINCT booléen.
+     *
+     * @throws IOException
+     *             erreur de lecture de fichier avec les données de test
+     * @throws ISException
+     *             on database access problems
+     * @throws ParseException
+     *             erreur de la date attendue
+     */
+    @Test
+    public void testJsonToVoAsBefore() throws IOException, ISException, ParseException {
+        initValueObject(getPath("ch/inser/rest/services/person1-attributes.txt"));
+        String json = "{\"per_name\":\"Margaret Thatcher\",\"per_salary\":190.25,\"per_birth_date\":\"1975-03-15\","
+                + "\"per_married\":true,\"per_age\":29,\"per_update_date\":\"2016-06-10 08:06:02.765\",\"per_count\":12,"
+                + "\"per_code\":\"A\",\"per_empty\":\"\",\"per_null\":null,\"DISTINCT\":true}";
+        IValueObject vo = JsonVoUtil.jsonToVo(json, ((VOFactory) iContext.getAttribute("VOFactory")).getVO((String) null));
+
+        // Valeurs de la liaison par JsonReader et JsonObject avant le parser
+        assertEquals("Margaret Thatcher", vo.getProperty("per_name"));
+        assertEquals(Double.valueOf(190.25), vo.getProperty("per_salary"));
+        assertEquals(Long.valueOf(29), vo.getProperty("per_age"));
+        assertEquals(Boolean.TRUE, vo.getProperty("per_married"));
+        assertEquals(new SimpleDateFormat("yyyy-MM-dd").parse("1975-03-15").getTime(),
+                ((java.util.Date) vo.getProperty("per_birth_date")).getTime());
+        assertEquals(Timestamp.valueOf("2016-06-10 08:06:02.765").getTime(),
+                ((java.util.Date) vo.getProperty("per_update_date")).getTime());
+        assertEquals("12", vo.getProperty("per_count"));
+        assertEquals("A", vo.getProperty("per_code"));
+        assertNull(vo.getProperty("per_empty"));
+        assertNull(vo.getProperty("per_null"));
+        assertEquals(Boolean.TRUE, vo.getProperty("DISTINCT"));
+    }
+
+    /**
+     * Les enregistrements d'un tableau json sont liés un à un, comme un objet seul.
+     *
+     * @throws IOException
+     *             erreur de lecture de fichier avec les données de test
+     * @throws ISException
+     *             on database access problems
+     */
+    @Test
+    public void testJsonToVos() throws IOException, ISException {
+        initValueObject(getPath("ch/inser/rest/services/person1-attributes.txt"));
+        try (Scanner scan = new Scanner(new File(getPath("ch/inser/rest/services/person1-json.txt")))) {
+            String json = scan.useDelimiter("\\Z").next();
+            IValueObject vo = ((VOFactory) iContext.getAttribute("VOFactory")).getVO((String) null);
+            JsonObject single = JsonVoUtil.voToJson(JsonVoUtil.jsonToVo(json, (IValueObject) vo.clone()), false, null);
+            List<IValueObject> vos = JsonVoUtil.jsonToVos("[" + json + "," + json + "]", vo);
+            assertEquals("Deux enregistrements", 2, vos.size());
+            for (IValueObject record : vos) {
+                assertEquals("Enregistrement identique à l'objet seul", single.toString(),
+                        JsonVoUtil.voToJson(record, false, null).toString());
+            }
+        }
+    }
+
+    /**
+     * Les enregistrements écrits un à un dans le flux sont identiques au tableau json construit en mémoire, les ids sont rendus
+     * dans l'ordre des enregistrements.
+     *
+     * @throws IOException
+     *             erreur de lecture de fichier avec les données de test
+     * @throws ISException
+     *             on database access problems
+     */
+    @Test
+    public void testWriteVos() throws IOException, ISException {
+        List<IValueObject> vos = initValueObjects();
+
+        StringWriter out = new StringWriter();
+        List<Object> ids;
+        try (JsonGenerator generator = JsonFactory.createGenerator(out)) {
+            generator.writeStartObject();
+            ids = JsonVoUtil.writeVos(generator, "records", vos);
+            generator.writeEnd();
+        }
+        try (JsonReader jsonReader = Json.createReader(new StringReader(out.toString()))) {
+            assertEquals("Mêmes enregistrements que la liste construite", JsonVoUtil.vosToJson(vos, false),
+                    jsonReader.readObject().getJsonArray("records"));
+        }
+        assertEquals("Un id par enregistrement", 2, ids.size());
+        assertEquals(vos.get(0).getId(), ids.get(0));
+        assertEquals(vos.get(1).getId(), ids.get(1));
+    }
+
+    /**
+     * Les enregistrements écrits un à un avec une projection ont les seuls attributs sélectionnés, comme la liste construite avec
+     * la même projection.
+     *
+     * @throws IOException
+     *             erreur de lecture de fichier avec les données de test
+     * @throws ISException
+     *             on database access problems
+     */
+    @Test
+    public void testWriteVosProjection() throws IOException, ISException {
+        List<IValueObject> vos = initValueObjects();
+        FieldProjection projection = FieldProjection.of("per_name,per_age", null);
+
+        StringWriter out = new StringWriter();
+        try (JsonGenerator generator = JsonFactory.createGenerator(out)) {
+            generator.writeStartObject();
+            JsonVoUtil.writeVos(generator, "records", vos, projection);
+            generator.writeEnd();
+        }
+        try (JsonReader jsonReader = Json.createReader(new StringReader(out.toString()))) {
+            JsonArray records = jsonReader.readObject().getJsonArray("records");
+            assertEquals("Même projection que la liste construite", JsonVoUtil.vosToJson(vos, projection), records);
+            for (JsonValue record : records) {
+                assertEquals("Attributs sélectionnés", 2, record.asJsonObject().size());
+            }
+        }
+    }
+
+    /**
+     * Les enregistrements en colonnes ont les mêmes valeurs que les enregistrements en objets.
+     *
+     * @throws IOException
+     *             erreur de lecture de fichier avec les données de test
+     * @throws ISException
+     *             on database access problems
+     */
+    @Test
+    public void testWriteTable() throws IOException, ISException {
+        initValueObject(getPath("ch/inser/rest/services/person1-attributes.txt"));
+        try (Scanner scan = new Scanner(new File(getPath("ch/inser/rest/services/person1-json.txt")))) {
+            String json = scan.useDelimiter("\\Z").next();
+            IValueObject vo = ((VOFactory) iContext.getAttribute("VOFactory")).getVO((String) null);
+            List<IValueObject> vos = JsonVoUtil.jsonToVos("[" + json + "," + json + "]", vo);
+            JsonObject single = JsonVoUtil.voToJson(vos.get(0), false, null);
+
+            StringWriter out = new StringWriter();
+            try (JsonGenerator generator = JsonFactory.createGenerator(out)) {
+                generator.writeStartObject();
+                JsonVoUtil.writeTable(generator, vos, null);
+                generator.writeEnd();
+            }
+            try (JsonReader jsonReader = Json.createReader(new StringReader(out.toString()))) {
+                JsonObject table = jsonReader.readObject();
+                JsonArray columns = table.getJsonArray("columns");
+                JsonArray rows = table.getJsonArray("rows");
+                assertEquals("Toutes les colonnes", single.keySet().size(), columns.size());
+                assertEquals("Deux lignes", 2, rows.size());
+                for (JsonValue row : rows) {
+                    for (int i = 0; i < columns.size(); i++) {
+                        String column = columns.getString(i);
+                        assertEquals("Valeur de la colonne " + column, single.get(column), row.asJsonArray().get(i));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     *
+     * @return deux enregistrements de test
+     * @throws IOException
+     *             erreur de lecture de fichier avec les données de test
+     * @throws ISException
+     *             erreur de conversion
+     */
+    private List<IValueObject> initValueObjects() throws IOException, ISException {
+        initValueObject(getPath("ch/inser/rest/services/person1-attributes.txt"));
+        try (Scanner scan = new Scanner(new File(getPath("ch/inser/rest/services/person1-json.txt")))) {
+            String json = scan.useDelimiter("\\Z").next();
+            IValueObject vo = ((VOFactory) iContext.getAttribute("VOFactory")).getVO((String) null);
+            return JsonVoUtil.jsonToVos("[" + json + "," + json + "]", vo);
+        }
+    }
+
     /**
      *
      * @param aFilename
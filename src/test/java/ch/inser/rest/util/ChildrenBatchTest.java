@@ -0,0 +1,161 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+
+package ch.inser.rest.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+import org.mockito.Matchers;
+
+import ch.inser.dynamic.common.DAOParameter;
+import ch.inser.dynamic.common.IDAOResult;
+import ch.inser.dynamic.common.ILoggedUser;
+import ch.inser.dynamic.common.IValueObject;
+import ch.inser.dynamic.util.ChildrenInfo;
+import ch.inser.dynamic.util.VOInfo;
+import ch.inser.dynaplus.bo.BPFactory;
+import ch.inser.dynaplus.bo.IBusinessProcess;
+import ch.inser.dynaplus.vo.IVOFactory;
+import ch.inser.jsl.exceptions.ISException;
+
+/**
+ * Test the grouping of the children loaded for a list of parents.
+ *
+ * @author INSER SA
+ */
+public class ChildrenBatchTest {
+
+    /** Link field of the children */
+    private static final String[] LINKS = { "adr_per_id" };
+
+    /**
+     * The children are grouped by parent in reading order, the numbers giving the same key whatever their type.
+     */
+    @Test
+    public void testGroup() {
+        List<IValueObject> children = new ArrayList<>();
+        children.add(createChild(1L));
+        children.add(createChild(2));
+        children.add(createChild(1.0));
+        children.add(createChild(3L));
+        Set<List<String>> keys = new HashSet<>(Arrays.asList(Collections.singletonList("1"), Collections.singletonList("2")));
+
+        Map<List<String>, List<IValueObject>> grouped = ChildrenBatch.group(children, LINKS, keys, 0);
+        assertEquals(Arrays.asList(children.get(0), children.get(2)), grouped.get(Collections.singletonList("1")));
+        assertEquals(1, grouped.get(Collections.singletonList("2")).size());
+        assertFalse(grouped.containsKey(Collections.singletonList("3")));
+    }
+
+    /**
+     * Each parent keeps at most the maximum number of rows of the loads by parent, the first ones read.
+     */
+    @Test
+    public void testMaxRowsPerParent() {
+        List<IValueObject> children = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            children.add(createChild(1L));
+            children.add(createChild(2L));
+        }
+        children.add(createChild(3L));
+        Set<List<String>> keys = new HashSet<>(Arrays.asList(Collections.singletonList("1"), Collections.singletonList("2"),
+                Collections.singletonList("3")));
+
+        Map<List<String>, List<IValueObject>> grouped = ChildrenBatch.group(children, LINKS, keys, 3);
+        List<IValueObject> first = grouped.get(Collections.singletonList("1"));
+        assertEquals(3, first.size());
+        assertSame(children.get(0), first.get(0));
+        assertSame(children.get(4), first.get(2));
+        assertEquals(3, grouped.get(Collections.singletonList("2")).size());
+        assertEquals(1, grouped.get(Collections.singletonList("3")).size());
+    }
+
+    /**
+     * The batched query reads at most one row more than the children kept for the parents, when it reaches this limit the
+     * children are left to the loading by parent.
+     *
+     * @throws ISException
+     *             the exceptions
+     */
+    @Test
+    public void testLimit() throws ISException {
+        assertEquals(0, ChildrenBatch.getLimit(10, 0));
+        assertEquals(21, ChildrenBatch.getLimit(10, 2));
+
+        ChildrenInfo info = mock(ChildrenInfo.class);
+        when(info.getChildrenName()).thenReturn("Adresse");
+        when(info.getChildrenLink()).thenReturn(LINKS[0]);
+        when(info.getMasterLink()).thenReturn("per_id");
+        VOInfo parentInfo = mock(VOInfo.class);
+        when(parentInfo.getName()).thenReturn("Personne");
+        when(parentInfo.getChildrens()).thenReturn(Collections.singletonList(info));
+        List<IValueObject> parents = new ArrayList<>();
+        for (long id = 1; id <= 2; id++) {
+            IValueObject parent = mock(IValueObject.class);
+            when(parent.getVOInfo()).thenReturn(parentInfo);
+            when(parent.getId()).thenReturn(id);
+            when(parent.getProperty("per_id")).thenReturn(id);
+            parents.add(parent);
+        }
+        List<IValueObject> children = new ArrayList<>();
+        IDAOResult result = mock(IDAOResult.class);
+        when(result.getListObject()).thenReturn(children);
+        IBusinessProcess bp = mock(IBusinessProcess.class);
+        when(bp.getList(any(IValueObject.class), any(ILoggedUser.class), Matchers.<DAOParameter> anyVararg())).thenReturn(result);
+        BPFactory bpFactory = mock(BPFactory.class);
+        when(bpFactory.getBP("Adresse")).thenReturn(bp);
+        IVOFactory voFactory = mock(IVOFactory.class);
+        when(voFactory.getVO(anyString())).thenAnswer(invocation -> mock(IValueObject.class));
+
+        // Below the limit of 2 parents x 1 row + 1
+        children.add(createChild(1L));
+        children.add(createChild(2L));
+        ChildrenBatch batch = ChildrenBatch.load(bpFactory, voFactory, parents, null, false, 1, mock(ILoggedUser.class));
+        assertNotNull(batch.getChildren(info, parents.get(0)));
+
+        // Limit reached, loaded by parent
+        children.add(createChild(1L));
+        batch = ChildrenBatch.load(bpFactory, voFactory, parents, null, false, 1, mock(ILoggedUser.class));
+        assertNull(batch.getChildren(info, parents.get(0)));
+    }
+
+    /**
+     *
+     * @param aParentId
+     *            value of the link to the parent
+     * @return a child of the parent
+     */
+    private static IValueObject createChild(Object aParentId) {
+        IValueObject child = mock(IValueObject.class);
+        when(child.getProperty(LINKS[0])).thenReturn(aParentId);
+        return child;
+    }
+}
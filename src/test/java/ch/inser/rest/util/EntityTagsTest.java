@@ -0,0 +1,60 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+
+package ch.inser.rest.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Test the computation and the comparison of the ETags.
+ *
+ * @author INSER SA *
+ */
+public class EntityTagsTest {
+
+    /**
+     * The tags depend only on their values.
+     */
+    @Test
+    public void testTags() {
+        assertEquals(EntityTags.weak("Person", "1", 1000L), EntityTags.weak("Person", "1", 1000L));
+        assertNotEquals(EntityTags.weak("Person", "1", 1000L), EntityTags.weak("Person", "1", 1001L));
+        assertNotEquals(EntityTags.weak("Person", "11", 1L), EntityTags.weak("Person", "1", 11L));
+        assertTrue(EntityTags.weak("Person").startsWith("W/\""));
+        assertEquals(EntityTags.strong("{\"record\":{}}"), EntityTags.strong("{\"record\":{}}"));
+        assertTrue(EntityTags.strong("{}").startsWith("\""));
+    }
+
+    /**
+     * If-None-Match matches with the weak comparison, in a list or with *.
+     */
+    @Test
+    public void testMatches() {
+        String tag = EntityTags.weak("Person", "1", 1000L);
+        String opaque = tag.substring(2);
+        assertTrue(EntityTags.matches(tag, tag));
+        assertTrue(EntityTags.matches(opaque, tag));
+        assertTrue(EntityTags.matches("\"other\", " + tag, tag));
+        assertTrue(EntityTags.matches("*", tag));
+        assertFalse(EntityTags.matches("\"other\"", tag));
+        assertFalse(EntityTags.matches(null, tag));
+        assertFalse(EntityTags.matches(tag, null));
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+
+package ch.inser.rest.util;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Test the selection of the fields with the parameters fields and exclude.
+ *
+ * @author INSER SA *
+ */
+public class FieldProjectionTest {
+
+    /**
+     * Without parameters all the fields are written.
+     */
+    @Test
+    public void testNone() {
+        assertNull(FieldProjection.of(null, null));
+        assertNull(FieldProjection.of("", " , "));
+    }
+
+    /**
+     * Only the given fields are written.
+     */
+    @Test
+    public void testFields() {
+        FieldProjection projection = FieldProjection.of("id, name,,children", null);
+        assertTrue(projection.includes("id"));
+        assertTrue(projection.includes("name"));
+        assertTrue(projection.includes(FieldProjection.CHILDREN));
+        assertFalse(projection.includes("description"));
+    }
+
+    /**
+     * The excluded fields are not written, also if they are in the given fields.
+     */
+    @Test
+    public void testExclude() {
+        FieldProjection projection = FieldProjection.of(null, "description,children");
+        assertTrue(projection.includes("id"));
+        assertFalse(projection.includes("description"));
+        assertFalse(projection.includes(FieldProjection.CHILDREN));
+
+        projection = FieldProjection.of("id,name", "name");
+        assertTrue(projection.includes("id"));
+        assertFalse(projection.includes("name"));
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+
+package ch.inser.rest.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.TimeZone;
+
+import org.junit.After;
+import org.junit.Test;
+
+import ch.inser.dynamic.common.IContextManager;
+
+/**
+ * Test that the date formats give the same strings and dates as the previous formatting and parsing with SimpleDateFormat.
+ *
+ * @author INSER SA *
+ */
+public class JsonDateFormatTest {
+
+    /** Time zones of the test, with and without daylight saving time */
+    private static final String[] TIME_ZONES = { "Europe/Zurich", "UTC", "America/New_York", "Asia/Kolkata", "Pacific/Kiritimati",
+            "Australia/Lord_Howe", "Africa/Casablanca" };
+
+    /** Times of the test */
+    private static final long[] TIMES = { 0L, 1L, 999L, 1000L, -1L, 1711846799999L, 1711846800000L, 1729990799123L,
+            1729994400456L, 951782400000L, 4102444799999L, -2208988800000L, -2208988800001L, -12219292800000L, -62135596800000L,
+            253402214399999L, 253402214400000L, 253402300800000L, -2177366400001L, 2114294400000L, 2208988800000L };
+
+    /** Dates and timestamps received by the services */
+    private static final String[] VALUES = { "2024", "1850", "0000", "31.03.2024", "31/03/2024", "31.13.2024", "00.00.1901",
+            "2024-03-31", "2024-02-30", "1901-00-00", "2024/03/31", "2024-03-31 02:30", "2024-10-27 02:30", "2024-03-31T02:30",
+            "2024-03-31 02:30:15", "2024-10-27 02:30:15", "2024-10-27T02:30:15", "2024-12-31 24:60:60", "2024-03-31 02:30:15.123",
+            "2024-03-31 02:30:15,123", "2024-10-27T02:30:15.999", "2024-10-27T02:30:15.999Z", "2024-10-27T02:30:15.999X", "2036-12-31",
+            "2036-12-31 23:59:60", "2040-06-15T12:00:00", "1899-12-31 23:00", "9999-99-99", "99999", "202", "2024-3-31", "",
+            "2024-03-31 02:30:15.12", "24-03-31", "abcd", "2024-03-31\n02:30" };
+
+    /** Default time zone before the test */
+    private final TimeZone iDefault = TimeZone.getDefault();
+
+    /**
+     * Restores the default time zone.
+     */
+    @After
+    public void restoreTimeZone() {
+        TimeZone.setDefault(iDefault);
+    }
+
+    /**
+     * The dates are formatted as before for all the combinations of the properties.
+     */
+    @Test
+    public void testDates() {
+        for (String zone : TIME_ZONES) {
+            TimeZone.setDefault(TimeZone.getTimeZone(zone));
+            for (int flags = 0; flags < 8; flags++) {
+                IContextManager ctx = createContextManager(flags);
+                JsonDateFormat format = JsonDateFormat.of(ctx);
+                for (long time : TIMES) {
+                    Date date = new Date(time);
+                    assertEquals(zone + " " + flags + " " + time, formatDate(ctx, date), format.format(date));
+                }
+            }
+        }
+    }
+
+    /**
+     * The timestamps are formatted as before for all the combinations of the properties.
+     */
+    @Test
+    public void testTimestamps() {
+        for (int flags = 0; flags < 8; flags++) {
+            IContextManager ctx = createContextManager(flags);
+            JsonDateFormat format = JsonDateFormat.of(ctx);
+            for (long time : TIMES) {
+                Timestamp timestamp = new Timestamp(time);
+                assertEquals(flags + " " + time, formatTimestamp(ctx, timestamp), format.format(timestamp));
+                timestamp.setNanos(123456789);
+                assertEquals(flags + " " + time, formatTimestamp(ctx, timestamp), format.format(timestamp));
+            }
+        }
+    }
+
+    /**
+     * The dates and timestamps are parsed as before with the regular expressions and SimpleDateFormat.
+     */
+    @Test
+    public void testParse() {
+        for (String zone : TIME_ZONES) {
+            TimeZone.setDefault(TimeZone.getTimeZone(zone));
+            for (String value : VALUES) {
+                assertEquals(zone + " " + value, parseDate(value), parse(value));
+            }
+        }
+    }
+
+    /**
+     * Without context manager the dates have no time.
+     */
+    @Test
+    public void testNoContextManager() {
+        Date date = new Date(1729990799123L);
+        assertEquals(date.toString(), JsonDateFormat.of(null).format(date));
+    }
+
+    /**
+     *
+     * @param aFlags
+     *            bits of the properties date.showtime, date.iso8601 and date.iso.timezone.zero
+     * @return a context manager with the properties
+     */
+    private static IContextManager createContextManager(int aFlags) {
+        IContextManager ctx = mock(IContextManager.class);
+        when(ctx.getProperty(JsonDateFormat.DATE_SHOWTIME_PROPERTY)).thenReturn((aFlags & 1) != 0 ? "true" : "false");
+        when(ctx.getProperty(JsonDateFormat.ISO_DATE_FORMAT_PROPERTY)).thenReturn((aFlags & 2) != 0 ? "true" : null);
+        when(ctx.getProperty(JsonDateFormat.ISO_DATE_UTC_PROPERTY)).thenReturn((aFlags & 4) != 0 ? "true" : null);
+        return ctx;
+    }
+
+    /**
+     *
+     * @param aValue
+     *            date string
+     * @return the time of the parsed date, "null" for an unknown format, "error" for a parse error
+     */
+    private static String parse(String aValue) {
+        try {
+            java.util.Date date = JsonDateFormat.parse(aValue);
+            return date != null ? String.valueOf(date.getTime()) : "null";
+        } catch (ParseException e) {
+            return "error";
+        }
+    }
+
+    /**
+     * Previous parsing of the dates.
+     *
+     * @param aValue
+     *            date string
+     * @return the time of the parsed date, "null" for an unknown format, "error" for a parse error
+     */
+    private static String parseDate(String aValue) {
+        String[][] formats = { { "\\d{4}", "yyyy" }, { "\\d{2}.\\d{2}.\\d{4}", "dd.MM.yyyy" }, { "\\d{4}-\\d{2}-\\d{2}", "yyyy-MM-dd" },
+                { "\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}", "yyyy-MM-dd HH:mm" },
+                { "\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2}", "yyyy-MM-dd HH:mm:ss" },
+                { "\\d{4}-\\d{2}-\\d{2}T\\d{2}:\\d{2}:\\d{2}", "yyyy-MM-dd'T'HH:mm:ss" },
+                { "\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2}.\\d{3}", "yyyy-MM-dd HH:mm:ss.SSS" },
+                { "\\d{4}-\\d{2}-\\d{2}T\\d{2}:\\d{2}:\\d{2}.\\d{3}", "yyyy-MM-dd'T'HH:mm:ss.SSS" },
+                { "\\d{4}-\\d{2}-\\d{2}T\\d{2}:\\d{2}:\\d{2}.\\d{3}Z", "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'" } };
+        for (String[] format : formats) {
+            if (aValue.matches(format[0])) {
+                try {
+                    return String.valueOf(new SimpleDateFormat(format[1]).parse(aValue).getTime());
+                } catch (ParseException e) {
+                    return "error";
+                }
+            }
+        }
+        return "null";
+    }
+
+    /**
+     * Previous formatting of the dates.
+     *
+     * @param aCtx
+     *            context manager
+     * @param aDate
+     *            the date
+     * @return the date string
+     */
+    private static String formatDate(IContextManager aCtx, Date aDate) {
+        if ("true".equals(aCtx.getProperty("date.showtime"))) {
+            SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+            if ("true".equals(aCtx.getProperty("date.iso8601"))) {
+                if ("true".equals(aCtx.getProperty("date.iso.timezone.zero"))) {
+                    df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+                } else {
+                    df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+                }
+            }
+            return df.format(aDate);
+        }
+        return aDate.toString();
+    }
+
+    /**
+     * Previous formatting of the timestamps.
+     *
+     * @param aCtx
+     *            context manager
+     * @param aTimestamp
+     *            the timestamp
+     * @return the timestamp string
+     */
+    private static String formatTimestamp(IContextManager aCtx, Timestamp aTimestamp) {
+        if ("true".equals(aCtx.getProperty("date.iso8601"))) {
+            return aTimestamp.toString().replace(" ", "T");
+        }
+        return aTimestamp.toString();
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+
+package ch.inser.rest.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.inser.dynamic.common.IContextManager;
+import ch.inser.dynamic.common.IValueObject;
+import ch.inser.dynamic.common.IValueObject.Type;
+import ch.inser.dynamic.util.VOInfo;
+import ch.inser.jsl.exceptions.ISException;
+
+import jakarta.json.JsonObject;
+
+/**
+ * Test that the serialization plans write the same JSON as the conversion of each field by its type.
+ *
+ * @author INSER SA *
+ */
+public class JsonVoUtilTest {
+
+    /** Types of the fields */
+    private final Map<String, Type> iTypes = new LinkedHashMap<>();
+
+    /** Type of the value objects */
+    private final VOInfo iInfo = mock(VOInfo.class);
+
+    /**
+     * Forgets the plans of the previous tests.
+     */
+    @Before
+    public void init() {
+        JsonVoUtil.setContextManager(mock(IContextManager.class));
+        JsonVoUtil.clearSerializationPlans();
+        iTypes.put("per_id", Type.LONG);
+        iTypes.put("per_salary", Type.DOUBLE);
+        iTypes.put("per_married", Type.BOOLEAN);
+        iTypes.put("per_name", Type.STRING);
+        iTypes.put("per_birth_date", Type.DATE);
+        iTypes.put("per_update_date", Type.TIMESTAMP);
+        iTypes.put("per_remark", Type.CLOB);
+    }
+
+    /**
+     * A value object is written by the plan of its type as by the conversion of each field, also when the plan is reused.
+     *
+     * @throws ISException
+     *             the exceptions
+     */
+    @Test
+    public void testPlan() throws ISException {
+        Map<String, Object> values = createValues(1L, "Thatcher");
+        values.put("per_tags", Arrays.asList("a", "b"));
+        JsonObject expected = JsonVoUtil.voToJson(createVo(null, values), false, null);
+
+        assertEquals(expected, JsonVoUtil.voToJson(createVo(iInfo, values), false, null));
+        assertEquals(expected, JsonVoUtil.voToJson(createVo(iInfo, values), false, null));
+        assertEquals(8, expected.size());
+        assertEquals("a", expected.getJsonArray("per_tags").getString(0));
+    }
+
+    /**
+     * A value object whose fields are not in the order of the first value object of its type is written as by the conversion of
+     * each field.
+     *
+     * @throws ISException
+     *             the exceptions
+     */
+    @Test
+    public void testOtherOrder() throws ISException {
+        JsonVoUtil.voToJson(createVo(iInfo, createValues(1L, "Thatcher")), false, null);
+
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("per_name", "Major");
+        values.put("per_id", 2L);
+        values.put("per_other", 3L);
+        values.put("per_married", Boolean.FALSE);
+        JsonObject expected = JsonVoUtil.voToJson(createVo(null, values), false, null);
+        assertEquals(expected, JsonVoUtil.voToJson(createVo(iInfo, values), false, null));
+        assertEquals("3", expected.getString("per_other"));
+    }
+
+    /**
+     * The plans are compiled again after a reload of the configuration.
+     *
+     * @throws ISException
+     *             the exceptions
+     */
+    @Test
+    public void testClear() throws ISException {
+        Map<String, Object> values = createValues(1L, "Thatcher");
+        JsonVoUtil.voToJson(createVo(iInfo, values), false, null);
+
+        iTypes.put("per_id", Type.STRING);
+        values.put("per_id", "A1");
+        JsonVoUtil.clearSerializationPlans();
+        assertEquals("A1", JsonVoUtil.voToJson(createVo(iInfo, values), false, null).getString("per_id"));
+    }
+
+    /**
+     *
+     * @param aId
+     *            the id
+     * @param aName
+     *            the name
+     * @return the values of a person
+     */
+    private static Map<String, Object> createValues(long aId, String aName) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("per_id", aId);
+        values.put("per_salary", 190.25);
+        values.put("per_married", Boolean.TRUE);
+        values.put("per_name", aName);
+        values.put("per_birth_date", Date.valueOf("1975-03-15"));
+        values.put("per_update_date", Timestamp.valueOf("2016-06-10 08:06:02.765"));
+        values.put("per_remark", new StringBuilder("Remark"));
+        return values;
+    }
+
+    /**
+     *
+     * @param aInfo
+     *            the type of the value object, <code>null</code> to convert each field by its type
+     * @param aValues
+     *            the values
+     * @return the value object
+     */
+    private IValueObject createVo(VOInfo aInfo, Map<String, Object> aValues) {
+        IValueObject vo = mock(IValueObject.class);
+        when(vo.getVOInfo()).thenReturn(aInfo);
+        when(vo.getProperties()).thenReturn(aValues);
+        when(vo.getProperty(anyString())).thenAnswer(invocation -> aValues.get(invocation.getArguments()[0]));
+        when(vo.getPropertyType(anyString())).thenAnswer(invocation -> iTypes.get(invocation.getArguments()[0]));
+        return vo;
+    }
+}
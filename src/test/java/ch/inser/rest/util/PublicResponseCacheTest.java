@@ -0,0 +1,228 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+
+package ch.inser.rest.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.inser.dynamic.common.IContextManager;
+import ch.inser.jsl.exceptions.ISException;
+
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.Response;
+
+/**
+ * Test the cache of the public responses.
+ *
+ * @author INSER SA *
+ */
+public class PublicResponseCacheTest {
+
+    /** Body of the test responses */
+    private static final byte[] BODY = "{\"records\":[],\"ids\":[]}".getBytes(StandardCharsets.UTF_8);
+
+    /** The cache, with the versions of the entities given by the test */
+    private PublicResponseCache iCache;
+
+    /**
+     * Cache of 2 responses of at most 1000 bytes together and 400 bytes each, with gzip, kept 1 minute for Person, not for Address.
+     */
+    @Before
+    public void initCache() {
+        IContextManager ctx = mock(IContextManager.class);
+        when(ctx.getProperty(PublicResponseCache.SECURITY_PUBLIC_CACHE_TTL + ".Person")).thenReturn("60000");
+        when(ctx.getProperty(PublicResponseCache.SECURITY_PUBLIC_CACHE_SIZE)).thenReturn("2");
+        when(ctx.getProperty(PublicResponseCache.SECURITY_PUBLIC_CACHE_GZIP)).thenReturn("true");
+        when(ctx.getProperty(PublicResponseCache.SECURITY_PUBLIC_CACHE_BYTES)).thenReturn("1000");
+        when(ctx.getProperty(PublicResponseCache.SECURITY_PUBLIC_CACHE_ENTRY_BYTES)).thenReturn("400");
+        iCache = spy(new PublicResponseCache());
+        iCache.configure(ctx);
+        doReturn("1").when(iCache).getVersions("Person");
+    }
+
+    /**
+     * A response is kept until the entity is modified.
+     *
+     * @throws ISException
+     *             the exceptions
+     */
+    @Test
+    public void testVersions() throws ISException {
+        assertTrue(iCache.isEnabled("Person"));
+        assertFalse(iCache.isEnabled("Address"));
+
+        String key = PublicResponseCache.key("list", null, "name");
+        assertNull(iCache.get("Person", key));
+        iCache.put("Person", key, "1", BODY);
+        assertNotNull(iCache.get("Person", key));
+        assertNull(iCache.get("Person", PublicResponseCache.key("list", null, "firstname")));
+
+        doReturn("2").when(iCache).getVersions("Person");
+        assertNull(iCache.get("Person", key));
+    }
+
+    /**
+     * The response is compressed for the clients accepting gzip, with another ETag, and not modified for the ETag of its encoding.
+     *
+     * @throws ISException
+     *             the exceptions
+     * @throws IOException
+     *             the exceptions
+     */
+    @Test
+    public void testResponse() throws ISException, IOException {
+        PublicResponseCache.Entry entry = iCache.put("Person", "key", "1", BODY);
+
+        Response plain = entry.toResponse(null, null);
+        assertArrayEquals(BODY, (byte[]) plain.getEntity());
+        String tag = plain.getHeaderString(HttpHeaders.ETAG);
+        assertNotNull(tag);
+
+        Response gzip = entry.toResponse(null, "gzip, deflate");
+        assertEquals("gzip", gzip.getHeaderString(HttpHeaders.CONTENT_ENCODING));
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream((byte[]) gzip.getEntity()))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[256];
+            for (int n = in.read(buffer); n > 0; n = in.read(buffer)) {
+                out.write(buffer, 0, n);
+            }
+            assertArrayEquals(BODY, out.toByteArray());
+        }
+
+        String gzipTag = gzip.getHeaderString(HttpHeaders.ETAG);
+        assertNotEquals(tag, gzipTag);
+        assertEquals(Response.Status.NOT_MODIFIED.getStatusCode(), entry.toResponse(tag, null).getStatus());
+        assertEquals(Response.Status.NOT_MODIFIED.getStatusCode(), entry.toResponse(gzipTag, "gzip").getStatus());
+        assertEquals(Response.Status.OK.getStatusCode(), entry.toResponse(tag, "gzip").getStatus());
+    }
+
+    /**
+     * A property that is not a number gives the default value instead of an error on every response.
+     */
+    @Test
+    public void testInvalidProperties() {
+        IContextManager ctx = mock(IContextManager.class);
+        when(ctx.getProperty(PublicResponseCache.SECURITY_PUBLIC_CACHE_TTL)).thenReturn("1 minute");
+        when(ctx.getProperty(PublicResponseCache.SECURITY_PUBLIC_CACHE_TTL + ".Person")).thenReturn(" 60000 ");
+        when(ctx.getProperty(PublicResponseCache.SECURITY_PUBLIC_CACHE_SIZE)).thenReturn("many");
+        PublicResponseCache cache = new PublicResponseCache();
+        cache.configure(ctx);
+        assertTrue(cache.isEnabled("Person"));
+        assertFalse(cache.isEnabled("Address"));
+        assertEquals(0, cache.getTtl("Address"));
+    }
+
+    /**
+     * The number of responses is bounded.
+     *
+     * @throws ISException
+     *             the exceptions
+     */
+    @Test
+    public void testMaxSize() throws ISException {
+        for (int i = 0; i < 10; i++) {
+            iCache.put("Person", "key" + i, "1", BODY);
+        }
+        assertTrue(iCache.getSize() <= 2);
+    }
+
+    /**
+     * The bytes of the responses are bounded and a response larger than the maximum of a response is not kept.
+     *
+     * @throws ISException
+     *             the exceptions
+     */
+    @Test
+    public void testMaxBytes() throws ISException {
+        byte[] body = new byte[300];
+        // Not compressible, the gzip body is as large as the body
+        new Random(1).nextBytes(body);
+        iCache.put("Person", "key1", "1", body);
+        iCache.put("Person", "key2", "1", body);
+        assertTrue(iCache.getBytes() <= 1000);
+        assertTrue(iCache.getSize() < 2);
+
+        iCache.clear();
+        assertEquals(0, iCache.getBytes());
+        byte[] large = new byte[500];
+        PublicResponseCache.Entry entry = iCache.put("Person", "large", "1", large);
+        assertArrayEquals(large, entry.getBody());
+        assertNull(iCache.get("Person", "large"));
+        assertEquals(0, iCache.getSize());
+    }
+
+    /**
+     * A response requested again while it is read is read once.
+     *
+     * @throws Exception
+     *             the exceptions
+     */
+    @Test
+    public void testSingleFlight() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        PublicResponseCache.Loader loader = () -> {
+            loads.incrementAndGet();
+            started.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return BODY;
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<PublicResponseCache.Entry> first = executor.submit(() -> iCache.load("Person", "key", loader));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            Future<PublicResponseCache.Entry> second = executor.submit(() -> iCache.load("Person", "key", loader));
+            Thread.sleep(100);
+            release.countDown();
+            assertArrayEquals(BODY, first.get().getBody());
+            assertArrayEquals(BODY, second.get().getBody());
+            assertEquals(1, loads.get());
+        } finally {
+            executor.shutdownNow();
+        }
+        assertNull(iCache.load("Person", "missing", () -> null));
+    }
+}
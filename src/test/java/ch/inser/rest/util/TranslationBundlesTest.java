@@ -0,0 +1,136 @@
+/*
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+
+package ch.inser.rest.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import ch.inser.dynamic.common.IContextManager;
+import ch.inser.jsl.exceptions.ISException;
+
+import jakarta.ws.rs.core.HttpHeaders;
+
+/**
+ * Test the rebuilding of the translation bundles.
+ *
+ * @author INSER SA *
+ */
+public class TranslationBundlesTest {
+
+    /** Entities of the test bundles */
+    private static final String[] ENTITIES = { "TestHelpText", "TestCode" };
+
+    /**
+     * A bundle is built once and rebuilt after a modification of one of its entities.
+     *
+     * @throws ISException
+     *             the exceptions
+     */
+    @Test
+    public void testVersions() throws ISException {
+        TranslationBundles bundles = new TranslationBundles();
+        AtomicInteger builds = new AtomicInteger();
+        TranslationBundles.Builder builder = () -> "{\"build\":" + builds.incrementAndGet() + "}";
+
+        PublicResponseCache.Entry first = bundles.get("labels.fr", ENTITIES, builder);
+        assertSame(first, bundles.get("labels.fr", ENTITIES, builder));
+        assertEquals("{\"build\":1}", new String(first.getBody(), StandardCharsets.UTF_8));
+
+        EntityVersions.increment("TestCode");
+        PublicResponseCache.Entry second = bundles.get("labels.fr", ENTITIES, builder);
+        assertEquals("{\"build\":2}", new String(second.getBody(), StandardCharsets.UTF_8));
+        assertNotEquals(first.toResponse(null, null).getHeaderString(HttpHeaders.ETAG),
+                second.toResponse(null, null).getHeaderString(HttpHeaders.ETAG));
+        assertEquals(2, bundles.getBuilds());
+    }
+
+    /**
+     * Concurrent callers wait for a single build.
+     *
+     * @throws Exception
+     *             the exceptions
+     */
+    @Test
+    public void testConcurrentBuild() throws Exception {
+        TranslationBundles bundles = new TranslationBundles();
+        AtomicInteger builds = new AtomicInteger();
+        TranslationBundles.Builder builder = () -> {
+            builds.incrementAndGet();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                throw new ISException(e);
+            }
+            return "{}";
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Callable<PublicResponseCache.Entry>> calls = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                calls.add(() -> bundles.get("help", ENTITIES, builder));
+            }
+            List<Future<PublicResponseCache.Entry>> results = executor.invokeAll(calls);
+            for (Future<PublicResponseCache.Entry> result : results) {
+                assertSame(results.get(0).get(), result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, builds.get());
+    }
+
+    /**
+     * A bundle is rebuilt after translate.bundle.refresh also without a modification, and at most translate.bundle.size bundles are
+     * kept.
+     *
+     * @throws Exception
+     *             the exceptions
+     */
+    @Test
+    public void testRefreshAndSize() throws Exception {
+        IContextManager ctx = mock(IContextManager.class);
+        when(ctx.getProperty(TranslationBundles.TRANSLATE_BUNDLE_REFRESH)).thenReturn("50");
+        when(ctx.getProperty(TranslationBundles.TRANSLATE_BUNDLE_SIZE)).thenReturn("2");
+        TranslationBundles bundles = new TranslationBundles();
+        bundles.configure(ctx);
+        AtomicInteger builds = new AtomicInteger();
+        TranslationBundles.Builder builder = () -> "{\"build\":" + builds.incrementAndGet() + "}";
+
+        PublicResponseCache.Entry first = bundles.get("labels.fr", ENTITIES, builder);
+        assertSame(first, bundles.get("labels.fr", ENTITIES, builder));
+        Thread.sleep(100);
+        assertNotEquals(first, bundles.get("labels.fr", ENTITIES, builder));
+        assertEquals(2, builds.get());
+
+        bundles.get("labels.de", ENTITIES, builder);
+        bundles.get("labels.it", ENTITIES, builder);
+        assertEquals(2, bundles.getSize());
+    }
+}